@@ -0,0 +1,108 @@
+package io.simplesource.benchmarks;
+
+import io.simplesource.benchmarks.domain.*;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.util.PrefixResourceNamingStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures end to end command processing through the full event sourcing topology: command deduplication, command
+ * handling, event and aggregate publishing, and distribution of the command response to the client.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CommandProcessingBenchmark {
+
+    @Param({"json", "avro", "avroSingleObject"})
+    private SerializationFormat serialization;
+
+    @Param({"1", "100", "1000"})
+    private int aggregateSize;
+
+    @Param({"1", "10"})
+    private int eventsPerCommand;
+
+    @Param({"1000"})
+    private int keyCount;
+
+    private Path stateDir;
+    private TopologyHarness<AccountKey, AccountCommand, AccountEvent, Account> harness;
+    private AccountKey[] keys;
+    private Sequence[] sequences;
+    private List<String> entryValues;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stateDir = Files.createTempDirectory("simplesource-benchmark");
+        harness = new TopologyHarness<>(
+                AccountAggregate.createSpec(
+                        "account",
+                        serialization.serdes(),
+                        new PrefixResourceNamingStrategy("benchmark_"),
+                        aggregateSize),
+                stateDir.toString());
+
+        keys = IntStream.range(0, keyCount).mapToObj(i -> new AccountKey("account-" + i)).toArray(AccountKey[]::new);
+        sequences = Stream.generate(Sequence::first).limit(keyCount).toArray(Sequence[]::new);
+        entryValues = IntStream.range(0, eventsPerCommand).mapToObj(i -> "value-" + i).collect(Collectors.toList());
+        nextKey = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        harness.close();
+        try (Stream<Path> paths = Files.walk(stateDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public CommandResponse commandThroughput() {
+        return processNextCommand();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CommandResponse commandLatency() {
+        return processNextCommand();
+    }
+
+    private CommandResponse processNextCommand() {
+        final int keyIndex = nextKey;
+        nextKey = (nextKey + 1) % keyCount;
+
+        final CommandRequest<AccountKey, AccountCommand> request = new CommandRequest<>(
+                keys[keyIndex],
+                new AccountCommand.UpdateEntries(keyIndex, entryValues),
+                sequences[keyIndex],
+                UUID.randomUUID());
+        final CommandResponse response = harness.process(request);
+
+        // a benchmark that quietly measures rejected commands is worse than no benchmark
+        sequences[keyIndex] = response.sequenceResult().fold(
+                reasons -> {
+                    throw new IllegalStateException("Command failed: " + response);
+                },
+                sequence -> sequence);
+        return response;
+    }
+}
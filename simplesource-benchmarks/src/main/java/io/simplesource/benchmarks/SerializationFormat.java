@@ -0,0 +1,48 @@
+package io.simplesource.benchmarks;
+
+import io.simplesource.benchmarks.domain.Account;
+import io.simplesource.benchmarks.domain.AccountCommand;
+import io.simplesource.benchmarks.domain.AccountEvent;
+import io.simplesource.benchmarks.domain.AccountKey;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.serialization.avro.AvroAggregateSerdes;
+import io.simplesource.kafka.serialization.avro.AvroGenericUtils;
+import io.simplesource.kafka.serialization.avro.AvroSchemaStore;
+import io.simplesource.kafka.serialization.json.JsonAggregateSerdes;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.serialization.Serde;
+
+import java.util.function.Supplier;
+
+import static io.simplesource.benchmarks.domain.AccountAvroMappers.*;
+
+/**
+ * The serialization formats that can be benchmarked. Avro uses the mock schema registry, and Avro single object
+ * encoding an in memory schema store, so benchmarks can run without any external services.
+ */
+public enum SerializationFormat {
+    json(JsonAggregateSerdes::new),
+    avro(() -> new AvroAggregateSerdes<>(
+            keyMapper, commandMapper, eventMapper, aggregateMapper,
+            "http://mock-registry:8081",
+            true,
+            io.simplesource.benchmarks.generated.Account.SCHEMA$)),
+    avroSingleObject(() -> {
+        final Serde<GenericRecord> serde = AvroGenericUtils.singleObjectAvroSerde(AvroSchemaStore.inMemory(), true);
+        return new AvroAggregateSerdes<>(
+                keyMapper, commandMapper, eventMapper, aggregateMapper,
+                serde,
+                serde,
+                io.simplesource.benchmarks.generated.Account.SCHEMA$);
+    });
+
+    private final Supplier<AggregateSerdes<AccountKey, AccountCommand, AccountEvent, Account>> serdes;
+
+    SerializationFormat(final Supplier<AggregateSerdes<AccountKey, AccountCommand, AccountEvent, Account>> serdes) {
+        this.serdes = serdes;
+    }
+
+    public AggregateSerdes<AccountKey, AccountCommand, AccountEvent, Account> serdes() {
+        return serdes.get();
+    }
+}
@@ -0,0 +1,102 @@
+package io.simplesource.benchmarks;
+
+import io.simplesource.kafka.api.AggregateResources.TopicEntity;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.dsl.KafkaConfig;
+import io.simplesource.kafka.internal.client.KafkaCommandAPI;
+import io.simplesource.kafka.internal.streams.topology.EventSourcedTopology;
+import io.simplesource.kafka.internal.streams.topology.TopologyContext;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.spec.AggregateSpec;
+import io.simplesource.kafka.util.SpecUtils;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Drives the complete command processing topology created by {@link EventSourcedTopology#addTopology} through a
+ * {@link TopologyTestDriver}, publishing the same records as the Kafka command API would and draining every output
+ * topic so that each command is processed end to end.
+ *
+ * @param <K> the aggregate key type
+ * @param <C> all commands for this aggregate
+ * @param <E> all events generated for this aggregate
+ * @param <A> the aggregate type
+ */
+final class TopologyHarness<K, C, E, A> implements AutoCloseable {
+    private static final String CLIENT_ID = "benchmark";
+
+    private final TopologyTestDriver driver;
+    private final AggregateSpec<K, C, E, A> aggregateSpec;
+    private final AggregateSerdes<K, C, E, A> serdes;
+    private final ConsumerRecordFactory<K, CommandRequest<K, C>> commandRequestFactory;
+    private final ConsumerRecordFactory<UUID, String> responseTopicMapFactory;
+    private final String privateResponseTopic;
+    private final ByteArrayDeserializer bytesDeserializer = new ByteArrayDeserializer();
+
+    TopologyHarness(final AggregateSpec<K, C, E, A> aggregateSpec, final String stateDir) {
+        this.aggregateSpec = aggregateSpec;
+        serdes = aggregateSpec.serialization().serdes();
+
+        final StreamsBuilder builder = new StreamsBuilder();
+        EventSourcedTopology.addTopology(new TopologyContext<>(aggregateSpec), builder);
+
+        final KafkaConfig kafkaConfig = new KafkaConfig.Builder()
+                .withKafkaApplicationId("benchmark")
+                .withKafkaBootstrap("0.0.0.0:9092")
+                .withSetting(StreamsConfig.STATE_DIR_CONFIG, stateDir)
+                .build();
+        final Properties streamConfig = new Properties();
+        streamConfig.putAll(kafkaConfig.streamsConfig());
+        driver = new TopologyTestDriver(builder.build(), streamConfig, 0L);
+
+        commandRequestFactory = new ConsumerRecordFactory<>(serdes.aggregateKey().serializer(), serdes.commandRequest().serializer());
+        responseTopicMapFactory = new ConsumerRecordFactory<>(serdes.commandResponseKey().serializer(), Serdes.String().serializer());
+        privateResponseTopic = KafkaCommandAPI.getRequestAPIContext(
+                SpecUtils.getCommandSpec(aggregateSpec, CLIENT_ID), kafkaConfig, null).privateResponseTopic();
+    }
+
+    /**
+     * Publish a command exactly as the command API does, and process it through the whole topology.
+     *
+     * @return the command response written to the command response topic
+     */
+    CommandResponse process(final CommandRequest<K, C> request) {
+        driver.pipeInput(responseTopicMapFactory.create(topicName(TopicEntity.command_response_topic_map), request.commandId(), privateResponseTopic));
+        driver.pipeInput(commandRequestFactory.create(topicName(TopicEntity.command_request), request.aggregateKey(), request));
+
+        drain(topicName(TopicEntity.event));
+        drain(topicName(TopicEntity.aggregate));
+        drain(privateResponseTopic);
+
+        final ProducerRecord<K, CommandResponse> response = driver.readOutput(
+                topicName(TopicEntity.command_response),
+                serdes.aggregateKey().deserializer(),
+                serdes.commandResponse().deserializer());
+        if (response == null)
+            throw new IllegalStateException("No command response for command " + request.commandId());
+        return response.value();
+    }
+
+    private void drain(final String topicName) {
+        while (driver.readOutput(topicName, bytesDeserializer, bytesDeserializer) != null) { }
+    }
+
+    private String topicName(final TopicEntity topic) {
+        return aggregateSpec.serialization().resourceNamingStrategy().topicName(
+                aggregateSpec.aggregateName(), topic.name());
+    }
+
+    @Override
+    public void close() {
+        driver.close();
+    }
+}
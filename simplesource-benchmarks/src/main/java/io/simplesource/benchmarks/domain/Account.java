@@ -0,0 +1,25 @@
+package io.simplesource.benchmarks.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Value
+@AllArgsConstructor
+public final class Account {
+    private final String name;
+    private final List<String> entries;
+
+    public static Account withSize(final String name, final int entryCount) {
+        return new Account(name, Collections.nCopies(entryCount, "entry"));
+    }
+
+    public Account withEntry(final int index, final String value) {
+        final List<String> updated = new ArrayList<>(entries);
+        updated.set(index % updated.size(), value);
+        return new Account(name, updated);
+    }
+}
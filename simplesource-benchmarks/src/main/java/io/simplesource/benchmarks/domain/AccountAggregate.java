@@ -0,0 +1,29 @@
+package io.simplesource.benchmarks.domain;
+
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.api.ResourceNamingStrategy;
+import io.simplesource.kafka.dsl.AggregateBuilder;
+import io.simplesource.kafka.spec.AggregateSpec;
+
+public final class AccountAggregate {
+
+    /**
+     * Every account starts out with <code>aggregateSize</code> entries, and commands only ever overwrite
+     * existing entries, so the aggregate stays the same size for the duration of a benchmark.
+     */
+    static public AggregateSpec<AccountKey, AccountCommand, AccountEvent, Account> createSpec(
+            final String name,
+            final AggregateSerdes<AccountKey, AccountCommand, AccountEvent, Account> aggregateSerdes,
+            final ResourceNamingStrategy resourceNamingStrategy,
+            final int aggregateSize
+    ) {
+        return AggregateBuilder.<AccountKey, AccountCommand, AccountEvent, Account>newBuilder()
+                .withName(name)
+                .withSerdes(aggregateSerdes)
+                .withResourceNamingStrategy(resourceNamingStrategy)
+                .withInitialValue(key -> Account.withSize(key.id(), aggregateSize))
+                .withAggregator(AccountEvent.getAggregator())
+                .withCommandHandler(AccountCommand.getCommandHandler())
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package io.simplesource.benchmarks.domain;
+
+import io.simplesource.benchmarks.generated.AccountId;
+import io.simplesource.benchmarks.generated.EntryUpdated;
+import io.simplesource.benchmarks.generated.UpdateEntries;
+import io.simplesource.kafka.serialization.util.GenericMapper;
+import org.apache.avro.generic.GenericRecord;
+
+import static io.simplesource.kafka.serialization.avro.AvroSpecificGenericMapper.specificDomainMapper;
+
+public final class AccountAvroMappers {
+
+    public static final GenericMapper<Account, GenericRecord> aggregateMapper = new GenericMapper<Account, GenericRecord>() {
+        @Override
+        public GenericRecord toGeneric(final Account value) {
+            return io.simplesource.benchmarks.generated.Account.newBuilder()
+                    .setName(value.name())
+                    .setEntries(value.entries())
+                    .build();
+        }
+
+        @Override
+        public Account fromGeneric(final GenericRecord serialized) {
+            final GenericMapper<io.simplesource.benchmarks.generated.Account, GenericRecord> mapper = specificDomainMapper();
+            final io.simplesource.benchmarks.generated.Account account = mapper.fromGeneric(serialized);
+            return new Account(account.getName(), account.getEntries());
+        }
+    };
+
+    public static final GenericMapper<AccountEvent, GenericRecord> eventMapper = new GenericMapper<AccountEvent, GenericRecord>() {
+        @Override
+        public GenericRecord toGeneric(final AccountEvent value) {
+            if (value instanceof AccountEvent.EntryUpdated) {
+                final AccountEvent.EntryUpdated event = (AccountEvent.EntryUpdated) value;
+                return new EntryUpdated(event.index(), event.value());
+            }
+            throw new IllegalArgumentException("Unknown AccountEvent " + value);
+        }
+
+        @Override
+        public AccountEvent fromGeneric(final GenericRecord serialized) {
+            final GenericMapper<GenericRecord, GenericRecord> mapper = specificDomainMapper();
+            final GenericRecord specificRecord = mapper.fromGeneric(serialized);
+            if (specificRecord instanceof EntryUpdated) {
+                final EntryUpdated event = (EntryUpdated) specificRecord;
+                return new AccountEvent.EntryUpdated(event.getIndex(), event.getValue());
+            }
+            throw new IllegalArgumentException("Unknown AccountEvent " + serialized);
+        }
+    };
+
+    public static final GenericMapper<AccountCommand, GenericRecord> commandMapper = new GenericMapper<AccountCommand, GenericRecord>() {
+        @Override
+        public GenericRecord toGeneric(final AccountCommand value) {
+            if (value instanceof AccountCommand.UpdateEntries) {
+                final AccountCommand.UpdateEntries command = (AccountCommand.UpdateEntries) value;
+                return new UpdateEntries(command.firstIndex(), command.values());
+            }
+            throw new IllegalArgumentException("Unknown AccountCommand " + value);
+        }
+
+        @Override
+        public AccountCommand fromGeneric(final GenericRecord serialized) {
+            final GenericMapper<GenericRecord, GenericRecord> mapper = specificDomainMapper();
+            final GenericRecord specificRecord = mapper.fromGeneric(serialized);
+            if (specificRecord instanceof UpdateEntries) {
+                final UpdateEntries command = (UpdateEntries) specificRecord;
+                return new AccountCommand.UpdateEntries(command.getFirstIndex(), command.getValues());
+            }
+            throw new IllegalArgumentException("Unknown AccountCommand " + serialized);
+        }
+    };
+
+    public static final GenericMapper<AccountKey, GenericRecord> keyMapper = new GenericMapper<AccountKey, GenericRecord>() {
+        @Override
+        public GenericRecord toGeneric(final AccountKey value) {
+            return AccountId.newBuilder()
+                    .setId(value.id())
+                    .build();
+        }
+
+        @Override
+        public AccountKey fromGeneric(final GenericRecord serialized) {
+            final GenericMapper<AccountId, GenericRecord> mapper = specificDomainMapper();
+            final AccountId accountId = mapper.fromGeneric(serialized);
+            return new AccountKey(accountId.getId());
+        }
+    };
+}
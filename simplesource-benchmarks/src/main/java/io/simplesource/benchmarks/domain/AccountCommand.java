@@ -0,0 +1,42 @@
+package io.simplesource.benchmarks.domain;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.api.CommandHandler;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
+import io.simplesource.dsl.CommandHandlerBuilder;
+import lombok.Value;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public interface AccountCommand {
+
+    /**
+     * Overwrites consecutive entries starting at firstIndex, generating one event per value.
+     */
+    @Value
+    class UpdateEntries implements AccountCommand {
+        private final int firstIndex;
+        private final List<String> values;
+    }
+
+    static CommandHandler<AccountKey, UpdateEntries, AccountEvent, Account> doUpdateEntries() {
+        return (accountKey, currentAggregate, command) -> {
+            final List<AccountEvent> events = IntStream.range(0, command.values().size())
+                    .mapToObj(i -> new AccountEvent.EntryUpdated(command.firstIndex() + i, command.values().get(i)))
+                    .collect(Collectors.toList());
+            return NonEmptyList.fromList(events)
+                    .<Result<CommandError, NonEmptyList<AccountEvent>>>map(Result::success)
+                    .orElseGet(() -> Result.failure(CommandError.of(CommandError.Reason.InvalidCommand,
+                            "No entries to update for account " + accountKey.id())));
+        };
+    }
+
+    static CommandHandler<AccountKey, AccountCommand, AccountEvent, Account> getCommandHandler() {
+        return CommandHandlerBuilder.<AccountKey, AccountCommand, AccountEvent, Account>newBuilder()
+                .onCommand(UpdateEntries.class, doUpdateEntries())
+                .build();
+    }
+}
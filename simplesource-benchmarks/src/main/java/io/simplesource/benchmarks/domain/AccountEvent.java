@@ -0,0 +1,24 @@
+package io.simplesource.benchmarks.domain;
+
+import io.simplesource.api.Aggregator;
+import io.simplesource.dsl.AggregatorBuilder;
+import lombok.Value;
+
+public interface AccountEvent {
+
+    @Value
+    class EntryUpdated implements AccountEvent {
+        private final int index;
+        private final String value;
+    }
+
+    static Aggregator<EntryUpdated, Account> handleEntryUpdated() {
+        return (currentAggregate, event) -> currentAggregate.withEntry(event.index(), event.value());
+    }
+
+    static Aggregator<AccountEvent, Account> getAggregator() {
+        return AggregatorBuilder.<AccountEvent, Account>newBuilder()
+                .onEvent(EntryUpdated.class, handleEntryUpdated())
+                .build();
+    }
+}
@@ -0,0 +1,8 @@
+package io.simplesource.benchmarks.domain;
+
+import lombok.Value;
+
+@Value
+public final class AccountKey {
+    private final String id;
+}
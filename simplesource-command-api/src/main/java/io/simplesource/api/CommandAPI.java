@@ -5,7 +5,9 @@ import io.simplesource.data.Sequence;
 import lombok.Value;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * The public API for submitting commands against a given aggregate and
@@ -30,6 +32,25 @@ public interface CommandAPI<K, C> {
      */
     FutureResult<CommandError, UUID> publishCommand(Request<K, C> request);
 
+    /**
+     * Submit a batch of commands ready for processing, without waiting for each to be queued before submitting the
+     * next. Implementations may pipeline the whole batch, so this is the preferred way of submitting large numbers of
+     * commands, for example when importing or back-filling data. As with {@link #publishCommand(Request)}, a
+     * successful result only implies the commands have been queued.
+     *
+     * Each command has a result of its own, so if only some of the batch is queued, it is clear which commands were.
+     * Use {@link FutureResult#sequence(List)} to wait for the whole batch.
+     *
+     * @param requests command requests.
+     * @return a <code>FutureResult</code> for each command, in order, with its commandId echoed back if it was
+     * successfully queued, otherwise a list of reasons for the failure.
+     */
+    default List<FutureResult<CommandError, UUID>> publishCommands(final List<Request<K, C>> requests) {
+        return requests.stream()
+                .map(this::publishCommand)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Get the result of the execution of the command identified by the provided UUID.
      * If the command was successful, return the highest sequence number of the generated events.
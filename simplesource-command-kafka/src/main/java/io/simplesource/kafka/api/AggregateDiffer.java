@@ -0,0 +1,31 @@
+package io.simplesource.kafka.api;
+
+/**
+ * An AggregateDiffer allows the aggregate topic to carry only what has changed in an aggregate since its previous
+ * update, rather than the whole aggregate. It is worth providing for large aggregates where each command only touches a
+ * small part of the state.
+ *
+ * The delta format is entirely up to the implementation, as long as applying a delta to the aggregate it was taken from
+ * gives back the aggregate it was taken to.
+ *
+ * @param <A> the aggregate type
+ */
+public interface AggregateDiffer<A> {
+    /**
+     * Works out the delta between two versions of an aggregate.
+     *
+     * @param previous the aggregate at its previous update
+     * @param current the aggregate now
+     * @return a delta that turns {@code previous} into {@code current}
+     */
+    byte[] diff(A previous, A current);
+
+    /**
+     * Applies a delta produced by {@link #diff(Object, Object)}.
+     *
+     * @param previous the aggregate the delta was taken from
+     * @param delta the delta
+     * @return the aggregate the delta was taken to
+     */
+    A apply(A previous, byte[] delta);
+}
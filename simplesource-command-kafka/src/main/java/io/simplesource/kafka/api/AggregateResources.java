@@ -9,4 +9,15 @@ public final class AggregateResources {
         command_response,
         command_response_topic_map,
     }
+
+    public enum StateStoreEntity {
+        command_response_by_id,
+        command_response_by_aggregate_key,
+        aggregate_update,
+        aggregate_update_pending,
+        aggregate_snapshot,
+        aggregate_snapshot_event,
+        command_handler_lanes,
+        aggregate_table,
+    }
 }
@@ -0,0 +1,35 @@
+package io.simplesource.kafka.api;
+
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.kafka.model.ValueWithSequence;
+
+import java.util.function.BiConsumer;
+
+/**
+ * An append-only log of the events of an aggregate, for running aggregates without Kafka. The log is the only durable
+ * state of such an aggregate: its aggregates are rebuilt by replaying the log when it starts.
+ *
+ * @param <K> the aggregate key type
+ * @param <E> all events generated for this aggregate
+ */
+public interface EventLog<K, E> {
+    /**
+     * Appends the events generated by one command. The events of a key are only ever appended by one thread at a
+     * time, in sequence order, and a command is only acknowledged once this returns.
+     *
+     * @param key the aggregate key
+     * @param events the events, in sequence order
+     * @throws RuntimeException if the events could not be stored, in which case the command fails
+     */
+    void append(K key, NonEmptyList<ValueWithSequence<E>> events);
+
+    /**
+     * Reads back every event in the log, in the order each key's events were appended.
+     *
+     * @param consumer receives the aggregate key and event
+     */
+    void replay(BiConsumer<K, ValueWithSequence<E>> consumer);
+
+    default void close() {
+    }
+}
@@ -0,0 +1,44 @@
+package io.simplesource.kafka.api;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.data.FutureResult;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.AggregateUpdate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Reads the current state of the aggregates of a running app, straight from the state the app keeps to handle
+ * commands, rather than from the aggregate topic.
+ *
+ * @param <K> the aggregate key type
+ * @param <A> the aggregate type
+ */
+public interface QueryAPI<K, A> {
+    /**
+     * Get the latest aggregate update for a key, wherever in the app it is held.
+     *
+     * @param key the aggregate key
+     * @return a <code>FutureResult</code> with the latest aggregate and its sequence, or empty if no command has
+     * created the aggregate, otherwise the reasons the aggregate could not be read.
+     */
+    FutureResult<CommandError, Optional<AggregateUpdate<A>>> queryAggregate(K key);
+
+    /**
+     * Get the aggregate for a key once it has caught up with a given sequence, such as the sequence returned by
+     * {@link io.simplesource.api.CommandAPI#queryCommandResult}. This lets a caller read its own writes without
+     * polling: the wait is completed as the app makes the aggregate update, on the instance holding the key, and no
+     * further messages are sent through Kafka.
+     *
+     * If the aggregate has not reached the sequence within the given timeout this fails with a <code>Timeout</code>
+     * error code.
+     *
+     * @param key the aggregate key
+     * @param sequence the sequence the aggregate must have reached
+     * @param timeout how long to wait for the aggregate to reach the sequence
+     * @return a <code>FutureResult</code> with the aggregate at or after the sequence, otherwise the reasons it could
+     * not be read in time.
+     */
+    FutureResult<CommandError, AggregateUpdate<A>> queryAggregate(K key, Sequence sequence, Duration timeout);
+}
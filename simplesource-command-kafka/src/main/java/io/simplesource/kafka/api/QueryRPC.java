@@ -0,0 +1,75 @@
+package io.simplesource.kafka.api;
+
+import io.simplesource.data.Sequence;
+import org.apache.kafka.streams.state.HostInfo;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries aggregate queries between instances of an app, for keys whose state is held by another instance. Keys and
+ * aggregate updates travel serialized with the aggregate serdes, so an implementation only needs to move bytes.
+ */
+public interface QueryRPC {
+
+    /**
+     * Answers queries for the aggregates held by this instance.
+     */
+    interface LocalQueryHandler {
+        /**
+         * @param aggregateName the aggregate queried
+         * @param key the serialized aggregate key
+         * @return the serialized latest aggregate update, or empty if there is none
+         */
+        Optional<byte[]> query(String aggregateName, byte[] key);
+
+        /**
+         * @param aggregateName the aggregate queried
+         * @param key the serialized aggregate key
+         * @param sequence the sequence the aggregate must reach
+         * @param timeout how long to wait for the aggregate to reach the sequence
+         * @return completes with the serialized aggregate update at or after the sequence, or empty if the aggregate
+         * does not reach it within the timeout
+         */
+        CompletableFuture<Optional<byte[]>> await(String aggregateName, byte[] key, Sequence sequence, Duration timeout);
+    }
+
+    /**
+     * Starts answering queries from other instances at the given host, which is the application server this
+     * instance advertises to the rest of the app.
+     *
+     * @param host this instance
+     * @param handler answers the queries
+     */
+    void serve(HostInfo host, LocalQueryHandler handler);
+
+    /**
+     * Queries another instance.
+     *
+     * @param host the instance holding the key
+     * @param aggregateName the aggregate queried
+     * @param key the serialized aggregate key
+     * @return the serialized latest aggregate update, or empty if there is none
+     */
+    CompletableFuture<Optional<byte[]>> query(HostInfo host, String aggregateName, byte[] key);
+
+    /**
+     * Waits on another instance for an aggregate to reach a sequence, with a single request that the other instance
+     * answers once the aggregate reaches it.
+     *
+     * @param host the instance holding the key
+     * @param aggregateName the aggregate queried
+     * @param key the serialized aggregate key
+     * @param sequence the sequence the aggregate must reach
+     * @param timeout how long to wait for the aggregate to reach the sequence
+     * @return the serialized aggregate update at or after the sequence, or empty if the aggregate does not reach it
+     * within the timeout
+     */
+    CompletableFuture<Optional<byte[]>> await(HostInfo host, String aggregateName, byte[] key, Sequence sequence, Duration timeout);
+
+    /**
+     * Stops answering queries and releases any resources.
+     */
+    void close();
+}
@@ -1,6 +1,7 @@
 package io.simplesource.kafka.dsl;
 
 import io.simplesource.api.CommandHandler;
+import io.simplesource.kafka.api.AggregateDiffer;
 import io.simplesource.api.InvalidSequenceHandler;
 import io.simplesource.kafka.api.AggregateResources.TopicEntity;
 import io.simplesource.api.Aggregator;
@@ -9,6 +10,7 @@ import io.simplesource.api.InitialValue;
 import io.simplesource.kafka.api.ResourceNamingStrategy;
 import io.simplesource.kafka.internal.streams.InvalidSequenceHandlerProvider;
 import io.simplesource.kafka.spec.AggregateSpec;
+import io.simplesource.kafka.spec.SnapshotPolicy;
 import io.simplesource.kafka.spec.TopicSpec;
 import io.simplesource.kafka.spec.WindowSpec;
 import org.apache.kafka.common.config.TopicConfig;
@@ -28,6 +30,14 @@ public final class AggregateBuilder<K, C, E, A> {
     private CommandHandler<K, C, E, A> commandHandler;
     private Aggregator<E, A> aggregator;
     private InvalidSequenceHandler<K, C, A> invalidSequenceHandler;
+    private DeduplicationStrategy deduplicationStrategy;
+    private AggregateStateStrategy aggregateStateStrategy;
+    private long aggregateUpdateBatchIntervalInMillis;
+    private SnapshotPolicy snapshotPolicy;
+    private AggregateDiffer<A> aggregateDiffer;
+    private long aggregateCheckpointInterval;
+    private ResponseRoutingStrategy responseRoutingStrategy;
+    private int commandHandlerLanes;
 
     public static <K, C, E, A> AggregateBuilder<K, C, E, A> newBuilder() {
         return new AggregateBuilder<>();
@@ -36,6 +46,11 @@ public final class AggregateBuilder<K, C, E, A> {
     private AggregateBuilder() {
         topicConfig = new HashMap<>();
         commandResponseStoreSpec = new WindowSpec(TimeUnit.DAYS.toSeconds(1L));
+        deduplicationStrategy = DeduplicationStrategy.ByCommandId;
+        aggregateStateStrategy = AggregateStateStrategy.AggregateTable;
+        aggregateUpdateBatchIntervalInMillis = 0L;
+        responseRoutingStrategy = ResponseRoutingStrategy.TopicMap;
+        commandHandlerLanes = 1;
     }
 
     public AggregateBuilder<K, C, E, A> withName(final String name) {
@@ -89,6 +104,79 @@ public final class AggregateBuilder<K, C, E, A> {
         return this;
     }
 
+    public AggregateBuilder<K, C, E, A> withDeduplicationStrategy(final DeduplicationStrategy deduplicationStrategy) {
+        this.deduplicationStrategy = deduplicationStrategy;
+        return this;
+    }
+
+    public AggregateBuilder<K, C, E, A> withAggregateStateStrategy(final AggregateStateStrategy aggregateStateStrategy) {
+        this.aggregateStateStrategy = aggregateStateStrategy;
+        return this;
+    }
+
+    /**
+     * Only publish the latest aggregate update for each key once per interval, rather than once per command. Every
+     * event and command response is still published as soon as its command is handled. Requires
+     * {@link AggregateStateStrategy#LocalStore}.
+     *
+     * @param intervalInMillis how often to publish aggregate updates, or zero to publish them for every command
+     * @return this builder
+     */
+    public AggregateBuilder<K, C, E, A> withAggregateUpdateBatching(final long intervalInMillis) {
+        this.aggregateUpdateBatchIntervalInMillis = intervalInMillis;
+        return this;
+    }
+
+    /**
+     * Only write the full aggregate to the aggregate topic when the snapshot policy calls for it, rather than for
+     * every command. Between snapshots, aggregates are rebuilt from their last snapshot and the events since. Requires
+     * {@link AggregateStateStrategy#LocalStore}.
+     *
+     * @param snapshotPolicy when to snapshot aggregates
+     * @return this builder
+     */
+    public AggregateBuilder<K, C, E, A> withSnapshotPolicy(final SnapshotPolicy snapshotPolicy) {
+        this.snapshotPolicy = snapshotPolicy;
+        return this;
+    }
+
+    /**
+     * Write aggregate updates to the aggregate topic as deltas from the previous update for the same key, with a full
+     * checkpoint at least every {@code checkpointInterval} sequence numbers. Readers of the aggregate topic need the
+     * same differ to rebuild full aggregates, and a reader that starts part way through the topic ignores an aggregate
+     * until its next checkpoint. As compaction may remove the checkpoint a delta is based on, keep the minimum
+     * compaction lag of the aggregate topic long enough for the checkpoint interval.
+     *
+     * @param aggregateDiffer works out and applies the deltas
+     * @param checkpointInterval the maximum number of sequence numbers between full checkpoints
+     * @return this builder
+     */
+    public AggregateBuilder<K, C, E, A> withDeltaEncoding(final AggregateDiffer<A> aggregateDiffer, final long checkpointInterval) {
+        this.aggregateDiffer = aggregateDiffer;
+        this.aggregateCheckpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public AggregateBuilder<K, C, E, A> withResponseRoutingStrategy(final ResponseRoutingStrategy responseRoutingStrategy) {
+        this.responseRoutingStrategy = responseRoutingStrategy;
+        return this;
+    }
+
+    /**
+     * Run the command handler for different keys concurrently within each stream task, on a fixed number of lanes.
+     * Commands are handled in batches, and commands for the same key are still handled one at a time in the order they
+     * were published. Commands read but not yet handled are kept in a logged store, so none are lost when a task
+     * commits. Requires {@link AggregateStateStrategy#LocalStore} and {@link ResponseRoutingStrategy#TopicMap}, as
+     * responses do not carry the headers of their commands.
+     *
+     * @param laneCount how many commands each task handles at once, or one to handle commands on the stream thread
+     * @return this builder
+     */
+    public AggregateBuilder<K, C, E, A> withCommandHandlerLanes(final int laneCount) {
+        this.commandHandlerLanes = laneCount;
+        return this;
+    }
+
     public <SC extends C> AggregateSpec<K, C, E, A> build() {
         requireNonNull(name, "No name for aggregate has been defined");
         requireNonNull(resourceNamingStrategy, "No resource naming strategy for aggregate has been defined");
@@ -97,6 +185,27 @@ public final class AggregateBuilder<K, C, E, A> {
         requireNonNull(initialValue, "No initial value for aggregate has been defined");
         requireNonNull(commandHandler, "No CommandHandler for aggregate has been defined");
         requireNonNull(aggregator, "No Aggregator for aggregate has been defined");
+        requireNonNull(deduplicationStrategy, "No DeduplicationStrategy for aggregate has been defined");
+        requireNonNull(aggregateStateStrategy, "No AggregateStateStrategy for aggregate has been defined");
+        requireNonNull(responseRoutingStrategy, "No ResponseRoutingStrategy for aggregate has been defined");
+        if (aggregateStateStrategy == AggregateStateStrategy.LocalStore && deduplicationStrategy != DeduplicationStrategy.ByAggregateKey)
+            throw new IllegalArgumentException("AggregateStateStrategy.LocalStore requires DeduplicationStrategy.ByAggregateKey");
+        if (aggregateUpdateBatchIntervalInMillis < 0)
+            throw new IllegalArgumentException("Aggregate update batch interval must not be negative");
+        if (aggregateUpdateBatchIntervalInMillis > 0 && aggregateStateStrategy != AggregateStateStrategy.LocalStore)
+            throw new IllegalArgumentException("Aggregate update batching requires AggregateStateStrategy.LocalStore");
+        if (snapshotPolicy != null && aggregateStateStrategy != AggregateStateStrategy.LocalStore)
+            throw new IllegalArgumentException("A snapshot policy requires AggregateStateStrategy.LocalStore");
+        if (snapshotPolicy != null && snapshotPolicy.eventCount() <= 0 && snapshotPolicy.intervalInSeconds() <= 0)
+            throw new IllegalArgumentException("A snapshot policy needs an event count or an interval");
+        if (commandHandlerLanes < 1)
+            throw new IllegalArgumentException("Command handler lanes must be at least 1");
+        if (commandHandlerLanes > 1 && aggregateStateStrategy != AggregateStateStrategy.LocalStore)
+            throw new IllegalArgumentException("Command handler lanes require AggregateStateStrategy.LocalStore");
+        if (commandHandlerLanes > 1 && responseRoutingStrategy != ResponseRoutingStrategy.TopicMap)
+            throw new IllegalArgumentException("Command handler lanes require ResponseRoutingStrategy.TopicMap");
+        if (aggregateDiffer != null && aggregateCheckpointInterval <= 0)
+            throw new IllegalArgumentException("Delta encoding needs a positive checkpoint interval");
         
         // by default strict
         if (invalidSequenceHandler == null)
@@ -108,7 +217,7 @@ public final class AggregateBuilder<K, C, E, A> {
         final AggregateSpec.Serialization<K, C, E, A> serialization =
             new AggregateSpec.Serialization<>(resourceNamingStrategy, aggregateSerdes);
         final AggregateSpec.Generation<K, C, E, A> generation =
-            new AggregateSpec.Generation<>(topicConfig, commandResponseStoreSpec, commandHandler, invalidSequenceHandler, aggregator, initialValue);
+            new AggregateSpec.Generation<>(topicConfig, commandResponseStoreSpec, commandHandler, invalidSequenceHandler, deduplicationStrategy, aggregateStateStrategy, aggregateUpdateBatchIntervalInMillis, snapshotPolicy, aggregateDiffer, aggregateCheckpointInterval, responseRoutingStrategy, commandHandlerLanes, aggregator, initialValue);
 
         return new AggregateSpec<>(name, serialization, generation);
     }
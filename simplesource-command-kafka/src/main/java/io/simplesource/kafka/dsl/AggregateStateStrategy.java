@@ -0,0 +1,19 @@
+package io.simplesource.kafka.dsl;
+
+/**
+ * Where the current value of an aggregate is read from when a command is handled.
+ */
+public enum AggregateStateStrategy {
+    /**
+     * Commands are joined against a table built from the aggregate topic. A command that closely follows another
+     * for the same key can see the aggregate from before the first command, until its update has round tripped
+     * through the aggregate topic.
+     */
+    AggregateTable,
+    /**
+     * Aggregates are kept in a local state store that is updated as each command is handled, so every command sees
+     * the result of the one before it. Requires {@link DeduplicationStrategy#ByAggregateKey}, so that commands are
+     * never repartitioned away from the store for their aggregate key.
+     */
+    LocalStore
+}
@@ -22,6 +22,7 @@ public final class CommandApiBuilder<K, C> {
     private CommandSerdes<K, C> commandSerdes;
     private TopicSpec outputTopicSpec;
     private WindowSpec commandResponseStoreSpec;
+    private ResponseRoutingStrategy responseRoutingStrategy;
 
     public static <K, C, E, A> CommandApiBuilder<K, C> newBuilder() {
         return new CommandApiBuilder<>();
@@ -30,6 +31,7 @@ public final class CommandApiBuilder<K, C> {
     private CommandApiBuilder() {
         outputTopicSpec = defaultTopicConfig(1, 1);
         commandResponseStoreSpec = new WindowSpec(TimeUnit.DAYS.toSeconds(1L));
+        responseRoutingStrategy = ResponseRoutingStrategy.TopicMap;
     }
 
     public CommandApiBuilder<K, C> withName(final String name) {
@@ -67,10 +69,19 @@ public final class CommandApiBuilder<K, C> {
         return this;
     }
 
+    /**
+     * Must match the response routing strategy of the aggregate the commands are sent to.
+     */
+    public CommandApiBuilder<K, C> withResponseRoutingStrategy(final ResponseRoutingStrategy responseRoutingStrategy) {
+        this.responseRoutingStrategy = responseRoutingStrategy;
+        return this;
+    }
+
     public <SC extends C> CommandSpec<K, C> build() {
         requireNonNull(name, "No name for aggregate has been defined");
         requireNonNull(resourceNamingStrategy, "No resource naming strategy for aggregate has been defined");
         requireNonNull(outputTopicSpec, "No topic config for aggregate has been defined");
+        requireNonNull(responseRoutingStrategy, "No response routing strategy for aggregate has been defined");
         if (clientId == null) {
             try {
                 clientId = InetAddress.getLocalHost().getHostName();
@@ -79,7 +90,7 @@ public final class CommandApiBuilder<K, C> {
             }
         }
 
-        return new CommandSpec<>(name, clientId, resourceNamingStrategy, commandSerdes, commandResponseStoreSpec, outputTopicSpec);
+        return new CommandSpec<>(name, clientId, resourceNamingStrategy, commandSerdes, commandResponseStoreSpec, outputTopicSpec, responseRoutingStrategy);
     }
 
     private TopicSpec defaultTopicConfig(int partitions, int replication) {
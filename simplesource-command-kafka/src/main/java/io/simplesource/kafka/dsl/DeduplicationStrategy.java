@@ -0,0 +1,19 @@
+package io.simplesource.kafka.dsl;
+
+/**
+ * How a command request is recognised as one that has already been processed.
+ */
+public enum DeduplicationStrategy {
+    /**
+     * Command requests and responses are repartitioned by command id, and requests are joined against a table of
+     * responses. This costs two repartition topics per command, but does not rely on the client resending a
+     * command with the same aggregate key.
+     */
+    ByCommandId,
+    /**
+     * Responses are kept in a state store co-partitioned with the command request topic by aggregate key, so
+     * duplicate commands are detected locally without any repartitioning. A resent command must use the same
+     * aggregate key as the original to be recognised.
+     */
+    ByAggregateKey
+}
@@ -0,0 +1,126 @@
+package io.simplesource.kafka.dsl;
+
+import io.simplesource.api.CommandAPI;
+import io.simplesource.api.CommandAPISet;
+import io.simplesource.kafka.api.EventLog;
+import io.simplesource.kafka.internal.embedded.EmbeddedCommandAPI;
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import io.simplesource.kafka.spec.AggregateSpec;
+import io.simplesource.kafka.util.InMemoryEventLog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs aggregates in process, without Kafka, for single node deployments and fast integration tests. Commands are
+ * handled with the same command handler, aggregator and invalid sequence handler as an {@link EventSourcedApp}, and
+ * the events of each aggregate are appended to its {@link EventLog}.
+ *
+ * The serdes, topic config and Kafka Streams specific strategies of the aggregates are not used.
+ */
+public final class EmbeddedApp {
+    private final Map<String, AggregateSpec<?, ?, ?, ?>> aggregateConfigMap = new HashMap<>();
+    private final Map<String, EventLog<?, ?>> eventLogs = new HashMap<>();
+    private Map<String, EmbeddedCommandAPI<?, ?, ?, ?>> commandAPIs;
+    private int laneCount = Runtime.getRuntime().availableProcessors();
+    private int laneCapacity = EmbeddedCommandAPI.DEFAULT_LANE_CAPACITY;
+    private ScheduledExecutorService scheduler;
+    private boolean ownsScheduler;
+
+    /**
+     * Sets how many threads handle the commands of each aggregate. Each key is handled by one of these threads.
+     */
+    public EmbeddedApp withLanes(final int laneCount) {
+        this.laneCount = laneCount;
+        return this;
+    }
+
+    /**
+     * Sets how many commands each lane queues before publishing to it fails.
+     */
+    public EmbeddedApp withLaneCapacity(final int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the scheduler for query timeouts and the expiry of command responses. The app creates and closes a
+     * scheduler of its own by default, but a scheduler set here is left for the caller to shut down.
+     */
+    public EmbeddedApp withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public <K, C, E, A> EmbeddedApp addAggregate(
+            final Consumer<AggregateBuilder<K, C, E, A>> buildSteps) {
+        AggregateBuilder<K, C, E, A> builder = AggregateBuilder.newBuilder();
+        buildSteps.accept(builder);
+        return addAggregate(builder.build());
+    }
+
+    /**
+     * Adds an aggregate whose events are only kept in memory.
+     */
+    public <K, C, E, A> EmbeddedApp addAggregate(final AggregateSpec<K, C, E, A> spec) {
+        return addAggregate(spec, new InMemoryEventLog<>());
+    }
+
+    public <K, C, E, A> EmbeddedApp addAggregate(final AggregateSpec<K, C, E, A> spec, final EventLog<K, E> eventLog) {
+        aggregateConfigMap.put(spec.aggregateName(), spec);
+        eventLogs.put(spec.aggregateName(), eventLog);
+        return this;
+    }
+
+    /**
+     * Replays the event log of each aggregate and starts handling commands.
+     */
+    public EmbeddedApp start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("EmbeddedApp-scheduler"));
+            ownsScheduler = true;
+        }
+        final Map<String, EmbeddedCommandAPI<?, ?, ?, ?>> commandAPIs = new HashMap<>();
+        aggregateConfigMap.forEach((aggregateName, aggregateSpec) ->
+                commandAPIs.put(aggregateName, createCommandAPI(aggregateSpec, eventLogs.get(aggregateName))));
+        this.commandAPIs = commandAPIs;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, C, E, A> EmbeddedCommandAPI<K, C, E, A> createCommandAPI(
+            final AggregateSpec<K, C, E, A> aggregateSpec,
+            final EventLog<?, ?> eventLog) {
+        return new EmbeddedCommandAPI<>(aggregateSpec, (EventLog<K, E>) eventLog, laneCount, laneCapacity, scheduler);
+    }
+
+    /**
+     * @return a CommandAPISet for the aggregates of this app
+     */
+    public CommandAPISet getCommandAPISet() {
+        requireNonNull(commandAPIs, "App has not been started. start() must be called before getCommandAPISet");
+        return new CommandAPISet() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, C> CommandAPI<K, C> getCommandAPI(final String aggregateName) {
+                return (CommandAPI<K, C>) commandAPIs.get(aggregateName);
+            }
+        };
+    }
+
+    /**
+     * Stops handling commands once the commands already published have been handled, and closes the event logs and
+     * the scheduler the app created.
+     */
+    public void close() {
+        if (commandAPIs != null)
+            commandAPIs.values().forEach(EmbeddedCommandAPI::close);
+        if (ownsScheduler)
+            scheduler.shutdown();
+    }
+}
@@ -1,16 +1,31 @@
 package io.simplesource.kafka.dsl;
 
 import io.simplesource.api.CommandAPISet;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.QueryAPI;
+import io.simplesource.kafka.api.QueryRPC;
+import io.simplesource.kafka.internal.client.HashedWheelTimer;
+import io.simplesource.kafka.internal.client.KafkaCommandAPI;
+import io.simplesource.kafka.internal.client.SharedResponseConsumer;
 import io.simplesource.kafka.internal.streams.EventSourcedStreamsApp;
+import io.simplesource.kafka.internal.streams.KafkaQueryAPI;
+import io.simplesource.kafka.internal.streams.StateStoreResponseLookup;
 import io.simplesource.kafka.internal.util.NamedThreadFactory;
 import io.simplesource.kafka.spec.AggregateSetSpec;
 import io.simplesource.kafka.spec.AggregateSpec;
 import io.simplesource.kafka.spec.CommandSpec;
+import io.simplesource.kafka.util.HttpQueryRPC;
 import io.simplesource.kafka.util.SpecUtils;
+import org.apache.kafka.streams.state.HostInfo;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -19,11 +34,19 @@ import java.util.stream.Stream;
 import static java.util.Objects.requireNonNull;
 
 public final class EventSourcedApp {
+
     private KafkaConfig kafkaConfig;
     private Map<String, AggregateSpec<?, ?, ?, ?>> aggregateConfigMap = new HashMap<>();
     private AggregateSetSpec aggregateSetSpec;
+    private EventSourcedStreamsApp streamsApp;
+    private QueryRPC queryRPC;
+    private int queryThreadCount = HttpQueryRPC.DEFAULT_THREAD_COUNT;
+    private int responseCacheSize = 0;
+    private HashedWheelTimer responseTimer;
+    private Map<String, KafkaQueryAPI<?, ?>> queryAPIs;
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
             new NamedThreadFactory("EventSourcedApp-scheduler"));;
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
 
     public EventSourcedApp withKafkaConfig(
             final Function<KafkaConfig.Builder, KafkaConfig> builder) {
@@ -41,6 +64,50 @@ public final class EventSourcedApp {
         return this;
     }
 
+    /**
+     * Sets the executor that runs the steps of publishing a command that follow a completed send, for the command
+     * APIs created by {@link #getCommandAPISet(String)}. The common pool by default.
+     */
+    public EventSourcedApp withCallbackExecutor(final Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    /**
+     * Sets how aggregate queries are passed between instances of the app, for apps with more than one instance. The
+     * default is {@link HttpQueryRPC}, served on the application server set in the Kafka config. The app closes the
+     * query RPC when it is stopped.
+     */
+    public EventSourcedApp withQueryRPC(final QueryRPC queryRPC) {
+        this.queryRPC = queryRPC;
+        return this;
+    }
+
+    /**
+     * Sets how many threads the default {@link HttpQueryRPC} serves queries on, and sends them on, so how many
+     * queries to other instances each instance has in flight at once. Queries waiting for a sequence are not counted,
+     * as they are sent on threads of their own. Ignored if a query RPC is set with {@link #withQueryRPC(QueryRPC)}.
+     */
+    public EventSourcedApp withQueryThreads(final int queryThreadCount) {
+        this.queryThreadCount = queryThreadCount;
+        return this;
+    }
+
+    /**
+     * Reads the command response topic of every aggregate for the command APIs created by
+     * {@link #getCommandAPISet(String)}, so results can be queried for commands sent by other clients whose results
+     * are not in the state stores of this instance. Each aggregate gets a consumer of its own, in a consumer group of
+     * its own, so this is off by default.
+     *
+     * @param responseCacheSize the number of results to remember per aggregate
+     */
+    public EventSourcedApp withResponseTopicLookup(final int responseCacheSize) {
+        if (responseCacheSize <= 0)
+            throw new IllegalArgumentException("Response cache size must be positive");
+        this.responseCacheSize = responseCacheSize;
+        return this;
+    }
+
     public <K, C, E, A> EventSourcedApp addAggregate(
             final Consumer<AggregateBuilder<K, C, E, A>> buildSteps) {
         AggregateBuilder<K, C, E, A> builder = AggregateBuilder.newBuilder();
@@ -65,15 +132,90 @@ public final class EventSourcedApp {
 
         app.start();
         this.aggregateSetSpec = aggregateSetSpec;
+        this.streamsApp = app;
+        startQueryAPIs();
         return this;
     }
 
+    /**
+     * Stops the app, the query RPC serving its aggregate queries to other instances, and the timer of the command APIs
+     * created by {@link #getCommandAPISet(String)}.
+     */
+    public synchronized void stop() {
+        if (queryRPC != null)
+            queryRPC.close();
+        if (responseTimer != null) {
+            responseTimer.stop();
+            responseTimer = null;
+        }
+        if (streamsApp != null)
+            streamsApp.stop();
+    }
+
+    private void startQueryAPIs() {
+        final Optional<HostInfo> applicationServer = aggregateSetSpec.kafkaConfig().applicationServer();
+        if (applicationServer.isPresent() && queryRPC == null)
+            queryRPC = new HttpQueryRPC(HttpQueryRPC.DEFAULT_TIMEOUT_IN_MILLIS, queryThreadCount);
+
+        final Map<String, KafkaQueryAPI<?, ?>> queryAPIs = new HashMap<>();
+        aggregateSetSpec.aggregateConfigMap().forEach((aggregateName, aggregateSpec) ->
+                KafkaQueryAPI.storeName(aggregateSpec).ifPresent(storeName ->
+                        queryAPIs.put(aggregateName, createQueryAPI(aggregateSpec, storeName, applicationServer.orElse(null)))));
+        this.queryAPIs = queryAPIs;
+
+        applicationServer.ifPresent(host -> queryRPC.serve(host, new QueryRPC.LocalQueryHandler() {
+            @Override
+            public Optional<byte[]> query(final String aggregateName, final byte[] key) {
+                return Optional.ofNullable(queryAPIs.get(aggregateName)).flatMap(queryAPI -> queryAPI.queryLocal(key));
+            }
+
+            @Override
+            public CompletableFuture<Optional<byte[]>> await(
+                    final String aggregateName, final byte[] key, final Sequence sequence, final Duration timeout) {
+                return Optional.ofNullable(queryAPIs.get(aggregateName))
+                        .map(queryAPI -> queryAPI.awaitLocal(key, sequence, timeout))
+                        .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
+            }
+        }));
+    }
+
+    private <K, A> KafkaQueryAPI<K, A> createQueryAPI(
+            final AggregateSpec<K, ?, ?, A> aggregateSpec,
+            final String storeName,
+            final HostInfo applicationServer) {
+        return KafkaQueryAPI.of(streamsApp.getStreams(), aggregateSpec, storeName, applicationServer, queryRPC, scheduler,
+                streamsApp.getAggregateUpdateWaiters(aggregateSpec.aggregateName()));
+    }
+
+    /**
+     * Creates a QueryAPI for reading the current state of an aggregate of this app. Keys held by other instances of
+     * the app are queried through the {@link QueryRPC}.
+     *
+     * @param aggregateName the aggregate to query
+     * @param <K> the aggregate key
+     * @param <A> the aggregate type
+     * @return a QueryAPI
+     * @throws IllegalArgumentException if the aggregate is snapshotted, as its current state is not held in a store
+     */
+    @SuppressWarnings("unchecked")
+    public <K, A> QueryAPI<K, A> getQueryAPI(final String aggregateName) {
+        requireNonNull(queryAPIs, "App has not been started. start() must be called before getQueryAPI");
+        final QueryAPI<K, A> queryAPI = (QueryAPI<K, A>) queryAPIs.get(aggregateName);
+        if (queryAPI == null)
+            throw new IllegalArgumentException("Aggregate " + aggregateName + " cannot be queried");
+        return queryAPI;
+    }
+
     /**
      * Creates a CommandAPISet instance
      *
      * Used for directly exposing a CommandAPISet from within a Simple Sourcing application
      * If creating a CommandAPISet from an external application, rather use the CommandAPISetBuilder DSL
      *
+     * Command results are also looked up in the state stores of this application, so results can be queried for
+     * commands sent by other clients, and with {@link #withResponseTopicLookup(int)}, in the results recently written
+     * to the command response topic.
+     *
      * @return a CommandAPISet
      */
     public CommandAPISet getCommandAPISet(String clientId) {
@@ -85,5 +227,25 @@ public final class EventSourcedApp {
                 .stream()
                 .map(aggregateSpec -> SpecUtils.getCommandSpec(aggregateSpec, clientId));
 
-        return EventSourcedClient.getCommandAPISet(commandSpecs, aggregateSetSpec.kafkaConfig(), scheduler);
-    }}
+        final SharedResponseConsumer responseConsumer =
+                new SharedResponseConsumer(aggregateSetSpec.kafkaConfig().consumerConfig(), 1);
+
+        return EventSourcedClient.getCommandAPISet(commandSpecs, aggregateSetSpec.kafkaConfig(), scheduler, callbackExecutor, responseConsumer,
+                responseTimer(),
+                aggregateName -> {
+                    final AggregateSpec<?, ?, ?, ?> aggregateSpec = aggregateSetSpec.aggregateConfigMap().get(aggregateName);
+                    final StateStoreResponseLookup stateStoreLookup = StateStoreResponseLookup.of(streamsApp.getStreams(), aggregateSpec);
+                    if (responseCacheSize <= 0)
+                        return stateStoreLookup;
+                    return stateStoreLookup.orElse(KafkaCommandAPI.responseTopicLookup(
+                            SpecUtils.getCommandSpec(aggregateSpec, clientId), aggregateSetSpec.kafkaConfig(), scheduler, responseCacheSize));
+                });
+    }
+
+    // one timer for the command APIs of every command API set, rather than a timer thread for each command API
+    private synchronized HashedWheelTimer responseTimer() {
+        if (responseTimer == null)
+            responseTimer = new HashedWheelTimer("EventSourcedApp-timer");
+        return responseTimer;
+    }
+}
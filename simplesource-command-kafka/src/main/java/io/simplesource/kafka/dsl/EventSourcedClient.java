@@ -3,15 +3,21 @@ package io.simplesource.kafka.dsl;
 
 import io.simplesource.api.CommandAPI;
 import io.simplesource.api.CommandAPISet;
+import io.simplesource.kafka.internal.client.HashedWheelTimer;
 import io.simplesource.kafka.internal.client.KafkaCommandAPI;
+import io.simplesource.kafka.internal.client.ResponseLookup;
+import io.simplesource.kafka.internal.client.SharedResponseConsumer;
 import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import io.simplesource.kafka.model.CommandResponse;
 import io.simplesource.kafka.spec.CommandSetSpec;
 import io.simplesource.kafka.spec.CommandSpec;
 import org.apache.kafka.streams.KeyValue;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -25,6 +31,10 @@ public final class EventSourcedClient {
     private Map<String, CommandSpec<?, ?>> commandConfigMap = new HashMap<>();
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
             new NamedThreadFactory("EventSourcedClient-scheduler"));;
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
+    private int responseConsumerCount = 1;
+    private int responseCacheSize = 0;
+    private HashedWheelTimer responseTimer;
 
     public EventSourcedClient withKafkaConfig(
             final Function<? super KafkaConfig.Builder, KafkaConfig> builderFn) {
@@ -57,8 +67,50 @@ public final class EventSourcedClient {
         return this;
     }
 
+    /**
+     * Sets the executor that runs the steps of publishing a command that follow a completed send, such as sending the
+     * command once its response topic map entry is written. The common pool by default. It must not run tasks on the
+     * submitting thread, as that would be the Kafka producer I/O thread.
+     *
+     * @param callbackExecutor the executor for the command APIs built by this client
+     * @return this
+     */
+    public EventSourcedClient withCallbackExecutor(final Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the number of consumers that read command responses. The private response topics of all the command APIs
+     * built by this client are shared between these consumers, rather than each command API having a consumer of
+     * its own.
+     *
+     * @param responseConsumerCount the number of response consumers, one by default
+     * @return this
+     */
+    public EventSourcedClient withResponseConsumers(final int responseConsumerCount) {
+        this.responseConsumerCount = responseConsumerCount;
+        return this;
+    }
+
+    /**
+     * Reads the command response topic of every aggregate, so results can be queried for commands sent by other
+     * clients, or other instances of this client. Each aggregate gets a consumer of its own, in a consumer group of
+     * its own, so this is off by default, and results can only be queried for commands sent by this client.
+     *
+     * @param responseCacheSize the number of results to remember per aggregate
+     * @return this
+     */
+    public EventSourcedClient withResponseTopicLookup(final int responseCacheSize) {
+        if (responseCacheSize <= 0)
+            throw new IllegalArgumentException("Response cache size must be positive");
+        this.responseCacheSize = responseCacheSize;
+        return this;
+    }
+
     public CommandAPISet build() {
         requireNonNull(scheduler, "Scheduler has not been defined. Please define with with 'withScheduler' method.");
+        requireNonNull(callbackExecutor, "Callback executor has not been defined. Please define with 'withCallbackExecutor' method.");
         final CommandSetSpec commandSetSpec = new CommandSetSpec(
                 kafkaConfig,
                 commandConfigMap);
@@ -68,15 +120,45 @@ public final class EventSourcedClient {
                 .values()
                 .stream();
 
-        return getCommandAPISet(commandSpecs, commandSetSpec.kafkaConfig(), scheduler);
+        final SharedResponseConsumer responseConsumer =
+                new SharedResponseConsumer(commandSetSpec.kafkaConfig().consumerConfig(), responseConsumerCount);
+
+        return getCommandAPISet(commandSpecs, commandSetSpec.kafkaConfig(), scheduler, callbackExecutor, responseConsumer,
+                responseTimer(),
+                aggregateName -> responseCacheSize > 0 ?
+                        KafkaCommandAPI.responseTopicLookup(
+                                commandConfigMap.get(aggregateName), commandSetSpec.kafkaConfig(), scheduler, responseCacheSize) :
+                        ResponseLookup.none());
+    }
+
+    /**
+     * Stops the timer that times out the result queries of the command APIs built by this client. Queries still
+     * waiting never time out, so close the client only once its command APIs are no longer used.
+     */
+    public synchronized void close() {
+        if (responseTimer != null) {
+            responseTimer.stop();
+            responseTimer = null;
+        }
+    }
+
+    // one timer for all the command APIs built by this client, rather than a timer thread for each
+    private synchronized HashedWheelTimer responseTimer() {
+        if (responseTimer == null)
+            responseTimer = new HashedWheelTimer("EventSourcedClient-timer");
+        return responseTimer;
     }
 
     static CommandAPISet getCommandAPISet(
             Stream<CommandSpec<?, ?>> commandSpecStream,
             KafkaConfig kafkaConfig,
-            final ScheduledExecutorService scheduler) {
+            final ScheduledExecutorService scheduler,
+            final Executor callbackExecutor,
+            final SharedResponseConsumer responseConsumer,
+            final HashedWheelTimer responseTimer,
+            final Function<String, ResponseLookup<CommandResponse>> responseLookups) {
         final Map<String, CommandAPI<?, ?>> commandApis = commandSpecStream
-                .map(createCommandApi(kafkaConfig, scheduler))
+                .map(createCommandApi(kafkaConfig, scheduler, callbackExecutor, responseConsumer, responseTimer, responseLookups))
                 .collect(Collectors.toMap(kv -> kv.key, kv -> kv.value));
 
         return new CommandAPISet() {
@@ -89,14 +171,22 @@ public final class EventSourcedClient {
 
     static Function<CommandSpec<?, ?>, KeyValue<String, CommandAPI<?, ?>>> createCommandApi(
             final KafkaConfig kafkaConfig,
-            final ScheduledExecutorService scheduler
+            final ScheduledExecutorService scheduler,
+            final Executor callbackExecutor,
+            final SharedResponseConsumer responseConsumer,
+            final HashedWheelTimer responseTimer,
+            final Function<String, ResponseLookup<CommandResponse>> responseLookups
     ) {
         return commandSpec -> {
             final CommandAPI commandAPI =
                     new KafkaCommandAPI(
                             commandSpec,
                             kafkaConfig,
-                            scheduler);
+                            scheduler,
+                            responseConsumer,
+                            responseLookups.apply(commandSpec.aggregateName()),
+                            callbackExecutor,
+                            responseTimer);
 
             return KeyValue.pair(commandSpec.aggregateName(), commandAPI);
         };
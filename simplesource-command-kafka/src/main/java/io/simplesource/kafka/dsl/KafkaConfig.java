@@ -5,6 +5,7 @@ import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.state.HostInfo;
 
 import java.util.*;
 
@@ -26,6 +27,17 @@ public class KafkaConfig {
         return (String)config.get(StreamsConfig.STATE_DIR_CONFIG);
     }
 
+    /**
+     * @return the host and port this instance of the app answers queries from other instances on, if set
+     */
+    public Optional<HostInfo> applicationServer() {
+        return Optional.ofNullable((String) config.get(StreamsConfig.APPLICATION_SERVER_CONFIG))
+                .map(hostAndPort -> {
+                    final int separator = hostAndPort.lastIndexOf(':');
+                    return new HostInfo(hostAndPort.substring(0, separator), Integer.parseInt(hostAndPort.substring(separator + 1)));
+                });
+    }
+
     public boolean isExactlyOnce() {
         return Objects.equals(
             config.get(StreamsConfig.PROCESSING_GUARANTEE_CONFIG),
@@ -81,6 +93,14 @@ public class KafkaConfig {
             return this;
         }
 
+        /**
+         * Sets the host and port this instance of the app answers aggregate queries from other instances on.
+         */
+        public Builder withApplicationServer(final String host, final int port) {
+            config.put(StreamsConfig.APPLICATION_SERVER_CONFIG, host + ":" + port);
+            return this;
+        }
+
         public Builder withExactlyOnce() {
             config.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE);
             return this;
@@ -0,0 +1,22 @@
+package io.simplesource.kafka.dsl;
+
+/**
+ * How a command response finds its way to the private response topic of the client that sent the command. The
+ * aggregate and its command API clients must use the same strategy.
+ */
+public enum ResponseRoutingStrategy {
+    /**
+     * Before every command, the client publishes the name of its response topic, keyed by command id, to the command
+     * response topic map. Responses are joined with this map to find where to send them, which costs an extra record
+     * per command and a pair of window stores for the join.
+     */
+    TopicMap,
+    /**
+     * The client sends the name of its response topic with each command request, in the {@link #REPLY_TOPIC_HEADER}
+     * header. The header is carried through to the command response, which is sent straight to the named topic
+     * without the command response topic map.
+     */
+    ReplyTopicHeader;
+
+    public static final String REPLY_TOPIC_HEADER = "reply_topic";
+}
@@ -1,69 +1,123 @@
 package io.simplesource.kafka.internal.client;
 
 import java.time.Clock;
-import java.time.Instant;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
  * ExpiringMap is a Map type that allows you to
  * 1. Create a map entry at a particular time
  * 1. Modify any existing map entries as long as they are present
- * 2. Expire all map entries at a certain point, calling the supplied cleanup function
+ * 2. Expire map entries once they are older than the retention period, calling the supplied cleanup function
+ *
+ * Entries are held in a single hash map, so lookups are constant time however many entries there are. Every entry has
+ * the same retention, so entries expire in the order they were inserted, and the expiry schedule is a queue of keys in
+ * insertion order. Removing stale entries only looks at the head of that queue, so it costs constant time per expired
+ * entry, and is expected to be called periodically from a single thread.
  *
  * @param <K> Key type
  * @param <V> Value type
  */
 final class ExpiringMap<K, V> {
 
-    private final ConcurrentHashMap<Long, ConcurrentHashMap<K, V>> outerMap = new ConcurrentHashMap<>();
-    private final long retentionInSeconds;
+    private static final class Timed<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Timed(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Expiry<K> {
+        private final K key;
+        private final long expiresAt;
+
+        private Expiry(final K key, final long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Timed<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Expiry<K>> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final long retentionInMillis;
     private final Clock clock;
 
     ExpiringMap(long retentionInSeconds, Clock clock) {
-        this.retentionInSeconds = retentionInSeconds;
+        this.retentionInMillis = retentionInSeconds * 1000L;
         this.clock = clock;
     }
 
-    final void insertIfAbsent(K k, Supplier<V> lazyV) {
-        long outerKey = Instant.now(clock).getEpochSecond() / retentionInSeconds;
-        ConcurrentHashMap<K, V> innerMap = outerMap.computeIfAbsent(outerKey, oKey -> new ConcurrentHashMap<>());
-        innerMap.computeIfAbsent(k, ik -> lazyV.get());
+    /**
+     * @return true if the entry was inserted, false if there already was one for the key
+     */
+    final boolean insertIfAbsent(K k, Supplier<V> lazyV) {
+        final long expiresAt = clock.millis() + retentionInMillis;
+        final boolean[] inserted = new boolean[1];
+        entries.computeIfAbsent(k, ik -> {
+            inserted[0] = true;
+            return new Timed<>(lazyV.get(), expiresAt);
+        });
+        if (inserted[0])
+            expiryQueue.add(new Expiry<>(k, expiresAt));
+        return inserted[0];
+    }
+
+    /**
+     * Removes an entry before it expires. Its place in the expiry schedule is skipped when it comes due.
+     */
+    final V remove(K k) {
+        final Timed<V> removed = entries.remove(k);
+        return removed == null ? null : removed.value;
     }
 
     final V computeIfPresent(K k, Function<V, V> vToV) {
-        for (ConcurrentHashMap<K, V> inner: outerMap.values()) {
-            V newV = inner.computeIfPresent(k, (ik, v) -> vToV.apply(v));
-            if (newV != null)
-                return newV;
-        }
-        return null;
+        final Timed<V> timed = entries.computeIfPresent(k, (ik, t) -> {
+            final V newV = vToV.apply(t.value);
+            return newV == null ? null : new Timed<>(newV, t.expiresAt);
+        });
+        return timed == null ? null : timed.value;
     }
 
-    final void removeStaleAsync(Consumer<V> consumeV)  {
-        if (outerMap.size() < 3) return;
-        new Thread(() -> {
-            long outerKey = Instant.now(clock).getEpochSecond() / retentionInSeconds;
-            removeIf(consumeV, k -> k + 1 < outerKey);
-        }).start();
+    final int size() {
+        return entries.size();
     }
 
-    final void removeAll(Consumer<V> consumeV)  {
-        removeIf(consumeV, k -> true);
+    /**
+     * Removes the entries that have expired, passing each to {@code consumeV}.
+     */
+    final void removeStale(Consumer<V> consumeV) {
+        final long now = clock.millis();
+        Expiry<K> expiry;
+        while ((expiry = expiryQueue.peek()) != null && expiry.expiresAt <= now) {
+            expiryQueue.poll();
+            removeIfExpiresAt(expiry.key, expiry.expiresAt, consumeV);
+        }
     }
 
-    private void removeIf(Consumer<V> consumeV, Predicate<Long> outerKeyCondition) {
-        outerMap.keySet().forEach(k -> {
-            if (outerKeyCondition.test(k)) {
-                outerMap.values().forEach(innerMap -> {
-                    innerMap.values().forEach(consumeV);
-                });
-                outerMap.remove(k);
+    private void removeIfExpiresAt(final K k, final long expiresAt, final Consumer<V> consumeV) {
+        // the key may have been removed and inserted again since, in which case the new entry is left alone
+        Timed<V> current;
+        while ((current = entries.get(k)) != null && current.expiresAt == expiresAt) {
+            if (entries.remove(k, current)) {
+                consumeV.accept(current.value);
+                return;
             }
-        });
+        }
     }
 
+    final void removeAll(Consumer<V> consumeV)  {
+        expiryQueue.clear();
+        entries.keySet().forEach(k -> {
+            final Timed<V> removed = entries.remove(k);
+            if (removed != null)
+                consumeV.accept(removed.value);
+        });
+    }
 }
@@ -0,0 +1,186 @@
+package io.simplesource.kafka.internal.client;
+
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timer for large numbers of short lived timeouts, most of which are cancelled before they fire.
+ *
+ * Timeouts are hashed by deadline into a fixed ring of buckets, and a single thread advances around the ring one
+ * bucket per tick, running the timeouts that are due. Adding or cancelling a timeout is constant time and only touches
+ * concurrent queues; the buckets themselves are only ever touched by the ticking thread. Cancelled timeouts are
+ * removed from their bucket on the next tick, so they do not build up the way cancelled scheduled executor tasks do.
+ * Timeouts fire up to one tick late.
+ *
+ * A timer is meant to be shared by all the request APIs of a client, which stops it when it closes.
+ */
+public final class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+    private static final long DEFAULT_TICK_IN_MILLIS = 10L;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // only accessed from the ticking thread
+        private Set<Timeout> bucket;
+
+        private Timeout(final HashedWheelTimer timer, final Runnable task, final long deadlineTick) {
+            this.timer = timer;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return true if the timeout was cancelled, false if it has already fired or been cancelled
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+            timer.pendingTimeouts.decrementAndGet();
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED))
+                return;
+            timer.pendingTimeouts.decrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Error running timeout", e);
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Set<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> addedTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger();
+    private final ScheduledExecutorService ticker;
+    // only accessed from the ticking thread
+    private long currentTick = 0L;
+
+    /**
+     * @param name the name of the ticking thread
+     */
+    public HashedWheelTimer(final String name) {
+        this(name, DEFAULT_TICK_IN_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param name the name of the ticking thread
+     * @param tickMillis the resolution of the timer
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    HashedWheelTimer(final String name, final long tickMillis, final int wheelSize) {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        final int size = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+        wheel = new Set[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new HashSet<>();
+        mask = size - 1;
+
+        final ThreadFactory threadFactory = new NamedThreadFactory(name);
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        startNanos = System.nanoTime();
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+        final long deadlineNanos = System.nanoTime() - startNanos + unit.toNanos(delay);
+        final long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+        final Timeout timeout = new Timeout(this, task, deadlineTick);
+        pendingTimeouts.incrementAndGet();
+        addedTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts that have neither fired nor been cancelled
+     */
+    int pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Stops the timer. Timeouts that have not fired by now never will.
+     */
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    private void tick() {
+        try {
+            final long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+            removeCancelled();
+            transferAdded();
+            while (currentTick < targetTick) {
+                currentTick++;
+                expire(wheel[(int) (currentTick & mask)]);
+            }
+        } catch (Exception e) {
+            // an exception would stop the scheduled ticks for good, so log it and carry on
+            logger.error("Error advancing timer", e);
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = addedTimeouts.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING)
+                continue;
+            // a deadline that has already passed runs on the next tick
+            final long tick = Math.max(timeout.deadlineTick, currentTick + 1);
+            timeout.bucket = wheel[(int) (tick & mask)];
+            timeout.bucket.add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void expire(final Set<Timeout> bucket) {
+        final Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            final Timeout timeout = iterator.next();
+            if (timeout.deadlineTick <= currentTick) {
+                iterator.remove();
+                timeout.bucket = null;
+                timeout.expire();
+            }
+        }
+    }
+}
@@ -13,12 +13,18 @@ import io.simplesource.kafka.model.CommandResponse;
 import io.simplesource.kafka.spec.CommandSpec;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static io.simplesource.kafka.api.AggregateResources.TopicEntity.*;
 
@@ -37,6 +43,24 @@ public final class KafkaCommandAPI<K, C> implements CommandAPI<K, C> {
         requestApi = new KafkaRequestAPI<>(ctx);
     }
 
+    public KafkaCommandAPI(
+            final CommandSpec<K, C> commandSpec,
+            final KafkaConfig kafkaConfig,
+            final ScheduledExecutorService scheduler,
+            final SharedResponseConsumer responseConsumer,
+            final ResponseLookup<CommandResponse> responseLookup,
+            final Executor callbackExecutor,
+            final HashedWheelTimer responseTimer) {
+        RequestAPIContext<K, CommandRequest<K, C>, CommandResponse> ctx = getRequestAPIContext(
+                commandSpec,
+                kafkaConfig,
+                scheduler,
+                responseLookup,
+                callbackExecutor,
+                responseTimer);
+        requestApi = new KafkaRequestAPI<>(ctx, responseConsumer);
+    }
+
     public KafkaCommandAPI(
             final CommandSpec<K, C> commandSpec,
             final KafkaConfig kafkaConfig,
@@ -44,11 +68,23 @@ public final class KafkaCommandAPI<K, C> implements CommandAPI<K, C> {
             final RequestPublisher<K, CommandRequest<K, C>> requestSender,
             final RequestPublisher<UUID, String> responseTopicMapSender,
             final Function<BiConsumer<UUID, CommandResponse>, ResponseSubscription> attachReceiver) {
+        this(commandSpec, kafkaConfig, scheduler, requestSender, responseTopicMapSender, attachReceiver, ResponseLookup.none());
+    }
+
+    public KafkaCommandAPI(
+            final CommandSpec<K, C> commandSpec,
+            final KafkaConfig kafkaConfig,
+            final ScheduledExecutorService scheduler,
+            final RequestPublisher<K, CommandRequest<K, C>> requestSender,
+            final RequestPublisher<UUID, String> responseTopicMapSender,
+            final Function<BiConsumer<UUID, CommandResponse>, ResponseSubscription> attachReceiver,
+            final ResponseLookup<CommandResponse> responseLookup) {
 
         RequestAPIContext<K, CommandRequest<K, C>, CommandResponse> ctx = getRequestAPIContext(
                 commandSpec,
                 kafkaConfig,
-                scheduler);
+                scheduler,
+                responseLookup);
         requestApi = new KafkaRequestAPI<>(ctx, requestSender, responseTopicMapSender, attachReceiver, false);
     }
 
@@ -60,26 +96,109 @@ public final class KafkaCommandAPI<K, C> implements CommandAPI<K, C> {
 
     @Override
     public FutureResult<CommandError, UUID> publishCommand(final Request<K, C> request) {
-        final CommandRequest<K, C> commandRequest = new CommandRequest<>(
-                request.key(), request.command(), request.readSequence(), request.commandId());
-
-        FutureResult<Exception, RequestPublisher.PublishResult> publishResult = requestApi.publishRequest(request.key(), request.commandId(), commandRequest);
+        FutureResult<Exception, RequestPublisher.PublishResult> publishResult = requestApi.publishRequest(request.key(), request.commandId(), getCommandRequest(request));
 
         return publishResult.errorMap(KafkaCommandAPI::getCommandError)
                 .map(r -> request.commandId());
     }
 
+    @Override
+    public List<FutureResult<CommandError, UUID>> publishCommands(final List<Request<K, C>> requests) {
+        final List<KafkaRequestAPI.Request<K, CommandRequest<K, C>>> commandRequests = requests.stream()
+                .map(request -> new KafkaRequestAPI.Request<>(request.key(), request.commandId(), getCommandRequest(request)))
+                .collect(Collectors.toList());
+
+        final List<FutureResult<Exception, RequestPublisher.PublishResult>> publishResults = requestApi.publishRequests(commandRequests);
+        final List<FutureResult<CommandError, UUID>> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final UUID commandId = requests.get(i).commandId();
+            results.add(publishResults.get(i)
+                    .errorMap(KafkaCommandAPI::getCommandError)
+                    .map(r -> commandId));
+        }
+        return results;
+    }
+
+    private static <K, C> CommandRequest<K, C> getCommandRequest(final Request<K, C> request) {
+        return new CommandRequest<>(request.key(), request.command(), request.readSequence(), request.commandId());
+    }
+
     @Override
     public FutureResult<CommandError, Sequence> queryCommandResult(final UUID commandId, final Duration timeout) {
         CompletableFuture<CommandResponse> completableFuture = requestApi.queryResponse(commandId, timeout);
 
-        return FutureResult.ofCompletableFuture(completableFuture.thenApply(CommandResponse::sequenceResult));
+        // a command sent by another client whose result was not seen in time has timed out, like any other
+        final CompletableFuture<Result<CommandError, Sequence>> result = new CompletableFuture<>();
+        completableFuture.whenComplete((response, e) -> {
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause == null)
+                result.complete(response.sequenceResult());
+            else if (cause instanceof TimeoutException)
+                result.complete(Result.failure(getCommandError(cause)));
+            else
+                result.completeExceptionally(cause);
+        });
+        return FutureResult.ofCompletableFuture(result);
+    }
+
+    /**
+     * @return the number of command result queries currently waiting to time out
+     */
+    public int pendingQueryTimeouts() {
+        return requestApi.pendingQueryTimeouts();
+    }
+
+    /**
+     * Starts a lookup of the results of commands sent by any client, read from the command response topic of the
+     * aggregate.
+     *
+     * @param cacheSize the number of command results to remember
+     */
+    public static <K, C> ResponseLookup<CommandResponse> responseTopicLookup(
+            CommandSpec<K, C> commandSpec,
+            KafkaConfig kafkaConfig,
+            ScheduledExecutorService scheduler,
+            int cacheSize) {
+        return ResponseTopicLookup.start(
+                kafkaConfig.consumerConfig(),
+                commandSpec.resourceNamingStrategy().topicName(commandSpec.aggregateName(), command_response.name()),
+                commandSpec.serdes().commandResponse(),
+                CommandResponse::commandId,
+                cacheSize,
+                scheduler);
     }
 
     public static <K, C> RequestAPIContext<K, CommandRequest<K, C>, CommandResponse> getRequestAPIContext(
             CommandSpec<K, C> commandSpec,
             KafkaConfig kafkaConfig,
             ScheduledExecutorService scheduler) {
+        return getRequestAPIContext(commandSpec, kafkaConfig, scheduler, ResponseLookup.none());
+    }
+
+    /**
+     * @param responseLookup finds the results of commands this command API did not publish itself
+     */
+    public static <K, C> RequestAPIContext<K, CommandRequest<K, C>, CommandResponse> getRequestAPIContext(
+            CommandSpec<K, C> commandSpec,
+            KafkaConfig kafkaConfig,
+            ScheduledExecutorService scheduler,
+            ResponseLookup<CommandResponse> responseLookup) {
+        return getRequestAPIContext(commandSpec, kafkaConfig, scheduler, responseLookup, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * @param responseLookup finds the results of commands this command API did not publish itself
+     * @param callbackExecutor runs the publishing steps that follow a completed send
+     * @param responseTimer times out result queries, shared by the command APIs of a client, or null for the request
+     *                      API to start its own
+     */
+    public static <K, C> RequestAPIContext<K, CommandRequest<K, C>, CommandResponse> getRequestAPIContext(
+            CommandSpec<K, C> commandSpec,
+            KafkaConfig kafkaConfig,
+            ScheduledExecutorService scheduler,
+            ResponseLookup<CommandResponse> responseLookup,
+            Executor callbackExecutor,
+            HashedWheelTimer responseTimer) {
         ResourceNamingStrategy namingStrategy = commandSpec.resourceNamingStrategy();
         CommandSerdes<K, C> serdes = commandSpec.serdes();
         String responseTopicBase = namingStrategy.topicName(
@@ -103,6 +222,10 @@ public final class KafkaCommandAPI<K, C> implements CommandAPI<K, C> {
                 .responseWindowSpec(commandSpec.commandResponseWindowSpec())
                 .outputTopicConfig(commandSpec.outputTopicConfig())
                 .scheduler(scheduler)
+                .responseRoutingStrategy(commandSpec.responseRoutingStrategy())
+                .responseLookup(responseLookup)
+                .callbackExecutor(callbackExecutor)
+                .responseTimer(responseTimer)
                 .errorValue((i, e) ->
                         new CommandResponse(
                                 i.commandId(),
@@ -1,14 +1,16 @@
 package io.simplesource.kafka.internal.client;
 
+import io.simplesource.kafka.util.UuidSerde;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.Serde;
-import org.apache.kafka.common.serialization.Serdes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
@@ -26,6 +28,17 @@ final class KafkaConsumerRunner {
         return newProps;
     }
 
+    /**
+     * Private responses are keyed by the 16 bytes of the response id. Keys written by earlier versions, the response
+     * topic and the response id separated by a colon, are still understood.
+     */
+    static UUID responseId(byte[] recordKey) {
+        if (recordKey.length == UuidSerde.SIZE)
+            return UuidSerde.fromBytes(recordKey);
+        final String legacyKey = new String(recordKey, StandardCharsets.UTF_8);
+        return UUID.fromString(legacyKey.substring(legacyKey.length() - 36));
+    }
+
     static <R> ResponseSubscription run(
             Map<String, Object> properties,
             String topicName,
@@ -40,7 +53,7 @@ final class KafkaConsumerRunner {
     }
 
     static class RunnableConsumer<R> implements Runnable {
-        private final KafkaConsumer<String, R> consumer;
+        private final KafkaConsumer<byte[], R> consumer;
         private final AtomicBoolean closed = new AtomicBoolean(false);
         private final String topicName;
         private final BiConsumer<UUID, R> receiver;
@@ -48,7 +61,7 @@ final class KafkaConsumerRunner {
         RunnableConsumer(Properties consumerConfig, Serde<R> responseSerde, String topicName, BiConsumer<UUID, R> receiver) {
             this.topicName = topicName;
             this.receiver = receiver;
-            consumer = new KafkaConsumer<>(consumerConfig, Serdes.String().deserializer(), responseSerde.deserializer());
+            consumer = new KafkaConsumer<>(consumerConfig, new ByteArrayDeserializer(), responseSerde.deserializer());
         }
 
         @Override
@@ -56,13 +69,10 @@ final class KafkaConsumerRunner {
             try {
                 consumer.subscribe(Collections.singletonList(topicName));
                 while (!closed.get()) {
-                    ConsumerRecords<String, R> records = consumer.poll(Duration.ofSeconds(1));
+                    ConsumerRecords<byte[], R> records = consumer.poll(Duration.ofSeconds(1));
                     // Handle new records
                     records.iterator().forEachRemaining( record -> {
-                        String recordKey = record.key();
-                        // TODO factor this out
-                        UUID id = UUID.fromString(record.key().substring(recordKey.length() - 36));
-                        receiver.accept(id, record.value());
+                        receiver.accept(responseId(record.key()), record.value());
                     });
                 }
             } catch (WakeupException e) {
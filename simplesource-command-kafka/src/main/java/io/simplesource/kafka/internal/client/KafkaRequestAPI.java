@@ -1,31 +1,44 @@
 package io.simplesource.kafka.internal.client;
 
 import io.simplesource.data.FutureResult;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
 import io.simplesource.kafka.dsl.KafkaConfig;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.spec.TopicSpec;
 import lombok.Value;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public final class KafkaRequestAPI<K, I, O> {
     private static final Logger logger = LoggerFactory.getLogger(KafkaRequestAPI.class);
+    private static final long REAPER_INTERVAL_IN_MILLIS = 1000L;
 
     @Value
     static final class ResponseReceiver<K, M, V> {
@@ -53,17 +66,39 @@ public final class KafkaRequestAPI<K, I, O> {
         }
     }
 
+    @Value
+    public static final class Request<K, I> {
+        final K key;
+        final UUID requestId;
+        final I request;
+    }
+
     private final RequestAPIContext<K, I, O> ctx;
     private final ResponseSubscription responseSubscription;
     private final ExpiringMap<UUID, ResponseHandler<I, O>> responseHandlers;
     private final RequestPublisher<K, I> requestSender;
     private final RequestPublisher<UUID, String> responseTopicMapSender;
+    private final ScheduledFuture<?> responseHandlerReaper;
+    private final HashedWheelTimer responseTimer;
+    private final boolean ownsResponseTimer;
+    private final AtomicInteger pendingQueryTimeouts = new AtomicInteger();
+    private final ResponseLookup<O> responseLookup;
+    private final Executor callbackExecutor;
 
     private static <K, V> RequestPublisher<K, V> kakfaProducerSender(
             KafkaConfig kafkaConfig,
             String topicName,
             Serde<K> keySerde,
             Serde<V> valueSerde) {
+        return kakfaProducerSender(kafkaConfig, topicName, keySerde, valueSerde, Collections.emptyList());
+    }
+
+    private static <K, V> RequestPublisher<K, V> kakfaProducerSender(
+            KafkaConfig kafkaConfig,
+            String topicName,
+            Serde<K> keySerde,
+            Serde<V> valueSerde,
+            List<Header> headers) {
         KafkaProducer<K, V> producer = new KafkaProducer<>(
                 kafkaConfig.producerConfig(),
                 keySerde.serializer(),
@@ -71,9 +106,19 @@ public final class KafkaRequestAPI<K, I, O> {
         return (key, value) -> {
             final ProducerRecord<K, V> record = new ProducerRecord<>(
                     topicName,
+                    null,
                     key,
-                    value);
-            return FutureResult.ofFuture(producer.send(record), e -> {
+                    value,
+                    headers);
+            // complete from the send callback, rather than waiting on the returned future, so in flight sends hold no threads
+            final CompletableFuture<RecordMetadata> sent = new CompletableFuture<>();
+            producer.send(record, (metadata, exception) -> {
+                if (exception == null)
+                    sent.complete(metadata);
+                else
+                    sent.completeExceptionally(exception);
+            });
+            return FutureResult.ofCompletionStage(sent, e -> {
                         logger.error("Error returned from future", e);
                         return e;
                     })
@@ -81,9 +126,21 @@ public final class KafkaRequestAPI<K, I, O> {
         };
     }
 
+    /**
+     * @return the headers to send with every request, which name the private response topic if responses are routed
+     * by reply topic header
+     */
+    public static List<Header> requestHeaders(final RequestAPIContext<?, ?, ?> ctx) {
+        if (ctx.responseRoutingStrategy() != ResponseRoutingStrategy.ReplyTopicHeader)
+            return Collections.emptyList();
+        return Collections.singletonList(new RecordHeader(
+                ResponseRoutingStrategy.REPLY_TOPIC_HEADER,
+                ctx.privateResponseTopic().getBytes(StandardCharsets.UTF_8)));
+    }
+
     public KafkaRequestAPI(final RequestAPIContext<K, I, O> ctx) {
         this(ctx,
-                kakfaProducerSender(ctx.kafkaConfig(), ctx.requestTopic(), ctx.requestKeySerde(), ctx.requestValueSerde()),
+                kakfaProducerSender(ctx.kafkaConfig(), ctx.requestTopic(), ctx.requestKeySerde(), ctx.requestValueSerde(), requestHeaders(ctx)),
                 kakfaProducerSender(ctx.kafkaConfig(), ctx.responseTopicMapTopic(), ctx.responseKeySerde(), Serdes.String()),
                 receiver -> KafkaConsumerRunner.run(
                     ctx.kafkaConfig().consumerConfig(),
@@ -93,6 +150,20 @@ public final class KafkaRequestAPI<K, I, O> {
                 true);
     }
 
+    /**
+     * Creates a request API that reads its responses with a consumer shared with other request APIs.
+     */
+    public KafkaRequestAPI(final RequestAPIContext<K, I, O> ctx, final SharedResponseConsumer responseConsumer) {
+        this(ctx,
+                kakfaProducerSender(ctx.kafkaConfig(), ctx.requestTopic(), ctx.requestKeySerde(), ctx.requestValueSerde(), requestHeaders(ctx)),
+                kakfaProducerSender(ctx.kafkaConfig(), ctx.responseTopicMapTopic(), ctx.responseKeySerde(), Serdes.String()),
+                receiver -> responseConsumer.subscribe(
+                    ctx.privateResponseTopic(),
+                    ctx.responseValueSerde(),
+                    receiver),
+                true);
+    }
+
     public KafkaRequestAPI(
             final RequestAPIContext<K, I, O> ctx,
             final RequestPublisher<K, I> requestSender,
@@ -105,6 +176,8 @@ public final class KafkaRequestAPI<K, I, O> {
         long retentionInSeconds = ctx.responseWindowSpec().retentionInSeconds();
         this.requestSender = requestSender;
         this.responseTopicMapSender = responseTopicMapSender;
+        this.responseLookup = ctx.responseLookup() != null ? ctx.responseLookup() : ResponseLookup.none();
+        this.callbackExecutor = ctx.callbackExecutor() != null ? ctx.callbackExecutor() : ForkJoinPool.commonPool();
 
         if (createTopics) {
             AdminClient adminClient = AdminClient.create(kafkaConfig.adminClientConfig());
@@ -122,6 +195,10 @@ public final class KafkaRequestAPI<K, I, O> {
         }
 
         responseHandlers = new ExpiringMap<>(retentionInSeconds, Clock.systemUTC());
+        ownsResponseTimer = ctx.responseTimer() == null;
+        responseTimer = ownsResponseTimer ? new HashedWheelTimer("RequestAPI-timer") : ctx.responseTimer();
+        responseHandlerReaper = ctx.scheduler().scheduleAtFixedRate(this::removeStaleResponseHandlers,
+                REAPER_INTERVAL_IN_MILLIS, REAPER_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
         ResponseReceiver<UUID, ResponseHandler<I, O>, O> responseReceiver =
             new ResponseReceiver<>(responseHandlers, (h, r) -> {
                 h.forEachFuture(future -> future.complete(r));
@@ -133,19 +210,110 @@ public final class KafkaRequestAPI<K, I, O> {
         Runtime.getRuntime().addShutdownHook(new Thread(this::close));
     }
 
+    /**
+     * Publishes a request. Its response handler is in place before the request is sent, so a response that arrives
+     * before the send completes is kept, and is removed again if the request could not be published.
+     */
     public FutureResult<Exception, RequestPublisher.PublishResult> publishRequest(final K key, UUID requestId, final I request) {
+        final boolean inserted = insertResponseHandler(requestId, request);
 
-        FutureResult<Exception, RequestPublisher.PublishResult> result = responseTopicMapSender.publish(requestId, ctx.privateResponseTopic())
-                .flatMap(r -> requestSender.publish(key, request)).map(r -> {
-                    responseHandlers.insertIfAbsent(requestId, () -> ResponseHandler.initialise(request, Optional.empty()));
-                    return r;
-                });
+        final FutureResult<Exception, RequestPublisher.PublishResult> published = routesByReplyTopic() ?
+                requestSender.publish(key, request) :
+                responseTopicMapSender.publish(requestId, ctx.privateResponseTopic())
+                        .flatMap(r -> requestSender.publish(key, request), callbackExecutor);
+
+        return removeResponseHandlerOnFailure(requestId, inserted, published);
+    }
+
+    /**
+     * Publishes a batch of requests. All the response topic map entries are sent without waiting for each other,
+     * then, once they have all been written, all the requests, so the whole batch costs two round trips rather than
+     * two per request. Requests that carry their reply topic are sent straight away.
+     *
+     * As for a single request, response handlers are inserted before anything is sent. Each request has a result of
+     * its own, completed from the send of that request, so if only some of the batch is published, the results show
+     * which, and only the handlers of the requests that were not published are removed.
+     *
+     * @return a result for each request, in order
+     */
+    public List<FutureResult<Exception, RequestPublisher.PublishResult>> publishRequests(final List<Request<K, I>> requests) {
+        final List<Boolean> inserted = requests.stream()
+                .map(request -> insertResponseHandler(request.requestId, request.request))
+                .collect(Collectors.toList());
+        final List<CompletableFuture<Result<Exception, RequestPublisher.PublishResult>>> results = requests.stream()
+                .map(request -> new CompletableFuture<Result<Exception, RequestPublisher.PublishResult>>())
+                .collect(Collectors.toList());
 
-        responseHandlers.removeStaleAsync(h ->
-                h.forEachFuture(f ->
-                        f.complete(ctx.errorValue().apply(h.input, new Exception("Request not processed.")))));
+        final String privateResponseTopic = ctx.privateResponseTopic();
+        final List<FutureResult<Exception, RequestPublisher.PublishResult>> topicMapResults = routesByReplyTopic() ?
+                Collections.emptyList() :
+                requests.stream()
+                        .map(r -> responseTopicMapSender.publish(r.requestId, privateResponseTopic))
+                        .collect(Collectors.toList());
 
-        return result;
+        // none of the requests are sent if a topic map entry could not be written, and the requests are sent from a
+        // single task, so requests for the same key are sent in order
+        FutureResult.sequence(topicMapResults).future().whenCompleteAsync((written, e) -> {
+            for (int i = 0; i < requests.size(); i++) {
+                final Request<K, I> request = requests.get(i);
+                final CompletableFuture<Result<Exception, RequestPublisher.PublishResult>> result = results.get(i);
+                final Optional<NonEmptyList<Exception>> topicMapErrors = e != null ?
+                        Optional.of(NonEmptyList.of(e instanceof Exception ? (Exception) e : new Exception(e))) :
+                        written.failureReasons();
+                if (topicMapErrors.isPresent()) {
+                    removeResponseHandler(request.requestId, inserted.get(i), topicMapErrors.get().head());
+                    result.complete(Result.failure(topicMapErrors.get()));
+                } else {
+                    send(request, inserted.get(i)).whenComplete((sent, sendError) -> {
+                        if (sendError != null)
+                            result.completeExceptionally(sendError);
+                        else
+                            result.complete(sent);
+                    });
+                }
+            }
+        }, callbackExecutor);
+
+        return results.stream().map(FutureResult::ofCompletableFuture).collect(Collectors.toList());
+    }
+
+    private CompletableFuture<Result<Exception, RequestPublisher.PublishResult>> send(final Request<K, I> request, final boolean inserted) {
+        try {
+            return removeResponseHandlerOnFailure(
+                    request.requestId,
+                    inserted,
+                    requestSender.publish(request.key, request.request)).future();
+        } catch (Exception e) {
+            removeResponseHandler(request.requestId, inserted, e);
+            return CompletableFuture.completedFuture(Result.failure(e));
+        }
+    }
+
+    private boolean insertResponseHandler(final UUID requestId, final I request) {
+        return responseHandlers.insertIfAbsent(requestId, () -> ResponseHandler.initialise(request, Optional.empty()));
+    }
+
+    private <T> FutureResult<Exception, T> removeResponseHandlerOnFailure(
+            final UUID requestId,
+            final boolean inserted,
+            final FutureResult<Exception, T> published) {
+        return FutureResult.ofCompletableFuture(published.future().thenApply(result -> {
+            result.failureReasons().ifPresent(errors -> removeResponseHandler(requestId, inserted, errors.head()));
+            return result;
+        }));
+    }
+
+    private void removeResponseHandler(final UUID requestId, final boolean inserted, final Exception error) {
+        // a handler that was already there belongs to an earlier publish of the same request id, so it is left alone
+        if (!inserted)
+            return;
+        final ResponseHandler<I, O> handler = responseHandlers.remove(requestId);
+        if (handler != null)
+            handler.forEachFuture(f -> f.complete(ctx.errorValue().apply(handler.input, error)));
+    }
+
+    private boolean routesByReplyTopic() {
+        return ctx.responseRoutingStrategy() == ResponseRoutingStrategy.ReplyTopicHeader;
     }
 
     public CompletableFuture<O> queryResponse(final UUID requestId, final Duration timeout) {
@@ -156,27 +324,83 @@ public final class KafkaRequestAPI<K, I, O> {
             if (response.isPresent())
                 completableFuture.complete(response.get());
             else {
-                ctx.scheduler().schedule(() -> {
+                final HashedWheelTimer.Timeout responseTimeout = responseTimer.newTimeout(() -> {
                     final TimeoutException ex = new TimeoutException("Timeout after " + timeout);
                     completableFuture.complete(ctx.errorValue().apply(h.input, ex));
                 }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+                pendingQueryTimeouts.incrementAndGet();
+                // cancel the timeout as soon as the response arrives, rather than leaving it to fire for nothing
+                completableFuture.whenComplete((r, e) -> {
+                    responseTimeout.cancel();
+                    pendingQueryTimeouts.decrementAndGet();
+                });
                 h.responseFutures.add(completableFuture);
             }
             return h;
         });
         if (handler == null) {
-            completableFuture.completeExceptionally(new Exception("Invalid commandId."));
+            // the request may have been published by another client, and may still be in flight
+            awaitResponse(requestId, timeout).whenComplete((response, e) -> {
+                if (e != null)
+                    completableFuture.completeExceptionally(e);
+                else if (response.isPresent())
+                    completableFuture.complete(response.get());
+                else if (responseLookup.waitsForResponses())
+                    completableFuture.completeExceptionally(new TimeoutException("Timeout after " + timeout));
+                else
+                    completableFuture.completeExceptionally(new Exception("Invalid commandId."));
+            });
         }
         return completableFuture;
     }
 
+    /**
+     * Looks up the response, waiting for it only if the lookup follows responses as they are written, so queries for
+     * unknown requests fail straight away otherwise.
+     */
+    private CompletableFuture<Optional<O>> awaitResponse(final UUID requestId, final Duration timeout) {
+        try {
+            return responseLookup.waitsForResponses() ?
+                    responseLookup.await(requestId, timeout) :
+                    CompletableFuture.completedFuture(responseLookup.lookup(requestId));
+        } catch (Exception e) {
+            logger.warn("Unable to look up response for request {}", requestId, e);
+            final CompletableFuture<Optional<O>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * @return the number of response queries currently waiting to time out
+     */
+    public int pendingQueryTimeouts() {
+        return pendingQueryTimeouts.get();
+    }
+
+    private void removeStaleResponseHandlers() {
+        try {
+            responseHandlers.removeStale(h ->
+                    h.forEachFuture(f ->
+                            f.complete(ctx.errorValue().apply(h.input, new Exception("Request not processed.")))));
+        } catch (Exception e) {
+            // an exception would stop the scheduled reaper for good, so log it and carry on
+            logger.error("Error removing stale response handlers", e);
+        }
+    }
+
     public void close() {
         logger.info("Request API shutting down");
+        responseHandlerReaper.cancel(false);
         responseHandlers.removeAll(h ->
                 h.forEachFuture(future ->
                         future.complete(ctx.errorValue().apply(h.input, new Exception("Consumer closed before future.")))));
 
         this.responseSubscription.close();
+        responseLookup.close();
+        // a shared timer is stopped by the client that started it
+        if (ownsResponseTimer)
+            responseTimer.stop();
     }
 }
 
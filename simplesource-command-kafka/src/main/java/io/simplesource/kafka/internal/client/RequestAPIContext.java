@@ -1,6 +1,7 @@
 package io.simplesource.kafka.internal.client;
 
 import io.simplesource.kafka.dsl.KafkaConfig;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.spec.TopicSpec;
 import io.simplesource.kafka.spec.WindowSpec;
 import lombok.Builder;
@@ -8,6 +9,7 @@ import lombok.Value;
 import org.apache.kafka.common.serialization.Serde;
 
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiFunction;
 
@@ -26,4 +28,16 @@ public final class RequestAPIContext<K, I, O> {
     final WindowSpec responseWindowSpec;
     final TopicSpec outputTopicConfig;
     final BiFunction<I, Throwable, O> errorValue;
+    final ResponseRoutingStrategy responseRoutingStrategy;
+    final ResponseLookup<O> responseLookup;
+    /**
+     * Runs the steps of publishing that follow a send, such as sending a request once its response topic map entry
+     * is written, so they are never run on the producer I/O thread. The common pool if not set.
+     */
+    final Executor callbackExecutor;
+    /**
+     * Times out response queries. Shared by the request APIs of a client, which stops it when it closes. If not set,
+     * the request API starts a timer of its own, and stops it when it closes.
+     */
+    final HashedWheelTimer responseTimer;
 }
@@ -0,0 +1,82 @@
+package io.simplesource.kafka.internal.client;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Finds the response to a request that this request API did not publish itself, or has since forgotten, such as a
+ * command sent through another instance of the same client.
+ *
+ * @param <O> the response type
+ */
+@FunctionalInterface
+public interface ResponseLookup<O> {
+    /**
+     * @param requestId the id of the request
+     * @return the response, if it has been written and is still known
+     */
+    Optional<O> lookup(UUID requestId);
+
+    /**
+     * Waits for the response to a request that may still be in flight. Lookups that cannot follow responses as they
+     * are written answer straight away.
+     *
+     * @param requestId the id of the request
+     * @param timeout how long to wait for the response to be written
+     * @return completes with the response, or with empty if it is not known within the timeout
+     */
+    default CompletableFuture<Optional<O>> await(UUID requestId, Duration timeout) {
+        return CompletableFuture.completedFuture(lookup(requestId));
+    }
+
+    /**
+     * @return whether {@link #await(UUID, Duration)} waits for responses that are not yet known, so a response still
+     * unknown afterwards has timed out, rather than being for a request that does not exist
+     */
+    default boolean waitsForResponses() {
+        return false;
+    }
+
+    /**
+     * Releases anything the lookup holds, such as a consumer.
+     */
+    default void close() {
+    }
+
+    /**
+     * @return a lookup that tries this lookup first, and otherwise looks up and waits with {@code other}
+     */
+    default ResponseLookup<O> orElse(final ResponseLookup<O> other) {
+        final ResponseLookup<O> first = this;
+        return new ResponseLookup<O>() {
+            @Override
+            public Optional<O> lookup(final UUID requestId) {
+                final Optional<O> response = first.lookup(requestId);
+                return response.isPresent() ? response : other.lookup(requestId);
+            }
+
+            @Override
+            public CompletableFuture<Optional<O>> await(final UUID requestId, final Duration timeout) {
+                final Optional<O> response = first.lookup(requestId);
+                return response.isPresent() ? CompletableFuture.completedFuture(response) : other.await(requestId, timeout);
+            }
+
+            @Override
+            public boolean waitsForResponses() {
+                return first.waitsForResponses() || other.waitsForResponses();
+            }
+
+            @Override
+            public void close() {
+                first.close();
+                other.close();
+            }
+        };
+    }
+
+    static <O> ResponseLookup<O> none() {
+        return requestId -> Optional.empty();
+    }
+}
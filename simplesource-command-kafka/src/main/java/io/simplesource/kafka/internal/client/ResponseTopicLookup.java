@@ -0,0 +1,212 @@
+package io.simplesource.kafka.internal.client;
+
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Looks responses up in a bounded cache of the responses recently written to a response topic that every response is
+ * written to, such as the command response topic of an aggregate. Every instance of a client reads the whole topic
+ * with a consumer group of its own, so any instance can answer for a request published through any other.
+ *
+ * Only responses written since the lookup started are known, and the oldest are forgotten once the cache is full.
+ * Queries for responses not yet known wait for them to be written, up to their timeout. If the consumer fails, the
+ * queries waiting are failed, as responses may be missed, and a new consumer is started after a pause.
+ *
+ * @param <O> the response type
+ */
+public final class ResponseTopicLookup<O> implements ResponseLookup<O> {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseTopicLookup.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration RESTART_PAUSE = Duration.ofSeconds(1);
+
+    private final Function<O, UUID> responseId;
+    private final ScheduledExecutorService scheduler;
+    private final Map<UUID, O> responses;
+    private final Map<UUID, List<CompletableFuture<Optional<O>>>> waiting = new HashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile Consumer<byte[], byte[]> consumer;
+
+    /**
+     * Starts reading the response topic.
+     *
+     * @param consumerConfig the Kafka consumer configuration
+     * @param topicName the response topic
+     * @param responseSerde the serde for responses on the topic
+     * @param responseId the id of the request a response is for
+     * @param maxSize the number of responses to remember
+     * @param scheduler times out queries waiting for responses
+     * @param <O> the response type
+     * @return the lookup
+     */
+    public static <O> ResponseTopicLookup<O> start(
+            final Map<String, Object> consumerConfig,
+            final String topicName,
+            final Serde<O> responseSerde,
+            final Function<O, UUID> responseId,
+            final int maxSize,
+            final ScheduledExecutorService scheduler) {
+        final ResponseTopicLookup<O> lookup = new ResponseTopicLookup<>(responseId, maxSize, scheduler);
+        final Properties properties = new Properties();
+        consumerConfig.forEach((key, value) -> properties.setProperty(key, value.toString()));
+        // a group of its own, starting from the latest responses, with nothing to commit as it never resumes
+        properties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, String.format("response_lookup_%s", UUID.randomUUID().toString().substring(0, 8)));
+        properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        properties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        lookup.start(() -> new KafkaConsumer<>(properties, new ByteArrayDeserializer(), new ByteArrayDeserializer()),
+                topicName, responseSerde.deserializer());
+        return lookup;
+    }
+
+    void start(final Supplier<Consumer<byte[], byte[]>> consumerFactory, final String topicName, final Deserializer<O> deserializer) {
+        new NamedThreadFactory("ResponseLookup-" + topicName)
+                .newThread(() -> consume(consumerFactory, topicName, deserializer))
+                .start();
+    }
+
+    ResponseTopicLookup(final Function<O, UUID> responseId, final int maxSize, final ScheduledExecutorService scheduler) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Response cache size must be positive");
+        this.responseId = responseId;
+        this.scheduler = scheduler;
+        this.responses = new LinkedHashMap<UUID, O>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, O> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private void consume(final Supplier<Consumer<byte[], byte[]>> consumerFactory, final String topicName, final Deserializer<O> deserializer) {
+        while (!closed.get()) {
+            consumer = consumerFactory.get();
+            try {
+                // closed while the consumer was being created, too late for it to be woken up
+                if (closed.get())
+                    return;
+                consumer.subscribe(Collections.singletonList(topicName));
+                while (!closed.get()) {
+                    for (final ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                        receive(topicName, record, deserializer);
+                    }
+                }
+            } catch (WakeupException e) {
+                // woken up to close
+            } catch (Exception e) {
+                logger.error("Response lookup consumer for {} failed, starting another in {}", topicName, RESTART_PAUSE, e);
+                failWaiting(e);
+                pause();
+            } finally {
+                consumer.close();
+            }
+        }
+    }
+
+    private void receive(final String topicName, final ConsumerRecord<byte[], byte[]> record, final Deserializer<O> deserializer) {
+        try {
+            final O response = deserializer.deserialize(record.topic(), record.value());
+            if (response != null)
+                receive(response);
+        } catch (Exception e) {
+            logger.error("Unable to read response from {} at offset {}", topicName, record.offset(), e);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RESTART_PAUSE.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed.set(true);
+        }
+    }
+
+    void receive(final O response) {
+        final UUID requestId = responseId.apply(response);
+        final List<CompletableFuture<Optional<O>>> waiters;
+        synchronized (this) {
+            responses.put(requestId, response);
+            waiters = waiting.remove(requestId);
+        }
+        if (waiters != null)
+            waiters.forEach(waiter -> waiter.complete(Optional.of(response)));
+    }
+
+    @Override
+    public synchronized Optional<O> lookup(final UUID requestId) {
+        return Optional.ofNullable(responses.get(requestId));
+    }
+
+    @Override
+    public CompletableFuture<Optional<O>> await(final UUID requestId, final Duration timeout) {
+        final CompletableFuture<Optional<O>> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            final O response = responses.get(requestId);
+            if (response != null)
+                return CompletableFuture.completedFuture(Optional.of(response));
+            waiting.computeIfAbsent(requestId, id -> new ArrayList<>()).add(waiter);
+        }
+        final ScheduledFuture<?> expiry = scheduler.schedule(() -> {
+            synchronized (this) {
+                final List<CompletableFuture<Optional<O>>> waiters = waiting.get(requestId);
+                if (waiters != null && waiters.remove(waiter) && waiters.isEmpty())
+                    waiting.remove(requestId);
+            }
+            waiter.complete(Optional.empty());
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        waiter.whenComplete((r, e) -> expiry.cancel(false));
+        return waiter;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        final Consumer<byte[], byte[]> current = consumer;
+        if (current != null)
+            current.wakeup();
+        removeWaiting().forEach(waiter -> waiter.complete(Optional.empty()));
+    }
+
+    private void failWaiting(final Exception e) {
+        removeWaiting().forEach(waiter -> waiter.completeExceptionally(e));
+    }
+
+    private synchronized List<CompletableFuture<Optional<O>>> removeWaiting() {
+        final List<CompletableFuture<Optional<O>>> waiters = new ArrayList<>();
+        waiting.values().forEach(waiters::addAll);
+        waiting.clear();
+        return waiters;
+    }
+
+    @Override
+    public boolean waitsForResponses() {
+        return true;
+    }
+}
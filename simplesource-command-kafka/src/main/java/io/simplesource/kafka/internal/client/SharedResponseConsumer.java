@@ -0,0 +1,185 @@
+package io.simplesource.kafka.internal.client;
+
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Consumes the private response topics of many request APIs with a small, fixed number of consumers, rather than one
+ * consumer per request API. Each response topic is handled by one of the consumers, chosen by the topic name, and the
+ * responses read from it are passed to the receiver registered for that topic.
+ *
+ * A consumer starts when the first topic is registered with it, and stops again once all of its topics have been
+ * unsubscribed. A response that cannot be read or received is logged and skipped, and a consumer that fails is
+ * started again by the next topic registered with it.
+ */
+public final class SharedResponseConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(SharedResponseConsumer.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final List<Worker> workers;
+
+    /**
+     * @param properties the Kafka consumer configuration
+     * @param consumerCount the number of consumers to share the response topics between
+     */
+    public SharedResponseConsumer(final Map<String, Object> properties, final int consumerCount) {
+        this(() -> {
+            final Properties consumerConfig = new Properties();
+            properties.forEach((key, value) -> consumerConfig.setProperty(key, value.toString()));
+            consumerConfig.setProperty(ConsumerConfig.GROUP_ID_CONFIG, String.format("response_consumer_%s", UUID.randomUUID().toString().substring(0, 8)));
+            return new KafkaConsumer<>(consumerConfig, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+        }, consumerCount);
+    }
+
+    SharedResponseConsumer(final Supplier<Consumer<byte[], byte[]>> consumerFactory, final int consumerCount) {
+        if (consumerCount <= 0)
+            throw new IllegalArgumentException("Response consumer count must be positive");
+        final ThreadFactory threadFactory = new NamedThreadFactory("ResponseConsumer");
+        workers = new ArrayList<>(consumerCount);
+        for (int i = 0; i < consumerCount; i++)
+            workers.add(new Worker(consumerFactory, threadFactory));
+    }
+
+    /**
+     * Starts passing responses read from the given topic to the receiver.
+     *
+     * @param topicName the private response topic
+     * @param responseSerde the serde for responses on the topic
+     * @param responseReceiver called with the id and value of every response
+     * @param <R> the response type
+     * @return a subscription that stops reading the topic when closed
+     */
+    public <R> ResponseSubscription subscribe(
+            final String topicName,
+            final Serde<R> responseSerde,
+            final BiConsumer<UUID, R> responseReceiver) {
+        final Worker worker = workers.get(Math.floorMod(topicName.hashCode(), workers.size()));
+        return worker.add(topicName, new Route<>(responseSerde.deserializer(), responseReceiver));
+    }
+
+    private static final class Route<R> {
+        private final Deserializer<R> deserializer;
+        private final BiConsumer<UUID, R> receiver;
+
+        private Route(final Deserializer<R> deserializer, final BiConsumer<UUID, R> receiver) {
+            this.deserializer = deserializer;
+            this.receiver = receiver;
+        }
+
+        private void receive(final ConsumerRecord<byte[], byte[]> record) {
+            receiver.accept(KafkaConsumerRunner.responseId(record.key()), deserializer.deserialize(record.topic(), record.value()));
+        }
+    }
+
+    private static final class Worker {
+        private final Supplier<Consumer<byte[], byte[]>> consumerFactory;
+        private final ThreadFactory threadFactory;
+        private final Map<String, Route<?>> routes = new ConcurrentHashMap<>();
+        private Poller poller;
+
+        private Worker(final Supplier<Consumer<byte[], byte[]>> consumerFactory, final ThreadFactory threadFactory) {
+            this.consumerFactory = consumerFactory;
+            this.threadFactory = threadFactory;
+        }
+
+        private synchronized ResponseSubscription add(final String topicName, final Route<?> route) {
+            routes.put(topicName, route);
+            if (poller == null) {
+                poller = new Poller(consumerFactory.get());
+                threadFactory.newThread(poller).start();
+            }
+            poller.subscriptionChanged();
+            return () -> remove(topicName, route);
+        }
+
+        private synchronized void failed(final Poller failed) {
+            if (poller == failed)
+                poller = null;
+        }
+
+        private synchronized void remove(final String topicName, final Route<?> route) {
+            if (!routes.remove(topicName, route) || poller == null)
+                return;
+            if (routes.isEmpty()) {
+                poller.close();
+                poller = null;
+            } else {
+                poller.subscriptionChanged();
+            }
+        }
+
+        private final class Poller implements Runnable {
+            private final Consumer<byte[], byte[]> consumer;
+            private final AtomicBoolean closed = new AtomicBoolean(false);
+            private final AtomicBoolean subscriptionChanged = new AtomicBoolean(false);
+
+            private Poller(final Consumer<byte[], byte[]> consumer) {
+                this.consumer = consumer;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    while (!closed.get()) {
+                        try {
+                            if (subscriptionChanged.getAndSet(false))
+                                consumer.subscribe(new HashSet<>(routes.keySet()));
+                            consumer.poll(POLL_TIMEOUT).forEach(this::receive);
+                        } catch (WakeupException e) {
+                            // woken up to change the subscription or to close
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Response consumer failed", e);
+                    failed(this);
+                } finally {
+                    consumer.close();
+                }
+            }
+
+            private void receive(final ConsumerRecord<byte[], byte[]> record) {
+                final Route<?> route = routes.get(record.topic());
+                if (route == null)
+                    return;
+                // one bad response must not stop the responses that follow it
+                try {
+                    route.receive(record);
+                } catch (Exception e) {
+                    logger.error("Unable to receive response from {} at offset {}", record.topic(), record.offset(), e);
+                }
+            }
+
+            private void subscriptionChanged() {
+                subscriptionChanged.set(true);
+                consumer.wakeup();
+            }
+
+            private void close() {
+                closed.set(true);
+                consumer.wakeup();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package io.simplesource.kafka.internal.embedded;
+
+import io.simplesource.api.CommandAPI;
+import io.simplesource.api.CommandError;
+import io.simplesource.data.FutureResult;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.EventLog;
+import io.simplesource.kafka.internal.streams.topology.CommandProcessor;
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.spec.AggregateSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CommandAPI} that handles commands in process, without Kafka, for single node deployments and tests.
+ *
+ * Commands run through the same {@link CommandProcessor} as the Kafka Streams topology. Keys are partitioned across
+ * a fixed number of lanes, each a single thread that owns the latest aggregates of its keys, so every key has one
+ * writer and its commands are handled in the order they were published. The events of accepted commands are appended
+ * to an {@link EventLog} before the command is acknowledged, and the log is replayed to rebuild the aggregates when
+ * the API is created.
+ *
+ * Each lane queues a bounded number of commands, and publishing to a full lane fails, so a publisher that outruns the
+ * lanes is pushed back on rather than queueing commands without bound.
+ *
+ * Command responses are held in memory for the command response retention of the aggregate, and are not rebuilt from
+ * the log, so a command resent after a restart is handled again.
+ *
+ * @param <K> the aggregate key
+ * @param <C> all commands for this aggregate
+ * @param <E> all events generated for this aggregate
+ * @param <A> the aggregate type
+ */
+public final class EmbeddedCommandAPI<K, C, E, A> implements CommandAPI<K, C> {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedCommandAPI.class);
+    public static final int DEFAULT_LANE_CAPACITY = 10000;
+    private static final long MIN_RESPONSE_EXPIRY_INTERVAL_IN_MILLIS = 1000L;
+
+    private final String aggregateName;
+    private final CommandProcessor<K, C, E, A> processor;
+    private final EventLog<K, E> eventLog;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService[] lanes;
+    private final List<Map<K, AggregateUpdate<A>>> laneAggregates;
+    private final Map<UUID, StoredResponse> responses = new ConcurrentHashMap<>();
+    private final Map<UUID, List<CompletableFuture<Result<CommandError, Sequence>>>> responseWaiters = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> responseReaper;
+
+    private static final class StoredResponse {
+        private final CommandResponse response;
+        private final long storedAtMillis;
+
+        private StoredResponse(final CommandResponse response, final long storedAtMillis) {
+            this.response = response;
+            this.storedAtMillis = storedAtMillis;
+        }
+    }
+
+    /**
+     * @param aggregateSpec the aggregate, of which only the name, generation and command response retention are used
+     * @param eventLog the log of the aggregate's events, which is replayed before this returns
+     * @param laneCount the number of threads handling commands
+     * @param scheduler schedules query timeouts and the expiry of command responses
+     */
+    public EmbeddedCommandAPI(
+            final AggregateSpec<K, C, E, A> aggregateSpec,
+            final EventLog<K, E> eventLog,
+            final int laneCount,
+            final ScheduledExecutorService scheduler) {
+        this(aggregateSpec, eventLog, laneCount, DEFAULT_LANE_CAPACITY, scheduler);
+    }
+
+    /**
+     * @param aggregateSpec the aggregate, of which only the name, generation and command response retention are used
+     * @param eventLog the log of the aggregate's events, which is replayed before this returns
+     * @param laneCount the number of threads handling commands
+     * @param laneCapacity the number of commands each lane queues before publishing to it fails
+     * @param scheduler schedules query timeouts and the expiry of command responses
+     */
+    public EmbeddedCommandAPI(
+            final AggregateSpec<K, C, E, A> aggregateSpec,
+            final EventLog<K, E> eventLog,
+            final int laneCount,
+            final int laneCapacity,
+            final ScheduledExecutorService scheduler) {
+        if (laneCount < 1)
+            throw new IllegalArgumentException("Lane count must be at least 1, got " + laneCount);
+        if (laneCapacity < 1)
+            throw new IllegalArgumentException("Lane capacity must be at least 1, got " + laneCapacity);
+        this.aggregateName = aggregateSpec.aggregateName();
+        this.processor = new CommandProcessor<>(aggregateSpec);
+        this.eventLog = eventLog;
+        this.scheduler = scheduler;
+
+        laneAggregates = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            laneAggregates.add(new HashMap<>());
+        }
+        eventLog.replay((key, event) -> {
+            final Map<K, AggregateUpdate<A>> aggregates = laneAggregates.get(lane(key));
+            aggregates.put(key, processor.applyEvent(aggregates.get(key), key, event));
+        });
+
+        final NamedThreadFactory threadFactory = new NamedThreadFactory("EmbeddedCommandAPI-" + aggregateName);
+        lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneCapacity), threadFactory);
+        }
+
+        final long retentionInMillis = aggregateSpec.generation().stateStoreSpec().retentionInSeconds() * 1000L;
+        // a retention of zero still needs a positive interval to expire responses at
+        final long expiryIntervalInMillis = Math.max(retentionInMillis, MIN_RESPONSE_EXPIRY_INTERVAL_IN_MILLIS);
+        responseReaper = scheduler.scheduleAtFixedRate(
+                () -> removeExpiredResponses(retentionInMillis), expiryIntervalInMillis, expiryIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public FutureResult<CommandError, UUID> publishCommand(final Request<K, C> request) {
+        final CommandRequest<K, C> commandRequest = new CommandRequest<>(
+                request.key(), request.command(), request.readSequence(), request.commandId());
+        final int lane = lane(request.key());
+        try {
+            lanes[lane].execute(() -> handle(laneAggregates.get(lane), commandRequest));
+        } catch (final RejectedExecutionException e) {
+            return FutureResult.fail(CommandError.of(CommandError.Reason.CommandPublishError, lanes[lane].isShutdown() ?
+                    "[" + aggregateName + " aggregate] Command API is closed" :
+                    "[" + aggregateName + " aggregate] Too many commands waiting to be handled for key " + request.key()));
+        }
+        return FutureResult.of(request.commandId());
+    }
+
+    @Override
+    public FutureResult<CommandError, Sequence> queryCommandResult(final UUID commandId, final Duration timeout) {
+        final CompletableFuture<Result<CommandError, Sequence>> result = new CompletableFuture<>();
+        responseWaiters.computeIfAbsent(commandId, id -> new CopyOnWriteArrayList<>()).add(result);
+        // the response may have been stored before this waiter was added
+        final StoredResponse stored = responses.get(commandId);
+        if (stored != null) {
+            result.complete(stored.response.sequenceResult());
+        } else {
+            final ScheduledFuture<?> timer = scheduler.schedule(
+                    () -> result.complete(Result.failure(CommandError.of(CommandError.Reason.Timeout,
+                            "No response for command " + commandId + " within " + timeout))),
+                    timeout.toMillis(), TimeUnit.MILLISECONDS);
+            result.whenComplete((r, t) -> timer.cancel(false));
+        }
+        result.whenComplete((r, t) -> responseWaiters.computeIfPresent(commandId, (id, waiters) -> {
+            waiters.remove(result);
+            return waiters.isEmpty() ? null : waiters;
+        }));
+        return FutureResult.ofCompletableFuture(result);
+    }
+
+    /**
+     * Stops handling commands, letting the commands already published finish first.
+     */
+    public void close() {
+        responseReaper.cancel(false);
+        for (final ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (final ExecutorService lane : lanes) {
+                lane.awaitTermination(30, TimeUnit.SECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        eventLog.close();
+    }
+
+    private int lane(final K key) {
+        return Math.floorMod(key.hashCode(), laneAggregates.size());
+    }
+
+    private void handle(final Map<K, AggregateUpdate<A>> aggregates, final CommandRequest<K, C> request) {
+        // responses are held by command id, so a resent command is recognised whichever deduplication strategy is set
+        if (responses.containsKey(request.commandId())) {
+            logger.info("[{} aggregate] Preprocessed: {}=CommandId:{}", aggregateName, request.aggregateKey(), request.commandId());
+            return;
+        }
+        final K key = request.aggregateKey();
+        CommandResponse response;
+        try {
+            final CommandProcessor.Processed<E, A> processed = processor.process(aggregates.get(key), request);
+            processed.events().ifSuccessful(events -> eventLog.append(key, events));
+            processed.aggregateUpdate().ifSuccessful(update -> aggregates.put(key, update));
+            response = processed.response();
+        } catch (final Exception e) {
+            logger.warn("[{} aggregate] Failed to handle request {} on key {}", aggregateName, request, key, e);
+            response = new CommandResponse(request.commandId(), request.readSequence(),
+                    Result.failure(CommandError.of(CommandError.Reason.InternalError, e)));
+        }
+        respond(response);
+    }
+
+    private void respond(final CommandResponse response) {
+        responses.put(response.commandId(), new StoredResponse(response, System.currentTimeMillis()));
+        final List<CompletableFuture<Result<CommandError, Sequence>>> waiters = responseWaiters.remove(response.commandId());
+        if (waiters != null)
+            waiters.forEach(waiter -> waiter.complete(response.sequenceResult()));
+    }
+
+    private void removeExpiredResponses(final long retentionInMillis) {
+        final long expiredBefore = System.currentTimeMillis() - retentionInMillis;
+        responses.values().removeIf(stored -> stored.storedAtMillis < expiredBefore);
+    }
+}
@@ -0,0 +1,79 @@
+package io.simplesource.kafka.internal.streams;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.AggregateUpdate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queries waiting for an aggregate to reach a sequence, by aggregate key. The topology passes every aggregate update it
+ * makes to {@link #updated(Object, AggregateUpdate)}, which completes the queries the update satisfies, so waiting
+ * queries are answered as soon as the update is made rather than by reading the aggregate store again and again.
+ */
+public final class AggregateUpdateWaiters<K, A> {
+    private final Map<K, List<Waiter<A>>> waiters = new ConcurrentHashMap<>();
+
+    private static final class Waiter<A> {
+        private final Sequence sequence;
+        private final CompletableFuture<AggregateUpdate<A>> update = new CompletableFuture<>();
+
+        private Waiter(final Sequence sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Waits for the first update to the aggregate at or after the sequence. Updates made before the call are not seen,
+     * so callers check the aggregate store after calling this.
+     *
+     * @return completes with the update, or never if it is not made, so callers complete it themselves on a timeout
+     */
+    public CompletableFuture<AggregateUpdate<A>> await(final K key, final Sequence sequence) {
+        final Waiter<A> waiter = new Waiter<>(sequence);
+        waiters.compute(key, (k, keyWaiters) -> {
+            final List<Waiter<A>> added = keyWaiters == null ? new ArrayList<>() : keyWaiters;
+            added.add(waiter);
+            return added;
+        });
+        // however the wait ends, the waiter is no longer needed
+        waiter.update.whenComplete((update, e) -> remove(key, waiter));
+        return waiter.update;
+    }
+
+    /**
+     * Completes the queries waiting for the aggregate to reach the sequence of the update, or an earlier one.
+     */
+    public void updated(final K key, final AggregateUpdate<A> update) {
+        if (waiters.isEmpty() || update == null)
+            return;
+        final List<Waiter<A>> reached = new ArrayList<>();
+        waiters.computeIfPresent(key, (k, keyWaiters) -> {
+            keyWaiters.removeIf(waiter -> {
+                final boolean isReached = update.sequence().isGreaterThanOrEqual(waiter.sequence);
+                if (isReached)
+                    reached.add(waiter);
+                return isReached;
+            });
+            return keyWaiters.isEmpty() ? null : keyWaiters;
+        });
+        reached.forEach(waiter -> waiter.update.complete(update));
+    }
+
+    /**
+     * @return the number of queries waiting
+     */
+    public int size() {
+        return waiters.values().stream().mapToInt(List::size).sum();
+    }
+
+    private void remove(final K key, final Waiter<A> waiter) {
+        waiters.computeIfPresent(key, (k, keyWaiters) -> {
+            keyWaiters.remove(waiter);
+            return keyWaiters.isEmpty() ? null : keyWaiters;
+        });
+    }
+}
@@ -5,6 +5,7 @@ import io.simplesource.kafka.api.ResourceNamingStrategy;
 import io.simplesource.kafka.internal.streams.topology.EventSourcedTopology;
 import io.simplesource.kafka.internal.streams.topology.TopologyContext;
 import io.simplesource.kafka.spec.AggregateSetSpec;
+import io.simplesource.kafka.spec.AggregateSpec;
 import io.simplesource.kafka.spec.TopicSpec;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.CreateTopicsOptions;
@@ -16,6 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -27,8 +29,10 @@ public final class EventSourcedStreamsApp {
 
     private final AggregateSetSpec aggregateSetSpec;
     private final AdminClient adminClient;
+    private final Map<String, AggregateUpdateWaiters<?, ?>> aggregateUpdateWaiters = new HashMap<>();
 
     private KafkaStreams streams = null;
+    private Topology topology = null;
 
     public EventSourcedStreamsApp(
             final AggregateSetSpec aggregateSetSpec
@@ -41,15 +45,32 @@ public final class EventSourcedStreamsApp {
         if (nonNull(streams)) throw new IllegalStateException("Application already started");
 
         createTopics();
-        final Topology topology = buildTopology();
+        topology = buildTopology();
         streams = startApp(topology);
         waitUntilStable(logger, streams);
     }
 
+    public synchronized void stop() {
+        if (nonNull(streams))
+            streams.close(15L, TimeUnit.SECONDS);
+    }
+
     public KafkaStreams getStreams() {
         return streams;
     }
 
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return the queries waiting for aggregates of the given aggregate to reach a sequence
+     */
+    @SuppressWarnings("unchecked")
+    public <K, A> AggregateUpdateWaiters<K, A> getAggregateUpdateWaiters(final String aggregateName) {
+        return (AggregateUpdateWaiters<K, A>) aggregateUpdateWaiters.get(aggregateName);
+    }
+
     private void createTopics() {
         try {
             final Collection<AggregateResources.TopicEntity> topicEntities = EnumSet.allOf(AggregateResources.TopicEntity.class);
@@ -97,11 +118,16 @@ public final class EventSourcedStreamsApp {
         final StreamsBuilder builder = new StreamsBuilder();
         aggregateSetSpec.aggregateConfigMap()
                 .values()
-                .forEach(aggregateSpec ->
-                        EventSourcedTopology.addTopology(new TopologyContext<>(aggregateSpec), builder));
+                .forEach(aggregateSpec -> addTopology(aggregateSpec, builder));
         return builder.build();
     }
 
+    private <K, C, E, A> void addTopology(final AggregateSpec<K, C, E, A> aggregateSpec, final StreamsBuilder builder) {
+        final AggregateUpdateWaiters<K, A> waiters = new AggregateUpdateWaiters<>();
+        aggregateUpdateWaiters.put(aggregateSpec.aggregateName(), waiters);
+        EventSourcedTopology.addTopology(new TopologyContext<>(aggregateSpec, waiters::updated), builder);
+    }
+
     private KafkaStreams startApp(final Topology topology) {
         logger.info("Topology description {}", topology.describe());
 
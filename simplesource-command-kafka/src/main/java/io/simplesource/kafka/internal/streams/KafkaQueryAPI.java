@@ -0,0 +1,228 @@
+package io.simplesource.kafka.internal.streams;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.data.FutureResult;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.api.QueryAPI;
+import io.simplesource.kafka.api.QueryRPC;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.spec.AggregateSpec;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.StreamsMetadata;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Answers aggregate queries from the store the topology keeps the latest aggregate update of each key in, using the
+ * store of this instance for keys it holds, and the {@link QueryRPC} to ask the instance holding any other key.
+ */
+public final class KafkaQueryAPI<K, A> implements QueryAPI<K, A> {
+    private final String aggregateName;
+    private final String storeName;
+    private final String aggregateTopic;
+    private final Serde<K> keySerde;
+    private final Serde<AggregateUpdate<A>> aggregateUpdateSerde;
+    private final Function<String, ReadOnlyKeyValueStore<K, AggregateUpdate<A>>> storeProvider;
+    private final Function<K, StreamsMetadata> metadataForKey;
+    private final HostInfo localHost;
+    private final QueryRPC rpc;
+    private final ScheduledExecutorService scheduler;
+    private final AggregateUpdateWaiters<K, A> waiters;
+
+    /**
+     * @param streams the running app
+     * @param aggregateSpec the aggregate to query
+     * @param storeName the aggregate store, as found by {@link #storeName(AggregateSpec)}
+     * @param localHost the application server of this instance, or null if this is the only instance
+     * @param rpc carries queries to other instances, or null if this is the only instance
+     * @param scheduler times out queries waiting for an aggregate to reach a sequence
+     * @param waiters the queries waiting for an aggregate to reach a sequence, completed by the topology
+     */
+    public static <K, A> KafkaQueryAPI<K, A> of(
+            final KafkaStreams streams,
+            final AggregateSpec<K, ?, ?, A> aggregateSpec,
+            final String storeName,
+            final HostInfo localHost,
+            final QueryRPC rpc,
+            final ScheduledExecutorService scheduler,
+            final AggregateUpdateWaiters<K, A> waiters) {
+        final Serde<K> keySerde = aggregateSpec.serialization().serdes().aggregateKey();
+        return new KafkaQueryAPI<>(
+                aggregateSpec,
+                storeName,
+                name -> streams.store(name, QueryableStoreTypes.<K, AggregateUpdate<A>>keyValueStore()),
+                key -> streams.metadataForKey(storeName, key, keySerde.serializer()),
+                localHost,
+                rpc,
+                scheduler,
+                waiters);
+    }
+
+    /**
+     * @param aggregateSpec the aggregate to query
+     * @param storeName the aggregate store
+     * @param storeProvider finds a queryable store by name
+     * @param metadataForKey finds the instance holding a key
+     * @param localHost the application server of this instance, or null if this is the only instance
+     * @param rpc carries queries to other instances, or null if this is the only instance
+     * @param scheduler times out queries waiting for an aggregate to reach a sequence
+     * @param waiters the queries waiting for an aggregate to reach a sequence, completed by the topology
+     */
+    public KafkaQueryAPI(
+            final AggregateSpec<K, ?, ?, A> aggregateSpec,
+            final String storeName,
+            final Function<String, ReadOnlyKeyValueStore<K, AggregateUpdate<A>>> storeProvider,
+            final Function<K, StreamsMetadata> metadataForKey,
+            final HostInfo localHost,
+            final QueryRPC rpc,
+            final ScheduledExecutorService scheduler,
+            final AggregateUpdateWaiters<K, A> waiters) {
+        this.aggregateName = aggregateSpec.aggregateName();
+        this.storeName = storeName;
+        this.aggregateTopic = aggregateSpec.serialization().resourceNamingStrategy().topicName(
+                aggregateName, AggregateResources.TopicEntity.aggregate.name());
+        this.keySerde = aggregateSpec.serialization().serdes().aggregateKey();
+        this.aggregateUpdateSerde = aggregateSpec.serialization().serdes().aggregateUpdate();
+        this.storeProvider = storeProvider;
+        this.metadataForKey = metadataForKey;
+        this.localHost = localHost;
+        this.rpc = rpc;
+        this.scheduler = scheduler;
+        this.waiters = waiters;
+    }
+
+    /**
+     * Finds the store holding the latest aggregate update of each key. With {@link AggregateStateStrategy#LocalStore}
+     * this is the aggregate update store, unless aggregates are snapshotted, when that store only caches recent
+     * aggregates and there is no store to query. Otherwise it is the store of the aggregate table.
+     *
+     * @return the store name, or empty if the aggregate cannot be queried
+     */
+    public static Optional<String> storeName(final AggregateSpec<?, ?, ?, ?> aggregateSpec) {
+        final AggregateSpec.Generation<?, ?, ?, ?> generation = aggregateSpec.generation();
+        final AggregateResources.StateStoreEntity entity;
+        if (generation.aggregateStateStrategy() == AggregateStateStrategy.LocalStore) {
+            if (generation.snapshotPolicy() != null)
+                return Optional.empty();
+            entity = AggregateResources.StateStoreEntity.aggregate_update;
+        } else {
+            entity = AggregateResources.StateStoreEntity.aggregate_table;
+        }
+        return Optional.of(aggregateSpec.serialization().resourceNamingStrategy().topicName(
+                aggregateSpec.aggregateName(), entity.name()));
+    }
+
+    @Override
+    public FutureResult<CommandError, Optional<AggregateUpdate<A>>> queryAggregate(final K key) {
+        if (localHost == null || rpc == null)
+            return queryStore(key);
+
+        final StreamsMetadata metadata = metadataForKey.apply(key);
+        if (metadata == null || StreamsMetadata.NOT_AVAILABLE.equals(metadata))
+            return FutureResult.fail(CommandError.of(CommandError.Reason.RemoteLookupFailed,
+                    "No instance currently holds " + aggregateName + " aggregate " + key));
+        if (localHost.equals(metadata.hostInfo()))
+            return queryStore(key);
+
+        final byte[] serializedKey = keySerde.serializer().serialize(aggregateTopic, key);
+        return FutureResult.ofCompletionStage(
+                rpc.query(metadata.hostInfo(), aggregateName, serializedKey)
+                        .thenApply(update -> update.map(bytes -> aggregateUpdateSerde.deserializer().deserialize(aggregateTopic, bytes))),
+                e -> CommandError.of(CommandError.Reason.RemoteLookupFailed, e));
+    }
+
+    /**
+     * Waits for the aggregate to reach the sequence. For a key held by this instance the wait is completed by the
+     * topology as soon as it makes the update, and for a key held by another instance a single query waits there.
+     */
+    @Override
+    public FutureResult<CommandError, AggregateUpdate<A>> queryAggregate(final K key, final Sequence sequence, final Duration timeout) {
+        final CompletableFuture<Optional<AggregateUpdate<A>>> reached;
+        if (localHost == null || rpc == null) {
+            reached = awaitStore(key, sequence, timeout);
+        } else {
+            final StreamsMetadata metadata = metadataForKey.apply(key);
+            if (metadata == null || StreamsMetadata.NOT_AVAILABLE.equals(metadata))
+                return FutureResult.fail(CommandError.of(CommandError.Reason.RemoteLookupFailed,
+                        "No instance currently holds " + aggregateName + " aggregate " + key));
+            if (localHost.equals(metadata.hostInfo())) {
+                reached = awaitStore(key, sequence, timeout);
+            } else {
+                final byte[] serializedKey = keySerde.serializer().serialize(aggregateTopic, key);
+                reached = rpc.await(metadata.hostInfo(), aggregateName, serializedKey, sequence, timeout)
+                        .thenApply(update -> update.map(bytes -> aggregateUpdateSerde.deserializer().deserialize(aggregateTopic, bytes)));
+            }
+        }
+        return FutureResult.ofCompletionStage(reached, e -> CommandError.of(CommandError.Reason.RemoteLookupFailed, e))
+                .flatMap(update -> update.<FutureResult<CommandError, AggregateUpdate<A>>>map(FutureResult::of)
+                        .orElseGet(() -> FutureResult.fail(CommandError.of(CommandError.Reason.Timeout,
+                                aggregateName + " aggregate " + key + " did not reach sequence " + sequence + " within " + timeout))));
+    }
+
+    /**
+     * Answers a query from another instance waiting for a key held by this one to reach a sequence.
+     *
+     * @param serializedKey the serialized aggregate key
+     * @return completes with the serialized aggregate update at or after the sequence, or empty if the aggregate does
+     * not reach it within the timeout
+     */
+    public CompletableFuture<Optional<byte[]>> awaitLocal(final byte[] serializedKey, final Sequence sequence, final Duration timeout) {
+        final K key = keySerde.deserializer().deserialize(aggregateTopic, serializedKey);
+        return awaitStore(key, sequence, timeout)
+                .thenApply(update -> update.map(u -> aggregateUpdateSerde.serializer().serialize(aggregateTopic, u)));
+    }
+
+    private CompletableFuture<Optional<AggregateUpdate<A>>> awaitStore(final K key, final Sequence sequence, final Duration timeout) {
+        final CompletableFuture<AggregateUpdate<A>> update = waiters.await(key, sequence);
+        // updates made before the waiter was added are only in the store
+        try {
+            final AggregateUpdate<A> stored = storeProvider.apply(storeName).get(key);
+            if (stored != null && stored.sequence().isGreaterThanOrEqual(sequence))
+                update.complete(stored);
+        } catch (InvalidStateStoreException e) {
+            // the store is not available while the app starts up or rebalances, but the update can still be made here
+        }
+        if (!update.isDone()) {
+            final ScheduledFuture<?> expiry = scheduler.schedule(
+                    () -> update.completeExceptionally(new TimeoutException()), timeout.toMillis(), TimeUnit.MILLISECONDS);
+            update.whenComplete((u, e) -> expiry.cancel(false));
+        }
+        return update.handle((u, e) -> Optional.ofNullable(u));
+    }
+
+    /**
+     * Answers a query from another instance for a key held by this one.
+     *
+     * @param serializedKey the serialized aggregate key
+     * @return the serialized latest aggregate update, or empty if there is none
+     */
+    public Optional<byte[]> queryLocal(final byte[] serializedKey) {
+        final K key = keySerde.deserializer().deserialize(aggregateTopic, serializedKey);
+        return Optional.ofNullable(storeProvider.apply(storeName).get(key))
+                .map(update -> aggregateUpdateSerde.serializer().serialize(aggregateTopic, update));
+    }
+
+    private FutureResult<CommandError, Optional<AggregateUpdate<A>>> queryStore(final K key) {
+        try {
+            return FutureResult.ofResult(Result.success(Optional.ofNullable(storeProvider.apply(storeName).get(key))));
+        } catch (InvalidStateStoreException e) {
+            // the store is not available while the app starts up or rebalances
+            return FutureResult.fail(CommandError.of(CommandError.Reason.InternalError, e));
+        }
+    }
+}
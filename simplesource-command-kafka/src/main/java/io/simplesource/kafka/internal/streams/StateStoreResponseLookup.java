@@ -0,0 +1,64 @@
+package io.simplesource.kafka.internal.streams;
+
+import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
+import io.simplesource.kafka.internal.client.ResponseLookup;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.spec.AggregateSpec;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Looks command responses up in the store the aggregate topology keeps them in to recognise resent commands. Only the
+ * partitions of the store held by this instance of the streams app are searched, so responses are found for commands
+ * handled here, whichever client sent them.
+ */
+public final class StateStoreResponseLookup implements ResponseLookup<CommandResponse> {
+    private static final Logger logger = LoggerFactory.getLogger(StateStoreResponseLookup.class);
+
+    private final String storeName;
+    private final Function<String, ReadOnlyKeyValueStore<UUID, CommandResponse>> storeProvider;
+
+    public static StateStoreResponseLookup of(final KafkaStreams streams, final AggregateSpec<?, ?, ?, ?> aggregateSpec) {
+        return new StateStoreResponseLookup(aggregateSpec,
+                storeName -> streams.store(storeName, QueryableStoreTypes.<UUID, CommandResponse>keyValueStore()));
+    }
+
+    /**
+     * @param aggregateSpec the aggregate the commands are sent to
+     * @param storeProvider finds a queryable store by name
+     */
+    public StateStoreResponseLookup(
+            final AggregateSpec<?, ?, ?, ?> aggregateSpec,
+            final Function<String, ReadOnlyKeyValueStore<UUID, CommandResponse>> storeProvider) {
+        this.storeName = storeName(aggregateSpec);
+        this.storeProvider = storeProvider;
+    }
+
+    public static String storeName(final AggregateSpec<?, ?, ?, ?> aggregateSpec) {
+        final AggregateResources.StateStoreEntity entity =
+                aggregateSpec.generation().deduplicationStrategy() == DeduplicationStrategy.ByAggregateKey ?
+                        AggregateResources.StateStoreEntity.command_response_by_aggregate_key :
+                        AggregateResources.StateStoreEntity.command_response_by_id;
+        return aggregateSpec.serialization().resourceNamingStrategy().topicName(aggregateSpec.aggregateName(), entity.name());
+    }
+
+    @Override
+    public Optional<CommandResponse> lookup(final UUID requestId) {
+        try {
+            return Optional.ofNullable(storeProvider.apply(storeName).get(requestId));
+        } catch (InvalidStateStoreException e) {
+            // the store is not available while the app starts up or rebalances
+            logger.debug("Command response store {} is not available", storeName, e);
+            return Optional.empty();
+        }
+    }
+}
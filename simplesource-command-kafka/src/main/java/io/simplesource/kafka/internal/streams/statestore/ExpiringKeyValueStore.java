@@ -0,0 +1,217 @@
+package io.simplesource.kafka.internal.streams.statestore;
+
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+/**
+ * An in memory key value store that forgets entries once they are older than the retention period.
+ *
+ * Entries are kept in the order they were last written, stamped with the stream time at that point, so expiring
+ * them is a walk from the head of the map that stops at the first live entry. Stream time is the largest record
+ * timestamp written so far, which makes expiry consistent with the windowed stores Kafka Streams uses elsewhere.
+ *
+ * Entries replayed from the changelog carry no timestamp, so they are treated as written at the first stream time
+ * observed after the restore. The changelog itself is expected to be bounded by the same retention period.
+ */
+final class ExpiringKeyValueStore implements KeyValueStore<Bytes, byte[]> {
+    private static final long UNKNOWN_TIMESTAMP = -1L;
+
+    private final String name;
+    private final long retentionMs;
+    private final LinkedHashMap<Bytes, Entry> entries = new LinkedHashMap<>();
+
+    private ProcessorContext context;
+    private long streamTime = UNKNOWN_TIMESTAMP;
+    private boolean hasRestoredEntries = false;
+    private volatile boolean open = false;
+
+    private static final class Entry {
+        private final byte[] value;
+        private long timestamp;
+
+        private Entry(final byte[] value, final long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+
+    ExpiringKeyValueStore(final String name, final long retentionMs) {
+        this.name = name;
+        this.retentionMs = retentionMs;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public void init(final ProcessorContext context, final StateStore root) {
+        this.context = context;
+        if (root != null) {
+            context.register(root, (key, value) -> {
+                if (value == null) {
+                    remove(Bytes.wrap(key));
+                } else {
+                    write(Bytes.wrap(key), value, UNKNOWN_TIMESTAMP);
+                    hasRestoredEntries = true;
+                }
+            });
+        }
+        open = true;
+    }
+
+    @Override
+    public synchronized byte[] get(final Bytes key) {
+        final Entry entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    @Override
+    public synchronized void put(final Bytes key, final byte[] value) {
+        if (value == null) {
+            remove(key);
+        } else {
+            advanceStreamTime(context.timestamp());
+            write(key, value, streamTime);
+        }
+    }
+
+    @Override
+    public synchronized byte[] putIfAbsent(final Bytes key, final byte[] value) {
+        final byte[] existing = get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public synchronized void putAll(final List<KeyValue<Bytes, byte[]>> keyValues) {
+        keyValues.forEach(kv -> put(kv.key, kv.value));
+    }
+
+    @Override
+    public synchronized byte[] delete(final Bytes key) {
+        return remove(key);
+    }
+
+    @Override
+    public synchronized KeyValueIterator<Bytes, byte[]> range(final Bytes from, final Bytes to) {
+        return snapshot(entries.keySet().stream()
+                .filter(key -> key.compareTo(from) >= 0 && key.compareTo(to) <= 0)
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public synchronized KeyValueIterator<Bytes, byte[]> all() {
+        return snapshot(entries.keySet().stream()
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public synchronized long approximateNumEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush, the changelog is written by the logging layer wrapping this store
+    }
+
+    @Override
+    public synchronized void close() {
+        entries.clear();
+        open = false;
+    }
+
+    @Override
+    public boolean persistent() {
+        return false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    private void write(final Bytes key, final byte[] value, final long timestamp) {
+        // remove first so that the rewritten entry moves to the tail of the expiry order
+        entries.remove(key);
+        entries.put(key, new Entry(value, timestamp));
+    }
+
+    private byte[] remove(final Bytes key) {
+        final Entry entry = entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    private void advanceStreamTime(final long timestamp) {
+        if (timestamp <= streamTime) return;
+        streamTime = timestamp;
+
+        if (hasRestoredEntries) {
+            entries.values().stream()
+                    .filter(entry -> entry.timestamp == UNKNOWN_TIMESTAMP)
+                    .forEach(entry -> entry.timestamp = streamTime);
+            hasRestoredEntries = false;
+        }
+
+        final long expiryTime = streamTime - retentionMs;
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.timestamp >= expiryTime) break;
+            iterator.remove();
+        }
+    }
+
+    private KeyValueIterator<Bytes, byte[]> snapshot(final List<Bytes> keys) {
+        final List<KeyValue<Bytes, byte[]>> keyValues = new ArrayList<>(keys.size());
+        keys.forEach(key -> keyValues.add(KeyValue.pair(key, entries.get(key).value)));
+        return new SnapshotIterator(keyValues);
+    }
+
+    private static final class SnapshotIterator implements KeyValueIterator<Bytes, byte[]> {
+        private final List<KeyValue<Bytes, byte[]>> keyValues;
+        private int position = 0;
+
+        private SnapshotIterator(final List<KeyValue<Bytes, byte[]>> keyValues) {
+            this.keyValues = keyValues;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < keyValues.size();
+        }
+
+        @Override
+        public KeyValue<Bytes, byte[]> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return keyValues.get(position++);
+        }
+
+        @Override
+        public Bytes peekNextKey() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return keyValues.get(position).key;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.simplesource.kafka.internal.streams.statestore;
+
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Supplies {@link ExpiringKeyValueStore} instances, for state that only needs to be remembered for a bounded period.
+ */
+public final class ExpiringKeyValueStoreSupplier implements KeyValueBytesStoreSupplier {
+    private final String name;
+    private final long retentionMs;
+
+    public ExpiringKeyValueStoreSupplier(final String name, final long retentionMs) {
+        this.name = name;
+        this.retentionMs = retentionMs;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public KeyValueStore<Bytes, byte[]> get() {
+        return new ExpiringKeyValueStore(name, retentionMs);
+    }
+
+    @Override
+    public String metricsScope() {
+        return "in-memory-expiring-state";
+    }
+
+    /**
+     * Topic configuration for the changelog of the store, so that the changelog, and therefore restore time,
+     * is bounded by the same retention period as the store.
+     *
+     * @return the changelog topic configuration
+     */
+    public Map<String, String> changelogConfig() {
+        final Map<String, String> config = new HashMap<>();
+        config.put(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT + "," + TopicConfig.CLEANUP_POLICY_DELETE);
+        config.put(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(retentionMs));
+        return config;
+    }
+}
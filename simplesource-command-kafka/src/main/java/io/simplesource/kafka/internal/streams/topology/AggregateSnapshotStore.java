@@ -0,0 +1,123 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.ValueWithSequence;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static io.simplesource.kafka.api.AggregateResources.TopicEntity.event;
+
+/**
+ * The durable state behind an aggregate snapshot policy: the last snapshot of each aggregate, and every event applied
+ * to it since. The current value of an aggregate is its last snapshot with those events applied, so only the
+ * snapshots ever need the full aggregate to be serialized.
+ *
+ * Events are keyed by the serialized aggregate key followed by the event sequence. Because the events since a
+ * snapshot have consecutive sequences, they can be found without a range scan.
+ */
+final class AggregateSnapshotStore<K, E, A> {
+    private final TopologyContext<K, ?, E, A> ctx;
+    private final Serde<K> keySerde;
+    private KeyValueStore<K, AggregateUpdate<A>> snapshots;
+    private KeyValueStore<Bytes, ValueWithSequence<E>> events;
+
+    AggregateSnapshotStore(final TopologyContext<K, ?, E, A> ctx) {
+        this.ctx = ctx;
+        this.keySerde = ctx.serdes().aggregateKey();
+    }
+
+    static String[] storeNames(final TopologyContext<?, ?, ?, ?> ctx) {
+        return new String[] {
+                ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_snapshot),
+                ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_snapshot_event)
+        };
+    }
+
+    static String[] addStores(final TopologyContext<?, ?, ?, ?> ctx, final StreamsBuilder builder) {
+        final String[] storeNames = storeNames(ctx);
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(storeNames[0]), ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()));
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(storeNames[1]), Serdes.Bytes(), ctx.serdes().valueWithSequence()));
+        return storeNames;
+    }
+
+    @SuppressWarnings("unchecked")
+    void init(final ProcessorContext context) {
+        final String[] storeNames = storeNames(ctx);
+        snapshots = (KeyValueStore<K, AggregateUpdate<A>>) context.getStateStore(storeNames[0]);
+        events = (KeyValueStore<Bytes, ValueWithSequence<E>>) context.getStateStore(storeNames[1]);
+    }
+
+    /**
+     * Rebuilds the current value of an aggregate from its last snapshot and the events since.
+     *
+     * @return the current aggregate, or null if the aggregate has never been written
+     */
+    AggregateUpdate<A> rehydrate(final K key) {
+        final AggregateUpdate<A> snapshot = snapshots.get(key);
+        AggregateUpdate<A> current = snapshot != null ? snapshot : AggregateUpdate.of(ctx.initialValue().empty(key));
+        boolean hasEvents = false;
+        ValueWithSequence<E> nextEvent;
+        while ((nextEvent = events.get(eventKey(key, current.sequence().next()))) != null) {
+            current = new AggregateUpdate<>(ctx.aggregator().applyEvent(current.aggregate(), nextEvent.value()), nextEvent.sequence());
+            hasEvents = true;
+        }
+        return snapshot == null && !hasEvents ? null : current;
+    }
+
+    void appendEvents(final K key, final NonEmptyList<ValueWithSequence<E>> newEvents) {
+        newEvents.forEach(e -> events.put(eventKey(key, e.sequence()), e));
+    }
+
+    /**
+     * @return true if the aggregate has accumulated at least {@code count} events since its last snapshot
+     */
+    boolean hasEventsSinceSnapshot(final K key, final Sequence currentSequence, final long count) {
+        final long firstSequence = currentSequence.getSeq() - count + 1;
+        return firstSequence > 0 && events.get(eventKey(key, Sequence.position(firstSequence))) != null;
+    }
+
+    void snapshot(final K key, final AggregateUpdate<A> update) {
+        Sequence sequence = update.sequence();
+        snapshots.put(key, update);
+        while (events.delete(eventKey(key, sequence)) != null) {
+            sequence = Sequence.position(sequence.getSeq() - 1);
+        }
+    }
+
+    Set<K> keysWithEventsSinceSnapshot() {
+        final Set<K> keys = new LinkedHashSet<>();
+        try (KeyValueIterator<Bytes, ValueWithSequence<E>> iterator = events.all()) {
+            iterator.forEachRemaining(kv -> keys.add(aggregateKey(kv.key)));
+        }
+        return keys;
+    }
+
+    private Bytes eventKey(final K key, final Sequence sequence) {
+        final byte[] keyBytes = keySerde.serializer().serialize(ctx.topicName(event), key);
+        return Bytes.wrap(ByteBuffer.allocate(keyBytes.length + Long.BYTES)
+                .put(keyBytes)
+                .putLong(sequence.getSeq())
+                .array());
+    }
+
+    private K aggregateKey(final Bytes eventKey) {
+        final byte[] bytes = eventKey.get();
+        return keySerde.deserializer().deserialize(ctx.topicName(event), Arrays.copyOf(bytes, bytes.length - Long.BYTES));
+    }
+}
@@ -0,0 +1,71 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.kafka.internal.util.Tuple2;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.spec.SnapshotPolicy;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the events of each handled command against the last snapshot of its aggregate, and forwards a new snapshot
+ * whenever the {@link SnapshotPolicy} calls for one.
+ */
+final class AggregateSnapshotter<K, E, A>
+        implements Transformer<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>, KeyValue<K, AggregateUpdate<A>>> {
+    private final AggregateSnapshotStore<K, E, A> snapshotStore;
+    private final SnapshotPolicy policy;
+    private final String aggregateStoreName;
+    private ProcessorContext context;
+    private KeyValueStore<K, AggregateUpdate<A>> aggregates;
+
+    AggregateSnapshotter(final TopologyContext<K, ?, E, A> ctx, final String aggregateStoreName) {
+        this.snapshotStore = new AggregateSnapshotStore<>(ctx);
+        this.policy = ctx.aggregateSpec().generation().snapshotPolicy();
+        this.aggregateStoreName = aggregateStoreName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(final ProcessorContext context) {
+        this.context = context;
+        snapshotStore.init(context);
+        aggregates = (KeyValueStore<K, AggregateUpdate<A>>) context.getStateStore(aggregateStoreName);
+        if (policy.intervalInSeconds() > 0) {
+            context.schedule(TimeUnit.SECONDS.toMillis(policy.intervalInSeconds()), PunctuationType.WALL_CLOCK_TIME,
+                    timestamp -> snapshotAll());
+        }
+    }
+
+    @Override
+    public KeyValue<K, AggregateUpdate<A>> transform(final K key, final Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>> result) {
+        return result.v1().eventValue().fold(
+                reasons -> null,
+                events -> {
+                    snapshotStore.appendEvents(key, events);
+                    final AggregateUpdate<A> update = result.v2().updatedAggregateResult().getOrElse(null);
+                    if (policy.eventCount() > 0 && snapshotStore.hasEventsSinceSnapshot(key, update.sequence(), policy.eventCount())) {
+                        snapshotStore.snapshot(key, update);
+                        return KeyValue.pair(key, update);
+                    }
+                    return null;
+                });
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void snapshotAll() {
+        snapshotStore.keysWithEventsSinceSnapshot().forEach(key -> {
+            final AggregateUpdate<A> cached = aggregates.get(key);
+            final AggregateUpdate<A> update = cached != null ? cached : snapshotStore.rehydrate(key);
+            snapshotStore.snapshot(key, update);
+            context.forward(key, update);
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.kafka.api.AggregateDiffer;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.EncodedAggregateUpdate;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static io.simplesource.kafka.api.AggregateResources.TopicEntity.aggregate;
+
+/**
+ * Supplies the store of the aggregate table rebuilt from a delta encoded aggregate topic. The store is not logged, as
+ * its changelog would carry the full aggregate for every delta. Instead, whenever the store is initialised for a task,
+ * it is rebuilt from the task's partition of the aggregate topic, read from the beginning with a consumer of its own.
+ */
+final class AggregateTableStoreSupplier<K, A> implements KeyValueBytesStoreSupplier {
+    private static final Logger logger = LoggerFactory.getLogger(AggregateTableStoreSupplier.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100L);
+
+    private final TopologyContext<K, ?, ?, A> ctx;
+    private final String name;
+    private final AggregateDiffer<A> differ;
+    private final KeyValueBytesStoreSupplier inner;
+
+    AggregateTableStoreSupplier(final TopologyContext<K, ?, ?, A> ctx, final String name, final AggregateDiffer<A> differ) {
+        this.ctx = ctx;
+        this.name = name;
+        this.differ = differ;
+        this.inner = Stores.persistentKeyValueStore(name);
+    }
+
+    /**
+     * Applies the next update read from the aggregate topic to the last full update for the key.
+     *
+     * @return the new full update, or {@code previous} if the update is not newer or is a delta that does not follow
+     * on from it
+     */
+    static <K, A> AggregateUpdate<A> apply(
+            final K key,
+            final AggregateUpdate<A> previous,
+            final EncodedAggregateUpdate<A> encoded,
+            final AggregateDiffer<A> differ) {
+        // updates are read again after a rebuild, from the last committed offset, and must not roll the table back
+        if (previous != null && !encoded.sequence().isGreaterThan(previous.sequence()))
+            return previous;
+        final AggregateUpdate<A> update = encoded.decode(previous, differ);
+        if (update == null) {
+            logger.warn("Skipping aggregate delta for {} from sequence {}, waiting for a checkpoint", key, encoded.baseSequence());
+            return previous;
+        }
+        return update;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public KeyValueStore<Bytes, byte[]> get() {
+        return new AggregateTableStore(inner.get());
+    }
+
+    @Override
+    public String metricsScope() {
+        return inner.metricsScope();
+    }
+
+    private final class AggregateTableStore implements KeyValueStore<Bytes, byte[]> {
+        private final KeyValueStore<Bytes, byte[]> store;
+
+        private AggregateTableStore(final KeyValueStore<Bytes, byte[]> store) {
+            this.store = store;
+        }
+
+        @Override
+        public void init(final ProcessorContext context, final StateStore root) {
+            store.init(context, root);
+            rebuild(context);
+        }
+
+        private void rebuild(final ProcessorContext context) {
+            final String topic = ctx.topicName(aggregate);
+            // the name Kafka Streams serializes the table's keys and values with, as if it had a changelog
+            final String storeTopic = context.applicationId() + "-" + name + "-changelog";
+            final Serde<K> keySerde = ctx.serdes().aggregateKey();
+            final Serde<AggregateUpdate<A>> updateSerde = ctx.serdes().aggregateUpdate();
+            final Serde<EncodedAggregateUpdate<A>> encodedSerde = ctx.encodedAggregateUpdateSerde();
+            final TopicPartition partition = new TopicPartition(topic, context.taskId().partition);
+            final List<TopicPartition> partitions = Collections.singletonList(partition);
+            final Map<String, Object> consumerConfig = new StreamsConfig(context.appConfigs())
+                    .getRestoreConsumerConfigs(context.applicationId() + "-" + name + "-rebuild-" + context.taskId());
+
+            long count = 0;
+            try (Consumer<byte[], byte[]> consumer = ctx.aggregateTableRebuildConsumer().apply(consumerConfig)) {
+                consumer.assign(partitions);
+                consumer.seekToBeginning(partitions);
+                final long endOffset = consumer.endOffsets(partitions).get(partition);
+                while (consumer.position(partition) < endOffset) {
+                    for (final ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                        final K key = keySerde.deserializer().deserialize(topic, record.key());
+                        final EncodedAggregateUpdate<A> encoded = encodedSerde.deserializer().deserialize(topic, record.value());
+                        if (key == null || encoded == null)
+                            continue;
+                        final Bytes storeKey = Bytes.wrap(keySerde.serializer().serialize(storeTopic, key));
+                        final byte[] previousBytes = store.get(storeKey);
+                        final AggregateUpdate<A> previous = previousBytes == null ? null :
+                                updateSerde.deserializer().deserialize(storeTopic, previousBytes);
+                        final AggregateUpdate<A> update = apply(key, previous, encoded, differ);
+                        if (update != previous)
+                            store.put(storeKey, updateSerde.serializer().serialize(storeTopic, update));
+                        count++;
+                    }
+                }
+            }
+            logger.info("Rebuilt aggregate table {} for task {} from {} updates", name, context.taskId(), count);
+        }
+
+        @Override
+        public void put(final Bytes key, final byte[] value) {
+            store.put(key, value);
+        }
+
+        @Override
+        public byte[] putIfAbsent(final Bytes key, final byte[] value) {
+            return store.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(final List<KeyValue<Bytes, byte[]>> entries) {
+            store.putAll(entries);
+        }
+
+        @Override
+        public byte[] delete(final Bytes key) {
+            return store.delete(key);
+        }
+
+        @Override
+        public byte[] get(final Bytes key) {
+            return store.get(key);
+        }
+
+        @Override
+        public KeyValueIterator<Bytes, byte[]> range(final Bytes from, final Bytes to) {
+            return store.range(from, to);
+        }
+
+        @Override
+        public KeyValueIterator<Bytes, byte[]> all() {
+            return store.all();
+        }
+
+        @Override
+        public long approximateNumEntries() {
+            return store.approximateNumEntries();
+        }
+
+        @Override
+        public String name() {
+            return store.name();
+        }
+
+        @Override
+        public void flush() {
+            store.flush();
+        }
+
+        @Override
+        public void close() {
+            store.close();
+        }
+
+        @Override
+        public boolean persistent() {
+            return store.persistent();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return store.isOpen();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.kafka.model.AggregateUpdate;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds back aggregate updates, and on every interval forwards only the most recent update for each key that has
+ * changed since the last interval.
+ *
+ * Pending updates are kept in a logged state store rather than in memory, so an update that has been committed but not
+ * yet forwarded survives a restart.
+ */
+final class AggregateUpdateBatcher<K, A> implements Transformer<K, AggregateUpdate<A>, KeyValue<K, AggregateUpdate<A>>> {
+    private final String storeName;
+    private final long intervalInMillis;
+    private ProcessorContext context;
+    private KeyValueStore<K, AggregateUpdate<A>> pendingUpdates;
+
+    AggregateUpdateBatcher(final String storeName, final long intervalInMillis) {
+        this.storeName = storeName;
+        this.intervalInMillis = intervalInMillis;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(final ProcessorContext context) {
+        this.context = context;
+        pendingUpdates = (KeyValueStore<K, AggregateUpdate<A>>) context.getStateStore(storeName);
+        context.schedule(intervalInMillis, PunctuationType.WALL_CLOCK_TIME, timestamp -> forwardPendingUpdates());
+    }
+
+    @Override
+    public KeyValue<K, AggregateUpdate<A>> transform(final K key, final AggregateUpdate<A> update) {
+        pendingUpdates.put(key, update);
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void forwardPendingUpdates() {
+        final List<KeyValue<K, AggregateUpdate<A>>> updates = new ArrayList<>();
+        try (KeyValueIterator<K, AggregateUpdate<A>> iterator = pendingUpdates.all()) {
+            iterator.forEachRemaining(updates::add);
+        }
+        updates.forEach(update -> {
+            context.forward(update.key, update.value);
+            pendingUpdates.delete(update.key);
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.kafka.api.AggregateDiffer;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.EncodedAggregateUpdate;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes aggregate updates as deltas from the previous update published for the same key, with a full checkpoint
+ * whenever the sequence crosses a multiple of the checkpoint interval.
+ *
+ * The previous updates are only held in a bounded in memory cache. A key that is not in the cache, for example
+ * after a restart or rebalance, is simply written as a checkpoint, so losing the cache never produces a delta that
+ * cannot be decoded.
+ */
+final class AggregateUpdateEncoder<K, A> implements ValueTransformerWithKey<K, AggregateUpdate<A>, EncodedAggregateUpdate<A>> {
+    private static final int CACHE_SIZE = 10000;
+
+    private final AggregateDiffer<A> differ;
+    private final long checkpointInterval;
+    private final Map<K, AggregateUpdate<A>> published = new LinkedHashMap<K, AggregateUpdate<A>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, AggregateUpdate<A>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    AggregateUpdateEncoder(final AggregateDiffer<A> differ, final long checkpointInterval) {
+        this.differ = differ;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    @Override
+    public void init(final ProcessorContext context) {
+    }
+
+    @Override
+    public EncodedAggregateUpdate<A> transform(final K key, final AggregateUpdate<A> update) {
+        final AggregateUpdate<A> previous = published.put(key, update);
+        if (isCheckpoint(previous, update))
+            return EncodedAggregateUpdate.checkpoint(update);
+        return EncodedAggregateUpdate.delta(previous.sequence(), update.sequence(),
+                differ.diff(previous.aggregate(), update.aggregate()));
+    }
+
+    @Override
+    public void close() {
+        published.clear();
+    }
+
+    private boolean isCheckpoint(final AggregateUpdate<A> previous, final AggregateUpdate<A> update) {
+        if (previous == null)
+            return true;
+        final long previousSeq = previous.sequence().getSeq();
+        final long seq = update.sequence().getSeq();
+        return seq <= previousSeq || seq / checkpointInterval != previousSeq / checkpointInterval;
+    }
+}
@@ -0,0 +1,64 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.model.ValueWithSequence;
+import io.simplesource.kafka.spec.AggregateSpec;
+import lombok.Value;
+
+/**
+ * Handles one command request against the current aggregate exactly as the topology does, checking the read sequence,
+ * running the command handler and applying the resulting events, for engines that process commands outside Kafka
+ * Streams.
+ *
+ * @param <K> the aggregate key
+ * @param <C> all commands for this aggregate
+ * @param <E> all events generated for this aggregate
+ * @param <A> the aggregate type
+ */
+public final class CommandProcessor<K, C, E, A> {
+    private final TopologyContext<K, C, E, A> ctx;
+
+    @Value
+    public static final class Processed<E, A> {
+        public final Result<CommandError, NonEmptyList<ValueWithSequence<E>>> events;
+        public final Result<CommandError, AggregateUpdate<A>> aggregateUpdate;
+        public final CommandResponse response;
+    }
+
+    public CommandProcessor(final AggregateSpec<K, C, E, A> aggregateSpec) {
+        ctx = new TopologyContext<>(aggregateSpec);
+    }
+
+    /**
+     * @param current the latest update of the aggregate, or null if no command has created it
+     * @param request the command request
+     * @return the events and updated aggregate if the command was accepted, and the response to send for it
+     */
+    public Processed<E, A> process(final AggregateUpdate<A> current, final CommandRequest<K, C> request) {
+        final CommandEvents<E, A> commandEvents = CommandRequestTransformer.getCommandEvents(ctx, current, request);
+        final AggregateUpdateResult<A> updateResult = EventSourcedStreams.getAggregateUpdateResult(ctx, commandEvents);
+        return new Processed<>(
+                commandEvents.eventValue(),
+                updateResult.updatedAggregateResult(),
+                new CommandResponse(request.commandId(), request.readSequence(),
+                        updateResult.updatedAggregateResult().map(AggregateUpdate::sequence)));
+    }
+
+    /**
+     * Applies an event read back from the event log, for rebuilding aggregates.
+     *
+     * @param current the latest update of the aggregate, or null if it has no events yet
+     * @param key the aggregate key
+     * @param event the event and its sequence
+     * @return the aggregate with the event applied
+     */
+    public AggregateUpdate<A> applyEvent(final AggregateUpdate<A> current, final K key, final ValueWithSequence<E> event) {
+        final A aggregate = current != null ? current.aggregate() : ctx.initialValue().empty(key);
+        return new AggregateUpdate<>(ctx.aggregator().applyEvent(aggregate, event.value()), event.sequence());
+    }
+}
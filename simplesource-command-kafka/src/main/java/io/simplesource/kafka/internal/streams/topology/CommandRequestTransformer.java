@@ -4,10 +4,14 @@ import io.simplesource.api.CommandError;
 import io.simplesource.data.NonEmptyList;
 import io.simplesource.data.Result;
 import io.simplesource.data.Sequence;
+import io.simplesource.kafka.internal.util.Tuple2;
 import io.simplesource.kafka.model.AggregateUpdate;
 import io.simplesource.kafka.model.CommandRequest;
 import io.simplesource.kafka.model.ValueWithSequence;
 import io.simplesource.kafka.spec.AggregateSpec;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +22,52 @@ import static io.simplesource.data.Result.failure;
 
 final class CommandRequestTransformer {
     private static final Logger logger = LoggerFactory.getLogger(CommandRequestTransformer.class);
+
+    /**
+     * Handles commands against aggregates held in a local key value store, writing each updated aggregate back to the
+     * store before the next command is handled.
+     */
+    static final class LocalStoreTransformer<K, C, E, A>
+            implements ValueTransformerWithKey<K, CommandRequest<K, C>, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> {
+        private final TopologyContext<K, C, E, A> ctx;
+        private final String storeName;
+        private final AggregateSnapshotStore<K, E, A> snapshotStore;
+        private KeyValueStore<K, AggregateUpdate<A>> store;
+
+        /**
+         * @param snapshotStore if not null, the store only caches aggregates, and any aggregate missing from it is
+         *                      rebuilt from its snapshot
+         */
+        LocalStoreTransformer(final TopologyContext<K, C, E, A> ctx, final String storeName, final AggregateSnapshotStore<K, E, A> snapshotStore) {
+            this.ctx = ctx;
+            this.storeName = storeName;
+            this.snapshotStore = snapshotStore;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void init(final ProcessorContext context) {
+            store = (KeyValueStore<K, AggregateUpdate<A>>) context.getStateStore(storeName);
+            if (snapshotStore != null) snapshotStore.init(context);
+        }
+
+        @Override
+        public Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>> transform(final K key, final CommandRequest<K, C> request) {
+            AggregateUpdate<A> current = store.get(key);
+            if (current == null && snapshotStore != null) {
+                current = snapshotStore.rehydrate(key);
+            }
+            final CommandEvents<E, A> commandEvents = getCommandEvents(ctx, current, request);
+            final AggregateUpdateResult<A> updateResult = EventSourcedStreams.getAggregateUpdateResult(ctx, commandEvents);
+            updateResult.updatedAggregateResult().ifSuccessful(update -> store.put(key, update));
+            return new Tuple2<>(commandEvents, updateResult);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     static <K, C, E, A> CommandEvents<E, A> getCommandEvents(
             TopologyContext<K, C, E, A> ctx,
             final AggregateUpdate<A> currentUpdateInput, final CommandRequest<K, C> request) {
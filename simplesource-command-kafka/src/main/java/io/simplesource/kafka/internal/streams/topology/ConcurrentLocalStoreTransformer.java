@@ -0,0 +1,195 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import io.simplesource.kafka.internal.util.Tuple2;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.CommandRequest;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * As {@link CommandRequestTransformer.LocalStoreTransformer}, but runs the command handler on a fixed set of lanes,
+ * so a slow command for one key does not hold up the commands for other keys in the same task.
+ *
+ * Commands are read into a batch, which is written to the pending command store as it is read, and the batch is
+ * handled once it is full, or on the next punctuation. Each key is hashed onto one single threaded lane, so the
+ * commands for a key are handled in the order they were read, and a command is handled against the aggregate left by
+ * the previous command for its key. The stream thread waits for every lane to finish the batch, then writes the
+ * aggregates, forwards the results and removes the commands from the pending command store, in the order the
+ * commands were read.
+ *
+ * Nothing is written from the lanes, and nothing is in flight between records, so whenever the task commits, every
+ * command it has read has either been handled, or is still in the pending command store, which is logged like any
+ * other store. Commands left pending when the task closes are handled by the next instance to initialise it, which
+ * skips them when it reads them again from the last committed offset. A command is only pending once, so a resend of
+ * a command that is still pending is skipped too, and answered by the response to the original.
+ *
+ * Results are forwarded in the context of the record or punctuation that completes their batch, not the command they
+ * are for, so lanes cannot carry a command's headers to its response, and require
+ * {@link io.simplesource.kafka.dsl.ResponseRoutingStrategy#TopicMap}.
+ */
+final class ConcurrentLocalStoreTransformer<K, C, E, A>
+        implements Transformer<K, CommandRequest<K, C>, KeyValue<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>>> {
+    static final long HANDLE_INTERVAL_IN_MILLIS = 10L;
+    static final int BATCH_SIZE_PER_LANE = 16;
+
+    private final TopologyContext<K, C, E, A> ctx;
+    private final String storeName;
+    private final String pendingStoreName;
+    private final AggregateSnapshotStore<K, E, A> snapshotStore;
+    private final int laneCount;
+    private final List<KeyValue<Long, CommandRequest<K, C>>> batch = new ArrayList<>();
+    private final Set<UUID> batchCommandIds = new HashSet<>();
+    private ExecutorService[] lanes;
+    private ProcessorContext context;
+    private KeyValueStore<K, AggregateUpdate<A>> store;
+    private KeyValueStore<Long, CommandRequest<K, C>> pendingStore;
+
+    private static final class PendingCommand<K, C, E, A> {
+        private final Long offset;
+        private final CommandRequest<K, C> request;
+        private final CompletableFuture<Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> result = new CompletableFuture<>();
+        // only read by the next command for the same key, which runs after this one on the same lane
+        private AggregateUpdate<A> aggregateAfter;
+
+        private PendingCommand(final Long offset, final CommandRequest<K, C> request) {
+            this.offset = offset;
+            this.request = request;
+        }
+    }
+
+    /**
+     * @param pendingStoreName the store of commands read but not yet handled, keyed by their offset
+     * @param snapshotStore if not null, the store only caches aggregates, and any aggregate missing from it is
+     *                      rebuilt from its snapshot
+     */
+    ConcurrentLocalStoreTransformer(
+            final TopologyContext<K, C, E, A> ctx,
+            final String storeName,
+            final String pendingStoreName,
+            final AggregateSnapshotStore<K, E, A> snapshotStore,
+            final int laneCount) {
+        this.ctx = ctx;
+        this.storeName = storeName;
+        this.pendingStoreName = pendingStoreName;
+        this.snapshotStore = snapshotStore;
+        this.laneCount = laneCount;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(final ProcessorContext context) {
+        this.context = context;
+        store = (KeyValueStore<K, AggregateUpdate<A>>) context.getStateStore(storeName);
+        pendingStore = (KeyValueStore<Long, CommandRequest<K, C>>) context.getStateStore(pendingStoreName);
+        if (snapshotStore != null) snapshotStore.init(context);
+        context.schedule(HANDLE_INTERVAL_IN_MILLIS, PunctuationType.WALL_CLOCK_TIME, timestamp -> handleBatch());
+
+        // commands read before the task last committed, but not handled before it closed
+        try (KeyValueIterator<Long, CommandRequest<K, C>> pending = pendingStore.all()) {
+            pending.forEachRemaining(this::addToBatch);
+        }
+
+        final NamedThreadFactory threadFactory = new NamedThreadFactory(
+                "CommandHandler-" + ctx.aggregateSpec().aggregateName() + "-" + context.taskId());
+        lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    @Override
+    public KeyValue<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> transform(final K key, final CommandRequest<K, C> request) {
+        final Long offset = context.offset();
+        // records read again from the last committed offset may already be pending, as may resends of a command
+        if (pendingStore.get(offset) != null || batchCommandIds.contains(request.commandId()))
+            return null;
+        pendingStore.put(offset, request);
+        addToBatch(KeyValue.pair(offset, request));
+        if (batch.size() >= laneCount * BATCH_SIZE_PER_LANE)
+            handleBatch();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // every batch is handled before the stream thread moves on, so the lanes are idle
+        for (final ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    private void addToBatch(final KeyValue<Long, CommandRequest<K, C>> entry) {
+        batch.add(entry);
+        batchCommandIds.add(entry.value.commandId());
+    }
+
+    private AggregateUpdate<A> currentAggregate(final K key) {
+        final AggregateUpdate<A> current = store.get(key);
+        return current == null && snapshotStore != null ? snapshotStore.rehydrate(key) : current;
+    }
+
+    private void handleBatch() {
+        if (batch.isEmpty())
+            return;
+        final List<PendingCommand<K, C, E, A>> commands = new ArrayList<>(batch.size());
+        final Map<K, PendingCommand<K, C, E, A>> lastByKey = new HashMap<>();
+        for (final KeyValue<Long, CommandRequest<K, C>> entry : batch) {
+            final PendingCommand<K, C, E, A> command = new PendingCommand<>(entry.key, entry.value);
+            final K key = entry.value.aggregateKey();
+            final PendingCommand<K, C, E, A> previous = lastByKey.put(key, command);
+            final AggregateUpdate<A> stored = previous == null ? currentAggregate(key) : null;
+            lanes[Math.floorMod(key.hashCode(), laneCount)].execute(() -> handle(command, previous, stored));
+            commands.add(command);
+        }
+        batch.clear();
+        batchCommandIds.clear();
+
+        for (final PendingCommand<K, C, E, A> command : commands) {
+            final K key = command.request.aggregateKey();
+            final Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>> result;
+            try {
+                result = command.result.join();
+            } catch (final CompletionException e) {
+                throw new StreamsException("Failed to handle command for key " + key, e.getCause());
+            }
+            result.v2().updatedAggregateResult().ifSuccessful(update -> store.put(key, update));
+            context.forward(key, result);
+            pendingStore.delete(command.offset);
+        }
+    }
+
+    private void handle(
+            final PendingCommand<K, C, E, A> command,
+            final PendingCommand<K, C, E, A> previous,
+            final AggregateUpdate<A> stored) {
+        final AggregateUpdate<A> current = previous != null ? previous.aggregateAfter : stored;
+        command.aggregateAfter = current;
+        try {
+            final CommandEvents<E, A> commandEvents = CommandRequestTransformer.getCommandEvents(ctx, current, command.request);
+            final AggregateUpdateResult<A> updateResult = EventSourcedStreams.getAggregateUpdateResult(ctx, commandEvents);
+            updateResult.updatedAggregateResult().ifSuccessful(update -> command.aggregateAfter = update);
+            command.result.complete(new Tuple2<>(commandEvents, updateResult));
+        } catch (final Throwable e) {
+            // an Error too, as the stream thread is waiting for the command
+            command.result.completeExceptionally(e);
+        }
+    }
+}
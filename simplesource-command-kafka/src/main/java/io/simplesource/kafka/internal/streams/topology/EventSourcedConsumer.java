@@ -1,25 +1,48 @@
 package io.simplesource.kafka.internal.streams.topology;
 
+import io.simplesource.kafka.api.AggregateDiffer;
+import io.simplesource.kafka.api.AggregateResources;
 import io.simplesource.kafka.model.AggregateUpdate;
 import io.simplesource.kafka.model.CommandRequest;
 import io.simplesource.kafka.model.CommandResponse;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Serialized;
+import org.apache.kafka.streams.state.KeyValueStore;
 
 import static io.simplesource.kafka.api.AggregateResources.TopicEntity.aggregate;
 import static io.simplesource.kafka.api.AggregateResources.TopicEntity.command_request;
 import static io.simplesource.kafka.api.AggregateResources.TopicEntity.command_response;
 
 final class EventSourcedConsumer {
-
     static <K, C> KStream<K, CommandRequest<K, C>> commandRequestStream(TopologyContext<K, C, ?, ?> ctx, final StreamsBuilder builder) {
         return builder.stream(ctx.topicName(command_request), ctx.commandRequestConsumed());
     }
 
     static <K, A> KTable<K, AggregateUpdate<A>> aggregateTable(TopologyContext<K, ?, ?, A> ctx, final StreamsBuilder builder) {
-        return builder.table(ctx.topicName(aggregate), Consumed.with(ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()));
+        final AggregateDiffer<A> differ = ctx.aggregateSpec().generation().aggregateDiffer();
+        // the store is named, rather than left to Kafka Streams, so the app can find it to answer aggregate queries
+        final String storeName = ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_table);
+        if (differ == null)
+            return builder.table(ctx.topicName(aggregate), Consumed.with(ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()),
+                    Materialized.<K, AggregateUpdate<A>, KeyValueStore<Bytes, byte[]>>as(storeName)
+                            .withKeySerde(ctx.serdes().aggregateKey())
+                            .withValueSerde(ctx.serdes().aggregateUpdate()));
+
+        // deltas only make sense against the previous update, so full values are rebuilt into the table's own store,
+        // which is not logged but rebuilt from the aggregate topic, so full values are never written back to Kafka
+        final AggregateTableStoreSupplier<K, A> storeSupplier = new AggregateTableStoreSupplier<>(ctx, storeName, differ);
+        return builder.stream(ctx.topicName(aggregate), Consumed.with(ctx.serdes().aggregateKey(), ctx.encodedAggregateUpdateSerde()))
+                .groupByKey(Serialized.with(ctx.serdes().aggregateKey(), ctx.encodedAggregateUpdateSerde()))
+                .aggregate(() -> null, (key, encoded, previous) -> AggregateTableStoreSupplier.apply(key, previous, encoded, differ),
+                        Materialized.<K, AggregateUpdate<A>>as(storeSupplier)
+                                .withKeySerde(ctx.serdes().aggregateKey())
+                                .withValueSerde(ctx.serdes().aggregateUpdate())
+                                .withLoggingDisabled());
     }
 
     static <K, C> KStream<K, CommandResponse> commandResponseStream(TopologyContext<K, C, ?, ?> ctx, final StreamsBuilder builder) {
@@ -1,10 +1,12 @@
 package io.simplesource.kafka.internal.streams.topology;
 
+import io.simplesource.kafka.api.AggregateDiffer;
 import io.simplesource.kafka.api.AggregateResources;
 import io.simplesource.kafka.model.AggregateUpdate;
 import io.simplesource.kafka.model.CommandResponse;
 import io.simplesource.kafka.model.ValueWithSequence;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Produced;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,7 +23,15 @@ final class EventSourcedPublisher {
     }
 
     static <K, A> void publishAggregateUpdates(TopologyContext<K, ?, ?, A> ctx, final KStream<K, AggregateUpdate<A>> aggregateUpdateStream) {
-        aggregateUpdateStream.to(ctx.topicName(aggregate), ctx.aggregatedUpdateProduced());
+        final AggregateDiffer<A> differ = ctx.aggregateSpec().generation().aggregateDiffer();
+        if (differ == null) {
+            aggregateUpdateStream.to(ctx.topicName(aggregate), ctx.aggregatedUpdateProduced());
+            return;
+        }
+        final long checkpointInterval = ctx.aggregateSpec().generation().aggregateCheckpointInterval();
+        aggregateUpdateStream
+                .transformValues(() -> new AggregateUpdateEncoder<>(differ, checkpointInterval))
+                .to(ctx.topicName(aggregate), Produced.with(ctx.serdes().aggregateKey(), ctx.encodedAggregateUpdateSerde()));
     }
 
     static <K> void publishCommandResponses(TopologyContext<K, ?, ?, ?> ctx, final KStream<K, CommandResponse> responseStream) {
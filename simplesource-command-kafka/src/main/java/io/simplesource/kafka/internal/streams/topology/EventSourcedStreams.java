@@ -2,22 +2,33 @@ package io.simplesource.kafka.internal.streams.topology;
 
 import io.simplesource.api.CommandError;
 import io.simplesource.data.Result;
+import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.internal.streams.statestore.ExpiringKeyValueStoreSupplier;
 import io.simplesource.kafka.internal.util.Tuple2;
 import io.simplesource.kafka.model.*;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Joined;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.Serialized;
+import org.apache.kafka.streams.kstream.ValueTransformerWithKey;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 import java.util.function.BiFunction;
 
 final class EventSourcedStreams {
     private static final Logger logger = LoggerFactory.getLogger(EventSourcedStreams.class);
+    private static final int SNAPSHOT_CACHE_SIZE = 10000;
 
     private static <K> long getResponseSequence(CommandResponse response) {
         return response.sequenceResult().getOrElse(response.readSequence()).getSeq();
@@ -28,16 +39,105 @@ final class EventSourcedStreams {
             final KStream<K, CommandRequest<K, C>> commandRequestStream,
             final KStream<K, CommandResponse> commandResponseStream) {
 
+        // only remember responses for the retention period, so the store and its changelog stay bounded
+        final ExpiringKeyValueStoreSupplier storeSupplier = new ExpiringKeyValueStoreSupplier(
+                ctx.stateStoreName(AggregateResources.StateStoreEntity.command_response_by_id),
+                ctx.commandResponseRetentionInSeconds() * 1000L);
+
         final KTable<UUID, CommandResponse> commandResponseById = commandResponseStream
                 .selectKey((key, response) -> response.commandId())
                 .groupByKey(Serialized.with(ctx.serdes().commandResponseKey(), ctx.serdes().commandResponse()))
-                .reduce((r1, r2) -> getResponseSequence(r1) > getResponseSequence(r2) ? r1 : r2);
+                .reduce((r1, r2) -> getResponseSequence(r1) > getResponseSequence(r2) ? r1 : r2,
+                        Materialized.<UUID, CommandResponse>as(storeSupplier)
+                                .withKeySerde(ctx.serdes().commandResponseKey())
+                                .withValueSerde(ctx.serdes().commandResponse())
+                                .withLoggingEnabled(storeSupplier.changelogConfig()));
 
         final KStream<K, Tuple2<CommandRequest<K, C>, CommandResponse>> reqResp = commandRequestStream
                 .selectKey((k, v) -> v.commandId())
                 .leftJoin(commandResponseById, Tuple2::new, Joined.with(ctx.serdes().commandResponseKey(), ctx.serdes().commandRequest(), ctx.serdes().commandResponse()))
                 .selectKey((k, v) -> v.v1().aggregateKey());
 
+        return splitProcessed(reqResp);
+    }
+
+    static <K, C, E, A> Tuple2<KStream<K, CommandRequest<K, C>>, KStream<K, CommandResponse>> getProcessedCommandsByAggregateKey(
+            TopologyContext<K, C, E, A> ctx,
+            final StreamsBuilder builder,
+            final KStream<K, CommandRequest<K, C>> commandRequestStream,
+            final KStream<K, CommandResponse> commandResponseStream) {
+
+        final String storeName = addCommandResponseStore(ctx, builder);
+        recordCommandResponses(ctx, commandResponseStream);
+
+        final KStream<K, Tuple2<CommandRequest<K, C>, CommandResponse>> reqResp = commandRequestStream
+                .transformValues(() -> new ValueTransformerWithKey<K, CommandRequest<K, C>, Tuple2<CommandRequest<K, C>, CommandResponse>>() {
+                    private KeyValueStore<UUID, CommandResponse> store;
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void init(final ProcessorContext context) {
+                        store = (KeyValueStore<UUID, CommandResponse>) context.getStateStore(storeName);
+                    }
+
+                    @Override
+                    public Tuple2<CommandRequest<K, C>, CommandResponse> transform(final K key, final CommandRequest<K, C> request) {
+                        return new Tuple2<>(request, store.get(request.commandId()));
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                }, storeName);
+
+        return splitProcessed(reqResp);
+    }
+
+    /**
+     * Records command responses in the store used by {@link #getProcessedCommandsByAggregateKey}. Responses are
+     * recorded as soon as they are generated, as well as when read back from the command response topic, so that a
+     * resent command is recognised even if it arrives before the original response has round tripped.
+     */
+    static <K> KStream<K, CommandResponse> recordCommandResponses(
+            TopologyContext<K, ?, ?, ?> ctx,
+            final KStream<K, CommandResponse> commandResponseStream) {
+        final String storeName = ctx.stateStoreName(AggregateResources.StateStoreEntity.command_response_by_aggregate_key);
+        return commandResponseStream
+                .transformValues(() -> new ValueTransformerWithKey<K, CommandResponse, CommandResponse>() {
+                    private KeyValueStore<UUID, CommandResponse> store;
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void init(final ProcessorContext context) {
+                        store = (KeyValueStore<UUID, CommandResponse>) context.getStateStore(storeName);
+                    }
+
+                    @Override
+                    public CommandResponse transform(final K key, final CommandResponse response) {
+                        final CommandResponse existing = store.get(response.commandId());
+                        if (existing == null || getResponseSequence(response) > getResponseSequence(existing)) {
+                            store.put(response.commandId(), response);
+                        }
+                        return response;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                }, storeName);
+    }
+
+    private static String addCommandResponseStore(TopologyContext<?, ?, ?, ?> ctx, final StreamsBuilder builder) {
+        final ExpiringKeyValueStoreSupplier storeSupplier = new ExpiringKeyValueStoreSupplier(
+                ctx.stateStoreName(AggregateResources.StateStoreEntity.command_response_by_aggregate_key),
+                ctx.commandResponseRetentionInSeconds() * 1000L);
+        builder.addStateStore(Stores.keyValueStoreBuilder(storeSupplier, ctx.serdes().commandResponseKey(), ctx.serdes().commandResponse())
+                .withLoggingEnabled(storeSupplier.changelogConfig()));
+        return storeSupplier.name();
+    }
+
+    private static <K, C> Tuple2<KStream<K, CommandRequest<K, C>>, KStream<K, CommandResponse>> splitProcessed(
+            final KStream<K, Tuple2<CommandRequest<K, C>, CommandResponse>> reqResp) {
         KStream<K, Tuple2<CommandRequest<K, C>, CommandResponse>>[] branches =
                 reqResp.branch((k, tuple) -> tuple.v2() == null, (k, tuple) -> tuple.v2() != null);
 
@@ -59,6 +159,62 @@ final class EventSourcedStreams {
                         ctx.serdes().aggregateUpdate()));
     }
 
+    static <K, C, E, A> KStream<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> getCommandResultsWithLocalStore(
+            TopologyContext<K, C, E, A> ctx,
+            final StreamsBuilder builder,
+            final KStream<K, CommandRequest<K, C>> commandRequestStream) {
+        final String storeName = ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_update);
+        final int laneCount = ctx.aggregateSpec().generation().commandHandlerLanes();
+        if (ctx.aggregateSpec().generation().snapshotPolicy() == null) {
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(storeName), ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()));
+            if (laneCount > 1) {
+                final String pendingStoreName = addPendingCommandStore(ctx, builder);
+                return commandRequestStream.transform(
+                        () -> new ConcurrentLocalStoreTransformer<>(ctx, storeName, pendingStoreName, null, laneCount),
+                        storeName, pendingStoreName);
+            }
+            return commandRequestStream.transformValues(
+                    () -> new CommandRequestTransformer.LocalStoreTransformer<>(ctx, storeName, null), storeName);
+        }
+
+        // with a snapshot policy the full aggregate is only durable in snapshots, so the local store is just a cache
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.lruMap(storeName, SNAPSHOT_CACHE_SIZE), ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate())
+                .withLoggingDisabled());
+        final String[] storeNames = withSnapshotStores(storeName, AggregateSnapshotStore.addStores(ctx, builder));
+        if (laneCount > 1) {
+            final String pendingStoreName = addPendingCommandStore(ctx, builder);
+            final String[] laneStoreNames = Arrays.copyOf(storeNames, storeNames.length + 1);
+            laneStoreNames[storeNames.length] = pendingStoreName;
+            return commandRequestStream.transform(
+                    () -> new ConcurrentLocalStoreTransformer<>(ctx, storeName, pendingStoreName, new AggregateSnapshotStore<>(ctx), laneCount),
+                    laneStoreNames);
+        }
+        return commandRequestStream.transformValues(
+                () -> new CommandRequestTransformer.LocalStoreTransformer<>(ctx, storeName, new AggregateSnapshotStore<>(ctx)), storeNames);
+    }
+
+    // commands read by the command handler lanes but not yet handled, logged so none are lost with the offsets committed
+    private static String addPendingCommandStore(TopologyContext<?, ?, ?, ?> ctx, final StreamsBuilder builder) {
+        final String pendingStoreName = ctx.stateStoreName(AggregateResources.StateStoreEntity.command_handler_lanes);
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(pendingStoreName), Serdes.Long(), ctx.serdes().commandRequest()));
+        return pendingStoreName;
+    }
+
+    static <K, E, A> KStream<K, AggregateUpdate<A>> getAggregateSnapshots(
+            TopologyContext<K, ?, E, A> ctx,
+            final KStream<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> commandResults) {
+        final String storeName = ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_update);
+        final String[] storeNames = withSnapshotStores(storeName, AggregateSnapshotStore.storeNames(ctx));
+        return commandResults.transform(() -> new AggregateSnapshotter<>(ctx, storeName), storeNames);
+    }
+
+    private static String[] withSnapshotStores(final String storeName, final String[] snapshotStoreNames) {
+        return new String[] { storeName, snapshotStoreNames[0], snapshotStoreNames[1] };
+    }
+
     static <K, E, A> KStream<K, ValueWithSequence<E>> getEventsWithSequence(final KStream<K, CommandEvents<E, A>> eventResultStream) {
         return eventResultStream.flatMapValues(result -> result.eventValue()
                 .fold(reasons -> Collections.emptyList(), ArrayList::new));
@@ -67,27 +223,30 @@ final class EventSourcedStreams {
     static <K, E, A> KStream<K, AggregateUpdateResult<A>> getAggregateUpdateResults(
             TopologyContext<K, ?, E, A> ctx,
             final KStream<K, CommandEvents<E, A>> eventResultStream) {
-        return eventResultStream
-                .mapValues((serializedKey, result) -> {
-                    final Result<CommandError, AggregateUpdate<A>> aggregateUpdateResult = result.eventValue().map(events -> {
-                        final BiFunction<AggregateUpdate<A>, ValueWithSequence<E>, AggregateUpdate<A>> reducer =
-                                (aggregateUpdate, eventWithSequence) -> new AggregateUpdate<>(
-                                        ctx.aggregator().applyEvent(aggregateUpdate.aggregate(), eventWithSequence.value()),
-                                        eventWithSequence.sequence()
-                                );
-                        return events.fold(
-                                eventWithSequence -> new AggregateUpdate<>(
-                                        ctx.aggregator().applyEvent(result.aggregate(), eventWithSequence.value()),
-                                        eventWithSequence.sequence()
-                                ),
-                                reducer
-                        );
-                    });
-                    return new AggregateUpdateResult<>(
-                            result.commandId(),
-                            result.readSequence(),
-                            aggregateUpdateResult);
-                });
+        return eventResultStream.mapValues((serializedKey, result) -> getAggregateUpdateResult(ctx, result));
+    }
+
+    static <K, E, A> AggregateUpdateResult<A> getAggregateUpdateResult(
+            TopologyContext<K, ?, E, A> ctx,
+            final CommandEvents<E, A> result) {
+        final Result<CommandError, AggregateUpdate<A>> aggregateUpdateResult = result.eventValue().map(events -> {
+            final BiFunction<AggregateUpdate<A>, ValueWithSequence<E>, AggregateUpdate<A>> reducer =
+                    (aggregateUpdate, eventWithSequence) -> new AggregateUpdate<>(
+                            ctx.aggregator().applyEvent(aggregateUpdate.aggregate(), eventWithSequence.value()),
+                            eventWithSequence.sequence()
+                    );
+            return events.fold(
+                    eventWithSequence -> new AggregateUpdate<>(
+                            ctx.aggregator().applyEvent(result.aggregate(), eventWithSequence.value()),
+                            eventWithSequence.sequence()
+                    ),
+                    reducer
+            );
+        });
+        return new AggregateUpdateResult<>(
+                result.commandId(),
+                result.readSequence(),
+                aggregateUpdateResult);
     }
 
     static <K, A> KStream<K, AggregateUpdate<A>> getAggregateUpdates(final KStream<K, AggregateUpdateResult<A>> aggregateUpdateStream) {
@@ -98,6 +257,18 @@ final class EventSourcedStreams {
                 ));
     }
 
+    static <K, A> KStream<K, AggregateUpdate<A>> batchAggregateUpdates(
+            TopologyContext<K, ?, ?, A> ctx,
+            final StreamsBuilder builder,
+            final KStream<K, AggregateUpdate<A>> aggregateUpdateStream) {
+        final String storeName = ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_update_pending);
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(storeName), ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()));
+
+        final long intervalInMillis = ctx.aggregateSpec().generation().aggregateUpdateBatchIntervalInMillis();
+        return aggregateUpdateStream.transform(() -> new AggregateUpdateBatcher<>(storeName, intervalInMillis), storeName);
+    }
+
     static <K, A>  KStream<K, CommandResponse> getCommandResponses(final KStream<K, AggregateUpdateResult<A>> aggregateUpdateStream) {
         return aggregateUpdateStream
                 .mapValues((key, update) ->
@@ -1,6 +1,9 @@
 package io.simplesource.kafka.internal.streams.topology;
 
 import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.internal.util.Tuple2;
 import io.simplesource.kafka.model.*;
 import lombok.Value;
@@ -22,23 +25,47 @@ public final class EventSourcedTopology {
         // Consume from topics
         final KStream<K, CommandRequest<K, C>> commandRequestStream = EventSourcedConsumer.commandRequestStream(ctx, builder);
         final KStream<K, CommandResponse> commandResponseStream = EventSourcedConsumer.commandResponseStream(ctx, builder);
-        final KTable<K, AggregateUpdate<A>> aggregateTable = EventSourcedConsumer.aggregateTable(ctx, builder);
         final DistributorContext<CommandResponse> distCtx = getDistributorContext(ctx);
-        final KStream<UUID, String> resultsTopicMapStream = ResultDistributor.resultTopicMapStream(distCtx,  builder);
+        final boolean routeByReplyTopic =
+                ctx.aggregateSpec().generation().responseRoutingStrategy() == ResponseRoutingStrategy.ReplyTopicHeader;
+        final KStream<UUID, String> resultsTopicMapStream = routeByReplyTopic ? null : ResultDistributor.resultTopicMapStream(distCtx,  builder);
 
         // Handle idempotence by splitting stream into processed and unprocessed
-        Tuple2<KStream<K, CommandRequest<K, C>>, KStream<K, CommandResponse>> reqResp = EventSourcedStreams.getProcessedCommands(
-                ctx, commandRequestStream, commandResponseStream);
+        final boolean deduplicateByAggregateKey =
+                ctx.aggregateSpec().generation().deduplicationStrategy() == DeduplicationStrategy.ByAggregateKey;
+        Tuple2<KStream<K, CommandRequest<K, C>>, KStream<K, CommandResponse>> reqResp = deduplicateByAggregateKey ?
+                EventSourcedStreams.getProcessedCommandsByAggregateKey(ctx, builder, commandRequestStream, commandResponseStream) :
+                EventSourcedStreams.getProcessedCommands(ctx, commandRequestStream, commandResponseStream);
         final KStream<K, CommandRequest<K, C>> unprocessedRequests = reqResp.v1();
         final KStream<K, CommandResponse> processedResponses = reqResp.v2();
         
         // Transformations
-        final KStream<K, CommandEvents<E, A>> commandEvents = EventSourcedStreams.getCommandEvents(ctx, unprocessedRequests, aggregateTable);
+        final KStream<K, CommandEvents<E, A>> commandEvents;
+        final KStream<K, AggregateUpdateResult<A>> aggregateUpdateResults;
+        final KStream<K, AggregateUpdate<A>> allAggregateUpdates;
+        if (ctx.aggregateSpec().generation().aggregateStateStrategy() == AggregateStateStrategy.LocalStore) {
+            final KStream<K, Tuple2<CommandEvents<E, A>, AggregateUpdateResult<A>>> commandResults =
+                    EventSourcedStreams.getCommandResultsWithLocalStore(ctx, builder, unprocessedRequests);
+            commandEvents = commandResults.mapValues(Tuple2::v1);
+            aggregateUpdateResults = commandResults.mapValues(Tuple2::v2);
+            allAggregateUpdates = ctx.aggregateSpec().generation().snapshotPolicy() != null ?
+                    EventSourcedStreams.getAggregateSnapshots(ctx, commandResults) :
+                    EventSourcedStreams.getAggregateUpdates(aggregateUpdateResults);
+        } else {
+            final KTable<K, AggregateUpdate<A>> aggregateTable = EventSourcedConsumer.aggregateTable(ctx, builder);
+            commandEvents = EventSourcedStreams.getCommandEvents(ctx, unprocessedRequests, aggregateTable);
+            aggregateUpdateResults = EventSourcedStreams.getAggregateUpdateResults(ctx, commandEvents);
+            allAggregateUpdates = EventSourcedStreams.getAggregateUpdates(aggregateUpdateResults);
+        }
         final KStream<K, ValueWithSequence<E>> eventsWithSequence = EventSourcedStreams.getEventsWithSequence(commandEvents);
+        // answers queries waiting for an aggregate to catch up, before any batching holds the update back
+        allAggregateUpdates.foreach((key, update) -> ctx.aggregateUpdateListener().accept(key, update));
 
-        final KStream<K, AggregateUpdateResult<A>> aggregateUpdateResults = EventSourcedStreams.getAggregateUpdateResults(ctx, commandEvents);
-        final KStream<K, AggregateUpdate<A>> aggregateUpdates = EventSourcedStreams.getAggregateUpdates(aggregateUpdateResults);
-        final KStream<K, CommandResponse>commandResponses = EventSourcedStreams.getCommandResponses(aggregateUpdateResults);
+        final KStream<K, AggregateUpdate<A>> aggregateUpdates = ctx.aggregateSpec().generation().aggregateUpdateBatchIntervalInMillis() > 0 ?
+                EventSourcedStreams.batchAggregateUpdates(ctx, builder, allAggregateUpdates) : allAggregateUpdates;
+        final KStream<K, CommandResponse> generatedResponses = EventSourcedStreams.getCommandResponses(aggregateUpdateResults);
+        final KStream<K, CommandResponse> commandResponses = deduplicateByAggregateKey ?
+                EventSourcedStreams.recordCommandResponses(ctx, generatedResponses) : generatedResponses;
 
         // Produce to topics
         EventSourcedPublisher.publishEvents(ctx, eventsWithSequence);
@@ -47,7 +74,10 @@ public final class EventSourcedTopology {
         EventSourcedPublisher.publishCommandResponses(ctx, commandResponses);
 
         // Distribute command results
-        ResultDistributor.distribute(distCtx, commandResponseStream, resultsTopicMapStream);
+        if (routeByReplyTopic)
+            ResultDistributor.distributeByReplyTopic(distCtx, commandResponseStream);
+        else
+            ResultDistributor.distribute(distCtx, commandResponseStream, resultsTopicMapStream);
 
         // return input streams
         return new InputStreams<>(commandRequestStream, commandResponseStream);
@@ -1,14 +1,24 @@
 package io.simplesource.kafka.internal.streams.topology;
 
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.internal.util.Tuple2;
 import io.simplesource.kafka.spec.WindowSpec;
+import io.simplesource.kafka.util.UuidSerde;
 import lombok.Value;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Function;
 
@@ -27,6 +37,7 @@ final class DistributorContext<V> {
 }
 
 final class ResultDistributor {
+    private static final Logger logger = LoggerFactory.getLogger(ResultDistributor.class);
 
     static KStream<UUID, String> resultTopicMapStream(DistributorContext<?> ctx, final StreamsBuilder builder) {
         return builder.stream(ctx.topicNameMapTopic, Consumed.with(ctx.serdes().uuid(), Serdes.String()));
@@ -37,13 +48,92 @@ final class ResultDistributor {
         DistributorSerdes<V> serdes = ctx.serdes();
         long retentionMillis = ctx.responseWindowSpec().retentionInSeconds() * 1000L;
 
-        KStream<String, V> joined = resultStream.selectKey((k, v) -> ctx.idMapper.apply(v))
+        KStream<UUID, Tuple2<V, String>> joined = resultStream.selectKey((k, v) -> ctx.idMapper.apply(v))
                 .join(topicNameStream,
                         Tuple2::new,
                         JoinWindows.of(retentionMillis).until(retentionMillis * 2 + 1),
-                        Joined.with(serdes.uuid(), serdes.value(), Serdes.String()))
-                .map((uuid, tuple) -> KeyValue.pair(String.format("%s:%s", tuple.v2(), uuid.toString()), tuple.v1()));
+                        Joined.with(serdes.uuid(), serdes.value(), Serdes.String()));
 
-        joined.to((key, value, context) -> key.substring(0, key.length() - 37), Produced.with(Serdes.String(), serdes.value()));
+        // responses are keyed by the 16 bytes of their id alone, as the topic they are written to already identifies the client
+        joined.to((key, value, context) -> value.v2(), Produced.with(new UuidSerde(), responseSerde(serdes.value())));
+    }
+
+    /**
+     * Sends each result to the topic named in the reply topic header it was published with, which it carries over from
+     * its request. Results without the header are dropped, as there is nowhere to send them.
+     */
+    static <V> void distributeByReplyTopic(DistributorContext<V> ctx, final KStream<?, V> resultStream) {
+        resultStream.transform(() -> new ReplyTopicTransformer<>(ctx.idMapper))
+                .to((key, value, context) -> value.v2(), Produced.with(new UuidSerde(), responseSerde(ctx.serdes().value())));
+    }
+
+    private static final class ReplyTopicTransformer<K, V> implements Transformer<K, V, KeyValue<UUID, Tuple2<V, String>>> {
+        private final Function<V, UUID> idMapper;
+        private ProcessorContext context;
+
+        private ReplyTopicTransformer(final Function<V, UUID> idMapper) {
+            this.idMapper = idMapper;
+        }
+
+        @Override
+        public void init(final ProcessorContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public KeyValue<UUID, Tuple2<V, String>> transform(final K key, final V value) {
+            final UUID id = idMapper.apply(value);
+            final Header replyTopic = context.headers().lastHeader(ResponseRoutingStrategy.REPLY_TOPIC_HEADER);
+            if (replyTopic == null) {
+                logger.warn("Dropping result {} without a {} header", id, ResponseRoutingStrategy.REPLY_TOPIC_HEADER);
+                return null;
+            }
+            return KeyValue.pair(id, Tuple2.of(value, new String(replyTopic.value(), StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Writes the response of a response and topic pair, and reads it back paired with the topic it was read from.
+     */
+    private static <V> Serde<Tuple2<V, String>> responseSerde(final Serde<V> valueSerde) {
+        final Serializer<V> valueSerializer = valueSerde.serializer();
+        final Deserializer<V> valueDeserializer = valueSerde.deserializer();
+        return Serdes.serdeFrom(
+                new Serializer<Tuple2<V, String>>() {
+                    @Override
+                    public void configure(final Map<String, ?> configs, final boolean isKey) {
+                        valueSerializer.configure(configs, isKey);
+                    }
+
+                    @Override
+                    public byte[] serialize(final String topic, final Tuple2<V, String> response) {
+                        return response == null ? null : valueSerializer.serialize(topic, response.v1());
+                    }
+
+                    @Override
+                    public void close() {
+                        valueSerializer.close();
+                    }
+                },
+                new Deserializer<Tuple2<V, String>>() {
+                    @Override
+                    public void configure(final Map<String, ?> configs, final boolean isKey) {
+                        valueDeserializer.configure(configs, isKey);
+                    }
+
+                    @Override
+                    public Tuple2<V, String> deserialize(final String topic, final byte[] data) {
+                        return data == null ? null : Tuple2.of(valueDeserializer.deserialize(topic, data), topic);
+                    }
+
+                    @Override
+                    public void close() {
+                        valueDeserializer.close();
+                    }
+                });
     }
 }
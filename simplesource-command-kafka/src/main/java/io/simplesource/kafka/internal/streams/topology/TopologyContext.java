@@ -7,12 +7,20 @@ import io.simplesource.kafka.api.AggregateSerdes;
 import io.simplesource.kafka.api.ResourceNamingStrategy;
 import io.simplesource.kafka.model.*;
 import io.simplesource.kafka.spec.AggregateSpec;
+import io.simplesource.kafka.util.EncodedAggregateUpdateSerde;
 import lombok.Value;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.Produced;
 import org.apache.kafka.streams.kstream.Serialized;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * @param <A> the aggregate aggregate_update
@@ -35,9 +43,33 @@ public final class TopologyContext<K, C, E, A> {
     final Produced<K, AggregateUpdate<A>> aggregatedUpdateProduced;
     final Produced<K, CommandResponse> commandResponseProduced;
     final Serialized<UUID, CommandResponse> serializedCommandResponse;
+    final Serde<EncodedAggregateUpdate<A>> encodedAggregateUpdateSerde;
+    final Function<Map<String, Object>, Consumer<byte[], byte[]>> aggregateTableRebuildConsumer;
+    final BiConsumer<K, AggregateUpdate<A>> aggregateUpdateListener;
 
     public TopologyContext(AggregateSpec<K, C, E, A> aggregateSpec) {
+        this(aggregateSpec, (key, update) -> { });
+    }
+
+    /**
+     * @param aggregateUpdateListener is passed every aggregate update made by the topology, as it is made
+     */
+    public TopologyContext(AggregateSpec<K, C, E, A> aggregateSpec, BiConsumer<K, AggregateUpdate<A>> aggregateUpdateListener) {
+        this(aggregateSpec, aggregateUpdateListener,
+                config -> new KafkaConsumer<>(config, new ByteArrayDeserializer(), new ByteArrayDeserializer()));
+    }
+
+    /**
+     * @param aggregateTableRebuildConsumer creates the consumer that rebuilds the aggregate table of a delta encoded
+     *                                      aggregate from the aggregate topic, given its config
+     */
+    TopologyContext(
+            AggregateSpec<K, C, E, A> aggregateSpec,
+            BiConsumer<K, AggregateUpdate<A>> aggregateUpdateListener,
+            Function<Map<String, Object>, Consumer<byte[], byte[]>> aggregateTableRebuildConsumer) {
         this.aggregateSpec = aggregateSpec;
+        this.aggregateUpdateListener = aggregateUpdateListener;
+        this.aggregateTableRebuildConsumer = aggregateTableRebuildConsumer;
         this.commandResponseRetentionInSeconds = aggregateSpec.generation().stateStoreSpec().retentionInSeconds();
         serdes = aggregateSpec.serialization().serdes();
 
@@ -47,6 +79,7 @@ public final class TopologyContext<K, C, E, A> {
         aggregatedUpdateProduced = Produced.with(serdes().aggregateKey(), serdes().aggregateUpdate());
         commandResponseProduced = Produced.with(serdes().aggregateKey(), serdes().commandResponse());
         serializedCommandResponse = Serialized.with(serdes().commandResponseKey(), serdes().commandResponse());
+        encodedAggregateUpdateSerde = new EncodedAggregateUpdateSerde<>(serdes().aggregateUpdate());
         aggregator = aggregateSpec.generation().aggregator();
         initialValue = aggregateSpec.generation().initialValue();
     }
@@ -59,6 +92,10 @@ public final class TopologyContext<K, C, E, A> {
         return resourceNamingStrategy().topicName(aggregateSpec.aggregateName(), entity.name());
     }
 
+    public String stateStoreName(AggregateResources.StateStoreEntity entity) {
+        return resourceNamingStrategy().topicName(aggregateSpec.aggregateName(), entity.name());
+    }
+
     public String aggregateName() {
         return aggregateSpec.aggregateName();
     }
@@ -0,0 +1,49 @@
+package io.simplesource.kafka.model;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateDiffer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * An aggregate update as written to the aggregate topic when delta encoding is enabled. It is either a full checkpoint
+ * of the aggregate, or a delta relative to the update at {@code baseSequence}.
+ *
+ * @param <A> the aggregate type
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class EncodedAggregateUpdate<A> {
+    private final AggregateUpdate<A> checkpoint;
+    private final Sequence baseSequence;
+    private final Sequence sequence;
+    private final byte[] delta;
+
+    public static <A> EncodedAggregateUpdate<A> checkpoint(final AggregateUpdate<A> update) {
+        return new EncodedAggregateUpdate<>(update, null, update.sequence(), null);
+    }
+
+    public static <A> EncodedAggregateUpdate<A> delta(final Sequence baseSequence, final Sequence sequence, final byte[] delta) {
+        return new EncodedAggregateUpdate<>(null, baseSequence, sequence, delta);
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint != null;
+    }
+
+    /**
+     * Reconstructs the full aggregate update.
+     *
+     * @param previous the last full update for the same key, or null if there is none
+     * @param differ the differ used to encode the delta
+     * @return the full update, or null if this is a delta that does not follow on from {@code previous}
+     */
+    public AggregateUpdate<A> decode(final AggregateUpdate<A> previous, final AggregateDiffer<A> differ) {
+        if (isCheckpoint())
+            return checkpoint;
+        if (previous == null || !previous.sequence().equals(baseSequence))
+            return null;
+        return new AggregateUpdate<>(differ.apply(previous.aggregate(), delta), sequence);
+    }
+}
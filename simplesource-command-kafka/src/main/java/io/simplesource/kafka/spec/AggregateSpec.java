@@ -5,6 +5,9 @@ import io.simplesource.api.CommandHandler;
 import io.simplesource.api.InvalidSequenceHandler;
 import io.simplesource.api.InitialValue;
 import io.simplesource.kafka.api.*;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import lombok.Value;
 
 import java.util.Map;
@@ -28,6 +31,14 @@ public final class AggregateSpec<K, C, E, A>  {
         private final WindowSpec stateStoreSpec;
         private final CommandHandler<K, C, E, A> commandHandler;
         private final InvalidSequenceHandler<K, C, A> invalidSequenceHandler;
+        private final DeduplicationStrategy deduplicationStrategy;
+        private final AggregateStateStrategy aggregateStateStrategy;
+        private final long aggregateUpdateBatchIntervalInMillis;
+        private final SnapshotPolicy snapshotPolicy;
+        private final AggregateDiffer<A> aggregateDiffer;
+        private final long aggregateCheckpointInterval;
+        private final ResponseRoutingStrategy responseRoutingStrategy;
+        private final int commandHandlerLanes;
         private final Aggregator<E, A> aggregator;
         private final InitialValue<K, A> initialValue;
     }
@@ -2,6 +2,7 @@ package io.simplesource.kafka.spec;
 
 import io.simplesource.kafka.api.CommandSerdes;
 import io.simplesource.kafka.api.ResourceNamingStrategy;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import lombok.Value;
 
 @Value
@@ -12,4 +13,5 @@ public final class CommandSpec<K, C> {
     private final CommandSerdes<K, C> serdes;
     private final WindowSpec commandResponseWindowSpec;
     private final TopicSpec outputTopicConfig;
+    private final ResponseRoutingStrategy responseRoutingStrategy;
 }
@@ -0,0 +1,22 @@
+package io.simplesource.kafka.spec;
+
+import lombok.Value;
+
+/**
+ * When to write a full snapshot of an aggregate to the aggregate topic. An aggregate is snapshotted once it has
+ * accumulated {@code eventCount} events since its last snapshot, and every {@code intervalInSeconds} if it has any
+ * events since its last snapshot. A value of zero disables that trigger.
+ */
+@Value
+public final class SnapshotPolicy {
+    private final long eventCount;
+    private final long intervalInSeconds;
+
+    public static SnapshotPolicy everyEvents(final long eventCount) {
+        return new SnapshotPolicy(eventCount, 0L);
+    }
+
+    public static SnapshotPolicy everySeconds(final long intervalInSeconds) {
+        return new SnapshotPolicy(0L, intervalInSeconds);
+    }
+}
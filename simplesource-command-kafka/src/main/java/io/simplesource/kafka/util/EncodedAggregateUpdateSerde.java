@@ -0,0 +1,113 @@
+package io.simplesource.kafka.util;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.EncodedAggregateUpdate;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Serde for {@link EncodedAggregateUpdate}. Checkpoints are written with the existing aggregate update serde, so only
+ * deltas need the {@link io.simplesource.kafka.api.AggregateDiffer} to be read back.
+ *
+ * The first byte says which of the two it is. A checkpoint is followed by the aggregate update as serialized by the
+ * wrapped serde. A delta is followed by its base sequence and sequence, eight bytes each, and then the delta itself.
+ */
+public final class EncodedAggregateUpdateSerde<A> implements Serde<EncodedAggregateUpdate<A>> {
+    private static final byte CHECKPOINT = 0;
+    private static final byte DELTA = 1;
+    private static final int DELTA_HEADER_SIZE = 1 + 2 * Long.BYTES;
+
+    private final Serde<AggregateUpdate<A>> aggregateUpdateSerde;
+
+    public EncodedAggregateUpdateSerde(final Serde<AggregateUpdate<A>> aggregateUpdateSerde) {
+        this.aggregateUpdateSerde = aggregateUpdateSerde;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+        aggregateUpdateSerde.configure(configs, isKey);
+    }
+
+    @Override
+    public void close() {
+        aggregateUpdateSerde.close();
+    }
+
+    @Override
+    public Serializer<EncodedAggregateUpdate<A>> serializer() {
+        final Serializer<AggregateUpdate<A>> checkpointSerializer = aggregateUpdateSerde.serializer();
+        return new Serializer<EncodedAggregateUpdate<A>>() {
+            @Override
+            public void configure(final Map<String, ?> configs, final boolean isKey) {
+                checkpointSerializer.configure(configs, isKey);
+            }
+
+            @Override
+            public byte[] serialize(final String topic, final EncodedAggregateUpdate<A> update) {
+                if (update == null)
+                    return null;
+                if (update.isCheckpoint()) {
+                    final byte[] checkpoint = checkpointSerializer.serialize(topic, update.checkpoint());
+                    return ByteBuffer.allocate(1 + checkpoint.length)
+                            .put(CHECKPOINT)
+                            .put(checkpoint)
+                            .array();
+                }
+                return ByteBuffer.allocate(DELTA_HEADER_SIZE + update.delta().length)
+                        .put(DELTA)
+                        .putLong(update.baseSequence().getSeq())
+                        .putLong(update.sequence().getSeq())
+                        .put(update.delta())
+                        .array();
+            }
+
+            @Override
+            public void close() {
+                checkpointSerializer.close();
+            }
+        };
+    }
+
+    @Override
+    public Deserializer<EncodedAggregateUpdate<A>> deserializer() {
+        final Deserializer<AggregateUpdate<A>> checkpointDeserializer = aggregateUpdateSerde.deserializer();
+        return new Deserializer<EncodedAggregateUpdate<A>>() {
+            @Override
+            public void configure(final Map<String, ?> configs, final boolean isKey) {
+                checkpointDeserializer.configure(configs, isKey);
+            }
+
+            @Override
+            public EncodedAggregateUpdate<A> deserialize(final String topic, final byte[] data) {
+                if (data == null)
+                    return null;
+                final ByteBuffer buffer = ByteBuffer.wrap(data);
+                final byte type = buffer.get();
+                if (type == CHECKPOINT) {
+                    final byte[] checkpoint = new byte[buffer.remaining()];
+                    buffer.get(checkpoint);
+                    return EncodedAggregateUpdate.checkpoint(checkpointDeserializer.deserialize(topic, checkpoint));
+                }
+                if (type == DELTA && data.length >= DELTA_HEADER_SIZE) {
+                    final Sequence baseSequence = Sequence.position(buffer.getLong());
+                    final Sequence sequence = Sequence.position(buffer.getLong());
+                    final byte[] delta = new byte[buffer.remaining()];
+                    buffer.get(delta);
+                    return EncodedAggregateUpdate.delta(baseSequence, sequence, delta);
+                }
+                throw new SerializationException("Unknown encoding for aggregate update on topic " + topic);
+            }
+
+            @Override
+            public void close() {
+                checkpointDeserializer.close();
+            }
+        };
+    }
+}
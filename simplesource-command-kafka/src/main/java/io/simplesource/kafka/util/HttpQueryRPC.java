@@ -0,0 +1,227 @@
+package io.simplesource.kafka.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.QueryRPC;
+import io.simplesource.kafka.internal.util.NamedThreadFactory;
+import org.apache.kafka.streams.state.HostInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link QueryRPC} over plain HTTP, using the HTTP server built into the JDK, so it needs no extra dependencies.
+ * A query is a GET of {@code /aggregates/<url encoded aggregate name>/<base64url key>}, answered with the serialized
+ * aggregate update, or with a 404 if there is none. A query waiting for the aggregate to reach a sequence adds
+ * {@code ?sequence=<sequence>&timeout=<millis>}, and is answered once the aggregate reaches it, or with a 404 once the
+ * timeout expires.
+ *
+ * Queries are served and sent on separate pools, so queries waiting on other instances never hold up the answers to
+ * queries from them. Queries waiting for a sequence are sent on a pool of their own, which grows with the number
+ * waiting, as each holds its thread until it is answered or times out, and would otherwise hold up every other query.
+ */
+public final class HttpQueryRPC implements QueryRPC {
+    private static final Logger logger = LoggerFactory.getLogger(HttpQueryRPC.class);
+    private static final String PATH = "/aggregates/";
+    public static final int DEFAULT_TIMEOUT_IN_MILLIS = 5000;
+    public static final int DEFAULT_THREAD_COUNT = 4;
+    private static final String CHARSET = "UTF-8";
+    private static final String SEQUENCE = "sequence";
+    private static final String TIMEOUT = "timeout";
+
+    private final int timeoutInMillis;
+    private final ExecutorService serverExecutor;
+    private final ExecutorService queryExecutor;
+    private final ExecutorService awaitExecutor;
+    private HttpServer server;
+
+    public HttpQueryRPC() {
+        this(DEFAULT_TIMEOUT_IN_MILLIS, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param timeoutInMillis the connect and read timeout of queries to other instances
+     * @param threadCount the number of threads serving queries, and the number sending them, which is how many queries
+     *                    to other instances are in flight at once, not counting queries waiting for a sequence
+     */
+    public HttpQueryRPC(final int timeoutInMillis, final int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Query thread count must be at least 1, got " + threadCount);
+        this.timeoutInMillis = timeoutInMillis;
+        this.serverExecutor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("HttpQueryRPC-server"));
+        this.queryExecutor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("HttpQueryRPC-query"));
+        this.awaitExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("HttpQueryRPC-await"));
+    }
+
+    @Override
+    public synchronized void serve(final HostInfo host, final LocalQueryHandler handler) {
+        if (server != null)
+            throw new IllegalStateException("Already serving queries");
+        try {
+            server = HttpServer.create(new InetSocketAddress(host.port()), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to serve queries on port " + host.port(), e);
+        }
+        server.createContext(PATH, exchange -> handle(exchange, handler));
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    private void handle(final HttpExchange exchange, final LocalQueryHandler handler) {
+        CompletableFuture<Optional<byte[]>> update;
+        try {
+            final String[] parts = exchange.getRequestURI().getRawPath().substring(PATH.length()).split("/");
+            if (parts.length != 2) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST, null);
+                return;
+            }
+            final String aggregateName = URLDecoder.decode(parts[0], CHARSET);
+            final byte[] key = Base64.getUrlDecoder().decode(parts[1]);
+            final Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            update = parameters.containsKey(SEQUENCE) ?
+                    handler.await(aggregateName, key,
+                            Sequence.position(Long.parseLong(parameters.get(SEQUENCE))),
+                            Duration.ofMillis(Long.parseLong(parameters.getOrDefault(TIMEOUT, "0")))) :
+                    CompletableFuture.completedFuture(handler.query(aggregateName, key));
+        } catch (Exception e) {
+            update = new CompletableFuture<>();
+            update.completeExceptionally(e);
+        }
+        // a query waiting for a sequence is answered once the aggregate reaches it, without holding a thread meanwhile
+        update.whenCompleteAsync((result, e) -> {
+            if (e != null) {
+                logger.error("Error answering query {}", exchange.getRequestURI(), e);
+                respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+            } else if (!result.isPresent()) {
+                respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, null);
+            } else {
+                respond(exchange, HttpURLConnection.HTTP_OK, result.get());
+            }
+        }, serverExecutor);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) {
+        try {
+            exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+            if (body != null) {
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to answer query {}", exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parameters(final String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query == null)
+            return parameters;
+        for (final String parameter : query.split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (separator > 0)
+                parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+        }
+        return parameters;
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> query(final HostInfo host, final String aggregateName, final byte[] key) {
+        return get(host, aggregateName, key, "", timeoutInMillis, queryExecutor);
+    }
+
+    /**
+     * Sends a single request, which the other instance holds until the aggregate reaches the sequence or the timeout
+     * expires.
+     */
+    @Override
+    public CompletableFuture<Optional<byte[]>> await(
+            final HostInfo host,
+            final String aggregateName,
+            final byte[] key,
+            final Sequence sequence,
+            final Duration timeout) {
+        final String query = "?" + SEQUENCE + "=" + sequence.getSeq() + "&" + TIMEOUT + "=" + timeout.toMillis();
+        return get(host, aggregateName, key, query, (int) Math.min(Integer.MAX_VALUE, timeoutInMillis + timeout.toMillis()),
+                awaitExecutor);
+    }
+
+    private CompletableFuture<Optional<byte[]>> get(
+            final HostInfo host,
+            final String aggregateName,
+            final byte[] key,
+            final String query,
+            final int readTimeoutInMillis,
+            final ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final URL url = new URL("http", host.host(), host.port(),
+                        PATH + encode(aggregateName) + "/" + Base64.getUrlEncoder().withoutPadding().encodeToString(key) + query);
+                final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                connection.setConnectTimeout(timeoutInMillis);
+                connection.setReadTimeout(readTimeoutInMillis);
+                try {
+                    final int status = connection.getResponseCode();
+                    if (status == HttpURLConnection.HTTP_NOT_FOUND)
+                        return Optional.empty();
+                    if (status != HttpURLConnection.HTTP_OK)
+                        throw new IOException("Query to " + host + " failed with status " + status);
+                    try (InputStream body = connection.getInputStream()) {
+                        return Optional.of(readAll(body));
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static String encode(final String aggregateName) throws UnsupportedEncodingException {
+        // URLEncoder encodes for forms, where a space is a '+', but in a path a '+' is just a '+'
+        return URLEncoder.encode(aggregateName, CHARSET).replace("+", "%20");
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1)
+            output.write(buffer, 0, read);
+        return output.toByteArray();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        serverExecutor.shutdown();
+        queryExecutor.shutdown();
+        awaitExecutor.shutdown();
+    }
+}
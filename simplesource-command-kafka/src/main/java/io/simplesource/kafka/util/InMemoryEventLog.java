@@ -0,0 +1,34 @@
+package io.simplesource.kafka.util;
+
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.kafka.api.EventLog;
+import io.simplesource.kafka.internal.util.Tuple2;
+import io.simplesource.kafka.model.ValueWithSequence;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link EventLog} held in memory, so the events are lost when the process stops. Suitable for tests, and for
+ * deployments that only need the log to outlive the aggregates, not the process.
+ */
+public final class InMemoryEventLog<K, E> implements EventLog<K, E> {
+    private final ConcurrentLinkedQueue<Tuple2<K, ValueWithSequence<E>>> events = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void append(final K key, final NonEmptyList<ValueWithSequence<E>> events) {
+        events.forEach(event -> this.events.add(Tuple2.of(key, event)));
+    }
+
+    @Override
+    public void replay(final BiConsumer<K, ValueWithSequence<E>> consumer) {
+        events.forEach(event -> consumer.accept(event.v1(), event.v2()));
+    }
+
+    /**
+     * @return the number of events in the log
+     */
+    public int size() {
+        return events.size();
+    }
+}
@@ -12,6 +12,7 @@ public class SpecUtils {
                 aSpec.serialization().resourceNamingStrategy(),
                 aSpec.serialization().serdes(),
                 aSpec.generation().stateStoreSpec(),
-                aSpec.generation().topicConfig().get(AggregateResources.TopicEntity.command_response));
+                aSpec.generation().topicConfig().get(AggregateResources.TopicEntity.command_response),
+                aSpec.generation().responseRoutingStrategy());
     }
 }
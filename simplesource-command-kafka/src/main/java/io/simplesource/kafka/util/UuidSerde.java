@@ -0,0 +1,70 @@
+package io.simplesource.kafka.util;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Serde that writes a {@link UUID} as its 16 bytes, most significant first, so it can be read back without any string
+ * parsing.
+ */
+public final class UuidSerde implements Serde<UUID>, Serializer<UUID>, Deserializer<UUID> {
+    public static final int SIZE = 16;
+
+    public static byte[] toBytes(final UUID uuid) {
+        final byte[] bytes = new byte[SIZE];
+        writeLong(bytes, 0, uuid.getMostSignificantBits());
+        writeLong(bytes, Long.BYTES, uuid.getLeastSignificantBits());
+        return bytes;
+    }
+
+    public static UUID fromBytes(final byte[] bytes) {
+        if (bytes.length != SIZE)
+            throw new SerializationException("Expected " + SIZE + " bytes for a UUID but got " + bytes.length);
+        return new UUID(readLong(bytes, 0), readLong(bytes, Long.BYTES));
+    }
+
+    private static void writeLong(final byte[] bytes, final int offset, final long value) {
+        for (int i = 0; i < Long.BYTES; i++)
+            bytes[offset + i] = (byte) (value >>> (8 * (Long.BYTES - 1 - i)));
+    }
+
+    private static long readLong(final byte[] bytes, final int offset) {
+        long value = 0L;
+        for (int i = 0; i < Long.BYTES; i++)
+            value = (value << 8) | (bytes[offset + i] & 0xFFL);
+        return value;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(final String topic, final UUID uuid) {
+        return uuid == null ? null : toBytes(uuid);
+    }
+
+    @Override
+    public UUID deserialize(final String topic, final byte[] data) {
+        return data == null ? null : fromBytes(data);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Serializer<UUID> serializer() {
+        return this;
+    }
+
+    @Override
+    public Deserializer<UUID> deserializer() {
+        return this;
+    }
+}
@@ -0,0 +1,87 @@
+package io.simplesource.kafka.internal.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringMapTest {
+
+    private static final class TestClock extends Clock {
+        private long millis = 0L;
+
+        void advance(long advanceMillis) {
+            millis += advanceMillis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    private final TestClock clock = new TestClock();
+    private final ExpiringMap<String, String> map = new ExpiringMap<>(10L, clock);
+    private final List<String> removed = new ArrayList<>();
+
+    @Test
+    void entriesExpireInInsertionOrderAfterRetention() {
+        map.insertIfAbsent("a", () -> "a0");
+        clock.advance(5000L);
+        map.insertIfAbsent("b", () -> "b0");
+
+        clock.advance(4999L);
+        map.removeStale(removed::add);
+        assertThat(removed).isEmpty();
+
+        clock.advance(1L);
+        map.removeStale(removed::add);
+        assertThat(removed).containsExactly("a0");
+        assertThat(map.computeIfPresent("a", v -> v + "1")).isNull();
+        assertThat(map.size()).isEqualTo(1);
+
+        clock.advance(5000L);
+        map.removeStale(removed::add);
+        assertThat(removed).containsExactly("a0", "b0");
+        assertThat(map.size()).isEqualTo(0);
+    }
+
+    @Test
+    void updatedEntriesKeepTheirExpiry() {
+        map.insertIfAbsent("a", () -> "a0");
+        map.insertIfAbsent("a", () -> "ignored");
+        assertThat(map.computeIfPresent("a", v -> "a1")).isEqualTo("a1");
+
+        clock.advance(10000L);
+        map.removeStale(removed::add);
+        assertThat(removed).containsExactly("a1");
+    }
+
+    @Test
+    void reinsertedEntryIsNotExpiredEarly() {
+        map.insertIfAbsent("a", () -> "a0");
+        map.removeAll(removed::add);
+        clock.advance(5000L);
+        map.insertIfAbsent("a", () -> "a1");
+
+        clock.advance(5000L);
+        map.removeStale(removed::add);
+        assertThat(removed).containsExactly("a0");
+        assertThat(map.computeIfPresent("a", v -> v)).isEqualTo("a1");
+    }
+}
@@ -0,0 +1,46 @@
+package io.simplesource.kafka.internal.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5L, 8);
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void timeoutFiresAfterDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.newTimeout(fired::countDown, 100L, TimeUnit.MILLISECONDS);
+        assertThat(timer.pendingTimeouts()).isEqualTo(1);
+
+        assertThat(fired.await(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100L);
+        assertThat(timer.pendingTimeouts()).isEqualTo(0);
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotFire() throws InterruptedException {
+        AtomicBoolean cancelledFired = new AtomicBoolean(false);
+        CountDownLatch laterFired = new CountDownLatch(1);
+        HashedWheelTimer.Timeout cancelled = timer.newTimeout(() -> cancelledFired.set(true), 1000L, TimeUnit.MILLISECONDS);
+        timer.newTimeout(laterFired::countDown, 1500L, TimeUnit.MILLISECONDS);
+
+        assertThat(cancelled.cancel()).isTrue();
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(timer.pendingTimeouts()).isEqualTo(1);
+
+        assertThat(laterFired.await(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(cancelledFired.get()).isFalse();
+    }
+}
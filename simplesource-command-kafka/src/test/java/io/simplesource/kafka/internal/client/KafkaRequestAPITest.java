@@ -0,0 +1,277 @@
+package io.simplesource.kafka.internal.client;
+
+import io.simplesource.data.FutureResult;
+import io.simplesource.data.Result;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
+import io.simplesource.kafka.spec.WindowSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KafkaRequestAPITest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private KafkaRequestAPI<String, String, String> requestAPI;
+    private KafkaRequestAPI<String, String, String> otherRequestAPI;
+    private BiConsumer<UUID, String> responseReceiver;
+
+    @AfterEach
+    void tearDown() {
+        requestAPI.close();
+        if (otherRequestAPI != null)
+            otherRequestAPI.close();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void unknownRequestIsLookedUp() {
+        UUID knownId = UUID.randomUUID();
+        requestAPI = requestAPI(id -> id.equals(knownId) ? Optional.of("response") : Optional.empty());
+
+        CompletableFuture<String> found = requestAPI.queryResponse(knownId, Duration.ofSeconds(1));
+        CompletableFuture<String> notFound = requestAPI.queryResponse(UUID.randomUUID(), Duration.ofSeconds(1));
+
+        assertThat(found.join()).isEqualTo("response");
+        assertThat(notFound.isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    void failedLookupIsTreatedAsNotFound() {
+        requestAPI = requestAPI(id -> {
+            throw new IllegalStateException("store unavailable");
+        });
+
+        assertThat(requestAPI.queryResponse(UUID.randomUUID(), Duration.ofSeconds(1)).isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    void requestIsSentOnTheCallbackExecutorOnceTheTopicMapIsWritten() {
+        CompletableFuture<RequestPublisher.PublishResult> topicMapWritten = new CompletableFuture<>();
+        List<Runnable> submitted = new ArrayList<>();
+        List<String> sent = new ArrayList<>();
+        requestAPI = requestAPI(
+                ResponseLookup.none(),
+                submitted::add,
+                (key, value) -> {
+                    sent.add(value);
+                    return FutureResult.of(new RequestPublisher.PublishResult(0L));
+                },
+                (key, value) -> FutureResult.ofCompletionStage(topicMapWritten, e -> e));
+
+        FutureResult<Exception, RequestPublisher.PublishResult> published = requestAPI.publishRequest("key", UUID.randomUUID(), "request");
+        topicMapWritten.complete(new RequestPublisher.PublishResult(0L));
+
+        assertThat(sent).isEmpty();
+        submitted.forEach(Runnable::run);
+        assertThat(sent).containsExactly("request");
+        assertThat(published.future().isDone()).isTrue();
+    }
+
+    @Test
+    void responseArrivingBeforeTheSendCompletesIsKept() {
+        CompletableFuture<RequestPublisher.PublishResult> requestSent = new CompletableFuture<>();
+        requestAPI = requestAPI(
+                ResponseLookup.none(),
+                null,
+                (key, value) -> FutureResult.ofCompletionStage(requestSent, e -> e),
+                (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)));
+
+        UUID requestId = UUID.randomUUID();
+        requestAPI.publishRequest("key", requestId, "request");
+        responseReceiver.accept(requestId, "response");
+        requestSent.complete(new RequestPublisher.PublishResult(0L));
+
+        assertThat(requestAPI.queryResponse(requestId, Duration.ofSeconds(1)).join()).isEqualTo("response");
+    }
+
+    @Test
+    void failedBatchSendOnlyDropsTheHandlersOfUnpublishedRequests() {
+        requestAPI = requestAPI(
+                ResponseLookup.none(),
+                null,
+                (key, value) -> value.equals("bad") ?
+                        FutureResult.fail(new IllegalStateException("send failed")) :
+                        FutureResult.of(new RequestPublisher.PublishResult(0L)),
+                (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)));
+
+        UUID published = UUID.randomUUID();
+        UUID failed = UUID.randomUUID();
+        List<FutureResult<Exception, RequestPublisher.PublishResult>> results = requestAPI.publishRequests(Arrays.asList(
+                new KafkaRequestAPI.Request<>("key", published, "good"),
+                new KafkaRequestAPI.Request<>("key", failed, "bad")));
+
+        // each request reports its own outcome
+        assertThat(results.get(0).future().join().isSuccess()).isTrue();
+        assertThat(results.get(1).future().join().isFailure()).isTrue();
+        CompletableFuture<String> publishedResponse = requestAPI.queryResponse(published, Duration.ofSeconds(1));
+        assertThat(publishedResponse.isDone()).isFalse();
+        assertThat(requestAPI.queryResponse(failed, Duration.ofSeconds(1)).isCompletedExceptionally()).isTrue();
+
+        responseReceiver.accept(published, "response");
+        assertThat(publishedResponse.join()).isEqualTo("response");
+    }
+
+    @Test
+    void eachRequestOfABatchCompletesWhenItIsSent() {
+        CompletableFuture<RequestPublisher.PublishResult> slowSend = new CompletableFuture<>();
+        requestAPI = requestAPI(
+                ResponseLookup.none(),
+                null,
+                (key, value) -> value.equals("slow") ?
+                        FutureResult.ofCompletionStage(slowSend, e -> e) :
+                        FutureResult.of(new RequestPublisher.PublishResult(0L)),
+                (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)));
+
+        List<FutureResult<Exception, RequestPublisher.PublishResult>> results = requestAPI.publishRequests(Arrays.asList(
+                new KafkaRequestAPI.Request<>("key", UUID.randomUUID(), "slow"),
+                new KafkaRequestAPI.Request<>("key", UUID.randomUUID(), "fast")));
+
+        assertThat(results.get(1).future().join().isSuccess()).isTrue();
+        assertThat(results.get(0).future().isDone()).isFalse();
+
+        slowSend.complete(new RequestPublisher.PublishResult(1L));
+        assertThat(results.get(0).future().join().isSuccess()).isTrue();
+    }
+
+    @Test
+    void failedTopicMapWriteDropsTheHandlersOfTheWholeBatch() {
+        requestAPI = requestAPI(
+                ResponseLookup.none(),
+                null,
+                (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)),
+                (key, value) -> FutureResult.fail(new IllegalStateException("send failed")));
+
+        UUID requestId = UUID.randomUUID();
+        Result<Exception, RequestPublisher.PublishResult> result = requestAPI.publishRequests(Collections.singletonList(
+                new KafkaRequestAPI.Request<>("key", requestId, "request"))).get(0).future().join();
+
+        assertThat(result.isFailure()).isTrue();
+        assertThat(requestAPI.queryResponse(requestId, Duration.ofSeconds(1)).isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    void responsesToRequestsOfAnotherClientAreReadFromTheResponseTopic() {
+        ResponseTopicLookup<String> lookup = new ResponseTopicLookup<>(KafkaRequestAPITest::responseId, 100, scheduler);
+        ResponseTopicLookup<String> otherLookup = new ResponseTopicLookup<>(KafkaRequestAPITest::responseId, 100, scheduler);
+        // both clients read every response written to the shared response topic
+        Consumer<String> responseTopic = response -> {
+            lookup.receive(response);
+            otherLookup.receive(response);
+        };
+        requestAPI = requestAPI(lookup);
+        otherRequestAPI = requestAPI(otherLookup);
+
+        UUID inFlight = UUID.randomUUID();
+        UUID written = UUID.randomUUID();
+        requestAPI.publishRequest("key", inFlight, "request");
+        requestAPI.publishRequest("key", written, "request");
+        responseTopic.accept(written + " done");
+
+        CompletableFuture<String> inFlightResponse = otherRequestAPI.queryResponse(inFlight, Duration.ofSeconds(5));
+        assertThat(otherRequestAPI.queryResponse(written, Duration.ofSeconds(1)).join()).isEqualTo(written + " done");
+        assertThat(inFlightResponse.isDone()).isFalse();
+
+        responseTopic.accept(inFlight + " done");
+        assertThat(inFlightResponse.join()).isEqualTo(inFlight + " done");
+    }
+
+    @Test
+    void unknownRequestIsWaitedForUntilTheTimeout() {
+        requestAPI = requestAPI(new ResponseTopicLookup<>(KafkaRequestAPITest::responseId, 100, scheduler));
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> response = requestAPI.queryResponse(UUID.randomUUID(), Duration.ofMillis(200));
+        assertThat(response.isDone()).isFalse();
+
+        CompletionException e = assertThrows(CompletionException.class, response::join);
+        assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(200L);
+    }
+
+    @Test
+    void sharedTimerIsLeftRunningWhenARequestAPIIsClosed() {
+        HashedWheelTimer timer = new HashedWheelTimer("shared-timer");
+        try {
+            requestAPI = requestAPI(ResponseLookup.none(), timer);
+            otherRequestAPI = requestAPI(ResponseLookup.none(), timer);
+            UUID requestId = UUID.randomUUID();
+            UUID otherRequestId = UUID.randomUUID();
+            requestAPI.publishRequest("key", requestId, "request");
+            otherRequestAPI.publishRequest("key", otherRequestId, "request");
+
+            CompletableFuture<String> closedResponse = requestAPI.queryResponse(requestId, Duration.ofSeconds(30));
+            CompletableFuture<String> response = otherRequestAPI.queryResponse(otherRequestId, Duration.ofMillis(200));
+            assertThat(requestAPI.pendingQueryTimeouts()).isEqualTo(1);
+            assertThat(otherRequestAPI.pendingQueryTimeouts()).isEqualTo(1);
+
+            requestAPI.close();
+            assertThat(closedResponse.join()).isEqualTo("Consumer closed before future.");
+            assertThat(requestAPI.pendingQueryTimeouts()).isEqualTo(0);
+            assertThat(response.join()).isEqualTo("Timeout after PT0.2S");
+            assertThat(otherRequestAPI.pendingQueryTimeouts()).isEqualTo(0);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static UUID responseId(String response) {
+        return UUID.fromString(response.substring(0, 36));
+    }
+
+    private KafkaRequestAPI<String, String, String> requestAPI(ResponseLookup<String> responseLookup) {
+        RequestPublisher<String, String> publisher = (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L));
+        return requestAPI(responseLookup, null, publisher, (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)), null);
+    }
+
+    private KafkaRequestAPI<String, String, String> requestAPI(ResponseLookup<String> responseLookup, HashedWheelTimer responseTimer) {
+        RequestPublisher<String, String> publisher = (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L));
+        return requestAPI(responseLookup, null, publisher, (key, value) -> FutureResult.of(new RequestPublisher.PublishResult(0L)), responseTimer);
+    }
+
+    private KafkaRequestAPI<String, String, String> requestAPI(
+            ResponseLookup<String> responseLookup,
+            Executor callbackExecutor,
+            RequestPublisher<String, String> requestSender,
+            RequestPublisher<UUID, String> responseTopicMapSender) {
+        return requestAPI(responseLookup, callbackExecutor, requestSender, responseTopicMapSender, null);
+    }
+
+    private KafkaRequestAPI<String, String, String> requestAPI(
+            ResponseLookup<String> responseLookup,
+            Executor callbackExecutor,
+            RequestPublisher<String, String> requestSender,
+            RequestPublisher<UUID, String> responseTopicMapSender,
+            HashedWheelTimer responseTimer) {
+        RequestAPIContext<String, String, String> ctx = RequestAPIContext.<String, String, String>builder()
+                .scheduler(scheduler)
+                .privateResponseTopic("responses")
+                .responseWindowSpec(new WindowSpec(60L))
+                .errorValue((request, e) -> e.getMessage())
+                .responseRoutingStrategy(ResponseRoutingStrategy.TopicMap)
+                .responseLookup(responseLookup)
+                .callbackExecutor(callbackExecutor)
+                .responseTimer(responseTimer)
+                .build();
+        return new KafkaRequestAPI<>(ctx, requestSender, responseTopicMapSender, receiver -> {
+            responseReceiver = receiver;
+            return () -> { };
+        }, false);
+    }
+}
@@ -0,0 +1,71 @@
+package io.simplesource.kafka.internal.client;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serdes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResponseTopicLookupTest {
+    private static final String TOPIC = "command_response";
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ResponseTopicLookup<String> lookup = new ResponseTopicLookup<>(ResponseTopicLookupTest::responseId, 100, scheduler);
+
+    @AfterEach
+    void tearDown() {
+        lookup.close();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void failedConsumerFailsTheWaitingQueriesAndIsReplaced() throws Exception {
+        MockConsumer<byte[], byte[]> failing = new MockConsumer<>(OffsetResetStrategy.LATEST);
+        MockConsumer<byte[], byte[]> replacement = new MockConsumer<>(OffsetResetStrategy.LATEST);
+        Iterator<MockConsumer<byte[], byte[]>> consumers = Arrays.asList(failing, replacement).iterator();
+        CompletableFuture<Optional<String>> waiting = lookup.await(UUID.randomUUID(), Duration.ofSeconds(30));
+
+        failing.schedulePollTask(() -> {
+            throw new KafkaException("Consumer failed");
+        });
+        lookup.start(consumers::next, TOPIC, Serdes.String().deserializer());
+
+        // responses may have been missed while the consumer was down
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(KafkaException.class);
+
+        UUID id = UUID.randomUUID();
+        TopicPartition partition = new TopicPartition(TOPIC, 0);
+        replacement.schedulePollTask(() -> {
+            replacement.rebalance(Collections.singletonList(partition));
+            replacement.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+            replacement.seek(partition, 0L);
+            replacement.addRecord(new ConsumerRecord<>(TOPIC, 0, 0L, new byte[0], "not a response".getBytes(StandardCharsets.UTF_8)));
+            replacement.addRecord(new ConsumerRecord<>(TOPIC, 0, 1L, new byte[0], (id + " done").getBytes(StandardCharsets.UTF_8)));
+        });
+        assertThat(lookup.await(id, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS)).isEqualTo(Optional.of(id + " done"));
+        assertThat(failing.closed()).isTrue();
+    }
+
+    private static UUID responseId(String response) {
+        return UUID.fromString(response.substring(0, 36));
+    }
+}
@@ -0,0 +1,155 @@
+package io.simplesource.kafka.internal.client;
+
+import io.simplesource.kafka.util.UuidSerde;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serdes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedResponseConsumerTest {
+    private final MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final SharedResponseConsumer sharedConsumer = new SharedResponseConsumer(() -> consumer, 1);
+
+    @Test
+    void responsesAreRoutedToTheReceiverOfTheirTopic() throws InterruptedException {
+        Map<UUID, String> received = new ConcurrentHashMap<>();
+        CountDownLatch receivedBoth = new CountDownLatch(2);
+        ResponseSubscription subscription1 = sharedConsumer.subscribe("responses-1", Serdes.String(), (id, r) -> {
+            received.put(id, "1:" + r);
+            receivedBoth.countDown();
+        });
+        ResponseSubscription subscription2 = sharedConsumer.subscribe("responses-2", Serdes.String(), (id, r) -> {
+            received.put(id, "2:" + r);
+            receivedBoth.countDown();
+        });
+        awaitSubscription(2);
+
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        TopicPartition partition1 = new TopicPartition("responses-1", 0);
+        TopicPartition partition2 = new TopicPartition("responses-2", 0);
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(Arrays.asList(partition1, partition2));
+            Map<TopicPartition, Long> offsets = new HashMap<>();
+            offsets.put(partition1, 0L);
+            offsets.put(partition2, 0L);
+            consumer.updateBeginningOffsets(offsets);
+            consumer.addRecord(response(partition1, id1, "a"));
+            consumer.addRecord(response(partition2, id2, "b"));
+        });
+
+        assertThat(receivedBoth.await(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(received.get(id1)).isEqualTo("1:a");
+        assertThat(received.get(id2)).isEqualTo("2:b");
+
+        subscription1.close();
+        awaitSubscription(1);
+        assertThat(consumer.subscription()).containsExactly("responses-2");
+        assertThat(consumer.closed()).isFalse();
+
+        subscription2.close();
+        awaitClosed();
+    }
+
+    @Test
+    void responsesAfterABadResponseAreStillReceived() throws InterruptedException {
+        Map<UUID, Long> received = new ConcurrentHashMap<>();
+        CountDownLatch receivedLast = new CountDownLatch(1);
+        UUID failingId = UUID.randomUUID();
+        UUID lastId = UUID.randomUUID();
+        ResponseSubscription subscription = sharedConsumer.subscribe("responses-1", Serdes.Long(), (id, r) -> {
+            if (id.equals(failingId))
+                throw new IllegalStateException("Receiver failed");
+            received.put(id, r);
+            if (id.equals(lastId))
+                receivedLast.countDown();
+        });
+        awaitSubscription(1);
+
+        TopicPartition partition = new TopicPartition("responses-1", 0);
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(Collections.singletonList(partition));
+            consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+            // not a long, so the response cannot be deserialized
+            consumer.addRecord(response(partition, UUID.randomUUID(), "a"));
+            consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), 1L,
+                    UuidSerde.toBytes(failingId), Serdes.Long().serializer().serialize(partition.topic(), 1L)));
+            consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), 2L,
+                    UuidSerde.toBytes(lastId), Serdes.Long().serializer().serialize(partition.topic(), 2L)));
+        });
+
+        assertThat(receivedLast.await(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsOnlyKeys(lastId);
+        assertThat(consumer.closed()).isFalse();
+
+        subscription.close();
+        awaitClosed();
+    }
+
+    @Test
+    void failedConsumerIsStartedAgainByTheNextSubscription() throws InterruptedException {
+        MockConsumer<byte[], byte[]> replacement = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        Iterator<MockConsumer<byte[], byte[]>> consumers = Arrays.asList(consumer, replacement).iterator();
+        SharedResponseConsumer restartingConsumer = new SharedResponseConsumer(consumers::next, 1);
+        ResponseSubscription subscription1 = restartingConsumer.subscribe("responses-1", Serdes.String(), (id, r) -> { });
+        awaitSubscription(1);
+
+        consumer.schedulePollTask(() -> {
+            throw new KafkaException("Consumer failed");
+        });
+        awaitClosed();
+
+        ResponseSubscription subscription2 = restartingConsumer.subscribe("responses-2", Serdes.String(), (id, r) -> { });
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (replacement.subscription().size() != 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10L);
+        assertThat(replacement.subscription()).containsOnly("responses-1", "responses-2");
+
+        subscription1.close();
+        subscription2.close();
+    }
+
+    @Test
+    void responseIdsAreReadFromBinaryAndLegacyKeys() {
+        UUID id = UUID.randomUUID();
+
+        assertThat(KafkaConsumerRunner.responseId(UuidSerde.toBytes(id))).isEqualTo(id);
+        assertThat(KafkaConsumerRunner.responseId(String.format("%s:%s", "responses-1", id).getBytes(StandardCharsets.UTF_8)))
+                .isEqualTo(id);
+    }
+
+    private static ConsumerRecord<byte[], byte[]> response(TopicPartition partition, UUID id, String value) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), 0L,
+                UuidSerde.toBytes(id), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void awaitSubscription(int topicCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (consumer.subscription().size() != topicCount && System.currentTimeMillis() < deadline)
+            Thread.sleep(10L);
+        assertThat(consumer.subscription()).hasSize(topicCount);
+    }
+
+    private void awaitClosed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!consumer.closed() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10L);
+        assertThat(consumer.closed()).isTrue();
+    }
+}
@@ -0,0 +1,222 @@
+package io.simplesource.kafka.internal.embedded;
+
+import io.simplesource.api.CommandAPI;
+import io.simplesource.api.CommandError;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.api.EventLog;
+import io.simplesource.kafka.dsl.AggregateBuilder;
+import io.simplesource.kafka.internal.streams.MockInMemorySerde;
+import io.simplesource.kafka.internal.streams.model.TestAggregate;
+import io.simplesource.kafka.internal.streams.model.TestCommand;
+import io.simplesource.kafka.internal.streams.model.TestEvent;
+import io.simplesource.kafka.internal.streams.model.TestHandlers;
+import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.spec.AggregateSpec;
+import io.simplesource.kafka.util.InMemoryEventLog;
+import io.simplesource.kafka.util.PrefixResourceNamingStrategy;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedCommandAPITest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final AggregateSpec<String, TestCommand, TestEvent, Optional<TestAggregate>> aggregateSpec =
+            AggregateBuilder.<String, TestCommand, TestEvent, Optional<TestAggregate>>newBuilder()
+                    .withName("testaggregate")
+                    .withSerdes(aggregateSerdes())
+                    .withResourceNamingStrategy(new PrefixResourceNamingStrategy("", "-"))
+                    .withInitialValue(k -> Optional.empty())
+                    .withCommandHandler(TestHandlers.commandHandler)
+                    .withAggregator(TestHandlers.eventAggregator)
+                    .build();
+    private final InMemoryEventLog<String, TestEvent> eventLog = new InMemoryEventLog<>();
+    private ScheduledExecutorService scheduler;
+    private EmbeddedCommandAPI<String, TestCommand, TestEvent, Optional<TestAggregate>> commandAPI;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        commandAPI = new EmbeddedCommandAPI<>(aggregateSpec, eventLog, 4, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        commandAPI.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void commandsAreHandledInOrderPerKey() {
+        final Sequence created = publishAndQuery("key", Sequence.first(), new TestCommand.CreateCommand("Name"))
+                .getOrElse(null);
+        assertThat(created).isEqualTo(Sequence.first().next());
+
+        final Sequence updated = publishAndQuery("key", created, new TestCommand.UpdateWithNothingCommand("Updated"))
+                .getOrElse(null);
+        assertThat(updated).isEqualTo(Sequence.position(4));
+        assertThat(eventLog.size()).isEqualTo(4);
+    }
+
+    @Test
+    void rejectedCommandsAppendNoEvents() {
+        final Result<CommandError, Sequence> rejected = publishAndQuery("key", Sequence.first(), new TestCommand.UpdateCommand("Name"));
+        assertThat(rejected.failureReasons().map(reasons -> reasons.head().getReason()))
+                .isEqualTo(Optional.of(CommandError.Reason.InvalidCommand));
+
+        final Result<CommandError, Sequence> invalidSequence = publishAndQuery("key", Sequence.position(5), new TestCommand.CreateCommand("Name"));
+        assertThat(invalidSequence.failureReasons().map(reasons -> reasons.head().getReason()))
+                .isEqualTo(Optional.of(CommandError.Reason.InvalidReadSequence));
+        assertThat(eventLog.size()).isEqualTo(0);
+    }
+
+    @Test
+    void resentCommandsAreHandledOnce() {
+        final CommandAPI.Request<String, TestCommand> request =
+                new CommandAPI.Request<>("key", Sequence.first(), UUID.randomUUID(), new TestCommand.CreateCommand("Name"));
+        commandAPI.publishCommand(request);
+        commandAPI.publishCommand(request);
+
+        assertThat(commandAPI.queryCommandResult(request.commandId(), TIMEOUT).unsafePerform(this::internalError).isSuccess())
+                .isTrue();
+        // a command published after the resent one is only handled after it
+        assertThat(publishAndQuery("other", Sequence.first(), new TestCommand.CreateCommand("Other")).isSuccess()).isTrue();
+        assertThat(eventLog.size()).isEqualTo(2);
+    }
+
+    @Test
+    void aggregatesAreRebuiltFromTheEventLog() {
+        final Sequence created = publishAndQuery("key", Sequence.first(), new TestCommand.CreateCommand("Name"))
+                .getOrElse(null);
+        commandAPI.close();
+
+        commandAPI = new EmbeddedCommandAPI<>(aggregateSpec, eventLog, 2, scheduler);
+        assertThat(publishAndQuery("key", created, new TestCommand.UpdateCommand("Updated")).getOrElse(null))
+                .isEqualTo(created.next());
+    }
+
+    @Test
+    void queryingAnUnknownCommandTimesOut() {
+        final Result<CommandError, Sequence> result = commandAPI.queryCommandResult(UUID.randomUUID(), Duration.ofMillis(50))
+                .unsafePerform(this::internalError);
+        assertThat(result.failureReasons().map(reasons -> reasons.head().getReason()))
+                .isEqualTo(Optional.of(CommandError.Reason.Timeout));
+    }
+
+    @Test
+    void publishingToAFullLaneFails() throws InterruptedException {
+        final CountDownLatch appending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EventLog<String, TestEvent> blockingLog = new EventLog<String, TestEvent>() {
+            @Override
+            public void append(String key, NonEmptyList<ValueWithSequence<TestEvent>> events) {
+                appending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void replay(BiConsumer<String, ValueWithSequence<TestEvent>> consumer) {
+            }
+        };
+        commandAPI.close();
+        commandAPI = new EmbeddedCommandAPI<>(aggregateSpec, blockingLog, 1, 1, scheduler);
+
+        final CommandAPI.Request<String, TestCommand> handling = request("first");
+        assertThat(commandAPI.publishCommand(handling).unsafePerform(this::internalError).isSuccess()).isTrue();
+        appending.await();
+        final CommandAPI.Request<String, TestCommand> queued = request("second");
+        assertThat(commandAPI.publishCommand(queued).unsafePerform(this::internalError).isSuccess()).isTrue();
+
+        final Result<CommandError, UUID> rejected = commandAPI.publishCommand(request("third")).unsafePerform(this::internalError);
+        assertThat(rejected.failureReasons().map(reasons -> reasons.head().getReason()))
+                .isEqualTo(Optional.of(CommandError.Reason.CommandPublishError));
+
+        release.countDown();
+        assertThat(commandAPI.queryCommandResult(queued.commandId(), TIMEOUT).unsafePerform(this::internalError).isSuccess())
+                .isTrue();
+    }
+
+    @Test
+    void responsesAreExpiredWithAZeroRetention() {
+        commandAPI.close();
+        final AggregateSpec<String, TestCommand, TestEvent, Optional<TestAggregate>> noRetention =
+                AggregateBuilder.<String, TestCommand, TestEvent, Optional<TestAggregate>>newBuilder()
+                        .withName("testaggregate")
+                        .withSerdes(aggregateSerdes())
+                        .withResourceNamingStrategy(new PrefixResourceNamingStrategy("", "-"))
+                        .withInitialValue(k -> Optional.empty())
+                        .withCommandHandler(TestHandlers.commandHandler)
+                        .withAggregator(TestHandlers.eventAggregator)
+                        .withCommandResponseRetention(0L)
+                        .build();
+        commandAPI = new EmbeddedCommandAPI<>(noRetention, eventLog, 1, scheduler);
+
+        assertThat(publishAndQuery("key", Sequence.first(), new TestCommand.CreateCommand("Name")).isSuccess()).isTrue();
+    }
+
+    private static CommandAPI.Request<String, TestCommand> request(final String key) {
+        return new CommandAPI.Request<>(key, Sequence.first(), UUID.randomUUID(), new TestCommand.CreateCommand("Name"));
+    }
+
+    private Result<CommandError, Sequence> publishAndQuery(final String key, final Sequence readSequence, final TestCommand command) {
+        return commandAPI.publishAndQueryCommand(new CommandAPI.Request<>(key, readSequence, UUID.randomUUID(), command), TIMEOUT)
+                .unsafePerform(this::internalError);
+    }
+
+    private CommandError internalError(final Exception e) {
+        return CommandError.of(CommandError.Reason.InternalError, e);
+    }
+
+    private static AggregateSerdes<String, TestCommand, TestEvent, Optional<TestAggregate>> aggregateSerdes() {
+        return new AggregateSerdes<String, TestCommand, TestEvent, Optional<TestAggregate>>() {
+            @Override
+            public Serde<String> aggregateKey() {
+                return Serdes.String();
+            }
+
+            @Override
+            public Serde<CommandRequest<String, TestCommand>> commandRequest() {
+                return new MockInMemorySerde<>();
+            }
+
+            @Override
+            public Serde<UUID> commandResponseKey() {
+                return new MockInMemorySerde<>();
+            }
+
+            @Override
+            public Serde<ValueWithSequence<TestEvent>> valueWithSequence() {
+                return new MockInMemorySerde<>();
+            }
+
+            @Override
+            public Serde<AggregateUpdate<Optional<TestAggregate>>> aggregateUpdate() {
+                return new MockInMemorySerde<>();
+            }
+
+            @Override
+            public Serde<CommandResponse> commandResponse() {
+                return new MockInMemorySerde<>();
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package io.simplesource.kafka.internal.streams;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.AggregateUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregateUpdateWaitersTest {
+    private final AggregateUpdateWaiters<String, String> waiters = new AggregateUpdateWaiters<>();
+
+    @Test
+    void waiterIsCompletedByTheFirstUpdateReachingItsSequence() {
+        CompletableFuture<AggregateUpdate<String>> waiter = waiters.await("key", Sequence.position(2L));
+
+        waiters.updated("key", new AggregateUpdate<>("one", Sequence.position(1L)));
+        assertThat(waiter.isDone()).isFalse();
+
+        AggregateUpdate<String> update = new AggregateUpdate<>("three", Sequence.position(3L));
+        waiters.updated("key", update);
+        assertThat(waiter.join()).isEqualTo(update);
+        assertThat(waiters.size()).isEqualTo(0);
+    }
+
+    @Test
+    void updatesOnlyCompleteWaitersForTheirKey() {
+        CompletableFuture<AggregateUpdate<String>> waiter = waiters.await("key", Sequence.position(1L));
+        CompletableFuture<AggregateUpdate<String>> other = waiters.await("other", Sequence.position(1L));
+
+        waiters.updated("key", new AggregateUpdate<>("one", Sequence.position(1L)));
+        assertThat(waiter.isDone()).isTrue();
+        assertThat(other.isDone()).isFalse();
+        assertThat(waiters.size()).isEqualTo(1);
+    }
+
+    @Test
+    void waiterCompletedElsewhereIsRemoved() {
+        CompletableFuture<AggregateUpdate<String>> waiter = waiters.await("key", Sequence.position(1L));
+        waiters.await("key", Sequence.position(2L));
+        assertThat(waiters.size()).isEqualTo(2);
+
+        // as when a query times out
+        waiter.complete(null);
+        assertThat(waiters.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,99 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
+import io.simplesource.kafka.internal.streams.MockInMemorySerde;
+import io.simplesource.kafka.internal.streams.model.TestAggregate;
+import io.simplesource.kafka.internal.streams.model.TestCommand;
+import io.simplesource.kafka.internal.streams.model.TestEvent;
+import io.simplesource.kafka.internal.streams.model.TestHandlers;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.ValueWithSequence;
+import io.simplesource.kafka.spec.SnapshotPolicy;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregateSnapshotStoreTest {
+    private static final String key = "key";
+    private AggregateSnapshotStore<String, TestEvent, Optional<TestAggregate>> snapshotStore;
+
+    @BeforeEach
+    void setUp() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = new TestContextBuilder()
+                .withAggregator(TestHandlers.eventAggregator)
+                .withCommandHandler(TestHandlers.commandHandler)
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withSnapshotPolicy(SnapshotPolicy.everyEvents(10))
+                .buildContext();
+
+        String[] storeNames = AggregateSnapshotStore.storeNames(ctx);
+        MockProcessorContext context = new MockProcessorContext();
+        StateStore snapshots = Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(storeNames[0]),
+                ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()).withLoggingDisabled().build();
+        StateStore events = Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(storeNames[1]),
+                Serdes.Bytes(), ctx.serdes().valueWithSequence()).withLoggingDisabled().build();
+        snapshots.init(context, snapshots);
+        events.init(context, events);
+
+        snapshotStore = new AggregateSnapshotStore<>(ctx);
+        snapshotStore.init(context);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockInMemorySerde.resetCache();
+    }
+
+    @Test
+    void unknownAggregateIsNotRehydrated() {
+        assertThat(snapshotStore.rehydrate(key)).isNull();
+        assertThat(snapshotStore.keysWithEventsSinceSnapshot()).isEmpty();
+    }
+
+    @Test
+    void rehydrateFromEventsWithoutSnapshot() {
+        snapshotStore.appendEvents(key, NonEmptyList.of(
+                event(new TestEvent.Created("name 1"), 1),
+                event(new TestEvent.Updated("name 2"), 2)));
+
+        AggregateUpdate<Optional<TestAggregate>> update = snapshotStore.rehydrate(key);
+        assertThat(update.sequence()).isEqualTo(Sequence.position(2));
+        assertThat(update.aggregate()).isEqualTo(Optional.of(new TestAggregate("name 2")));
+        assertThat(snapshotStore.hasEventsSinceSnapshot(key, Sequence.position(2), 2)).isTrue();
+        assertThat(snapshotStore.hasEventsSinceSnapshot(key, Sequence.position(2), 3)).isFalse();
+        assertThat(snapshotStore.keysWithEventsSinceSnapshot()).containsExactly(key);
+    }
+
+    @Test
+    void rehydrateFromSnapshotAndLaterEvents() {
+        snapshotStore.appendEvents(key, NonEmptyList.of(
+                event(new TestEvent.Created("name 1"), 1),
+                event(new TestEvent.Updated("name 2"), 2)));
+        snapshotStore.snapshot(key, new AggregateUpdate<>(Optional.of(new TestAggregate("name 2")), Sequence.position(2)));
+        assertThat(snapshotStore.keysWithEventsSinceSnapshot()).isEmpty();
+
+        snapshotStore.appendEvents(key, NonEmptyList.of(event(new TestEvent.Updated("name 3"), 3)));
+
+        AggregateUpdate<Optional<TestAggregate>> update = snapshotStore.rehydrate(key);
+        assertThat(update.sequence()).isEqualTo(Sequence.position(3));
+        assertThat(update.aggregate()).isEqualTo(Optional.of(new TestAggregate("name 3")));
+        assertThat(snapshotStore.hasEventsSinceSnapshot(key, Sequence.position(3), 1)).isTrue();
+        assertThat(snapshotStore.hasEventsSinceSnapshot(key, Sequence.position(3), 2)).isFalse();
+    }
+
+    private static ValueWithSequence<TestEvent> event(TestEvent event, long sequence) {
+        return new ValueWithSequence<>(event, Sequence.position(sequence));
+    }
+}
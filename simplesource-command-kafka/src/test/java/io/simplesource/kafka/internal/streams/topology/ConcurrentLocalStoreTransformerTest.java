@@ -0,0 +1,186 @@
+package io.simplesource.kafka.internal.streams.topology;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
+import io.simplesource.kafka.internal.streams.MockInMemorySerde;
+import io.simplesource.kafka.internal.streams.model.TestAggregate;
+import io.simplesource.kafka.internal.streams.model.TestCommand;
+import io.simplesource.kafka.internal.streams.model.TestEvent;
+import io.simplesource.kafka.internal.streams.model.TestHandlers;
+import io.simplesource.kafka.internal.util.Tuple2;
+import io.simplesource.kafka.model.AggregateUpdate;
+import io.simplesource.kafka.model.CommandRequest;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConcurrentLocalStoreTransformerTest {
+    private static final int LANE_COUNT = 4;
+    private TestContextBuilder ctxBuilder;
+    private MockProcessorContext context;
+    private KeyValueStore<String, AggregateUpdate<Optional<TestAggregate>>> store;
+    private KeyValueStore<Long, CommandRequest<String, TestCommand>> pendingStore;
+    private ConcurrentLocalStoreTransformer<String, TestCommand, TestEvent, Optional<TestAggregate>> transformer;
+
+    @BeforeEach
+    void setUp() {
+        ctxBuilder = new TestContextBuilder()
+                .withAggregator(TestHandlers.eventAggregator)
+                .withCommandHandler(TestHandlers.commandHandler)
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withCommandHandlerLanes(LANE_COUNT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (transformer != null) transformer.close();
+        MockInMemorySerde.resetCache();
+    }
+
+    @Test
+    void pendingCommandsAreHandledByTheNextInstanceOfTheTask() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        initStores(ctx);
+        transformer = initTransformer(ctx);
+        List<CommandRequest<String, TestCommand>> requests = IntStream.range(0, 3)
+                .mapToObj(i -> create("key " + i))
+                .collect(Collectors.toList());
+        for (int i = 0; i < requests.size(); i++) {
+            transform(i, requests.get(i));
+        }
+        assertThat(context.forwarded()).isEmpty();
+        assertThat(pendingStore.approximateNumEntries()).isEqualTo(3L);
+
+        // the task closes with the batch unhandled and its offsets not committed, so the next instance has the
+        // pending commands from the store, and reads the same records again
+        transformer.close();
+        transformer = initTransformer(ctx);
+        for (int i = 0; i < requests.size(); i++) {
+            transform(i, requests.get(i));
+        }
+        punctuate();
+
+        assertThat(forwardedKeys()).containsExactly("key 0", "key 1", "key 2");
+        forwardedResults().forEach(result -> assertThat(result.updatedAggregateResult().isSuccess()).isTrue());
+        assertThat(pendingStore.approximateNumEntries()).isEqualTo(0L);
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.get("key " + i).aggregate()).isEqualTo(Optional.of(new TestAggregate("key " + i)));
+        }
+    }
+
+    @Test
+    void resendOfAPendingCommandIsHandledOnce() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        initStores(ctx);
+        transformer = initTransformer(ctx);
+        CommandRequest<String, TestCommand> request = create("key 0");
+        transform(0, request);
+        transform(1, request);
+        punctuate();
+
+        assertThat(forwardedKeys()).containsExactly("key 0");
+        assertThat(forwardedResults().get(0).updatedAggregateResult().isSuccess()).isTrue();
+        assertThat(pendingStore.approximateNumEntries()).isEqualTo(0L);
+    }
+
+    @Test
+    void fullBatchIsHandledWithoutWaitingForPunctuation() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        initStores(ctx);
+        transformer = initTransformer(ctx);
+        int batchSize = LANE_COUNT * ConcurrentLocalStoreTransformer.BATCH_SIZE_PER_LANE;
+        for (int i = 0; i < batchSize; i++) {
+            transform(i, "key " + i);
+        }
+
+        assertThat(forwardedKeys()).hasSize(batchSize);
+        assertThat(forwardedKeys().get(batchSize - 1)).isEqualTo("key " + (batchSize - 1));
+        assertThat(pendingStore.approximateNumEntries()).isEqualTo(0L);
+    }
+
+    @Test
+    void errorInCommandHandlerFailsTheBatch() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withCommandHandler((key, aggregate, command) -> {
+                    throw new AssertionError("Command handler failed");
+                })
+                .buildContext();
+        initStores(ctx);
+        transformer = initTransformer(ctx);
+        transform(0, "key 0");
+
+        // the stream thread must not wait forever for a lane whose command handler threw an Error
+        assertThrows(StreamsException.class, this::punctuate);
+        assertThat(context.forwarded()).isEmpty();
+        assertThat(pendingStore.approximateNumEntries()).isEqualTo(1L);
+    }
+
+    private void initStores(TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
+        context = new MockProcessorContext();
+        store = Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_update)),
+                ctx.serdes().aggregateKey(), ctx.serdes().aggregateUpdate()).withLoggingDisabled().build();
+        pendingStore = Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(ctx.stateStoreName(AggregateResources.StateStoreEntity.command_handler_lanes)),
+                Serdes.Long(), ctx.serdes().commandRequest()).withLoggingDisabled().build();
+        store.init(context, store);
+        pendingStore.init(context, pendingStore);
+    }
+
+    private ConcurrentLocalStoreTransformer<String, TestCommand, TestEvent, Optional<TestAggregate>> initTransformer(
+            TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
+        ConcurrentLocalStoreTransformer<String, TestCommand, TestEvent, Optional<TestAggregate>> transformer =
+                new ConcurrentLocalStoreTransformer<>(ctx, store.name(), pendingStore.name(), null, LANE_COUNT);
+        transformer.init(context);
+        return transformer;
+    }
+
+    private void transform(long offset, String key) {
+        transform(offset, create(key));
+    }
+
+    private void transform(long offset, CommandRequest<String, TestCommand> request) {
+        context.setOffset(offset);
+        transformer.transform(request.aggregateKey(), request);
+    }
+
+    private static CommandRequest<String, TestCommand> create(String key) {
+        return new CommandRequest<>(key, new TestCommand.CreateCommand(key), Sequence.first(), UUID.randomUUID());
+    }
+
+    // the punctuation of the latest instance of the transformer
+    private void punctuate() {
+        List<MockProcessorContext.CapturedPunctuator> punctuators = context.scheduledPunctuators();
+        punctuators.get(punctuators.size() - 1).getPunctuator().punctuate(0L);
+    }
+
+    private List<String> forwardedKeys() {
+        return context.forwarded().stream()
+                .map(forward -> (String) forward.keyValue().key)
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AggregateUpdateResult<Optional<TestAggregate>>> forwardedResults() {
+        return context.forwarded().stream()
+                .map(forward -> ((Tuple2<?, AggregateUpdateResult<Optional<TestAggregate>>>) forward.keyValue().value).v2())
+                .collect(Collectors.toList());
+    }
+}
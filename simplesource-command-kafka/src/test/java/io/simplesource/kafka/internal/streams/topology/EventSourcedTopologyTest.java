@@ -4,16 +4,27 @@ import io.simplesource.api.CommandError;
 import io.simplesource.data.NonEmptyList;
 import io.simplesource.data.Result;
 import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateDiffer;
 import io.simplesource.kafka.api.AggregateResources;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
 import io.simplesource.kafka.dsl.InvalidSequenceStrategy;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.internal.streams.MockInMemorySerde;
 import io.simplesource.kafka.internal.streams.model.TestAggregate;
 import io.simplesource.kafka.internal.streams.model.TestCommand;
 import io.simplesource.kafka.internal.streams.model.TestEvent;
 import io.simplesource.kafka.internal.streams.model.TestHandlers;
 import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.spec.SnapshotPolicy;
+import io.simplesource.kafka.util.UuidSerde;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.TopologyDescription;
 import org.apache.kafka.streams.TopologyTestDriver;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
@@ -26,10 +37,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 import scala.collection.immutable.Stream;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +56,17 @@ class EventSourcedTopologyTest {
     private TopologyTestDriver driver = null;
     private TestContextBuilder ctxBuilder = null;
     private static final String key = "key";
+    private static final AggregateDiffer<Optional<TestAggregate>> nameDiffer = new AggregateDiffer<Optional<TestAggregate>>() {
+        @Override
+        public byte[] diff(Optional<TestAggregate> previous, Optional<TestAggregate> current) {
+            return current.get().name().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Optional<TestAggregate> apply(Optional<TestAggregate> previous, byte[] delta) {
+            return Optional.of(new TestAggregate(new String(delta, StandardCharsets.UTF_8)));
+        }
+    };
 
     @BeforeEach
     void setUp() {
@@ -130,11 +157,293 @@ class EventSourcedTopologyTest {
     void testMultipleUpdates() {
 
         TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        verifyMultipleUpdates(ctx);
+    }
+
+    @Test
+    void testMultipleUpdatesWithLocalStore() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .buildContext();
+        verifyMultipleUpdates(ctx);
+    }
+
+    @Test
+    void testMultipleUpdatesWithCommandHandlerLanes() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withCommandHandlerLanes(4)
+                .buildContext();
+        verifyMultipleUpdates(ctx);
+    }
+
+    @Test
+    void commandHandlerLanesKeepOrderPerKey() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withCommandHandlerLanes(4)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        // each command reads the sequence left by the one before, so any reordering would fail the sequence check
+        Sequence sequence = Sequence.first();
+        ctxDriver.publishCommand(key, new CommandRequest<>(
+                key, new TestCommand.CreateCommand("name 0"), sequence, UUID.randomUUID()));
+        for (int i = 1; i < 20; i++) {
+            sequence = sequence.next();
+            ctxDriver.publishCommand(key, new CommandRequest<>(
+                    key, new TestCommand.UpdateCommand("name " + i), sequence, UUID.randomUUID()));
+        }
+        // the commands are read into one batch, handled on the next punctuation
+        ctxDriver.verifyNoCommandResponse();
+        driver.advanceWallClockTime(ConcurrentLocalStoreTransformer.HANDLE_INTERVAL_IN_MILLIS);
+        for (int i = 0; i < 20; i++) {
+            final long expectedSequence = i + 1;
+            ctxDriver.verifyCommandResponse(key, r ->
+                    assertThat(r.sequenceResult().getOrElse(Sequence.first()).getSeq()).isEqualTo(expectedSequence));
+        }
+        ctxDriver.verifyNoCommandResponse();
+    }
+
+    @Test
+    void commandHandlerLanesCommitReadCommandsToThePendingCommandStore() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withCommandHandlerLanes(4)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+        String pendingStoreName = ctx.stateStoreName(AggregateResources.StateStoreEntity.command_handler_lanes);
+        String aggregateStoreName = ctx.stateStoreName(AggregateResources.StateStoreEntity.aggregate_update);
+        List<String> keys = Arrays.asList("key 0", "key 1", "key 2");
+
+        // the test driver commits after every record, so each command is committed while the batch is in flight
+        for (String k : keys) {
+            ctxDriver.publishCommand(k, new CommandRequest<>(
+                    k, new TestCommand.CreateCommand(k), Sequence.first(), UUID.randomUUID()));
+        }
+        ctxDriver.verifyNoCommandResponse();
+        assertThat(readChangelog(pendingStoreName)).containsExactly(
+                KeyValue.pair(0L, true), KeyValue.pair(1L, true), KeyValue.pair(2L, true));
+        assertThat(readChangelog(aggregateStoreName)).isEmpty();
+        assertThat(driver.getKeyValueStore(pendingStoreName).approximateNumEntries()).isEqualTo(3L);
+        keys.forEach(k -> assertThat(driver.getKeyValueStore(aggregateStoreName).get(k)).isNull());
+
+        // once handled, each command is removed from the pending command store along with its aggregate being written
+        driver.advanceWallClockTime(ConcurrentLocalStoreTransformer.HANDLE_INTERVAL_IN_MILLIS);
+        for (String k : keys) {
+            ctxDriver.verifyCommandResponse(k, r -> assertThat(r.sequenceResult().isSuccess()).isEqualTo(true));
+        }
+        ctxDriver.verifyNoCommandResponse();
+        assertThat(readChangelog(pendingStoreName)).containsExactly(
+                KeyValue.pair(0L, false), KeyValue.pair(1L, false), KeyValue.pair(2L, false));
+        assertThat(readChangelog(aggregateStoreName)).hasSize(3);
+        assertThat(driver.getKeyValueStore(pendingStoreName).approximateNumEntries()).isEqualTo(0L);
+        keys.forEach(k -> assertThat(driver.getKeyValueStore(aggregateStoreName).get(k)).isNotNull());
+    }
+
+    @Test
+    void localStoreDoesNotReadAggregateTopic() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> aggregateTable = ctxBuilder.buildContext();
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> localStore = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .buildContext();
+        String aggregateTopic = localStore.topicName(AggregateResources.TopicEntity.aggregate);
+
+        assertThat(sourceTopics(aggregateTable)).contains(aggregateTopic);
+        assertThat(sourceTopics(localStore)).doesNotContain(aggregateTopic);
+    }
+
+    @Test
+    void batchedAggregateUpdates() {
+        long batchInterval = 1000L;
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withAggregateUpdateBatching(batchInterval)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        ctxDriver.publishCommand(key, new CommandRequest<>(
+                key, new TestCommand.CreateCommand("name 0"), Sequence.first(), UUID.randomUUID()));
+        Sequence sequence = ctxDriver.verifyCommandResponse(key, null).sequenceResult().getOrElse(Sequence.first());
+        for (int i = 1; i < 5; i++) {
+            ctxDriver.publishCommand(key, new CommandRequest<>(
+                    key, new TestCommand.UpdateCommand("name " + i), sequence, UUID.randomUUID()));
+            sequence = ctxDriver.verifyCommandResponse(key, r -> assertThat(r.sequenceResult().isSuccess()).isEqualTo(true))
+                    .sequenceResult().getOrElse(Sequence.first());
+        }
+
+        // every event is published straight away, but no aggregate update until the batch interval has passed
+        assertThat(ctxDriver.verifyEvents(key, null)).hasSize(5);
+        ctxDriver.verifyNoAggregateUpdate();
+
+        driver.advanceWallClockTime(batchInterval);
+        final long finalSequence = sequence.getSeq();
+        ctxDriver.verifyAggregateUpdate(key, update -> {
+            assertThat(update.sequence().getSeq()).isEqualTo(finalSequence);
+            assertThat(update.aggregate().get().name()).isEqualTo("name 4");
+        });
+        ctxDriver.verifyNoAggregateUpdate();
+
+        driver.advanceWallClockTime(batchInterval);
+        ctxDriver.verifyNoAggregateUpdate();
+    }
+
+    @Test
+    void snapshotEveryNEvents() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = snapshotContext(SnapshotPolicy.everyEvents(3));
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        Sequence sequence = publishNames(ctxDriver, Sequence.first(), "name 0", "name 1");
+        ctxDriver.verifyNoAggregateUpdate();
+
+        sequence = publishNames(ctxDriver, sequence, "name 2");
+        final long snapshotSequence = sequence.getSeq();
+        ctxDriver.verifyAggregateUpdate(key, update -> {
+            assertThat(update.sequence().getSeq()).isEqualTo(snapshotSequence);
+            assertThat(update.aggregate().get().name()).isEqualTo("name 2");
+        });
+        ctxDriver.verifyNoAggregateUpdate();
+    }
+
+    @Test
+    void snapshotOnInterval() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = snapshotContext(SnapshotPolicy.everySeconds(10));
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        Sequence sequence = publishNames(ctxDriver, Sequence.first(), "name 0", "name 1");
+        ctxDriver.verifyNoAggregateUpdate();
+
+        driver.advanceWallClockTime(10000L);
+        ctxDriver.verifyAggregateUpdate(key, update -> {
+            assertThat(update.sequence()).isEqualTo(sequence);
+            assertThat(update.aggregate().get().name()).isEqualTo("name 1");
+        });
+
+        // nothing has changed since the last snapshot
+        driver.advanceWallClockTime(10000L);
+        ctxDriver.verifyNoAggregateUpdate();
+    }
+
+    @Test
+    void deltaEncodedAggregateUpdates() {
+        long checkpointInterval = 3L;
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeltaEncoding(nameDiffer, checkpointInterval)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        // every command only succeeds if the aggregate table has rebuilt the full aggregate from the deltas
+        String[] names = { "name 0", "name 1", "name 2", "name 3", "name 4", "name 5", "name 6" };
+        publishNames(ctxDriver, Sequence.first(), names);
+
+        List<EncodedAggregateUpdate<Optional<TestAggregate>>> updates = ctxDriver.readEncodedAggregateUpdates();
+        assertThat(updates).hasSize(names.length);
+        AggregateUpdate<Optional<TestAggregate>> previous = null;
+        for (int i = 0; i < names.length; i++) {
+            EncodedAggregateUpdate<Optional<TestAggregate>> update = updates.get(i);
+            boolean expectCheckpoint = previous == null ||
+                    update.sequence().getSeq() / checkpointInterval != previous.sequence().getSeq() / checkpointInterval;
+            assertThat(update.isCheckpoint()).isEqualTo(expectCheckpoint);
+
+            previous = update.decode(previous, nameDiffer);
+            assertThat(previous.sequence()).isEqualTo(update.sequence());
+            assertThat(previous.aggregate().get().name()).isEqualTo(names[i]);
+        }
+        assertThat(updates.stream().filter(EncodedAggregateUpdate::isCheckpoint).count()).isLessThan(names.length);
+    }
+
+    @Test
+    void deltaEncodedAggregateTableIsRebuiltFromTheAggregateTopic() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeltaEncoding(nameDiffer, 3L)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        Sequence sequence = publishNames(new TestContextDriver<>(ctx, driver), Sequence.first(), "name 0", "name 1", "name 2", "name 3", "name 4");
+        List<KeyValue<byte[], byte[]>> aggregateTopic = new TestContextDriver<>(ctx, driver).readAggregateTopic();
+        driver.close();
+
+        // the table's store is not logged, so without the aggregate topic a new instance knows nothing of the aggregate
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> emptyDriver = new TestContextDriver<>(ctx, driver);
+        emptyDriver.publishCommand(key, new CommandRequest<>(key, new TestCommand.UpdateCommand("name 5"), sequence, UUID.randomUUID()));
+        emptyDriver.verifyCommandResponse(key, r -> assertThat(r.sequenceResult().isSuccess()).isEqualTo(false));
+        driver.close();
+
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> rebuiltCtx = ctxBuilder
+                .withAggregateTopic(aggregateTopic)
+                .buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(rebuiltCtx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> rebuiltDriver = new TestContextDriver<>(rebuiltCtx, driver);
+        publishNames(rebuiltDriver, sequence, "name 5", "name 6");
+        assertThat(rebuiltDriver.readEncodedAggregateUpdates().stream().map(u -> u.sequence().getSeq()).collect(Collectors.toList()))
+                .containsExactly(sequence.getSeq() + 1, sequence.getSeq() + 2);
+    }
+
+    private TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> snapshotContext(SnapshotPolicy policy) {
+        return ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .withAggregateStateStrategy(AggregateStateStrategy.LocalStore)
+                .withSnapshotPolicy(policy)
+                .buildContext();
+    }
+
+    /**
+     * Creates the aggregate from the first name if the sequence is the first, otherwise updates it, once per name.
+     */
+    private static Sequence publishNames(TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver,
+                                         Sequence sequence, String... names) {
+        for (String name : names) {
+            TestCommand command = sequence.equals(Sequence.first()) ? new TestCommand.CreateCommand(name) : new TestCommand.UpdateCommand(name);
+            ctxDriver.publishCommand(key, new CommandRequest<>(key, command, sequence, UUID.randomUUID()));
+            sequence = ctxDriver.verifyCommandResponse(key, r -> assertThat(r.sequenceResult().isSuccess()).isEqualTo(true))
+                    .sequenceResult().getOrElse(Sequence.first());
+        }
+        return sequence;
+    }
+
+    private static List<String> sourceTopics(TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
+        StreamsBuilder builder = new StreamsBuilder();
+        EventSourcedTopology.addTopology(ctx, builder);
+        return builder.build().describe().subtopologies().stream()
+                .flatMap(subtopology -> subtopology.nodes().stream())
+                .filter(node -> node instanceof TopologyDescription.Source)
+                .flatMap(node -> Arrays.stream(((TopologyDescription.Source) node).topics().replaceAll("[\\[\\]]", "").split(",")))
+                .map(String::trim)
+                .collect(Collectors.toList());
+    }
+
+    // the keys written to a store's changelog since it was last read, and whether each was a put rather than a delete
+    private List<KeyValue<Long, Boolean>> readChangelog(String storeName) {
+        List<KeyValue<Long, Boolean>> records = new ArrayList<>();
+        ProducerRecord<byte[], byte[]> record;
+        while ((record = driver.readOutput("test-" + storeName + "-changelog",
+                new ByteArrayDeserializer(), new ByteArrayDeserializer())) != null) {
+            records.add(KeyValue.pair(record.key().length == Long.BYTES ? ByteBuffer.wrap(record.key()).getLong() : -1L,
+                    record.value() != null));
+        }
+        return records;
+    }
+
+    private void verifyMultipleUpdates(TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
         driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
         TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
 
         ctxDriver.publishCommand( key, new CommandRequest<>(
                 key, new TestCommand.CreateCommand("firstName"), Sequence.first(), UUID.randomUUID()));
+        // handles any commands waiting for command handler lanes
+        driver.advanceWallClockTime(ConcurrentLocalStoreTransformer.HANDLE_INTERVAL_IN_MILLIS);
         ctxDriver.verifyAggregateUpdate(key, null);
         CommandResponse response = ctxDriver.verifyCommandResponse(key, null);
         ctxDriver.verifyEvents(key, null);
@@ -145,6 +454,7 @@ class EventSourcedTopologyTest {
             CommandRequest<String, TestCommand> commandRequest = new CommandRequest<>(
                     key, new TestCommand.UpdateWithNothingCommand(newName), lastSequence, UUID.randomUUID());
             ctxDriver.publishCommand(key, commandRequest);
+            driver.advanceWallClockTime(ConcurrentLocalStoreTransformer.HANDLE_INTERVAL_IN_MILLIS);
 
             List<ValueWithSequence<TestEvent>> events = ctxDriver.verifyEvents(key, iV -> {
                 Integer index = iV.v1();
@@ -200,6 +510,40 @@ class EventSourcedTopologyTest {
     @Test
     void testIdempotence() {
         TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        verifyIdempotence(ctx);
+    }
+
+    @Test
+    void testIdempotenceByAggregateKey() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .buildContext();
+        verifyIdempotence(ctx);
+    }
+
+    @Test
+    void deduplicationByAggregateKeyDoesNotRepartitionCommands() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> byCommandId = ctxBuilder.buildContext();
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> byAggregateKey = ctxBuilder
+                .withDeduplicationStrategy(DeduplicationStrategy.ByAggregateKey)
+                .buildContext();
+
+        // deduplicating by command id repartitions responses and requests by command id, then requests back by aggregate key
+        assertThat(repartitionTopicCount(byAggregateKey)).isEqualTo(repartitionTopicCount(byCommandId) - 3);
+    }
+
+    private static long repartitionTopicCount(TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
+        StreamsBuilder builder = new StreamsBuilder();
+        EventSourcedTopology.addTopology(ctx, builder);
+        return builder.build().describe().subtopologies().stream()
+                .flatMap(subtopology -> subtopology.nodes().stream())
+                .filter(node -> node instanceof TopologyDescription.Sink)
+                .map(node -> ((TopologyDescription.Sink) node).topic())
+                .filter(topic -> topic != null && topic.endsWith("-repartition"))
+                .count();
+    }
+
+    private void verifyIdempotence(TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx) {
         driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
         TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
 
@@ -226,6 +570,41 @@ class EventSourcedTopologyTest {
         });
     }
 
+    @Test
+    void testIdempotenceExpiresAfterRetention() {
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder.buildContext();
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        long startTime = 1000000L;
+        long expiredTime = startTime + ctx.commandResponseRetentionInSeconds() * 1000L + 1L;
+        CommandRequest<String, TestCommand> commandRequest = new CommandRequest<>(
+                key, new TestCommand.CreateCommand("Name"), Sequence.first(), UUID.randomUUID());
+
+        ctxDriver.publishCommand(key, commandRequest, startTime);
+        ctxDriver.drainEvents();
+        ctxDriver.drainAggregateUpdates();
+        ctxDriver.drainCommandResponses();
+
+        // a response processed after the retention period advances stream time past the first response
+        String otherKey = "otherKey";
+        ctxDriver.publishCommand(otherKey, new CommandRequest<>(
+                otherKey, new TestCommand.CreateCommand("Other"), Sequence.first(), UUID.randomUUID()), expiredTime);
+        ctxDriver.drainEvents();
+        ctxDriver.drainAggregateUpdates();
+        ctxDriver.drainCommandResponses();
+
+        // so the resent command is no longer recognised, and is rejected against the current aggregate
+        ctxDriver.publishCommand(key, commandRequest, expiredTime);
+        ctxDriver.verifyNoEvent();
+        ctxDriver.verifyNoAggregateUpdate();
+        ctxDriver.verifyCommandResponse(key, r -> {
+            assertThat(r.commandId()).isEqualTo(commandRequest.commandId());
+            assertThat(r.sequenceResult().failureReasons().map(reasons -> reasons.head().getReason()))
+                    .isEqualTo(Optional.of(CommandError.Reason.InvalidReadSequence));
+        });
+    }
+
     @Test
     void testDistributor() {
         String topicNamesTopic = "topic_names";
@@ -252,11 +631,37 @@ class EventSourcedTopologyTest {
                 .publish(topicNamesTopic, commandRequest.commandId(), outputTopic);
         ctxDriver.publishCommand( key, commandRequest);
 
-        ProducerRecord<String, CommandResponse> output = driver.readOutput(outputTopic,
-                Serdes.String().deserializer(),
+        ProducerRecord<UUID, CommandResponse> output = driver.readOutput(outputTopic,
+                new UuidSerde().deserializer(),
+                ctx.serdes().commandResponse().deserializer());
+
+        assertThat(output.key()).isEqualTo(commandRequest.commandId());
+        assertThat(output.value().sequenceResult().isSuccess()).isEqualTo(true);
+    }
+
+    @Test
+    void responsesAreRoutedByReplyTopicHeader() {
+        String outputTopic = "output_topic";
+
+        TopologyContext<String, TestCommand, TestEvent, Optional<TestAggregate>> ctx = ctxBuilder
+                .withResponseRoutingStrategy(ResponseRoutingStrategy.ReplyTopicHeader)
+                .buildContext();
+        assertThat(sourceTopics(ctx)).doesNotContain(ctx.topicName(AggregateResources.TopicEntity.command_response_topic_map));
+
+        driver = new TestDriverInitializer().build(builder -> EventSourcedTopology.addTopology(ctx, builder));
+        TestContextDriver<String, TestCommand, TestEvent, Optional<TestAggregate>> ctxDriver = new TestContextDriver<>(ctx, driver);
+
+        CommandRequest<String, TestCommand> commandRequest = new CommandRequest<>(
+                key, new TestCommand.CreateCommand("Name 2"), Sequence.first(), UUID.randomUUID());
+        ctxDriver.getPublisher(ctx.serdes().aggregateKey(), ctx.serdes().commandRequest())
+                .publish(ctx.topicName(AggregateResources.TopicEntity.command_request), key, commandRequest,
+                        new RecordHeader(ResponseRoutingStrategy.REPLY_TOPIC_HEADER, outputTopic.getBytes(StandardCharsets.UTF_8)));
+
+        ProducerRecord<UUID, CommandResponse> output = driver.readOutput(outputTopic,
+                new UuidSerde().deserializer(),
                 ctx.serdes().commandResponse().deserializer());
 
-        assertThat(output.key()).isEqualTo(String.format("%s:%s", outputTopic, commandRequest.commandId().toString()));
+        assertThat(output.key()).isEqualTo(commandRequest.commandId());
         assertThat(output.value().sequenceResult().isSuccess()).isEqualTo(true);
     }
-}
\ No newline at end of file
+}
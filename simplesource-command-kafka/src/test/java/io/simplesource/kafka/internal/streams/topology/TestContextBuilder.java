@@ -3,22 +3,34 @@ package io.simplesource.kafka.internal.streams.topology;
 import io.simplesource.api.Aggregator;
 import io.simplesource.api.CommandHandler;
 import io.simplesource.api.InitialValue;
+import io.simplesource.kafka.api.AggregateDiffer;
 import io.simplesource.kafka.api.AggregateResources;
 import io.simplesource.kafka.api.AggregateSerdes;
 import io.simplesource.kafka.dsl.AggregateBuilder;
+import io.simplesource.kafka.dsl.AggregateStateStrategy;
+import io.simplesource.kafka.dsl.DeduplicationStrategy;
 import io.simplesource.kafka.dsl.InvalidSequenceStrategy;
+import io.simplesource.kafka.dsl.ResponseRoutingStrategy;
 import io.simplesource.kafka.internal.streams.MockInMemorySerde;
 import io.simplesource.kafka.util.PrefixResourceNamingStrategy;
 import io.simplesource.kafka.internal.streams.model.TestAggregate;
 import io.simplesource.kafka.internal.streams.model.TestCommand;
 import io.simplesource.kafka.internal.streams.model.TestEvent;
 import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.spec.SnapshotPolicy;
 import io.simplesource.kafka.spec.TopicSpec;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -30,6 +42,15 @@ class TestContextBuilder {
     private Aggregator<TestEvent, Optional<TestAggregate>> eventAggregator;
     private InitialValue<String, Optional<TestAggregate>> initialValue;
     private InvalidSequenceStrategy invalidSequenceStrategy = InvalidSequenceStrategy.Strict;
+    private DeduplicationStrategy deduplicationStrategy = DeduplicationStrategy.ByCommandId;
+    private AggregateStateStrategy aggregateStateStrategy = AggregateStateStrategy.AggregateTable;
+    private long aggregateUpdateBatchIntervalInMillis = 0L;
+    private SnapshotPolicy snapshotPolicy = null;
+    private AggregateDiffer<Optional<TestAggregate>> aggregateDiffer = null;
+    private long aggregateCheckpointInterval = 0L;
+    private ResponseRoutingStrategy responseRoutingStrategy = ResponseRoutingStrategy.TopicMap;
+    private int commandHandlerLanes = 1;
+    private List<KeyValue<byte[], byte[]>> aggregateTopicRecords = Collections.emptyList();
 
     TestContextBuilder() {
         eventAggregator = (a, e) -> {
@@ -50,10 +71,17 @@ class TestContextBuilder {
                         .withCommandHandler(commandHandler)
                         .withAggregator(eventAggregator)
                         .withInvalidSequenceStrategy(invalidSequenceStrategy)
+                        .withDeduplicationStrategy(deduplicationStrategy)
+                        .withAggregateStateStrategy(aggregateStateStrategy)
+                        .withAggregateUpdateBatching(aggregateUpdateBatchIntervalInMillis)
+                        .withSnapshotPolicy(snapshotPolicy)
+                        .withDeltaEncoding(aggregateDiffer, aggregateCheckpointInterval)
+                        .withResponseRoutingStrategy(responseRoutingStrategy)
+                        .withCommandHandlerLanes(commandHandlerLanes)
                         .withResourceNamingStrategy(RESOURCE_NAMING_STRATEGY);
         configureTopicSpec(aggregateBuilder);
 
-        return new TopologyContext<>(aggregateBuilder.build());
+        return new TopologyContext<>(aggregateBuilder.build(), (key, update) -> { }, config -> aggregateTopicConsumer(aggregateTopicRecords));
     }
 
     public TestContextBuilder withCommandHandler(CommandHandler<String, TestCommand, TestEvent, Optional<TestAggregate>> commandHandler) {
@@ -76,6 +104,64 @@ class TestContextBuilder {
         return this;
     }
 
+    public TestContextBuilder withDeduplicationStrategy(DeduplicationStrategy deduplicationStrategy) {
+        this.deduplicationStrategy = deduplicationStrategy;
+        return this;
+    }
+
+    public TestContextBuilder withAggregateStateStrategy(AggregateStateStrategy aggregateStateStrategy) {
+        this.aggregateStateStrategy = aggregateStateStrategy;
+        return this;
+    }
+
+    public TestContextBuilder withAggregateUpdateBatching(long intervalInMillis) {
+        this.aggregateUpdateBatchIntervalInMillis = intervalInMillis;
+        return this;
+    }
+
+    public TestContextBuilder withSnapshotPolicy(SnapshotPolicy snapshotPolicy) {
+        this.snapshotPolicy = snapshotPolicy;
+        return this;
+    }
+
+    public TestContextBuilder withDeltaEncoding(AggregateDiffer<Optional<TestAggregate>> aggregateDiffer, long checkpointInterval) {
+        this.aggregateDiffer = aggregateDiffer;
+        this.aggregateCheckpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public TestContextBuilder withResponseRoutingStrategy(ResponseRoutingStrategy responseRoutingStrategy) {
+        this.responseRoutingStrategy = responseRoutingStrategy;
+        return this;
+    }
+
+    public TestContextBuilder withCommandHandlerLanes(int laneCount) {
+        this.commandHandlerLanes = laneCount;
+        return this;
+    }
+
+    /**
+     * Sets the records the aggregate topic holds when a rebuilt aggregate table is initialised.
+     */
+    public TestContextBuilder withAggregateTopic(List<KeyValue<byte[], byte[]>> records) {
+        this.aggregateTopicRecords = records;
+        return this;
+    }
+
+    private static Consumer<byte[], byte[]> aggregateTopicConsumer(List<KeyValue<byte[], byte[]>> records) {
+        TopicPartition partition = new TopicPartition(topicName(AggregateResources.TopicEntity.aggregate), 0);
+        MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        consumer.updateEndOffsets(Collections.singletonMap(partition, (long) records.size()));
+        consumer.schedulePollTask(() -> {
+            for (int offset = 0; offset < records.size(); offset++) {
+                KeyValue<byte[], byte[]> record = records.get(offset);
+                consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), offset, record.key, record.value));
+            }
+        });
+        return consumer;
+    }
+
     private void configureTopicSpec(AggregateBuilder<String, TestCommand, TestEvent, Optional<TestAggregate>> aggregateBuilder) {
         TopicSpec defaultTopicSpec = new TopicSpec(1, Short.valueOf("1"), Collections.emptyMap());
 
@@ -4,10 +4,13 @@ import io.simplesource.kafka.internal.util.Tuple2;
 import io.simplesource.kafka.model.AggregateUpdate;
 import io.simplesource.kafka.model.CommandRequest;
 import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.model.EncodedAggregateUpdate;
 import io.simplesource.kafka.model.ValueWithSequence;
 import lombok.Value;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.TopologyTestDriver;
 
 import java.util.ArrayList;
@@ -33,6 +36,10 @@ class TestContextDriver<K, C, E, A> {
         commandPublisher.publish(ctx.topicName(TopicEntity.command_request), key, commandRequest);
     }
 
+    void publishCommand(K key, CommandRequest<K, C> commandRequest, long timestampMs) {
+        commandPublisher.publish(ctx.topicName(TopicEntity.command_request), key, commandRequest, timestampMs);
+    }
+
     public <KP, VP> TestDriverPublisher<KP, VP> getPublisher(final Serde<KP> keySerde, final Serde<VP> valueSerde) {
         return new TestDriverPublisher<>(driver, keySerde, valueSerde);
     }
@@ -123,4 +130,26 @@ class TestContextDriver<K, C, E, A> {
                 break;
         }
     }
+
+    List<KeyValue<byte[], byte[]>> readAggregateTopic() {
+        List<KeyValue<byte[], byte[]>> records = new ArrayList<>();
+        ProducerRecord<byte[], byte[]> record;
+        while ((record = driver.readOutput(ctx.topicName(TopicEntity.aggregate),
+                new ByteArrayDeserializer(), new ByteArrayDeserializer())) != null) {
+            records.add(KeyValue.pair(record.key(), record.value()));
+        }
+        return records;
+    }
+
+    List<EncodedAggregateUpdate<A>> readEncodedAggregateUpdates() {
+        List<EncodedAggregateUpdate<A>> updates = new ArrayList<>();
+        while (true) {
+            ProducerRecord<K, EncodedAggregateUpdate<A>> record = driver.readOutput(ctx.topicName(TopicEntity.aggregate),
+                    ctx.serdes().aggregateKey().deserializer(),
+                    ctx.encodedAggregateUpdateSerde().deserializer());
+            if (record == null) break;
+            updates.add(record.value());
+        }
+        return updates;
+    }
 }
@@ -1,5 +1,7 @@
 package io.simplesource.kafka.internal.streams.topology;
 
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.TopologyTestDriver;
 import org.apache.kafka.streams.test.ConsumerRecordFactory;
@@ -20,4 +22,14 @@ class TestDriverPublisher<K, V> {
     void publish(final String topic, final K key, V value) {
         driver.pipeInput(recordFactory().create(topic, key, value));
     }
+
+    void publish(final String topic, final K key, V value, final Header header) {
+        final ConsumerRecord<byte[], byte[]> record = recordFactory().create(topic, key, value);
+        record.headers().add(header);
+        driver.pipeInput(record);
+    }
+
+    void publish(final String topic, final K key, V value, final long timestampMs) {
+        driver.pipeInput(recordFactory().create(topic, key, value, timestampMs));
+    }
 }
@@ -0,0 +1,167 @@
+package io.simplesource.kafka.util;
+
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.QueryRPC;
+import org.apache.kafka.streams.state.HostInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpQueryRPCTest {
+    private final HttpQueryRPC rpc = new HttpQueryRPC();
+
+    @AfterEach
+    void tearDown() {
+        rpc.close();
+    }
+
+    @Test
+    void queriesAreAnsweredByTheServingInstance() throws IOException {
+        HostInfo host = new HostInfo("localhost", freePort());
+        byte[] key = new byte[] { 0, 1, (byte) 0xFF, '/' };
+        rpc.serve(host, queries((aggregateName, queriedKey) ->
+                aggregateName.equals("user") && Arrays.equals(queriedKey, key) ?
+                        Optional.of("aggregate".getBytes(StandardCharsets.UTF_8)) :
+                        Optional.empty()));
+
+        assertThat(rpc.query(host, "user", key).join().map(bytes -> new String(bytes, StandardCharsets.UTF_8)))
+                .isEqualTo(Optional.of("aggregate"));
+        assertThat(rpc.query(host, "user", new byte[] { 2 }).join()).isEqualTo(Optional.empty());
+        assertThat(rpc.query(host, "account", key).join()).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void aggregateNamesAreEncodedInThePath() throws IOException {
+        HostInfo host = new HostInfo("localhost", freePort());
+        String aggregateName = "user accounts/eu+%";
+        rpc.serve(host, queries((queriedName, key) ->
+                queriedName.equals(aggregateName) ? Optional.of("aggregate".getBytes(StandardCharsets.UTF_8)) : Optional.empty()));
+
+        assertThat(rpc.query(host, aggregateName, new byte[] { 1 }).join().map(bytes -> new String(bytes, StandardCharsets.UTF_8)))
+                .isEqualTo(Optional.of("aggregate"));
+    }
+
+    @Test
+    void waitingQueryIsAnsweredOnceTheAggregateReachesTheSequence() throws IOException {
+        HostInfo host = new HostInfo("localhost", freePort());
+        CompletableFuture<Optional<byte[]>> reached = new CompletableFuture<>();
+        List<Sequence> awaited = new CopyOnWriteArrayList<>();
+        rpc.serve(host, new QueryRPC.LocalQueryHandler() {
+            @Override
+            public Optional<byte[]> query(String aggregateName, byte[] key) {
+                return Optional.empty();
+            }
+
+            @Override
+            public CompletableFuture<Optional<byte[]>> await(String aggregateName, byte[] key, Sequence sequence, Duration timeout) {
+                awaited.add(sequence);
+                return sequence.isEqualTo(Sequence.position(3L)) ? reached : CompletableFuture.completedFuture(Optional.empty());
+            }
+        });
+
+        CompletableFuture<Optional<byte[]>> response = rpc.await(host, "user", new byte[] { 1 }, Sequence.position(3L), Duration.ofSeconds(5));
+        assertThat(rpc.await(host, "user", new byte[] { 1 }, Sequence.position(4L), Duration.ofSeconds(5)).join()).isEqualTo(Optional.empty());
+        assertThat(response.isDone()).isFalse();
+
+        reached.complete(Optional.of("aggregate".getBytes(StandardCharsets.UTF_8)));
+        assertThat(response.join().map(bytes -> new String(bytes, StandardCharsets.UTF_8))).isEqualTo(Optional.of("aggregate"));
+        assertThat(awaited).containsOnly(Sequence.position(3L), Sequence.position(4L));
+    }
+
+    @Test
+    void waitingQueriesDoNotHoldUpOtherQueries() throws Exception {
+        HostInfo host = new HostInfo("localhost", freePort());
+        CompletableFuture<Optional<byte[]>> reached = new CompletableFuture<>();
+        HttpQueryRPC singleThreaded = new HttpQueryRPC(5000, 1);
+        try {
+            singleThreaded.serve(host, new QueryRPC.LocalQueryHandler() {
+                @Override
+                public Optional<byte[]> query(String aggregateName, byte[] key) {
+                    return Optional.of("aggregate".getBytes(StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public CompletableFuture<Optional<byte[]>> await(String aggregateName, byte[] key, Sequence sequence, Duration timeout) {
+                    return reached;
+                }
+            });
+
+            List<CompletableFuture<Optional<byte[]>>> waiting = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                waiting.add(singleThreaded.await(host, "user", new byte[] { (byte) i }, Sequence.position(1L), Duration.ofSeconds(10)));
+            }
+            assertThat(singleThreaded.query(host, "user", new byte[] { 1 }).get(2, TimeUnit.SECONDS)
+                    .map(bytes -> new String(bytes, StandardCharsets.UTF_8))).isEqualTo(Optional.of("aggregate"));
+            assertThat(waiting.stream().noneMatch(CompletableFuture::isDone)).isTrue();
+
+            reached.complete(Optional.empty());
+            waiting.forEach(response -> assertThat(response.join()).isEqualTo(Optional.empty()));
+        } finally {
+            singleThreaded.close();
+        }
+    }
+
+    @Test
+    void queriesAreSentConcurrentlyUpToTheThreadCount() throws Exception {
+        HostInfo host = new HostInfo("localhost", freePort());
+        int threadCount = HttpQueryRPC.DEFAULT_THREAD_COUNT * 2;
+        CountDownLatch allInFlight = new CountDownLatch(threadCount);
+        HttpQueryRPC wide = new HttpQueryRPC(5000, threadCount);
+        try {
+            // no query is answered until every one of them has reached the serving instance
+            wide.serve(host, queries((aggregateName, key) -> {
+                allInFlight.countDown();
+                try {
+                    return allInFlight.await(5, TimeUnit.SECONDS) ? Optional.of(key) : Optional.empty();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+
+            List<CompletableFuture<Optional<byte[]>>> responses = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                responses.add(wide.query(host, "user", new byte[] { (byte) i }));
+            }
+            for (int i = 0; i < threadCount; i++) {
+                assertThat(responses.get(i).get(10, TimeUnit.SECONDS)).isPresent();
+            }
+        } finally {
+            wide.close();
+        }
+    }
+
+    private static QueryRPC.LocalQueryHandler queries(BiFunction<String, byte[], Optional<byte[]>> query) {
+        return new QueryRPC.LocalQueryHandler() {
+            @Override
+            public Optional<byte[]> query(String aggregateName, byte[] key) {
+                return query.apply(aggregateName, key);
+            }
+
+            @Override
+            public CompletableFuture<Optional<byte[]>> await(String aggregateName, byte[] key, Sequence sequence, Duration timeout) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
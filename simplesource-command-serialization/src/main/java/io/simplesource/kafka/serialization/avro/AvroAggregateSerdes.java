@@ -44,6 +44,26 @@ public final class AvroAggregateSerdes<K, C, E, A> implements AggregateSerdes<K,
                 specificDomainMapper(),
                 schemaRegistryUrl,
                 useMockSchemaRegistry,
+                aggregateSchema,
+                true);
+    }
+
+    /**
+     * Serdes that need no schema registry, writing records in Avro single object encoding with their schemas kept in the
+     * given local store.
+     */
+    public static <K extends GenericRecord, C extends GenericRecord, E extends GenericRecord, A extends GenericRecord> AvroAggregateSerdes<K, C, E, A> of(
+            final AvroSchemaStore schemaStore,
+            final Schema aggregateSchema
+    ) {
+        final Serde<GenericRecord> serde = AvroGenericUtils.singleObjectAvroSerde(schemaStore, true);
+        return new AvroAggregateSerdes<>(
+                specificDomainMapper(),
+                specificDomainMapper(),
+                specificDomainMapper(),
+                specificDomainMapper(),
+                serde,
+                serde,
                 aggregateSchema);
     }
 
@@ -55,9 +75,42 @@ public final class AvroAggregateSerdes<K, C, E, A> implements AggregateSerdes<K,
             final String schemaRegistryUrl,
             final boolean useMockSchemaRegistry,
             final Schema aggregateSchema) {
+        this(keyMapper, commandMapper, eventMapper, aggregateMapper, schemaRegistryUrl, useMockSchemaRegistry, aggregateSchema, false);
+    }
 
-        Serde<GenericRecord> keySerde = AvroGenericUtils.genericAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, true);
-        Serde<GenericRecord> valueSerde = AvroGenericUtils.genericAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, false);
+    /**
+     * @param readSpecificRecords read nested records straight into their generated classes, rather than into generic
+     *                            records the mappers copy from. Mappers built on
+     *                            {@link AvroSpecificGenericMapper#specificDomainMapper()} then skip the copy.
+     */
+    public AvroAggregateSerdes(
+            final GenericMapper<K, GenericRecord> keyMapper,
+            final GenericMapper<C, GenericRecord> commandMapper,
+            final GenericMapper<E, GenericRecord> eventMapper,
+            final GenericMapper<A, GenericRecord> aggregateMapper,
+            final String schemaRegistryUrl,
+            final boolean useMockSchemaRegistry,
+            final Schema aggregateSchema,
+            final boolean readSpecificRecords) {
+        this(keyMapper, commandMapper, eventMapper, aggregateMapper,
+                AvroGenericUtils.schemaRegistryAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, true, readSpecificRecords),
+                AvroGenericUtils.schemaRegistryAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, false, readSpecificRecords),
+                aggregateSchema);
+    }
+
+    /**
+     * @param keySerde the serde of the generic records of aggregate keys, such as
+     *                 {@link AvroGenericUtils#singleObjectAvroSerde(AvroSchemaStore, boolean)}
+     * @param valueSerde the serde of the generic records of all other values
+     */
+    public AvroAggregateSerdes(
+            final GenericMapper<K, GenericRecord> keyMapper,
+            final GenericMapper<C, GenericRecord> commandMapper,
+            final GenericMapper<E, GenericRecord> eventMapper,
+            final GenericMapper<A, GenericRecord> aggregateMapper,
+            final Serde<GenericRecord> keySerde,
+            final Serde<GenericRecord> valueSerde,
+            final Schema aggregateSchema) {
 
         ak = GenericSerde.of(keySerde, keyMapper::toGeneric, keyMapper::fromGeneric);
         crq = GenericSerde.of(valueSerde,
@@ -69,8 +122,9 @@ public final class AvroAggregateSerdes<K, C, E, A> implements AggregateSerdes<K,
         vws = GenericSerde.of(valueSerde,
                 v -> AvroGenericUtils.ValueWithSequenceAvroHelper.toGenericRecord(v.map(eventMapper::toGeneric)),
                 s -> AvroGenericUtils.ValueWithSequenceAvroHelper.fromGenericRecord(s).map(eventMapper::fromGeneric));
+        final AggregateUpdateAvroHelper aggregateUpdateHelper = new AggregateUpdateAvroHelper(aggregateSchema);
         au = GenericSerde.of(valueSerde,
-                v -> AggregateUpdateAvroHelper.toGenericRecord(v.map(aggregateMapper::toGeneric), aggregateSchema),
+                v -> aggregateUpdateHelper.toGenericRecord(v.map(aggregateMapper::toGeneric)),
                 s -> AggregateUpdateAvroHelper.fromGenericRecord(s)
                         .map(aggregateMapper::fromGeneric));
         crp = GenericSerde.of(valueSerde,
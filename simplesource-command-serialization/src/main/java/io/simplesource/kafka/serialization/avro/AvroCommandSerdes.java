@@ -34,7 +34,22 @@ public final class AvroCommandSerdes<K, C> implements CommandSerdes<K, C> {
                 specificDomainMapper(),
                 specificDomainMapper(),
                 schemaRegistryUrl,
-                useMockSchemaRegistry);
+                useMockSchemaRegistry,
+                true);
+    }
+
+    /**
+     * Serdes that need no schema registry, writing records in Avro single object encoding with their schemas kept in the
+     * given local store.
+     */
+    public static <C extends GenericRecord, K extends GenericRecord> AvroCommandSerdes<K, C> of(
+            final AvroSchemaStore schemaStore) {
+        final Serde<GenericRecord> serde = AvroGenericUtils.singleObjectAvroSerde(schemaStore, true);
+        return new AvroCommandSerdes<>(
+                specificDomainMapper(),
+                specificDomainMapper(),
+                serde,
+                serde);
     }
 
     public AvroCommandSerdes(
@@ -42,9 +57,35 @@ public final class AvroCommandSerdes<K, C> implements CommandSerdes<K, C> {
             final GenericMapper<C, GenericRecord> commandMapper,
             final String schemaRegistryUrl,
             final boolean useMockSchemaRegistry) {
+        this(keyMapper, commandMapper, schemaRegistryUrl, useMockSchemaRegistry, false);
+    }
 
-        Serde<GenericRecord> keySerde = AvroGenericUtils.genericAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, true);
-        Serde<GenericRecord> valueSerde = AvroGenericUtils.genericAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, false);
+    /**
+     * @param readSpecificRecords read nested records straight into their generated classes, rather than into generic
+     *                            records the mappers copy from. Mappers built on
+     *                            {@link AvroSpecificGenericMapper#specificDomainMapper()} then skip the copy.
+     */
+    public AvroCommandSerdes(
+            final GenericMapper<K, GenericRecord> keyMapper,
+            final GenericMapper<C, GenericRecord> commandMapper,
+            final String schemaRegistryUrl,
+            final boolean useMockSchemaRegistry,
+            final boolean readSpecificRecords) {
+        this(keyMapper, commandMapper,
+                AvroGenericUtils.schemaRegistryAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, true, readSpecificRecords),
+                AvroGenericUtils.schemaRegistryAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, false, readSpecificRecords));
+    }
+
+    /**
+     * @param keySerde the serde of the generic records of aggregate keys, such as
+     *                 {@link AvroGenericUtils#singleObjectAvroSerde(AvroSchemaStore, boolean)}
+     * @param valueSerde the serde of the generic records of all other values
+     */
+    public AvroCommandSerdes(
+            final GenericMapper<K, GenericRecord> keyMapper,
+            final GenericMapper<C, GenericRecord> commandMapper,
+            final Serde<GenericRecord> keySerde,
+            final Serde<GenericRecord> valueSerde) {
 
         ak = GenericSerde.of(keySerde, keyMapper::toGeneric, keyMapper::fromGeneric);
         crq = GenericSerde.of(valueSerde,
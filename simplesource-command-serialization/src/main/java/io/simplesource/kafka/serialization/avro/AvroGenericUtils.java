@@ -2,15 +2,18 @@ package io.simplesource.kafka.serialization.avro;
 
 import io.simplesource.data.Sequence;
 import io.simplesource.kafka.model.ValueWithSequence;
+import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
 import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
 import io.confluent.kafka.serializers.subject.TopicRecordNameStrategy;
 import io.confluent.kafka.streams.serdes.avro.GenericAvroSerde;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -43,6 +46,48 @@ public final class AvroGenericUtils {
         return serde;
     }
 
+    /**
+     * Like {@link #genericAvroSerde(String, boolean, boolean)}, but reads each nested record that has a generated
+     * {@link org.apache.avro.specific.SpecificRecord} class straight into that class, without building a generic record
+     * for it first.
+     */
+    public static Serde<GenericRecord> specificAvroSerde(
+            final String schemaRegistryUrl,
+            final boolean useMockSchemaRegistry,
+            final boolean isKey) {
+        final Map<String, Object> configMap = avroSchemaRegistryConfig(schemaRegistryUrl, SchemaNameStrategy.TOPIC_RECORD_NAME);
+        final SchemaRegistryClient schemaRegistry = useMockSchemaRegistry
+                ? new MockSchemaRegistryClient()
+                : new CachedSchemaRegistryClient(schemaRegistryUrl, SCHEMA_CACHE_CAPACITY);
+        final Serde<GenericRecord> genericSerde = new GenericAvroSerde(schemaRegistry);
+        genericSerde.configure(configMap, isKey);
+        return Serdes.serdeFrom(genericSerde.serializer(), new SpecificRecordDeserializer(schemaRegistry));
+    }
+
+    private static final int SCHEMA_CACHE_CAPACITY = 1000;
+
+    /**
+     * A serde that needs no schema registry. Records are written in Avro single object encoding, which identifies the
+     * writer schema by its fingerprint, and writer schemas are looked up in the given local store.
+     *
+     * @param readSpecificRecords read each nested record that has a generated class straight into that class
+     */
+    public static Serde<GenericRecord> singleObjectAvroSerde(
+            final AvroSchemaStore schemaStore,
+            final boolean readSpecificRecords) {
+        return new SingleObjectAvroSerde(schemaStore, readSpecificRecords);
+    }
+
+    static Serde<GenericRecord> schemaRegistryAvroSerde(
+            final String schemaRegistryUrl,
+            final boolean useMockSchemaRegistry,
+            final boolean isKey,
+            final boolean readSpecificRecords) {
+        return readSpecificRecords ?
+                specificAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, isKey) :
+                genericAvroSerde(schemaRegistryUrl, useMockSchemaRegistry, isKey);
+    }
+
     private static Map<String, Object> avroSchemaRegistryConfig(String schemaRegistryUrl, SchemaNameStrategy schemaNameStrategy) {
         final Map<String, Object> configMap = new HashMap<>();
         configMap.put(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl);
@@ -59,17 +104,20 @@ public final class AvroGenericUtils {
         private static final String VALUE = "value";
         private static final String SEQUENCE = "sequence";
 
+        // field positions, in the order valueWithSequenceSchema declares them
+        private static final int VALUE_POS = 0;
+        private static final int SEQUENCE_POS = 1;
+
         public static GenericRecord toGenericRecord(
                 final ValueWithSequence<GenericRecord> valueWithSequence
         ) {
             final GenericRecord value = valueWithSequence.value();
             final Schema schema = schemaCache.computeIfAbsent(value.getSchema(),
                     k -> valueWithSequenceSchema(value));
-            final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-            return builder
-                    .set(VALUE, value)
-                    .set(SEQUENCE, valueWithSequence.sequence().getSeq())
-                    .build();
+            final GenericData.Record record = new GenericData.Record(schema);
+            record.put(VALUE_POS, value);
+            record.put(SEQUENCE_POS, valueWithSequence.sequence().getSeq());
+            return record;
         }
 
         public static ValueWithSequence<GenericRecord> fromGenericRecord(final GenericRecord record) {
@@ -0,0 +1,145 @@
+package io.simplesource.kafka.serialization.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.message.SchemaStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A local store of the Avro schemas records were written with, keyed by the 64-bit Rabin fingerprint of their parsing
+ * canonical form, as used by Avro single object encoding. It stands in for a schema registry, so records can be written
+ * and read without any lookup to a remote service.
+ * <p>
+ * Schemas are added as records are written with them, and can be preloaded from schema files on the classpath or in a
+ * directory. A store backed by a directory also saves each schema it learns to that directory, and looks there for any
+ * fingerprint it does not know, so processes sharing the directory can read each other's records. Each schema file must
+ * hold one complete schema.
+ */
+public final class AvroSchemaStore implements SchemaStore {
+    private static final String SCHEMA_FILE_SUFFIX = ".avsc";
+
+    private final Map<Long, Schema> schemasByFingerprint = new ConcurrentHashMap<>();
+    private final Map<Schema, Long> fingerprints = new ConcurrentHashMap<>();
+    private final Optional<Path> directory;
+
+    private AvroSchemaStore(final Optional<Path> directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return a store holding only the schemas records are written with by this process
+     */
+    public static AvroSchemaStore inMemory() {
+        return new AvroSchemaStore(Optional.empty());
+    }
+
+    /**
+     * @param resources the classpath resources of the schema files to preload
+     * @return an in memory store preloaded with the given schemas
+     */
+    public static AvroSchemaStore fromClasspath(final String... resources) {
+        final AvroSchemaStore store = inMemory();
+        for (final String resource : resources) {
+            try (InputStream input = AvroSchemaStore.class.getClassLoader().getResourceAsStream(resource)) {
+                if (input == null)
+                    throw new IllegalArgumentException("Schema resource " + resource + " not found");
+                store.addSchema(new Schema.Parser().parse(input));
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Unable to read schema resource " + resource, e);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @param directory the directory to load schema files from and save learnt schemas to, created if missing
+     * @return a store backed by the directory
+     */
+    public static AvroSchemaStore fromDirectory(final Path directory) {
+        final AvroSchemaStore store = new AvroSchemaStore(Optional.of(requireNonNull(directory)));
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SCHEMA_FILE_SUFFIX)) {
+                for (final Path file : files) {
+                    store.cache(parse(file));
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read schemas from " + directory, e);
+        }
+        return store;
+    }
+
+    /**
+     * Adds a schema to the store, saving it to the backing directory if there is one.
+     *
+     * @return the fingerprint of the schema
+     */
+    public long addSchema(final Schema schema) {
+        final Long known = fingerprints.get(schema);
+        if (known != null)
+            return known;
+        final long fingerprint = cache(schema);
+        directory.ifPresent(d -> save(d, fingerprint, schema));
+        return fingerprint;
+    }
+
+    @Override
+    public Schema findByFingerprint(final long fingerprint) {
+        final Schema schema = schemasByFingerprint.get(fingerprint);
+        if (schema != null || !directory.isPresent())
+            return schema;
+        final Path file = schemaFile(directory.get(), fingerprint);
+        if (!Files.exists(file))
+            return null;
+        try {
+            final Schema saved = parse(file);
+            cache(saved);
+            return saved;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read schema from " + file, e);
+        }
+    }
+
+    private long cache(final Schema schema) {
+        final long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+        schemasByFingerprint.putIfAbsent(fingerprint, schema);
+        fingerprints.put(schema, fingerprint);
+        return fingerprint;
+    }
+
+    private static void save(final Path directory, final long fingerprint, final Schema schema) {
+        final Path file = schemaFile(directory, fingerprint);
+        if (Files.exists(file))
+            return;
+        try {
+            // write then move, so a concurrent reader never sees a partly written schema
+            final Path temporary = Files.createTempFile(directory, Long.toHexString(fingerprint), ".tmp");
+            Files.write(temporary, schema.toString(true).getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to save schema to " + file, e);
+        }
+    }
+
+    private static Schema parse(final Path file) throws IOException {
+        return new Schema.Parser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    private static Path schemaFile(final Path directory, final long fingerprint) {
+        return directory.resolve(String.format("%016x", fingerprint) + SCHEMA_FILE_SUFFIX);
+    }
+}
@@ -9,6 +9,7 @@ import io.simplesource.kafka.model.CommandRequest;
 import io.simplesource.kafka.model.CommandResponse;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
 
@@ -31,6 +32,12 @@ public final class AvroSerdes {
         private static final String COMMAND_ID = "commandId";
         private static final String COMMAND = "command";
 
+        // field positions, in the order commandRequestSchema declares them
+        private static final int AGGREGATE_KEY_POS = 0;
+        private static final int READ_SEQUENCE_POS = 1;
+        private static final int COMMAND_ID_POS = 2;
+        private static final int COMMAND_POS = 3;
+
         static GenericRecord toGenericRecord(
                 final CommandRequest<GenericRecord, GenericRecord> commandRequest
         ) {
@@ -39,13 +46,12 @@ public final class AvroSerdes {
             final Schema schema = schemaCache.computeIfAbsent(command.getSchema(),
                     k -> commandRequestSchema(command, key));
 
-            final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-            return builder
-                    .set(AGGREGATE_KEY, commandRequest.aggregateKey())
-                    .set(READ_SEQUENCE, commandRequest.readSequence().getSeq())
-                    .set(COMMAND_ID, commandRequest.commandId().toString())
-                    .set(COMMAND, command)
-                    .build();
+            final GenericData.Record record = new GenericData.Record(schema);
+            record.put(AGGREGATE_KEY_POS, key);
+            record.put(READ_SEQUENCE_POS, commandRequest.readSequence().getSeq());
+            record.put(COMMAND_ID_POS, commandRequest.commandId().toString());
+            record.put(COMMAND_POS, command);
+            return record;
         }
 
         static CommandRequest<GenericRecord, GenericRecord> fromGenericRecord(final GenericRecord record) {
@@ -70,16 +76,16 @@ public final class AvroSerdes {
     }
 
     static class CommandResponseKeyAvroHelper {
-        private static final Schema schema = commandResponseKeySchema();
         private static final String COMMAND_ID = "commandId";
+        private static final Schema schema = commandResponseKeySchema();
+        private static final int COMMAND_ID_POS = schema.getField(COMMAND_ID).pos();
 
         static GenericRecord toGenericRecord(
                 final UUID commandResponseKey
         ) {
-            final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-            return builder
-                    .set(COMMAND_ID, commandResponseKey.toString())
-                    .build();
+            final GenericData.Record record = new GenericData.Record(schema);
+            record.put(COMMAND_ID_POS, commandResponseKey.toString());
+            return record;
         }
 
         static UUID fromGenericRecord(final GenericRecord record) {
@@ -162,8 +168,6 @@ public final class AvroSerdes {
     }
 
     static class CommandResponseAvroHelper {
-        private static final Map<Schema, Schema> schemaCache = new ConcurrentHashMap<>();
-
         private static final String READ_SEQUENCE = "readSequence";
         private static final String COMMAND_ID = "commandId";
         private static final String RESULT = "result";
@@ -173,38 +177,50 @@ public final class AvroSerdes {
         private static final String ERROR_CODE = "errorCode";
         private static final String WRITE_SEQUENCE = "writeSequence";
 
+        // the response schema does not depend on the aggregate, so it and its field positions are resolved once
+        private static final Schema schema = commandResponseSchema();
+        private static final Schema responseFailureSchema = schema.getField(RESULT).schema().getTypes().get(0);
+        private static final Schema responseSuccessSchema = schema.getField(RESULT).schema().getTypes().get(1);
+        private static final Schema reasonSchema = responseFailureSchema.getField(REASON).schema();
+        private static final Schema additionalReasonsSchema = responseFailureSchema.getField(ADDITIONAL_REASONS).schema();
+
+        private static final int READ_SEQUENCE_POS = schema.getField(READ_SEQUENCE).pos();
+        private static final int COMMAND_ID_POS = schema.getField(COMMAND_ID).pos();
+        private static final int RESULT_POS = schema.getField(RESULT).pos();
+        private static final int REASON_POS = responseFailureSchema.getField(REASON).pos();
+        private static final int ADDITIONAL_REASONS_POS = responseFailureSchema.getField(ADDITIONAL_REASONS).pos();
+        private static final int WRITE_SEQUENCE_POS = responseSuccessSchema.getField(WRITE_SEQUENCE).pos();
+        private static final int ERROR_MESSAGE_POS = reasonSchema.getField(ERROR_MESSAGE).pos();
+        private static final int ERROR_CODE_POS = reasonSchema.getField(ERROR_CODE).pos();
 
         static GenericRecord toCommandResponse(
                 final CommandResponse commandResponse) {
-            final Schema schema = commandResponseSchema();
-            final Schema resultSchema = schema.getField(RESULT).schema();
-            final Schema responseFailureSchema = resultSchema.getTypes().get(0);
-            final Schema reasonSchema = responseFailureSchema.getField(REASON).schema();
-            final Schema responseSuccessSchema = resultSchema.getTypes().get(1);
-
-            return new GenericRecordBuilder(schema)
-                    .set(READ_SEQUENCE, commandResponse.readSequence().getSeq())
-                    .set(COMMAND_ID, commandResponse.commandId().toString())
-                    .set(RESULT, commandResponse.sequenceResult().fold(
-                            reasons -> new GenericRecordBuilder(responseFailureSchema)
-                                    .set(REASON, fromReason(reasonSchema, reasons.head()))
-                                    .set(ADDITIONAL_REASONS, reasons.tail()
-                                            .stream()
-                                            .map(reason -> fromReason(reasonSchema, reason))
-                                            .collect(Collectors.toList()))
-                                    .build(),
-                            sequence -> new GenericRecordBuilder(responseSuccessSchema)
-                                    .set(WRITE_SEQUENCE, sequence.getSeq())
-                                    .build()
-                    ))
-                    .build();
+            final GenericData.Record record = new GenericData.Record(schema);
+            record.put(READ_SEQUENCE_POS, commandResponse.readSequence().getSeq());
+            record.put(COMMAND_ID_POS, commandResponse.commandId().toString());
+            record.put(RESULT_POS, commandResponse.sequenceResult().fold(
+                    reasons -> {
+                        final GenericData.Record failure = new GenericData.Record(responseFailureSchema);
+                        failure.put(REASON_POS, fromReason(reasons.head()));
+                        final GenericData.Array<GenericRecord> additionalReasons =
+                                new GenericData.Array<>(reasons.tail().size(), additionalReasonsSchema);
+                        reasons.tail().forEach(reason -> additionalReasons.add(fromReason(reason)));
+                        failure.put(ADDITIONAL_REASONS_POS, additionalReasons);
+                        return failure;
+                    },
+                    sequence -> {
+                        final GenericData.Record success = new GenericData.Record(responseSuccessSchema);
+                        success.put(WRITE_SEQUENCE_POS, sequence.getSeq());
+                        return success;
+                    }));
+            return record;
         }
 
-        private static GenericRecord fromReason(final Schema schema, final CommandError commandError) {
-            return new GenericRecordBuilder(schema)
-                    .set(ERROR_MESSAGE, commandError.getMessage())
-                    .set(ERROR_CODE, commandError.getReason().name())
-                    .build();
+        private static GenericRecord fromReason(final CommandError commandError) {
+            final GenericData.Record reason = new GenericData.Record(reasonSchema);
+            reason.put(ERROR_MESSAGE_POS, commandError.getMessage());
+            reason.put(ERROR_CODE_POS, commandError.getReason().name());
+            return reason;
         }
 
         static CommandResponse fromCommandResponse(
@@ -272,23 +288,28 @@ public final class AvroSerdes {
 
     }
 
-    static class AggregateUpdateAvroHelper {
-        private static final Map<Schema, Schema> schemaCache = new ConcurrentHashMap<>();
-
+    /**
+     * Wraps the updates of a single aggregate, whose wrapper schema is resolved once when the helper is created.
+     */
+    static final class AggregateUpdateAvroHelper {
         private static final String AGGREGATION = "aggregate_update";
         private static final String SEQUENCE = "sequence";
 
-        static GenericRecord toGenericRecord(
-                final AggregateUpdate<GenericRecord> aggregateUpdate,
-                final Schema aggregateSchema
-        ) {
-            final Schema schema = schemaCache.computeIfAbsent(aggregateSchema,
-                    AggregateUpdateAvroHelper::generateSchema);
-            final GenericRecordBuilder builder = new GenericRecordBuilder(schema);
-            return builder
-                    .set(AGGREGATION, aggregateUpdate.aggregate())
-                    .set(SEQUENCE, aggregateUpdate.sequence().getSeq())
-                    .build();
+        // field positions, in the order generateSchema declares them
+        private static final int AGGREGATION_POS = 0;
+        private static final int SEQUENCE_POS = 1;
+
+        private final Schema schema;
+
+        AggregateUpdateAvroHelper(final Schema aggregateSchema) {
+            schema = generateSchema(aggregateSchema);
+        }
+
+        GenericRecord toGenericRecord(final AggregateUpdate<GenericRecord> aggregateUpdate) {
+            final GenericData.Record record = new GenericData.Record(schema);
+            record.put(AGGREGATION_POS, aggregateUpdate.aggregate());
+            record.put(SEQUENCE_POS, aggregateUpdate.sequence().getSeq());
+            return record;
         }
 
         static AggregateUpdate<GenericRecord> fromGenericRecord(final GenericRecord record) {
@@ -5,14 +5,33 @@ import org.apache.avro.Conversions;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificRecord;
 
 import static java.util.Objects.isNull;
 
+/**
+ * Maps the generated {@link SpecificRecord} classes of a domain. A record that was already read as its generated class,
+ * as the serdes do when reading specific records, is returned as it is. Any other record is copied into its generated
+ * class.
+ */
 public class AvroSpecificGenericMapper<D extends GenericRecord> implements GenericMapper<D, GenericRecord> {
 
+    private static final SpecificData SPECIFIC_DATA = new SpecificData();
+
+    static {
+        // generic writers of the wrapper records look up the conversions of nested decimal fields here
+        GenericData.get().addLogicalTypeConversion(new Conversions.DecimalConversion());
+        SpecificData.get().addLogicalTypeConversion(new Conversions.DecimalConversion());
+        SPECIFIC_DATA.addLogicalTypeConversion(new Conversions.DecimalConversion());
+    }
+
     private AvroSpecificGenericMapper() {
     }
 
+    static SpecificData specificData() {
+        return SPECIFIC_DATA;
+    }
+
     @Override
     public GenericRecord toGeneric(final D value) {
         return value;
@@ -20,10 +39,11 @@ public class AvroSpecificGenericMapper<D extends GenericRecord> implements Gener
 
     @Override
     public D fromGeneric(final GenericRecord serialized) {
-        GenericData.get().addLogicalTypeConversion(new Conversions.DecimalConversion());
-        SpecificData specificData = SpecificData.get();
-        specificData.addLogicalTypeConversion(new Conversions.DecimalConversion());
-        return isNull(serialized) ? null : (D) specificData.deepCopy(serialized.getSchema(), serialized);
+        if (isNull(serialized))
+            return null;
+        if (serialized instanceof SpecificRecord)
+            return (D) serialized;
+        return (D) SPECIFIC_DATA.deepCopy(serialized.getSchema(), serialized);
     }
 
     private static final AvroSpecificGenericMapper INSTANCE = new AvroSpecificGenericMapper();
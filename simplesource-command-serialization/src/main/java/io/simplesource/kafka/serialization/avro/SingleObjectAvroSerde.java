@@ -0,0 +1,140 @@
+package io.simplesource.kafka.serialization.avro;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes records in Avro single object encoding: a two byte marker, the 8 byte little endian fingerprint of the writer
+ * schema, then the binary encoded record. Writer schemas are looked up by fingerprint in a local {@link AvroSchemaStore}
+ * rather than a schema registry. Datum writers are cached per schema and datum readers per fingerprint.
+ */
+final class SingleObjectAvroSerde implements Serde<GenericRecord> {
+    private static final byte MARKER_0 = (byte) 0xC3;
+    private static final byte MARKER_1 = (byte) 0x01;
+    private static final int HEADER_SIZE = 10;
+
+    private final AvroSchemaStore schemaStore;
+    private final boolean readSpecificRecords;
+    private final Map<Schema, DatumWriter<GenericRecord>> writers = new ConcurrentHashMap<>();
+    private final Map<Long, DatumReader<GenericRecord>> readers = new ConcurrentHashMap<>();
+    private final ThreadLocal<BinaryEncoder> encoders = new ThreadLocal<>();
+    private final ThreadLocal<BinaryDecoder> decoders = new ThreadLocal<>();
+
+    private final Serializer<GenericRecord> serializer = new Serializer<GenericRecord>() {
+        @Override
+        public void configure(final Map<String, ?> configs, final boolean isKey) {
+        }
+
+        @Override
+        public byte[] serialize(final String topic, final GenericRecord record) {
+            return record == null ? null : write(record);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final Deserializer<GenericRecord> deserializer = new Deserializer<GenericRecord>() {
+        @Override
+        public void configure(final Map<String, ?> configs, final boolean isKey) {
+        }
+
+        @Override
+        public GenericRecord deserialize(final String topic, final byte[] data) {
+            return data == null ? null : read(topic, data);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    SingleObjectAvroSerde(final AvroSchemaStore schemaStore, final boolean readSpecificRecords) {
+        this.schemaStore = schemaStore;
+        this.readSpecificRecords = readSpecificRecords;
+    }
+
+    private byte[] write(final GenericRecord record) {
+        final Schema schema = record.getSchema();
+        final long fingerprint = schemaStore.addSchema(schema);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(MARKER_0);
+        out.write(MARKER_1);
+        out.write(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(fingerprint).array(), 0, Long.BYTES);
+        try {
+            final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, encoders.get());
+            encoders.set(encoder);
+            writers.computeIfAbsent(schema, GenericDatumWriter::new).write(record, encoder);
+            encoder.flush();
+        } catch (final IOException | RuntimeException e) {
+            throw new SerializationException("Error serializing Avro record with schema " + schema.getFullName(), e);
+        }
+        return out.toByteArray();
+    }
+
+    private GenericRecord read(final String topic, final byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != MARKER_0 || data[1] != MARKER_1)
+            throw new SerializationException("Record from topic " + topic + " is not in Avro single object encoding");
+        final long fingerprint = ByteBuffer.wrap(data, 2, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        final DatumReader<GenericRecord> reader = reader(fingerprint);
+        try {
+            final BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, HEADER_SIZE, data.length - HEADER_SIZE, decoders.get());
+            decoders.set(decoder);
+            return reader.read(null, decoder);
+        } catch (final IOException | RuntimeException e) {
+            throw new SerializationException("Error deserializing Avro record with schema fingerprint " + Long.toHexString(fingerprint), e);
+        }
+    }
+
+    private DatumReader<GenericRecord> reader(final long fingerprint) {
+        final DatumReader<GenericRecord> cached = readers.get(fingerprint);
+        if (cached != null)
+            return cached;
+        final Schema writerSchema = schemaStore.findByFingerprint(fingerprint);
+        if (writerSchema == null)
+            throw new SerializationException("No schema with fingerprint " + Long.toHexString(fingerprint) + " in the schema store");
+        final DatumReader<GenericRecord> reader = readSpecificRecords ?
+                SpecificRecordDeserializer.specificReader(writerSchema) :
+                new GenericDatumReader<>(writerSchema);
+        readers.put(fingerprint, reader);
+        return reader;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Serializer<GenericRecord> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<GenericRecord> deserializer() {
+        return deserializer;
+    }
+}
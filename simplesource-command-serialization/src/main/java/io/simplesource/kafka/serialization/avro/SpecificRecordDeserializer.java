@@ -0,0 +1,133 @@
+package io.simplesource.kafka.serialization.avro;
+
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads records in the schema registry wire format straight into the generated {@link org.apache.avro.specific.SpecificRecord}
+ * class of each nested record that has one, so the domain values inside a wrapper record need no further copy. The
+ * wrapper records themselves have no generated class and are read as generic records, as before.
+ * <p>
+ * Each writer schema is resolved against a reader schema in which every record with a generated class is replaced by the
+ * schema of that class. The resulting {@link SpecificDatumReader} is cached per writer schema id, which identifies the
+ * writer and reader schema pair.
+ */
+final class SpecificRecordDeserializer implements Deserializer<GenericRecord> {
+    private static final byte MAGIC_BYTE = 0x0;
+    private static final int HEADER_SIZE = 5;
+
+    private final SchemaRegistryClient schemaRegistry;
+    private final Map<Integer, DatumReader<GenericRecord>> readers = new ConcurrentHashMap<>();
+
+    SpecificRecordDeserializer(final SchemaRegistryClient schemaRegistry) {
+        this.schemaRegistry = schemaRegistry;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public GenericRecord deserialize(final String topic, final byte[] data) {
+        if (data == null)
+            return null;
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.get() != MAGIC_BYTE)
+            throw new SerializationException("Unknown magic byte reading from topic " + topic);
+        final int schemaId = buffer.getInt();
+        try {
+            return reader(schemaId).read(null,
+                    DecoderFactory.get().binaryDecoder(data, HEADER_SIZE, data.length - HEADER_SIZE, null));
+        } catch (final Exception e) {
+            throw new SerializationException("Error deserializing Avro message for id " + schemaId, e);
+        }
+    }
+
+    private DatumReader<GenericRecord> reader(final int schemaId) throws Exception {
+        final DatumReader<GenericRecord> cached = readers.get(schemaId);
+        if (cached != null)
+            return cached;
+        final DatumReader<GenericRecord> reader = specificReader(schemaRegistry.getById(schemaId));
+        readers.put(schemaId, reader);
+        return reader;
+    }
+
+    static DatumReader<GenericRecord> specificReader(final Schema writerSchema) {
+        final SpecificData specificData = AvroSpecificGenericMapper.specificData();
+        return new SpecificDatumReader<>(
+                writerSchema,
+                readerSchema(specificData, writerSchema, new IdentityHashMap<>()),
+                specificData);
+    }
+
+    static Schema readerSchema(final SpecificData specificData, final Schema writerSchema, final Map<Schema, Schema> resolved) {
+        final Schema known = resolved.get(writerSchema);
+        if (known != null)
+            return known;
+        final Schema readerSchema;
+        switch (writerSchema.getType()) {
+            case RECORD:
+                final Class<?> specificClass = specificData.getClass(writerSchema);
+                readerSchema = specificClass != null ?
+                        specificData.getSchema(specificClass) :
+                        wrapperReaderSchema(specificData, writerSchema, resolved);
+                break;
+            case UNION:
+                final List<Schema> types = new ArrayList<>();
+                boolean changed = false;
+                for (final Schema type : writerSchema.getTypes()) {
+                    final Schema readerType = readerSchema(specificData, type, resolved);
+                    changed |= readerType != type;
+                    types.add(readerType);
+                }
+                readerSchema = changed ? Schema.createUnion(types) : writerSchema;
+                break;
+            case ARRAY:
+                final Schema elementType = readerSchema(specificData, writerSchema.getElementType(), resolved);
+                readerSchema = elementType != writerSchema.getElementType() ? Schema.createArray(elementType) : writerSchema;
+                break;
+            case MAP:
+                final Schema valueType = readerSchema(specificData, writerSchema.getValueType(), resolved);
+                readerSchema = valueType != writerSchema.getValueType() ? Schema.createMap(valueType) : writerSchema;
+                break;
+            default:
+                readerSchema = writerSchema;
+        }
+        resolved.put(writerSchema, readerSchema);
+        return readerSchema;
+    }
+
+    private static Schema wrapperReaderSchema(final SpecificData specificData, final Schema writerSchema, final Map<Schema, Schema> resolved) {
+        final List<Schema.Field> fields = new ArrayList<>();
+        boolean changed = false;
+        for (final Schema.Field field : writerSchema.getFields()) {
+            final Schema fieldSchema = readerSchema(specificData, field.schema(), resolved);
+            changed |= fieldSchema != field.schema();
+            fields.add(new Schema.Field(field.name(), fieldSchema, field.doc(), field.defaultVal(), field.order()));
+        }
+        if (!changed)
+            return writerSchema;
+        final Schema readerSchema = Schema.createRecord(
+                writerSchema.getName(), writerSchema.getDoc(), writerSchema.getNamespace(), writerSchema.isError());
+        readerSchema.setFields(fields);
+        return readerSchema;
+    }
+
+    @Override
+    public void close() {
+    }
+}
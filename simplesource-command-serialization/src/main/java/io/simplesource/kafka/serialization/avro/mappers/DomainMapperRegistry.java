@@ -3,31 +3,52 @@ package io.simplesource.kafka.serialization.avro.mappers;
 import lombok.Value;
 import org.apache.avro.generic.GenericRecord;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.function.Predicate;
 
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Holds the mapping functions registered for each domain and serialized class pair. Lookups go through an index from
+ * each registered class to its mapper, rebuilt whenever a mapper is registered, so they cost the same however many
+ * classes are registered. A class that is not registered itself resolves to the mapper of its nearest registered
+ * superclass or interface, and the result is cached on the first lookup.
+ */
 public class DomainMapperRegistry {
-    private final Map<RegisterKey, RegisterMapper> mappers = newHashMap();
+    private final Map<RegisterKey, RegisterMapper> mappers = newLinkedHashMap();
+    private volatile Index index = new Index(Collections.emptyMap());
 
     public <D, A extends GenericRecord> Optional<RegisterMapper<D, A>> mapperFor(Class clazz) {
-        return mappers.entrySet().stream().filter(byClass(requireNonNull(clazz)))
-                .<RegisterMapper<D, A>>map(Map.Entry::getValue).findAny();
+        final Index current = index;
+        return (Optional) current.resolved.computeIfAbsent(requireNonNull(clazz), current::resolve);
     }
 
-    public <D, A extends GenericRecord> RegisterMapper<D, A> register(Class<?> domainClazz, Class<?> avroClazz,
-                                                                      Function<D, A> fromDomain,
-                                                                      Function<A, D> toDomain) {
+    public synchronized <D, A extends GenericRecord> RegisterMapper<D, A> register(Class<?> domainClazz, Class<?> avroClazz,
+                                                                                   Function<D, A> fromDomain,
+                                                                                   Function<A, D> toDomain) {
         RegisterMapper<D, A> registerMapper = new RegisterMapper<>(requireNonNull(fromDomain), requireNonNull(toDomain));
         mappers.put(new RegisterKey(requireNonNull(domainClazz), requireNonNull(avroClazz)),
                 registerMapper);
+        index = new Index(byClass());
         return registerMapper;
     }
 
+    private Map<Class<?>, RegisterMapper> byClass() {
+        final Map<Class<?>, RegisterMapper> byClass = newHashMap();
+        mappers.forEach((key, mapper) -> {
+            byClass.put(key.domainClass(), mapper);
+            byClass.put(key.serializedClass(), mapper);
+        });
+        return Collections.unmodifiableMap(byClass);
+    }
+
     @Value
     private class RegisterKey {
         final Class<?> domainClass;
@@ -40,7 +61,35 @@ public class DomainMapperRegistry {
         final Function<A, D> toDomainFunc;
     }
 
-    private Predicate<Map.Entry<RegisterKey,RegisterMapper>> byClass(Class clazz) {
-        return e -> e.getKey().domainClass().equals(clazz) || e.getKey().serializedClass().equals(clazz);
+    private static final class Index {
+        private final Map<Class<?>, RegisterMapper> byClass;
+        private final Map<Class<?>, Optional<RegisterMapper>> resolved = new ConcurrentHashMap<>();
+
+        private Index(final Map<Class<?>, RegisterMapper> byClass) {
+            this.byClass = byClass;
+        }
+
+        /**
+         * Searches the superclasses of the class, nearest first, then its interfaces breadth first.
+         */
+        private Optional<RegisterMapper> resolve(final Class<?> clazz) {
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                final RegisterMapper mapper = byClass.get(c);
+                if (mapper != null)
+                    return Optional.of(mapper);
+            }
+            final Deque<Class<?>> interfaces = new ArrayDeque<>();
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                Collections.addAll(interfaces, c.getInterfaces());
+            }
+            while (!interfaces.isEmpty()) {
+                final Class<?> i = interfaces.poll();
+                final RegisterMapper mapper = byClass.get(i);
+                if (mapper != null)
+                    return Optional.of(mapper);
+                Collections.addAll(interfaces, i.getInterfaces());
+            }
+            return Optional.empty();
+        }
     }
 }
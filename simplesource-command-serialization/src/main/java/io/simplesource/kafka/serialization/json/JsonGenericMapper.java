@@ -3,11 +3,16 @@ package io.simplesource.kafka.serialization.json;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import io.simplesource.kafka.serialization.util.GenericMapper;
 
+import java.io.IOException;
 import java.util.Optional;
 
-public final class JsonGenericMapper<D> implements GenericMapper<D, JsonElement> {
+public final class JsonGenericMapper<D> implements GenericMapper<D, JsonElement>, JsonStreamingMapper<D> {
 
     private static final String VALUE = "value";
     private static final String CLASS = "class";
@@ -16,6 +21,7 @@ public final class JsonGenericMapper<D> implements GenericMapper<D, JsonElement>
     }
 
     private final Gson gson = new Gson();
+    private final TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
 
     @Override
     public JsonElement toGeneric(final D value) {
@@ -39,6 +45,61 @@ public final class JsonGenericMapper<D> implements GenericMapper<D, JsonElement>
         }
     }
 
+    /**
+     * Writes the class ahead of the value, so that {@link #read(JsonReader)} can bind the value without buffering it.
+     */
+    @Override
+    public void write(final JsonWriter writer, final D value) throws IOException {
+        writer.beginObject();
+        if (value == null) {
+            writer.name(CLASS).nullValue();
+        } else {
+            writer.name(CLASS).value(value.getClass().getName());
+            writer.name(VALUE);
+            gson.toJson(value, value.getClass(), writer);
+        }
+        writer.endObject();
+    }
+
+    @Override
+    public D read(final JsonReader reader) throws IOException {
+        Class<?> clazz = null;
+        Object value = null;
+        JsonElement bufferedValue = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CLASS:
+                    clazz = nextClass(reader);
+                    break;
+                case VALUE:
+                    if (clazz != null)
+                        value = gson.fromJson(reader, clazz);
+                    else
+                        bufferedValue = elementAdapter.read(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (clazz == null)
+            return null;
+        return (D) (bufferedValue != null ? gson.fromJson(bufferedValue, clazz) : value);
+    }
+
+    static Class<?> nextClass(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        try {
+            return Class.forName(reader.nextString());
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalArgumentException("Invalid JSON domain object", e);
+        }
+    }
+
     private static final JsonGenericMapper INSTANCE = new JsonGenericMapper();
 
     public static <D> GenericMapper<D, JsonElement> jsonDomainMapper() {
@@ -3,13 +3,17 @@ package io.simplesource.kafka.serialization.json;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import io.simplesource.kafka.serialization.util.GenericMapper;
 
+import java.io.IOException;
 import java.util.Optional;
 
 import static java.util.Objects.isNull;
 
-public final class JsonOptionalGenericMapper<D> implements GenericMapper<Optional<D>, JsonElement> {
+public final class JsonOptionalGenericMapper<D> implements GenericMapper<Optional<D>, JsonElement>, JsonStreamingMapper<Optional<D>> {
 
     private static final String VALUE = "value";
     private static final String CLASS = "class";
@@ -18,6 +22,7 @@ public final class JsonOptionalGenericMapper<D> implements GenericMapper<Optiona
     }
 
     private final Gson gson = new Gson();
+    private final TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
 
     @Override
     public JsonElement toGeneric(final Optional<D> value) {
@@ -42,6 +47,49 @@ public final class JsonOptionalGenericMapper<D> implements GenericMapper<Optiona
         }
     }
 
+    /**
+     * Writes the class ahead of the value, so that {@link #read(JsonReader)} can bind the value without buffering it.
+     */
+    @Override
+    public void write(final JsonWriter writer, final Optional<D> value) throws IOException {
+        writer.beginObject();
+        if (value.isPresent()) {
+            writer.name(CLASS).value(value.get().getClass().getName());
+            writer.name(VALUE);
+            gson.toJson(value.get(), value.get().getClass(), writer);
+        } else {
+            writer.name(CLASS).nullValue();
+        }
+        writer.endObject();
+    }
+
+    @Override
+    public Optional<D> read(final JsonReader reader) throws IOException {
+        Class<?> clazz = null;
+        Object value = null;
+        JsonElement bufferedValue = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CLASS:
+                    clazz = JsonGenericMapper.nextClass(reader);
+                    break;
+                case VALUE:
+                    if (clazz != null)
+                        value = gson.fromJson(reader, clazz);
+                    else
+                        bufferedValue = elementAdapter.read(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (clazz == null)
+            return Optional.empty();
+        return Optional.of((D) (bufferedValue != null ? gson.fromJson(bufferedValue, clazz) : value));
+    }
+
     private static final JsonOptionalGenericMapper INSTANCE = new JsonOptionalGenericMapper();
 
     public static <D> GenericMapper<Optional<D>, JsonElement> jsonOptionalDomainMapper() {
@@ -0,0 +1,148 @@
+package io.simplesource.kafka.serialization.json;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.serialization.util.GenericMapper;
+import org.apache.kafka.common.serialization.Serde;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static io.simplesource.kafka.serialization.json.JsonGenericMapper.jsonDomainMapper;
+
+/**
+ * Aggregate serdes writing the same JSON as {@link JsonAggregateSerdes}, streamed straight to and from bytes without
+ * building an intermediate <code>JsonElement</code> tree or <code>String</code> for each record. Records written by
+ * either class can be read by the other, so an application can switch between them without migrating its topics.
+ * <p>
+ * Mappers that implement {@link JsonStreamingMapper}, as the built in JSON mappers do, are streamed end to end. Any
+ * other mapper still builds the tree of its own value, which is then streamed.
+ */
+public final class JsonStreamingAggregateSerdes<K, C, E, A> extends JsonStreamingSerdes<K, C> implements AggregateSerdes<K, C, E, A> {
+
+    private static final String VALUE = "value";
+    private static final String SEQUENCE = "sequence";
+    private static final String AGGREGATION = "aggregate_update";
+
+    private final JsonStreamingMapper<E> eventMapper;
+    private final JsonStreamingMapper<A> aggregateMapper;
+
+    private final Serde<K> ak;
+    private final Serde<CommandRequest<K, C>> cr;
+    private final Serde<UUID> crk;
+    private final Serde<ValueWithSequence<E>> vws;
+    private final Serde<AggregateUpdate<A>> au;
+    private final Serde<CommandResponse> cr2;
+
+    public JsonStreamingAggregateSerdes() {
+        this(jsonDomainMapper(), jsonDomainMapper(), jsonDomainMapper(), jsonDomainMapper());
+    }
+
+    public JsonStreamingAggregateSerdes(
+            final GenericMapper<K, JsonElement> keyMapper,
+            final GenericMapper<C, JsonElement> commandMapper,
+            final GenericMapper<E, JsonElement> eventMapper,
+            final GenericMapper<A, JsonElement> aggregateMapper
+    ) {
+        super(keyMapper, commandMapper);
+        this.eventMapper = streaming(eventMapper);
+        this.aggregateMapper = streaming(aggregateMapper);
+
+        ak = JsonStreamingSerde.of(this::writeAggregateKey, this::readAggregateKey);
+        cr = JsonStreamingSerde.of(this::writeCommandRequest, this::readCommandRequest);
+        crk = JsonStreamingSerde.of(JsonStreamingSerdes::writeUuid, JsonStreamingSerdes::readUuid);
+        vws = JsonStreamingSerde.of(this::writeValueWithSequence, this::readValueWithSequence);
+        au = JsonStreamingSerde.of(this::writeAggregateUpdate, this::readAggregateUpdate);
+        cr2 = JsonStreamingSerde.of(JsonStreamingSerdes::writeCommandResponse, JsonStreamingSerdes::readCommandResponse);
+    }
+
+    @Override
+    public Serde<K> aggregateKey() {
+        return ak;
+    }
+
+    @Override
+    public Serde<CommandRequest<K, C>> commandRequest() {
+        return cr;
+    }
+
+    @Override
+    public Serde<UUID> commandResponseKey() {
+        return crk;
+    }
+
+    @Override
+    public Serde<ValueWithSequence<E>> valueWithSequence() {
+        return vws;
+    }
+
+    @Override
+    public Serde<AggregateUpdate<A>> aggregateUpdate() {
+        return au;
+    }
+
+    @Override
+    public Serde<CommandResponse> commandResponse() {
+        return cr2;
+    }
+
+    private void writeValueWithSequence(final JsonWriter writer, final ValueWithSequence<E> valueWithSequence) throws IOException {
+        writer.beginObject();
+        writer.name(VALUE);
+        eventMapper.write(writer, valueWithSequence.value());
+        writer.name(SEQUENCE).value(valueWithSequence.sequence().getSeq());
+        writer.endObject();
+    }
+
+    private ValueWithSequence<E> readValueWithSequence(final JsonReader reader) throws IOException {
+        E value = null;
+        Sequence sequence = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case VALUE:
+                    value = eventMapper.read(reader);
+                    break;
+                case SEQUENCE:
+                    sequence = Sequence.position(reader.nextLong());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ValueWithSequence<>(value, sequence);
+    }
+
+    private void writeAggregateUpdate(final JsonWriter writer, final AggregateUpdate<A> aggregateUpdate) throws IOException {
+        writer.beginObject();
+        writer.name(AGGREGATION);
+        aggregateMapper.write(writer, aggregateUpdate.aggregate());
+        writer.name(SEQUENCE).value(aggregateUpdate.sequence().getSeq());
+        writer.endObject();
+    }
+
+    private AggregateUpdate<A> readAggregateUpdate(final JsonReader reader) throws IOException {
+        A aggregate = null;
+        Sequence sequence = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case AGGREGATION:
+                    aggregate = aggregateMapper.read(reader);
+                    break;
+                case SEQUENCE:
+                    sequence = Sequence.position(reader.nextLong());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new AggregateUpdate<>(aggregate, sequence);
+    }
+}
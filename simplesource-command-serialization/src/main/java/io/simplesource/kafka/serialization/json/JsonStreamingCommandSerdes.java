@@ -0,0 +1,60 @@
+package io.simplesource.kafka.serialization.json;
+
+import com.google.gson.JsonElement;
+import io.simplesource.kafka.api.CommandSerdes;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.serialization.util.GenericMapper;
+import org.apache.kafka.common.serialization.Serde;
+
+import java.util.UUID;
+
+import static io.simplesource.kafka.serialization.json.JsonGenericMapper.jsonDomainMapper;
+
+/**
+ * Command serdes writing the same JSON as {@link JsonCommandSerdes}, streamed straight to and from bytes without
+ * building an intermediate <code>JsonElement</code> tree or <code>String</code> for each record.
+ */
+public final class JsonStreamingCommandSerdes<K, C> extends JsonStreamingSerdes<K, C> implements CommandSerdes<K, C> {
+
+    private final Serde<K> ak;
+    private final Serde<CommandRequest<K, C>> cr;
+    private final Serde<UUID> crk;
+    private final Serde<CommandResponse> cr2;
+
+    public JsonStreamingCommandSerdes() {
+        this(jsonDomainMapper(), jsonDomainMapper());
+    }
+
+    public JsonStreamingCommandSerdes(
+            final GenericMapper<K, JsonElement> keyMapper,
+            final GenericMapper<C, JsonElement> commandMapper) {
+
+        super(keyMapper, commandMapper);
+
+        ak = JsonStreamingSerde.of(this::writeAggregateKey, this::readAggregateKey);
+        cr = JsonStreamingSerde.of(this::writeCommandRequest, this::readCommandRequest);
+        crk = JsonStreamingSerde.of(JsonStreamingSerdes::writeUuid, JsonStreamingSerdes::readUuid);
+        cr2 = JsonStreamingSerde.of(JsonStreamingSerdes::writeCommandResponse, JsonStreamingSerdes::readCommandResponse);
+    }
+
+    @Override
+    public Serde<K> aggregateKey() {
+        return ak;
+    }
+
+    @Override
+    public Serde<CommandRequest<K, C>> commandRequest() {
+        return cr;
+    }
+
+    @Override
+    public Serde<UUID> commandResponseKey() {
+        return crk;
+    }
+
+    @Override
+    public Serde<CommandResponse> commandResponse() {
+        return cr2;
+    }
+}
@@ -0,0 +1,22 @@
+package io.simplesource.kafka.serialization.json;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.simplesource.kafka.serialization.util.GenericMapper;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads domain objects straight to and from a JSON stream. A {@link GenericMapper} to {@link JsonElement}
+ * can also implement this interface to let the streaming serdes skip building a <code>JsonElement</code> tree for each
+ * value. The JSON written must hold the same fields as the tree the mapper would otherwise build, though not
+ * necessarily in the same order, so values can be read by either serde family.
+ *
+ * @param <V> the domain class to read or write
+ */
+public interface JsonStreamingMapper<V> {
+    void write(JsonWriter writer, V value) throws IOException;
+
+    V read(JsonReader reader) throws IOException;
+}
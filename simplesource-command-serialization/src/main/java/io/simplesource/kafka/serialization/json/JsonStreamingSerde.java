@@ -0,0 +1,111 @@
+package io.simplesource.kafka.serialization.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A serde that writes values with a {@link JsonWriter} straight into a UTF-8 buffer reused by each thread, and reads
+ * them back with a {@link JsonReader} decoding the bytes in place.
+ */
+final class JsonStreamingSerde<T> implements Serde<T> {
+    private static final ThreadLocal<Utf8Buffers.Output> OUTPUT = ThreadLocal.withInitial(Utf8Buffers.Output::new);
+    private static final ThreadLocal<Utf8Buffers.Input> INPUT = ThreadLocal.withInitial(Utf8Buffers.Input::new);
+
+    interface Writing<T> {
+        void write(JsonWriter writer, T value) throws IOException;
+    }
+
+    interface Reading<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private final Serializer<T> serializer;
+    private final Deserializer<T> deserializer;
+
+    static <T> Serde<T> of(final Writing<T> writing, final Reading<T> reading) {
+        return new JsonStreamingSerde<>(writing, reading);
+    }
+
+    static <T> Serde<T> of(final JsonStreamingMapper<T> mapper) {
+        return new JsonStreamingSerde<>(mapper::write, mapper::read);
+    }
+
+    private JsonStreamingSerde(final Writing<T> writing, final Reading<T> reading) {
+        serializer = new Serializer<T>() {
+            @Override
+            public void configure(final Map<String, ?> configs, final boolean isKey) {
+            }
+
+            @Override
+            public byte[] serialize(final String topic, final T data) {
+                if (data == null)
+                    return null;
+                // a mapper may serialize a nested value on the same thread, which must not share the buffer
+                final Utf8Buffers.Output output = OUTPUT.get().claim() ? OUTPUT.get() : new Utf8Buffers.Output();
+                try {
+                    final JsonWriter writer = new JsonWriter(output);
+                    writing.write(writer, data);
+                    writer.flush();
+                    return output.toByteArray();
+                } catch (final IOException e) {
+                    throw new SerializationException("Unable to write JSON for topic " + topic, e);
+                } finally {
+                    output.release();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        deserializer = new Deserializer<T>() {
+            @Override
+            public void configure(final Map<String, ?> configs, final boolean isKey) {
+            }
+
+            @Override
+            public T deserialize(final String topic, final byte[] data) {
+                if (data == null)
+                    return null;
+                final Utf8Buffers.Input input = INPUT.get().claim() ? INPUT.get() : new Utf8Buffers.Input();
+                try {
+                    input.reset(data);
+                    return reading.read(new JsonReader(input));
+                } catch (final IOException e) {
+                    throw new SerializationException("Unable to read JSON from topic " + topic, e);
+                } finally {
+                    input.release();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Serializer<T> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<T> deserializer() {
+        return deserializer;
+    }
+}
@@ -0,0 +1,266 @@
+package io.simplesource.kafka.serialization.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.simplesource.api.CommandError;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.model.CommandRequest;
+import io.simplesource.kafka.model.CommandResponse;
+import io.simplesource.kafka.serialization.util.GenericMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The command request, response and key formats shared by the streaming JSON serdes. Each format writes the same JSON
+ * as the matching adapter of {@link JsonSerdes}, so the streaming and tree based serdes can read each other's records.
+ */
+class JsonStreamingSerdes<K, C> {
+    private static final TypeAdapter<JsonElement> JSON_ELEMENT = new Gson().getAdapter(JsonElement.class);
+
+    private final GenericMapper<K, JsonElement> keyTreeMapper;
+    protected final JsonStreamingMapper<K> keyMapper;
+    protected final JsonStreamingMapper<C> commandMapper;
+
+    JsonStreamingSerdes(final GenericMapper<K, JsonElement> keyMapper, final GenericMapper<C, JsonElement> commandMapper) {
+        this.keyTreeMapper = keyMapper;
+        this.keyMapper = streaming(keyMapper);
+        this.commandMapper = streaming(commandMapper);
+    }
+
+    /**
+     * Writes an aggregate key through the tree, as its bytes decide the partition and store entry of the aggregate and
+     * so must stay exactly as {@link JsonSerdes} writes them. Keys are small, so there is little to gain from streaming.
+     */
+    void writeAggregateKey(final JsonWriter writer, final K key) throws IOException {
+        JSON_ELEMENT.write(writer, keyTreeMapper.toGeneric(key));
+    }
+
+    K readAggregateKey(final JsonReader reader) throws IOException {
+        return keyMapper.read(reader);
+    }
+
+    /**
+     * Uses the mapper directly if it opts into streaming, otherwise streams the tree it builds.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> JsonStreamingMapper<V> streaming(final GenericMapper<V, JsonElement> mapper) {
+        if (mapper instanceof JsonStreamingMapper)
+            return (JsonStreamingMapper<V>) mapper;
+        return new JsonStreamingMapper<V>() {
+            @Override
+            public void write(final JsonWriter writer, final V value) throws IOException {
+                JSON_ELEMENT.write(writer, mapper.toGeneric(value));
+            }
+
+            @Override
+            public V read(final JsonReader reader) throws IOException {
+                return mapper.fromGeneric(JSON_ELEMENT.read(reader));
+            }
+        };
+    }
+
+    static final class CommandRequestFormat {
+        private static final String AGGREGATE_KEY = "key";
+        private static final String READ_SEQUENCE = "readSequence";
+        private static final String COMMAND_ID = "commandId";
+        private static final String COMMAND = "command";
+
+        private CommandRequestFormat() {
+        }
+    }
+
+    void writeCommandRequest(final JsonWriter writer, final CommandRequest<K, C> commandRequest) throws IOException {
+        writer.beginObject();
+        writer.name(CommandRequestFormat.AGGREGATE_KEY);
+        keyMapper.write(writer, commandRequest.aggregateKey());
+        writer.name(CommandRequestFormat.READ_SEQUENCE).value(commandRequest.readSequence().getSeq());
+        writer.name(CommandRequestFormat.COMMAND_ID).value(commandRequest.commandId().toString());
+        writer.name(CommandRequestFormat.COMMAND);
+        commandMapper.write(writer, commandRequest.command());
+        writer.endObject();
+    }
+
+    CommandRequest<K, C> readCommandRequest(final JsonReader reader) throws IOException {
+        K key = null;
+        C command = null;
+        Sequence readSequence = null;
+        UUID commandId = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CommandRequestFormat.AGGREGATE_KEY:
+                    key = keyMapper.read(reader);
+                    break;
+                case CommandRequestFormat.READ_SEQUENCE:
+                    readSequence = Sequence.position(reader.nextLong());
+                    break;
+                case CommandRequestFormat.COMMAND_ID:
+                    commandId = UUID.fromString(reader.nextString());
+                    break;
+                case CommandRequestFormat.COMMAND:
+                    command = commandMapper.read(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new CommandRequest<>(key, command, readSequence, commandId);
+    }
+
+    private static final String RESPONSE_KEY_COMMAND_ID = "commandId";
+
+    static void writeUuid(final JsonWriter writer, final UUID uuid) throws IOException {
+        writer.beginObject();
+        writer.name(RESPONSE_KEY_COMMAND_ID).value(uuid.toString());
+        writer.endObject();
+    }
+
+    static UUID readUuid(final JsonReader reader) throws IOException {
+        UUID uuid = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(RESPONSE_KEY_COMMAND_ID))
+                uuid = UUID.fromString(reader.nextString());
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        return uuid;
+    }
+
+    static final class CommandResponseFormat {
+        private static final String READ_SEQUENCE = "readSequence";
+        private static final String COMMAND_ID = "commandId";
+        private static final String RESULT = "result";
+        private static final String REASON = "reason";
+        private static final String ADDITIONAL_REASONS = "additionalReasons";
+        private static final String ERROR_MESSAGE = "errorMessage";
+        private static final String ERROR_CODE = "errorCode";
+        private static final String WRITE_SEQUENCE = "writeSequence";
+
+        private CommandResponseFormat() {
+        }
+    }
+
+    static void writeCommandResponse(final JsonWriter writer, final CommandResponse commandResponse) throws IOException {
+        writer.beginObject();
+        writer.name(CommandResponseFormat.READ_SEQUENCE).value(commandResponse.readSequence().getSeq());
+        writer.name(CommandResponseFormat.COMMAND_ID).value(commandResponse.commandId().toString());
+        writer.name(CommandResponseFormat.RESULT).beginObject();
+        final Result<CommandError, Sequence> result = commandResponse.sequenceResult();
+        if (result.isSuccess()) {
+            writer.name(CommandResponseFormat.WRITE_SEQUENCE).value(result.getOrElse(null).getSeq());
+        } else {
+            final NonEmptyList<CommandError> reasons = result.failureReasons().get();
+            writer.name(CommandResponseFormat.REASON);
+            writeReason(writer, reasons.head());
+            writer.name(CommandResponseFormat.ADDITIONAL_REASONS).beginArray();
+            for (final CommandError reason : reasons.tail()) {
+                writeReason(writer, reason);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private static void writeReason(final JsonWriter writer, final CommandError commandError) throws IOException {
+        writer.beginObject();
+        if (commandError.getMessage() != null)
+            writer.name(CommandResponseFormat.ERROR_MESSAGE).value(commandError.getMessage());
+        writer.name(CommandResponseFormat.ERROR_CODE).value(commandError.getReason().name());
+        writer.endObject();
+    }
+
+    static CommandResponse readCommandResponse(final JsonReader reader) throws IOException {
+        Sequence readSequence = null;
+        UUID commandId = null;
+        Result<CommandError, Sequence> result = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CommandResponseFormat.READ_SEQUENCE:
+                    readSequence = Sequence.position(reader.nextLong());
+                    break;
+                case CommandResponseFormat.COMMAND_ID:
+                    commandId = UUID.fromString(reader.nextString());
+                    break;
+                case CommandResponseFormat.RESULT:
+                    result = readResult(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new CommandResponse(commandId, readSequence, result);
+    }
+
+    private static Result<CommandError, Sequence> readResult(final JsonReader reader) throws IOException {
+        Sequence writeSequence = null;
+        CommandError reason = null;
+        final List<CommandError> additionalReasons = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CommandResponseFormat.WRITE_SEQUENCE:
+                    writeSequence = Sequence.position(reader.nextLong());
+                    break;
+                case CommandResponseFormat.REASON:
+                    reason = readReason(reader);
+                    break;
+                case CommandResponseFormat.ADDITIONAL_REASONS:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        additionalReasons.add(readReason(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return reason != null ?
+                Result.failure(new NonEmptyList<>(reason, additionalReasons)) :
+                Result.success(writeSequence);
+    }
+
+    private static CommandError readReason(final JsonReader reader) throws IOException {
+        String message = null;
+        CommandError.Reason reason = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CommandResponseFormat.ERROR_MESSAGE:
+                    message = nextNullableString(reader);
+                    break;
+                case CommandResponseFormat.ERROR_CODE:
+                    reason = CommandError.Reason.valueOf(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return CommandError.of(reason, message);
+    }
+
+    static String nextNullableString(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,200 @@
+package io.simplesource.kafka.serialization.json;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Character streams that encode to and decode from UTF-8 byte arrays directly, so a buffer can be reused for every
+ * record serialized on a thread instead of allocating a <code>String</code> and encoder for each one.
+ */
+final class Utf8Buffers {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private Utf8Buffers() {
+    }
+
+    static final class Output extends Writer {
+        private static final int INITIAL_CAPACITY = 512;
+        private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+        private byte[] bytes = new byte[INITIAL_CAPACITY];
+        private int size;
+        private char highSurrogate;
+        private boolean claimed;
+
+        /**
+         * Claims the buffer for writing one record, emptying it.
+         *
+         * @return false if the buffer is already being written to
+         */
+        boolean claim() {
+            if (claimed)
+                return false;
+            claimed = true;
+            size = 0;
+            highSurrogate = 0;
+            return true;
+        }
+
+        void release() {
+            claimed = false;
+            if (bytes.length > MAX_RETAINED_CAPACITY)
+                bytes = new byte[INITIAL_CAPACITY];
+        }
+
+        byte[] toByteArray() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                ensureCapacity(1);
+                bytes[size++] = '?';
+            }
+            return Arrays.copyOf(bytes, size);
+        }
+
+        @Override
+        public void write(final int c) {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(final char[] chars, final int offset, final int length) {
+            ensureCapacity(length * 3);
+            for (int i = offset; i < offset + length; i++) {
+                writeChar(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(final String string, final int offset, final int length) {
+            ensureCapacity(length * 3);
+            for (int i = offset; i < offset + length; i++) {
+                writeChar(string.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void writeChar(final char c) {
+            ensureCapacity(4);
+            if (highSurrogate != 0) {
+                final char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    final int codePoint = Character.toCodePoint(high, c);
+                    bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                bytes[size++] = '?';
+                ensureCapacity(3);
+            }
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (size + extra > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    static final class Input extends Reader {
+        private byte[] bytes;
+        private int position;
+        private char lowSurrogate;
+        private boolean claimed;
+
+        /**
+         * @return false if the buffer is already being read from
+         */
+        boolean claim() {
+            if (claimed)
+                return false;
+            claimed = true;
+            return true;
+        }
+
+        void release() {
+            claimed = false;
+            bytes = null;
+        }
+
+        void reset(final byte[] bytes) {
+            this.bytes = bytes;
+            position = 0;
+            lowSurrogate = 0;
+        }
+
+        @Override
+        public int read(final char[] chars, final int offset, final int length) {
+            if (length == 0)
+                return 0;
+            int count = 0;
+            if (lowSurrogate != 0) {
+                chars[offset + count++] = lowSurrogate;
+                lowSurrogate = 0;
+            }
+            while (count < length && position < bytes.length) {
+                final int b = bytes[position] & 0xFF;
+                if (b < 0x80) {
+                    chars[offset + count++] = (char) b;
+                    position++;
+                } else if ((b >> 5) == 0x6 && continuation(1)) {
+                    chars[offset + count++] = (char) (((b & 0x1F) << 6) | (bytes[position + 1] & 0x3F));
+                    position += 2;
+                } else if ((b >> 4) == 0xE && continuation(2)) {
+                    chars[offset + count++] = (char) (((b & 0x0F) << 12) | ((bytes[position + 1] & 0x3F) << 6) | (bytes[position + 2] & 0x3F));
+                    position += 3;
+                } else if ((b >> 3) == 0x1E && continuation(3)) {
+                    final int codePoint = ((b & 0x07) << 18) | ((bytes[position + 1] & 0x3F) << 12) |
+                            ((bytes[position + 2] & 0x3F) << 6) | (bytes[position + 3] & 0x3F);
+                    position += 4;
+                    chars[offset + count++] = Character.highSurrogate(codePoint);
+                    if (count < length)
+                        chars[offset + count++] = Character.lowSurrogate(codePoint);
+                    else
+                        lowSurrogate = Character.lowSurrogate(codePoint);
+                } else {
+                    chars[offset + count++] = REPLACEMENT;
+                    position++;
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private boolean continuation(final int count) {
+            if (position + count >= bytes.length)
+                return false;
+            for (int i = 1; i <= count; i++) {
+                if ((bytes[position + i] & 0xC0) != 0x80)
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package io.simplesource.kafka.serialization.avro.mappers;
 
 import io.simplesource.api.CommandError;
+import io.simplesource.data.NonEmptyList;
 import io.simplesource.data.Result;
 import io.simplesource.data.Sequence;
 import io.simplesource.kafka.api.AggregateSerdes;
 import io.simplesource.kafka.model.*;
 import io.simplesource.kafka.serialization.avro.AvroAggregateSerdes;
+import io.simplesource.kafka.serialization.avro.generated.AccountCreated;
+import io.simplesource.kafka.serialization.avro.generated.UserAccount;
+import io.simplesource.kafka.serialization.avro.generated.UserAccountId;
 import io.simplesource.kafka.serialization.avro.mappers.domain.*;
 import org.junit.jupiter.api.BeforeEach;
+import org.apache.avro.generic.GenericRecord;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -109,4 +116,67 @@ public class AvroAggregateSerdeTests {
         assertThat(deserialised).isEqualToComparingFieldByField(commandResponse);
     }
 
+    @Test
+    void commandResponseFailureWithAdditionalReasons() {
+        CommandResponse commandResponse = new CommandResponse(
+                UUID.randomUUID(),
+                Sequence.first(),
+                Result.failure(new NonEmptyList<>(
+                        CommandError.of(CommandError.Reason.InvalidReadSequence, "Invalid sequence"),
+                        Arrays.asList(
+                                CommandError.of(CommandError.Reason.InvalidCommand, "Invalid command"),
+                                CommandError.of(CommandError.Reason.CommandHandlerFailed, "Handler failed")))));
+
+        byte[] serialised = serdes.commandResponse().serializer().serialize(topic, commandResponse);
+        CommandResponse deserialised = serdes.commandResponse().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(commandResponse);
+    }
+
+    @Test
+    void specificRecordsAreReadAsTheirGeneratedClasses() {
+        AggregateSerdes<UserAccountId, GenericRecord, GenericRecord, UserAccount> specificSerdes =
+                AvroAggregateSerdes.of("http://localhost:8081", true, UserAccount.SCHEMA$);
+        ValueWithSequence<GenericRecord> eventSeq = new ValueWithSequence<>(
+                new AccountCreated("name", new BigDecimal("100.0000")),
+                Sequence.position(2));
+
+        byte[] serialised = specificSerdes.valueWithSequence().serializer().serialize(topic, eventSeq);
+        ValueWithSequence<GenericRecord> deserialised = specificSerdes.valueWithSequence().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised.sequence()).isEqualTo(eventSeq.sequence());
+        assertThat(deserialised.value()).isInstanceOf(AccountCreated.class);
+        assertThat(((AccountCreated) deserialised.value()).getName()).isEqualTo("name");
+        assertThat(((AccountCreated) deserialised.value()).getBalance()).isEqualTo(new BigDecimal("100.0000"));
+
+        UserAccountId key = UserAccountId.newBuilder().setId("userId").build();
+        UserAccountId deserialisedKey = specificSerdes.aggregateKey().deserializer().deserialize(topic,
+                specificSerdes.aggregateKey().serializer().serialize(topic, key));
+        assertThat(deserialisedKey).isEqualTo(key);
+    }
+
+    @Test
+    void readSpecificRecords() {
+        AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> specificSerdes =
+                new AvroAggregateSerdes<>(
+                        UserAccountAvroMappers.keyMapper,
+                        UserAccountAvroMappers.commandMapper,
+                        UserAccountAvroMappers.eventMapper,
+                        UserAccountAvroMappers.aggregateMapper,
+                        "http://localhost:8081",
+                        true,
+                        UserAccount.SCHEMA$,
+                        true);
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(
+                Optional.of(new UserAccountDomain("Name", Money.valueOf("100"))),
+                Sequence.first());
+        CommandRequest<UserAccountDomainKey, UserAccountDomainCommand> commandRequest = new CommandRequest<>(
+                new UserAccountDomainKey("userId"),
+                new UserAccountDomainCommand.UpdateUserName("name"),
+                Sequence.first(),
+                UUID.randomUUID());
+
+        assertThat(specificSerdes.aggregateUpdate().deserializer().deserialize(topic,
+                specificSerdes.aggregateUpdate().serializer().serialize(topic, update))).isEqualToComparingFieldByField(update);
+        assertThat(specificSerdes.commandRequest().deserializer().deserialize(topic,
+                specificSerdes.commandRequest().serializer().serialize(topic, commandRequest))).isEqualToComparingFieldByField(commandRequest);
+    }
 }
@@ -0,0 +1,127 @@
+package io.simplesource.kafka.serialization.avro.mappers;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.serialization.avro.AvroAggregateSerdes;
+import io.simplesource.kafka.serialization.avro.AvroGenericUtils;
+import io.simplesource.kafka.serialization.avro.AvroSchemaStore;
+import io.simplesource.kafka.serialization.avro.generated.UserAccount;
+import io.simplesource.kafka.serialization.avro.mappers.domain.*;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serde;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AvroSingleObjectSerdeTests {
+    private static final String topic = "topic";
+    private Path schemaDirectory;
+
+    @BeforeEach
+    void setup() throws IOException {
+        schemaDirectory = Files.createTempDirectory("schemas");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(schemaDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> serdes(
+            final AvroSchemaStore schemaStore) {
+        final Serde<GenericRecord> serde = AvroGenericUtils.singleObjectAvroSerde(schemaStore, true);
+        return new AvroAggregateSerdes<>(
+                UserAccountAvroMappers.keyMapper,
+                UserAccountAvroMappers.commandMapper,
+                UserAccountAvroMappers.eventMapper,
+                UserAccountAvroMappers.aggregateMapper,
+                serde,
+                serde,
+                UserAccount.SCHEMA$);
+    }
+
+    @Test
+    void roundTripsWithoutASchemaRegistry() {
+        AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> serdes =
+                serdes(AvroSchemaStore.inMemory());
+        UserAccountDomainKey aggKey = new UserAccountDomainKey("userId");
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(
+                Optional.of(new UserAccountDomain("Name", Money.valueOf("100"))),
+                Sequence.first());
+        ValueWithSequence<UserAccountDomainEvent> eventSeq = new ValueWithSequence<>(
+                new UserAccountDomainEvent.AccountCreated("name", Money.valueOf("100")),
+                Sequence.first());
+        CommandRequest<UserAccountDomainKey, UserAccountDomainCommand> commandRequest = new CommandRequest<>(
+                aggKey,
+                new UserAccountDomainCommand.UpdateUserName("name"),
+                Sequence.first(),
+                UUID.randomUUID());
+        CommandResponse commandResponse = new CommandResponse(
+                UUID.randomUUID(),
+                Sequence.first(),
+                Result.failure(CommandError.of(CommandError.Reason.InvalidReadSequence, "Invalid sequence")));
+
+        assertThat(serdes.aggregateKey().deserializer().deserialize(topic,
+                serdes.aggregateKey().serializer().serialize(topic, aggKey))).isEqualToComparingFieldByField(aggKey);
+        assertThat(serdes.aggregateUpdate().deserializer().deserialize(topic,
+                serdes.aggregateUpdate().serializer().serialize(topic, update))).isEqualToComparingFieldByField(update);
+        assertThat(serdes.valueWithSequence().deserializer().deserialize(topic,
+                serdes.valueWithSequence().serializer().serialize(topic, eventSeq))).isEqualToComparingFieldByField(eventSeq);
+        assertThat(serdes.commandRequest().deserializer().deserialize(topic,
+                serdes.commandRequest().serializer().serialize(topic, commandRequest))).isEqualToComparingFieldByField(commandRequest);
+        assertThat(serdes.commandResponse().deserializer().deserialize(topic,
+                serdes.commandResponse().serializer().serialize(topic, commandResponse))).isEqualToComparingFieldByField(commandResponse);
+    }
+
+    @Test
+    void recordsStartWithTheSingleObjectHeader() {
+        AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> serdes =
+                serdes(AvroSchemaStore.inMemory());
+
+        byte[] serialised = serdes.aggregateKey().serializer().serialize(topic, new UserAccountDomainKey("userId"));
+
+        assertThat(serialised[0]).isEqualTo((byte) 0xC3);
+        assertThat(serialised[1]).isEqualTo((byte) 0x01);
+    }
+
+    @Test
+    void schemasLearntByOneStoreAreReadFromTheDirectoryByAnother() {
+        AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> writer =
+                serdes(AvroSchemaStore.fromDirectory(schemaDirectory));
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(
+                Optional.of(new UserAccountDomain("Name", Money.valueOf("100"))),
+                Sequence.position(5));
+
+        byte[] serialised = writer.aggregateUpdate().serializer().serialize(topic, update);
+
+        AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> reader =
+                serdes(AvroSchemaStore.fromDirectory(schemaDirectory));
+        assertThat(reader.aggregateUpdate().deserializer().deserialize(topic, serialised)).isEqualToComparingFieldByField(update);
+    }
+
+    @Test
+    void unknownSchemaFingerprintsFailToDeserialize() {
+        byte[] serialised = serdes(AvroSchemaStore.inMemory()).aggregateKey().serializer()
+                .serialize(topic, new UserAccountDomainKey("userId"));
+
+        assertThrows(SerializationException.class,
+                () -> serdes(AvroSchemaStore.inMemory()).aggregateKey().deserializer().deserialize(topic, serialised));
+    }
+}
@@ -72,4 +72,25 @@ class DomainMapperRegistryTest {
         assertThat(target.<UserAccountDomainCommand.CreateAccount, CreateAccount>mapperFor(serializedClass))
                 .contains(new RegisterMapper<>(FROM_CREATE_ACCOUNT_DOMAIN_FUNC, TO_CREATE_ACCOUNT_DOMAIN_FUNC));
     }
-}
\ No newline at end of file
+
+    @Test
+    void mapperForShouldReturnMappingFunctionsRegisteredLast() {
+        Class<?> domainClass = UserAccountDomainCommand.CreateAccount.class;
+        Class<?> serializedClass = CreateAccount.class;
+        target.register(domainClass, serializedClass, mock(Function.class), mock(Function.class));
+        target.<UserAccountDomainCommand.CreateAccount, CreateAccount>mapperFor(domainClass);
+        target.register(domainClass, serializedClass, FROM_CREATE_ACCOUNT_DOMAIN_FUNC, TO_CREATE_ACCOUNT_DOMAIN_FUNC);
+
+        assertThat(target.<UserAccountDomainCommand.CreateAccount, CreateAccount>mapperFor(domainClass))
+                .contains(new RegisterMapper<>(FROM_CREATE_ACCOUNT_DOMAIN_FUNC, TO_CREATE_ACCOUNT_DOMAIN_FUNC));
+    }
+
+    @Test
+    void mapperForShouldResolveClassesThroughARegisteredInterface() {
+        target.register(UserAccountDomainCommand.class, CreateAccount.class, FROM_CREATE_ACCOUNT_DOMAIN_FUNC, TO_CREATE_ACCOUNT_DOMAIN_FUNC);
+
+        assertThat(target.<UserAccountDomainCommand.CreateAccount, CreateAccount>mapperFor(UserAccountDomainCommand.UpdateUserName.class))
+                .contains(new RegisterMapper<>(FROM_CREATE_ACCOUNT_DOMAIN_FUNC, TO_CREATE_ACCOUNT_DOMAIN_FUNC));
+        assertThat(target.<UserAccountDomainCommand.CreateAccount, CreateAccount>mapperFor(Money.class)).isEmpty();
+    }
+}
@@ -3,6 +3,7 @@ package io.simplesource.kafka.serialization.avro.mappers;
 import io.simplesource.kafka.serialization.avro.mappers.domain.Money;
 import io.simplesource.kafka.serialization.avro.mappers.domain.UserAccountDomain;
 import io.simplesource.kafka.serialization.avro.generated.UserAccount;
+import io.simplesource.kafka.serialization.avro.generated.UserAccountId;
 import org.apache.avro.generic.GenericRecord;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -68,14 +69,28 @@ class GenericMapperRegistryTest {
     }
 
     @Test
-    void mapperForShouldDoExactMatchOfClassWhenSearchForRegisteredMappers() {
+    void mapperForShouldResolveSubclassesToTheMapperOfTheirNearestRegisteredSuperclass() {
         Function<ParentDomainModel, UserAccount> toSerialized = (ParentDomainModel d) -> new UserAccount();
         Function<UserAccount, ParentDomainModel> fromSerialized = (UserAccount d) -> new ParentDomainModel();
         registry.register(ParentDomainModel.class, UserAccount.class, toSerialized, fromSerialized);
 
         Optional<DomainMapperRegistry.RegisterMapper<ParentDomainModel, UserAccount>> actualResult = registry.mapperFor(ChildUserAccountDomain.class);
 
-        Assertions.assertThat(actualResult).isEmpty();
+        Assertions.assertThat(actualResult).contains(new DomainMapperRegistry.RegisterMapper<>(toSerialized, fromSerialized));
+    }
+
+    @Test
+    void mapperForShouldPreferAnExactMatchOverASuperclass() {
+        Function<ParentDomainModel, UserAccount> toSerialized = (ParentDomainModel d) -> new UserAccount();
+        Function<UserAccount, ParentDomainModel> fromSerialized = (UserAccount d) -> new ParentDomainModel();
+        Function<ChildUserAccountDomain, UserAccountId> childToSerialized = (ChildUserAccountDomain d) -> new UserAccountId();
+        Function<UserAccountId, ChildUserAccountDomain> childFromSerialized = (UserAccountId d) -> new ChildUserAccountDomain();
+        registry.register(ParentDomainModel.class, UserAccount.class, toSerialized, fromSerialized);
+        registry.register(ChildUserAccountDomain.class, UserAccountId.class, childToSerialized, childFromSerialized);
+
+        Optional<DomainMapperRegistry.RegisterMapper<ChildUserAccountDomain, UserAccountId>> actualResult = registry.mapperFor(ChildUserAccountDomain.class);
+
+        Assertions.assertThat(actualResult).contains(new DomainMapperRegistry.RegisterMapper<>(childToSerialized, childFromSerialized));
     }
 
     private static class ParentDomainModel {}
@@ -0,0 +1,176 @@
+package io.simplesource.kafka.serialization.avro.mappers;
+
+import io.simplesource.api.CommandError;
+import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
+import io.simplesource.data.Sequence;
+import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.model.*;
+import io.simplesource.kafka.serialization.avro.mappers.domain.*;
+import io.simplesource.kafka.serialization.json.JsonAggregateSerdes;
+import io.simplesource.kafka.serialization.json.JsonStreamingAggregateSerdes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static io.simplesource.kafka.serialization.json.JsonGenericMapper.jsonDomainMapper;
+import static io.simplesource.kafka.serialization.json.JsonOptionalGenericMapper.jsonOptionalDomainMapper;
+
+public class JsonStreamingAggregateSerdeTests {
+    private static final String topic = "topic";
+    private AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> serdes;
+    private AggregateSerdes<UserAccountDomainKey, UserAccountDomainCommand, UserAccountDomainEvent, Optional<UserAccountDomain>> treeSerdes;
+
+    @BeforeEach
+    void setup() {
+        serdes = new JsonStreamingAggregateSerdes<>(
+                jsonDomainMapper(),
+                jsonDomainMapper(),
+                jsonDomainMapper(),
+                jsonOptionalDomainMapper());
+        treeSerdes = new JsonAggregateSerdes<>(
+                jsonDomainMapper(),
+                jsonDomainMapper(),
+                jsonDomainMapper(),
+                jsonOptionalDomainMapper());
+    }
+
+    @Test
+    void aggregateKey() {
+        UserAccountDomainKey aggKey = new UserAccountDomainKey("userId");
+        byte[] serialised = serdes.aggregateKey().serializer().serialize(topic, aggKey);
+        UserAccountDomainKey deserialised = serdes.aggregateKey().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(aggKey);
+    }
+
+    @Test
+    void aggregateKeyBytesMatchTreeSerdes() {
+        UserAccountDomainKey aggKey = new UserAccountDomainKey("üser <\"1\"> 😀");
+        assertThat(serdes.aggregateKey().serializer().serialize(topic, aggKey))
+                .isEqualTo(treeSerdes.aggregateKey().serializer().serialize(topic, aggKey));
+    }
+
+    @Test
+    void aggregateKeyWithLoneSurrogatesMatchesTreeSerdes() {
+        UserAccountDomainKey aggKey = new UserAccountDomainKey("a😀\uDE00b\uD83D");
+        assertThat(serdes.aggregateKey().serializer().serialize(topic, aggKey))
+                .isEqualTo(treeSerdes.aggregateKey().serializer().serialize(topic, aggKey));
+    }
+
+    @Test
+    void uuidResponseKey() {
+        UUID responseKey = UUID.randomUUID();
+
+        byte[] serialised = serdes.commandResponseKey().serializer().serialize(topic, responseKey);
+        UUID deserialised = serdes.commandResponseKey().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualTo(responseKey);
+        assertThat(serialised).isEqualTo(treeSerdes.commandResponseKey().serializer().serialize(topic, responseKey));
+    }
+
+    @Test
+    void aggregateUpdate() {
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(
+                Optional.of(new UserAccountDomain("Name é中😀", Money.valueOf("100"))),
+                Sequence.first());
+
+        byte[] serialised = serdes.aggregateUpdate().serializer().serialize(topic, update);
+        AggregateUpdate<Optional<UserAccountDomain>> deserialised = serdes.aggregateUpdate().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(update);
+    }
+
+    @Test
+    void emptyAggregateUpdate() {
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(Optional.empty(), Sequence.first());
+
+        byte[] serialised = serdes.aggregateUpdate().serializer().serialize(topic, update);
+        assertThat(serdes.aggregateUpdate().deserializer().deserialize(topic, serialised)).isEqualToComparingFieldByField(update);
+        assertThat(treeSerdes.aggregateUpdate().deserializer().deserialize(topic, serialised)).isEqualToComparingFieldByField(update);
+    }
+
+    @Test
+    void aggregateUpdateReadsAcrossSerdes() {
+        AggregateUpdate<Optional<UserAccountDomain>> update = new AggregateUpdate<>(
+                Optional.of(new UserAccountDomain("Name 😀", Money.valueOf("100"))),
+                Sequence.position(7));
+
+        byte[] streamed = serdes.aggregateUpdate().serializer().serialize(topic, update);
+        byte[] tree = treeSerdes.aggregateUpdate().serializer().serialize(topic, update);
+        assertThat(treeSerdes.aggregateUpdate().deserializer().deserialize(topic, streamed)).isEqualToComparingFieldByField(update);
+        assertThat(serdes.aggregateUpdate().deserializer().deserialize(topic, tree)).isEqualToComparingFieldByField(update);
+    }
+
+    @Test
+    void commandRequest() {
+        UserAccountDomainKey aggKey = new UserAccountDomainKey("userId");
+
+        CommandRequest<UserAccountDomainKey, UserAccountDomainCommand> commandRequest = new CommandRequest<>(
+                aggKey,
+                new UserAccountDomainCommand.UpdateUserName("name"),
+                Sequence.first(),
+                UUID.randomUUID());
+
+        byte[] serialised = serdes.commandRequest().serializer().serialize(topic, commandRequest);
+        CommandRequest<UserAccountDomainKey, UserAccountDomainCommand> deserialised = serdes.commandRequest().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(commandRequest);
+    }
+
+    @Test
+    void commandRequestReadsAcrossSerdes() {
+        CommandRequest<UserAccountDomainKey, UserAccountDomainCommand> commandRequest = new CommandRequest<>(
+                new UserAccountDomainKey("userId"),
+                new UserAccountDomainCommand.UpdateUserName("näme"),
+                Sequence.position(3),
+                UUID.randomUUID());
+
+        byte[] streamed = serdes.commandRequest().serializer().serialize(topic, commandRequest);
+        byte[] tree = treeSerdes.commandRequest().serializer().serialize(topic, commandRequest);
+        assertThat(treeSerdes.commandRequest().deserializer().deserialize(topic, streamed)).isEqualToComparingFieldByField(commandRequest);
+        assertThat(serdes.commandRequest().deserializer().deserialize(topic, tree)).isEqualToComparingFieldByField(commandRequest);
+    }
+
+    @Test
+    void eventWithSequence() {
+        ValueWithSequence<UserAccountDomainEvent> eventSeq = new ValueWithSequence<>(
+                new UserAccountDomainEvent.AccountCreated("name", Money.valueOf("100")),
+                Sequence.first()                );
+
+        byte[] serialised = serdes.valueWithSequence().serializer().serialize(topic, eventSeq);
+        ValueWithSequence<UserAccountDomainEvent> deserialised = serdes.valueWithSequence().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(eventSeq);
+        assertThat(treeSerdes.valueWithSequence().deserializer().deserialize(topic, serialised)).isEqualToComparingFieldByField(eventSeq);
+    }
+
+    @Test
+    void commandResponseSuccess() {
+        CommandResponse commandResponse = new CommandResponse(
+                UUID.randomUUID(),
+                Sequence.first(),
+                Result.success(Sequence.first()));
+
+        byte[] serialised = serdes.commandResponse().serializer().serialize(topic, commandResponse);
+        CommandResponse deserialised = serdes.commandResponse().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(commandResponse);
+    }
+
+    @Test
+    void commandResponseFailure() {
+        CommandResponse commandResponse = new CommandResponse(
+                UUID.randomUUID(),
+                Sequence.first(),
+                Result.failure(new NonEmptyList<>(
+                        CommandError.of(CommandError.Reason.InvalidReadSequence, "Invalid sequence"),
+                        Collections.singletonList(CommandError.of(CommandError.Reason.InvalidCommand, "Invalid é")))));
+
+        byte[] serialised = serdes.commandResponse().serializer().serialize(topic, commandResponse);
+        CommandResponse deserialised = serdes.commandResponse().deserializer().deserialize(topic, serialised);
+        assertThat(deserialised).isEqualToComparingFieldByField(commandResponse);
+        assertThat(treeSerdes.commandResponse().deserializer().deserialize(topic, serialised)).isEqualToComparingFieldByField(commandResponse);
+        assertThat(serdes.commandResponse().deserializer().deserialize(topic,
+                treeSerdes.commandResponse().serializer().serialize(topic, commandResponse))).isEqualToComparingFieldByField(commandResponse);
+    }
+}
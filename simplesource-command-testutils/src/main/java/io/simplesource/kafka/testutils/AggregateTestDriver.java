@@ -6,8 +6,12 @@ import io.simplesource.data.FutureResult;
 import io.simplesource.data.Sequence;
 import io.simplesource.kafka.api.AggregateResources;
 import io.simplesource.kafka.api.AggregateSerdes;
+import io.simplesource.kafka.api.QueryAPI;
 import io.simplesource.kafka.dsl.KafkaConfig;
 import io.simplesource.kafka.internal.client.*;
+import io.simplesource.kafka.internal.streams.AggregateUpdateWaiters;
+import io.simplesource.kafka.internal.streams.KafkaQueryAPI;
+import io.simplesource.kafka.internal.streams.StateStoreResponseLookup;
 import io.simplesource.kafka.internal.streams.topology.EventSourcedTopology;
 import io.simplesource.kafka.internal.streams.topology.TopologyContext;
 import io.simplesource.kafka.internal.util.NamedThreadFactory;
@@ -18,14 +22,17 @@ import io.simplesource.kafka.model.ValueWithSequence;
 import io.simplesource.kafka.spec.AggregateSpec;
 import io.simplesource.kafka.spec.CommandSpec;
 import io.simplesource.kafka.util.SpecUtils;
+import io.simplesource.kafka.util.UuidSerde;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.TopologyTestDriver;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
@@ -43,13 +50,15 @@ public final class AggregateTestDriver<K, C, E, A> {
 
     private final KafkaCommandAPI<K, C> commandAPI;
     private final ArrayList<Runnable> statePollers;
+    private final Optional<QueryAPI<K, A>> queryAPI;
 
     public AggregateTestDriver(
             final AggregateSpec<K, C, E, A> aggregateSpec,
             final KafkaConfig kafkaConfig
     ) {
         final StreamsBuilder builder = new StreamsBuilder();
-        final TopologyContext<K, C, E, A> ctx = new TopologyContext<>(aggregateSpec);
+        final AggregateUpdateWaiters<K, A> aggregateUpdateWaiters = new AggregateUpdateWaiters<>();
+        final TopologyContext<K, C, E, A> ctx = new TopologyContext<>(aggregateSpec, aggregateUpdateWaiters::updated);
         final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor(
                 new NamedThreadFactory("QueryAPI-scheduler"));
 
@@ -59,22 +68,26 @@ public final class AggregateTestDriver<K, C, E, A> {
         aggregateSerdes = aggregateSpec.serialization().serdes();
         final Properties streamConfig = new Properties();
         streamConfig.putAll(kafkaConfig.streamsConfig());
-        driver = new TopologyTestDriver(builder.build(), streamConfig, 0L);
+        final Topology topology = builder.build();
+        driver = new TopologyTestDriver(topology, streamConfig, 0L);
+        queryAPI = KafkaQueryAPI.storeName(aggregateSpec)
+                .map(storeName -> new KafkaQueryAPI<K, A>(aggregateSpec, storeName, driver::<K, AggregateUpdate<A>>getKeyValueStore, key -> null, null, null, scheduledExecutor, aggregateUpdateWaiters));
+
+        CommandSpec<K, C> commandSpec = SpecUtils.getCommandSpec(aggregateSpec,"localhost");
+        RequestAPIContext<?, ?, CommandResponse> requestCtx =
+                KafkaCommandAPI.getRequestAPIContext(commandSpec, kafkaConfig, scheduledExecutor);
 
         // create a version of the command API that pipes stuff in and out of the TestTopologyDriver
         RequestPublisher<K, CommandRequest<K, C>> commandRequestPublisher =
-                new TestPublisher<>(driver, aggregateSerdes.aggregateKey(), aggregateSerdes.commandRequest(), topicName(TopicEntity.command_request));
+                new TestPublisher<>(driver, aggregateSerdes.aggregateKey(), aggregateSerdes.commandRequest(), topicName(TopicEntity.command_request),
+                        KafkaRequestAPI.requestHeaders(requestCtx));
         final RequestPublisher<UUID, String> responseTopicMapPublisher =
                 new TestPublisher<>(driver, aggregateSerdes.commandResponseKey(), Serdes.String(), topicName(TopicEntity.command_response_topic_map));
-
-        CommandSpec<K, C> commandSpec = SpecUtils.getCommandSpec(aggregateSpec,"localhost");
-        RequestAPIContext<?, ?, CommandResponse> requestCtx =
-                KafkaCommandAPI.getRequestAPIContext(commandSpec, kafkaConfig, scheduledExecutor);
         
         TestTopologyReceiver.ReceiverSpec<UUID, CommandResponse> receiverSpec = new TestTopologyReceiver.ReceiverSpec<>(
                 requestCtx.privateResponseTopic(), 400, 4,
                 requestCtx.responseValueSerde(),
-                stringKey -> UUID.fromString(stringKey.substring(stringKey.length() - 36)));
+                new UuidSerde());
 
         statePollers = new ArrayList<>();
         final Function<BiConsumer<UUID, CommandResponse>, ResponseSubscription> receiverAttacher = updateTarget -> {
@@ -88,13 +101,18 @@ public final class AggregateTestDriver<K, C, E, A> {
                 scheduledExecutor,
                 commandRequestPublisher,
                 responseTopicMapPublisher,
-                receiverAttacher);
+                receiverAttacher,
+                new StateStoreResponseLookup(aggregateSpec, driver::getKeyValueStore));
     }
 
     public FutureResult<CommandError, UUID> publishCommand(final CommandAPI.Request<K, C> request) {
         return commandAPI.publishCommand(request);
     }
 
+    public List<FutureResult<CommandError, UUID>> publishCommands(final List<CommandAPI.Request<K, C>> requests) {
+        return commandAPI.publishCommands(requests);
+    }
+
     public FutureResult<CommandError, Sequence> queryCommandResult(
         final UUID commandId,
         final Duration timeout) {
@@ -102,6 +120,14 @@ public final class AggregateTestDriver<K, C, E, A> {
         return commandAPI.queryCommandResult(commandId, timeout);
     }
 
+    /**
+     * @return a QueryAPI reading the aggregate store of the topology under test
+     * @throws IllegalStateException if the aggregate is snapshotted, as its current state is not held in a store
+     */
+    public QueryAPI<K, A> getQueryAPI() {
+        return queryAPI.orElseThrow(() -> new IllegalStateException("Aggregate " + aggregateSpec.aggregateName() + " cannot be queried"));
+    }
+
     Optional<KeyValue<K, AggregateUpdate<A>>> readAggregateTopic() {
         final ProducerRecord<K, AggregateUpdate<A>> maybeRecord = driver.readOutput(
                 topicName(TopicEntity.aggregate),
@@ -2,28 +2,40 @@ package io.simplesource.kafka.testutils;
 
 import io.simplesource.data.FutureResult;
 import io.simplesource.kafka.internal.client.RequestPublisher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.TopologyTestDriver;
 import org.apache.kafka.streams.test.ConsumerRecordFactory;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
 
 class TestPublisher<K, V> implements RequestPublisher<K, V> {
 
     private final ConsumerRecordFactory<K,V> factory;
     TopologyTestDriver driver;
     private final String topicName;
+    private final List<Header> headers;
 
     TestPublisher(TopologyTestDriver driver, final Serde<K> keySerde, final Serde<V> valueSerde, String topicName) {
+        this(driver, keySerde, valueSerde, topicName, Collections.emptyList());
+    }
+
+    TestPublisher(TopologyTestDriver driver, final Serde<K> keySerde, final Serde<V> valueSerde, String topicName, List<Header> headers) {
 
         this.driver = driver;
         this.topicName = topicName;
+        this.headers = headers;
         factory = new ConsumerRecordFactory<>(keySerde.serializer(), valueSerde.serializer());
     }
 
     @Override
     public FutureResult<Exception, PublishResult> publish(K key, V value) {
-        driver.pipeInput(factory.create(topicName, key, value));
+        ConsumerRecord<byte[], byte[]> record = factory.create(topicName, key, value);
+        headers.forEach(record.headers()::add);
+        driver.pipeInput(record);
         return FutureResult.of(new PublishResult(Instant.now().getEpochSecond()));
     }
 }
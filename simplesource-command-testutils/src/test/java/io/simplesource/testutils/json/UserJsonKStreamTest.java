@@ -1,7 +1,10 @@
 package io.simplesource.testutils.json;
 
+import io.simplesource.api.CommandAPI;
 import io.simplesource.api.CommandError;
+import io.simplesource.data.FutureResult;
 import io.simplesource.data.NonEmptyList;
+import io.simplesource.data.Result;
 import io.simplesource.data.Sequence;
 import io.simplesource.testutils.domain.UserAggregate;
 import io.simplesource.testutils.domain.User;
@@ -13,17 +16,27 @@ import io.simplesource.kafka.dsl.KafkaConfig;
 import io.simplesource.kafka.testutils.AggregateTestDriver;
 import io.simplesource.kafka.testutils.AggregateTestHelper;
 import io.simplesource.kafka.util.PrefixResourceNamingStrategy;
+import io.simplesource.kafka.model.AggregateUpdate;
 import io.simplesource.kafka.model.ValueWithSequence;
 import io.simplesource.kafka.serialization.json.JsonAggregateSerdes;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static io.simplesource.kafka.serialization.json.JsonGenericMapper.jsonDomainMapper;
 import static io.simplesource.kafka.serialization.json.JsonOptionalGenericMapper.jsonOptionalDomainMapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class UserJsonKStreamTest {
     private AggregateTestDriver<UserKey, UserCommand, UserEvent, Optional<User>> testAPI;
@@ -99,6 +112,95 @@ class UserJsonKStreamTest {
 
     }
 
+    @Test
+    void queryAggregate() {
+        final UserKey key = new UserKey("query1");
+        assertEquals(Result.success(Optional.empty()), testAPI.getQueryAPI().queryAggregate(key)
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.InternalError, e)));
+
+        testHelper.publishCommand(
+            key,
+            Sequence.first(),
+            new UserCommand.InsertUser("Query", "User"))
+            .expecting(
+                NonEmptyList.of(new UserEvent.UserInserted("Query", "User")),
+                Optional.of(new User("Query", "User", null))
+            );
+
+        final Result<CommandError, Optional<AggregateUpdate<Optional<User>>>> queried = testAPI.getQueryAPI().queryAggregate(key)
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.InternalError, e));
+        assertEquals(
+            Optional.of(Optional.of(new User("Query", "User", null))),
+            queried.getOrElse(Optional.empty()).map(AggregateUpdate::aggregate));
+    }
+
+    @Test
+    void queryAggregateAtSequence() {
+        final UserKey key = new UserKey("query2");
+        final UUID commandId = UUID.randomUUID();
+        final Result<CommandError, Sequence> published = testAPI.publishCommand(
+            new CommandAPI.Request<>(key, Sequence.first(), commandId, new UserCommand.InsertUser("Await", "User")))
+            .flatMap(id -> testAPI.queryCommandResult(id, Duration.ofSeconds(30)))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.Timeout, e));
+        final Sequence sequence = published.getOrElse(null);
+
+        final Result<CommandError, AggregateUpdate<Optional<User>>> reached = testAPI.getQueryAPI()
+            .queryAggregate(key, sequence, Duration.ofSeconds(1))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.InternalError, e));
+        assertEquals(Result.success(new AggregateUpdate<>(Optional.of(new User("Await", "User", null)), sequence)), reached);
+
+        final Result<CommandError, AggregateUpdate<Optional<User>>> notReached = testAPI.getQueryAPI()
+            .queryAggregate(key, sequence.next(), Duration.ofMillis(50))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.InternalError, e));
+        assertEquals(
+            Optional.of(CommandError.Reason.Timeout),
+            notReached.failureReasons().map(reasons -> reasons.head().getReason()));
+    }
+
+    @Test
+    void queryAggregateWaitsForTheCommandReachingTheSequence() {
+        final UserKey key = new UserKey("query3");
+        final Sequence sequence = testAPI.publishCommand(
+            new CommandAPI.Request<>(key, Sequence.first(), UUID.randomUUID(), new UserCommand.InsertUser("Await", "User")))
+            .flatMap(id -> testAPI.queryCommandResult(id, Duration.ofSeconds(30)))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.Timeout, e))
+            .getOrElse(null);
+
+        final CompletableFuture<Result<CommandError, AggregateUpdate<Optional<User>>>> waiting = testAPI.getQueryAPI()
+            .queryAggregate(key, sequence.next(), Duration.ofSeconds(30))
+            .future();
+        assertFalse(waiting.isDone());
+
+        testAPI.publishCommand(
+            new CommandAPI.Request<>(key, sequence, UUID.randomUUID(), new UserCommand.UpdateName("Updated", "User")))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.CommandPublishError, e));
+        final AggregateUpdate<Optional<User>> reached = waiting.join().getOrElse(null);
+        assertEquals(Optional.of(new User("Updated", "User", null)), reached.aggregate());
+        assertTrue(reached.sequence().isGreaterThanOrEqual(sequence.next()));
+    }
+
+    @Test
+    void publishCommandsInBatch() {
+        final List<CommandAPI.Request<UserKey, UserCommand>> requests = IntStream.range(0, 5)
+            .mapToObj(i -> new CommandAPI.Request<UserKey, UserCommand>(
+                new UserKey("batch" + i),
+                Sequence.first(),
+                UUID.randomUUID(),
+                new UserCommand.InsertUser("First " + i, "Last " + i)))
+            .collect(Collectors.toList());
+
+        final Result<CommandError, List<UUID>> published = FutureResult.sequence(testAPI.publishCommands(requests))
+            .unsafePerform(e -> CommandError.of(CommandError.Reason.CommandPublishError, e));
+        final List<UUID> commandIds = requests.stream().map(CommandAPI.Request::commandId).collect(Collectors.toList());
+        assertEquals(Result.success(commandIds), published);
+
+        commandIds.forEach(commandId -> {
+            final Result<CommandError, Sequence> result = testAPI.queryCommandResult(commandId, Duration.ofSeconds(30))
+                .unsafePerform(e -> CommandError.of(CommandError.Reason.Timeout, e));
+            assertTrue(result.isSuccess());
+        });
+    }
+
     @Test
     void updateBeforeInsert() {
         final UserKey id = new UserKey("national1");
@@ -1,8 +1,16 @@
 package io.simplesource.data;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -10,57 +18,149 @@ import java.util.function.Supplier;
 /**
  * Represents an operation that calculates an {@link Result} asynchronously.
  *
+ * Results that are already known are created complete, and {@link #map} and {@link #flatMap} of a completed result run
+ * on the calling thread. Everything else that runs asynchronously uses the executor it is given, or the common
+ * {@link ForkJoinPool} if none is given.
+ *
  * @param <E> on failure there will be a NonEmptyList of error instances with an error value of this type.
  * @param <T> when successful there will be a contained value of this type.
  */
 public final class FutureResult<E, T> {
 
+    private static final Executor DEFAULT_EXECUTOR = ForkJoinPool.commonPool();
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
     private final CompletableFuture<Result<E, T>> run;
 
+    /**
+     * Runs tasks straight away on the thread that submits them. A continuation given this executor runs on whichever
+     * thread completes the result, such as a Kafka producer I/O thread, so it must never block. Continuations that do
+     * further I/O, such as sending another record, should be given a pool executor instead.
+     *
+     * @return an executor that runs tasks on the submitting thread
+     */
+    public static Executor directExecutor() {
+        return DIRECT_EXECUTOR;
+    }
+
+    /**
+     * @return the executor shared by every caller that starts a virtual thread per task, if the running JVM supports
+     * virtual threads
+     */
+    public static Optional<Executor> virtualThreadExecutor() {
+        return VirtualThreads.EXECUTOR;
+    }
+
+    private static final class VirtualThreads {
+        // created once, on first use, and never closed: it holds no threads between tasks
+        static final Optional<Executor> EXECUTOR = create();
+
+        private static Optional<Executor> create() {
+            try {
+                return Optional.of((Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+            } catch (final ReflectiveOperationException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
     public static <E, T> FutureResult<E, T> ofCompletableFuture(final CompletableFuture<Result<E, T>> run) {
         return new FutureResult<>(run);
     }
 
+    /**
+     * Wraps an operation that reports its own completion, so no thread is held while it is in flight.
+     *
+     * @param stage the operation
+     * @param f maps the exception the operation completed with, if any, to an error
+     * @param <E> the error type
+     * @param <T> the value type
+     * @return a FutureResult that completes when the operation does
+     */
+    public static <E, T> FutureResult<E, T> ofCompletionStage(final CompletionStage<T> stage, final Function<Exception, E> f) {
+        return new FutureResult<>(stage
+                .handle((t, throwable) -> throwable == null ? Result.<E, T>success(t) : Result.<E, T>failure(f.apply(toException(throwable))))
+                .toCompletableFuture());
+    }
+
+    /**
+     * Wraps a plain {@link Future}. Unless the future is also a {@link CompletionStage}, waiting for it holds a
+     * thread from the common pool until it completes, so prefer {@link #ofCompletionStage} where possible.
+     */
+    @SuppressWarnings("unchecked")
     public static <E, T> FutureResult<E, T> ofFuture(final Future<T> run, final Function<Exception, E> f) {
+        if (run instanceof CompletionStage)
+            return ofCompletionStage((CompletionStage<T>) run, f);
         return new FutureResult<>(CompletableFuture.supplyAsync(() -> {
             try {
                 return Result.success(run.get());
             } catch (final InterruptedException | ExecutionException e) {
                 return Result.failure(f.apply(e));
             }
-        }));
+        }, DEFAULT_EXECUTOR));
     }
 
+    @SuppressWarnings("unchecked")
     public static <E, T> FutureResult<E, T> ofFutureResult(final Future<Result<E, T>> future, final Function<Exception, E> f) {
+        if (future instanceof CompletionStage)
+            return new FutureResult<>(((CompletionStage<Result<E, T>>) future)
+                    .handle((result, throwable) -> throwable == null ? result : Result.<E, T>failure(f.apply(toException(throwable))))
+                    .toCompletableFuture());
         return new FutureResult<>(CompletableFuture.supplyAsync(() -> {
             try {
                 return future.get();
             } catch (final InterruptedException | ExecutionException e) {
                 return Result.failure(f.apply(e));
             }
-        }));
+        }, DEFAULT_EXECUTOR));
     }
 
     public static <E, T> FutureResult<E, T> ofResult(final Result<E, T> result) {
-        return new FutureResult<>(() -> result);
+        return new FutureResult<>(CompletableFuture.completedFuture(result));
     }
 
     public static <E, T> FutureResult<E, T> ofSupplier(final Supplier<Result<E, T>> supplier) {
-        return new FutureResult<>(supplier);
+        return ofSupplier(supplier, DEFAULT_EXECUTOR);
     }
 
+    public static <E, T> FutureResult<E, T> ofSupplier(final Supplier<Result<E, T>> supplier, final Executor executor) {
+        return new FutureResult<>(CompletableFuture.supplyAsync(supplier, executor));
+    }
 
     public static <E, T> FutureResult<E, T> of(final T t) {
-        return new FutureResult<>(() -> Result.success(t));
+        return ofResult(Result.success(t));
     }
 
     @SafeVarargs
     public static <E, T> FutureResult<E, T> fail(final E error, final E... errors) {
-        return new FutureResult<>(() -> Result.failure(error, errors));
+        return ofResult(Result.failure(error, errors));
     }
 
     public static <E, T> FutureResult<E, T> fail(final NonEmptyList<E> errors) {
-        return new FutureResult<>(() -> Result.failure(errors));
+        return ofResult(Result.failure(errors));
+    }
+
+    /**
+     * Combines a list of results into one, without waiting for each in turn. The combined result succeeds with all the
+     * values in order if every result succeeds, and otherwise fails with the errors of all the failed results.
+     *
+     * @param results the results to combine
+     * @param <E> the error type
+     * @param <T> the value type
+     * @return a FutureResult that completes when all the results have
+     */
+    public static <E, T> FutureResult<E, List<T>> sequence(final List<FutureResult<E, T>> results) {
+        final CompletableFuture<?>[] futures = results.stream().map(r -> r.run).toArray(CompletableFuture<?>[]::new);
+        return new FutureResult<>(CompletableFuture.allOf(futures).thenApply(ignored -> {
+            final List<T> values = new ArrayList<>(results.size());
+            final List<E> errors = new ArrayList<>();
+            results.forEach(r -> r.run.join().fold(
+                    reasons -> errors.addAll(reasons),
+                    values::add));
+            return NonEmptyList.fromList(errors)
+                    .map(Result::<E, List<T>>failure)
+                    .orElseGet(() -> Result.success(values));
+        }));
     }
 
     // TEMP
@@ -73,12 +173,13 @@ public final class FutureResult<E, T> {
         }
     }
 
-    private FutureResult(final CompletableFuture<Result<E, T>> run) {
-        this.run = run;
+    private static Exception toException(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
     }
 
-    private FutureResult(final Supplier<Result<E, T>> supplier) {
-        run = CompletableFuture.supplyAsync(supplier);
+    private FutureResult(final CompletableFuture<Result<E, T>> run) {
+        this.run = run;
     }
 
     public Result<E, T> getOrElse(final Supplier<Result<E, T>> resultSupplier, final Function<Exception, E> f) {
@@ -107,15 +208,23 @@ public final class FutureResult<E, T> {
     }
 
     public <R> FutureResult<E, R> flatMap(Function<T, FutureResult<E, R>> f) {
+        return flatMap(f, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * As {@link #flatMap(Function)}, running {@code f} on the given executor if this result is not yet complete.
+     * Once complete, {@code f} runs straight away on the calling thread.
+     */
+    public <R> FutureResult<E, R> flatMap(Function<T, FutureResult<E, R>> f, Executor executor) {
         // CompletableFuture thenCompose / thenComposeAsync === flatMap
-        final CompletableFuture<Result<E, R>> future =
-                run.thenComposeAsync(
-                        (Result<E, T> r) ->
-                                r.fold(
-                                        reasons -> CompletableFuture.completedFuture(Result.failure(reasons)),
-                                        value ->  f.apply(value).run
-                                )
+        final Function<Result<E, T>, CompletableFuture<Result<E, R>>> compose = r ->
+                r.fold(
+                        reasons -> CompletableFuture.completedFuture(Result.failure(reasons)),
+                        value ->  f.apply(value).run
                 );
+        final CompletableFuture<Result<E, R>> future = run.isDone() ?
+                run.thenCompose(compose) :
+                run.thenComposeAsync(compose, executor);
 
         return new FutureResult<>(future);
     }
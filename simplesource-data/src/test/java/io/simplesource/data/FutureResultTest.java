@@ -3,7 +3,10 @@ package io.simplesource.data;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -123,6 +126,80 @@ class FutureResultTest {
         assertThat(result.failureReasons()).contains(NonEmptyList.of(FAILURE_COMMAND_ERROR_1, FAILURE_COMMAND_ERROR_2));
     }
 
+    @Test
+    void ofCompletionStageShouldCompleteWithTheStage() {
+        CompletableFuture<Integer> stage = new CompletableFuture<>();
+        FutureResult<TestError, Integer> futureResult = FutureResult.ofCompletionStage(stage, e -> FAILURE_COMMAND_ERROR_1);
+
+        assertThat(futureResult.future().isDone()).isFalse();
+        stage.complete(10);
+        Result<TestError, Integer> result = getFutureResultValue(futureResult);
+        assertThat(result.getOrElse(-1)).isEqualTo(10);
+    }
+
+    @Test
+    void ofCompletionStageShouldMapExceptionToError() {
+        CompletableFuture<Integer> stage = new CompletableFuture<>();
+        IllegalStateException exception = new IllegalStateException("send failed");
+        FutureResult<TestError, Integer> futureResult = FutureResult.ofCompletionStage(stage, e -> {
+            assertThat(e).isSameAs(exception);
+            return FAILURE_COMMAND_ERROR_1;
+        });
+
+        stage.completeExceptionally(exception);
+        Result<TestError, Integer> result = getFutureResultValue(futureResult);
+        assertThat(result.failureReasons()).contains(NonEmptyList.of(FAILURE_COMMAND_ERROR_1));
+    }
+
+    @Test
+    void knownResultsShouldBeCompleteAndFlatMapOnTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        FutureResult<TestError, Thread> futureResult = FutureResult.<TestError, Integer>of(10)
+                .flatMap(v -> FutureResult.of(Thread.currentThread()));
+
+        assertThat(FutureResult.<TestError, Integer>fail(FAILURE_COMMAND_ERROR_1).future().isDone()).isTrue();
+        assertThat(futureResult.future().isDone()).isTrue();
+        assertThat(getFutureResultValue(futureResult).getOrElse(null)).isSameAs(caller);
+    }
+
+    @Test
+    void flatMapShouldUseTheGivenExecutor() {
+        CompletableFuture<Integer> stage = new CompletableFuture<>();
+        List<Runnable> submitted = new ArrayList<>();
+        FutureResult<TestError, String> futureResult = FutureResult.<TestError, Integer>ofCompletionStage(stage, e -> FAILURE_COMMAND_ERROR_1)
+                .flatMap(v -> FutureResult.of(v.toString()), submitted::add);
+
+        stage.complete(10);
+        assertThat(futureResult.future().isDone()).isFalse();
+        submitted.forEach(Runnable::run);
+        assertThat(getFutureResultValue(futureResult).getOrElse(DEFAULT_VALUE)).isEqualTo("10");
+    }
+
+    @Test
+    void virtualThreadExecutorShouldBeSharedBetweenCallers() {
+        assertThat(FutureResult.virtualThreadExecutor()).isEqualTo(FutureResult.virtualThreadExecutor());
+    }
+
+    @Test
+    void sequenceShouldCollectValuesInOrder() {
+        FutureResult<TestError, Integer> first = asynchronousSuccess(futureResultReturnSignal, 1);
+        FutureResult<TestError, Integer> second = FutureResult.of(2);
+
+        triggerFutureResultReturnSignal();
+        Result<TestError, List<Integer>> result = getFutureResultValue(FutureResult.sequence(Arrays.asList(first, second)));
+        assertThat(result.getOrElse(null)).containsExactly(1, 2);
+    }
+
+    @Test
+    void sequenceShouldCollectAllErrors() {
+        FutureResult<TestError, Integer> result = FutureResult.of(1);
+        FutureResult<TestError, Integer> failure1 = FutureResult.fail(FAILURE_COMMAND_ERROR_1);
+        FutureResult<TestError, Integer> failure2 = FutureResult.fail(FAILURE_COMMAND_ERROR_2);
+
+        Result<TestError, List<Integer>> sequenced = getFutureResultValue(FutureResult.sequence(Arrays.asList(failure1, result, failure2)));
+        assertThat(sequenced.failureReasons()).contains(NonEmptyList.of(FAILURE_COMMAND_ERROR_1, FAILURE_COMMAND_ERROR_2));
+    }
+
     private void triggerFutureResultReturnSignal() {
         new Thread(() -> {
             try {